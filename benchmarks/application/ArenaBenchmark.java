@@ -0,0 +1,331 @@
+package application;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The ArenaBenchmark class measures the simulation hot paths of {@link RobotArena} with JMH:
+ * advancing the arena by a tick, looking up obstacles and finding the robots on a cell.
+ * Every scenario is generated from a fixed seed, with robots covering about a quarter of the cells,
+ * so results from different runs and different versions of the engine can be compared directly.
+ * <p>
+ * {@link #step} runs every combination of robot count, obstacle density, type mix and engine, held by
+ * {@link Scenario}. The lookups do not depend on the robot types or on the engine, so they use
+ * {@link Probes}, which only varies the robot count and the obstacle density. {@link #scaling}
+ * runs the parallel engine on pools of 1 to 8 threads, held by {@link Scaling}, to show how far
+ * a tick speeds up with the number of cores.
+ * <p>
+ * The {@code robotTicks} secondary result of {@link #step} is the time per robot per
+ * tick, which stays flat while the engine scales linearly. Run with {@code -prof gc} to also get
+ * the allocation rate ({@code gc.alloc.rate.norm} is bytes per tick).
+ * <p>
+ * Usage, from the project directory with JMH and OpenJFX on the class path (see the README):
+ * <pre>
+ * javac -cp "$JMH:$FX" -d build/bench "source code/application/"*.java benchmarks/application/*.java
+ * java -cp "build/bench:$JMH:$FX" org.openjdk.jmh.Main ArenaBenchmark -prof gc -p robots=10000,1000000
+ * </pre>
+ * where {@code $JMH} holds jmh-core, jmh-generator-annprocess and their dependencies and
+ * {@code $FX} holds the javafx-base, javafx-graphics and javafx-controls jars.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see RenderBenchmark
+ */
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+    public class ArenaBenchmark {
+
+    /**
+     * The seed every scenario is generated from.
+     */
+    static final long SEED = 20240601L;
+
+    /**
+     * The number of cells probed by each invocation of the lookup benchmarks.
+     */
+    private static final int PROBES = 1024;
+
+    /**
+     * Advances the arena by one tick, including publishing the snapshot for readers, which is
+     * what {@link RobotArena#moveRobots()} does for the user interface.
+     *
+     * @param scenario the arena to advance
+     * @param counter  counts the robots moved, to report the time per robot-tick
+     */
+    @Benchmark
+    public void step(Scenario scenario, RobotTicks counter) {
+        counter.robotTicks += scenario.arena.getRobotStore().count();
+        scenario.arena.step();
+    }
+
+    /**
+     * Advances the arena by one tick on a pool with a fixed number of threads.
+     *
+     * @param scaling the arena to advance
+     * @param counter counts the robots moved, to report the time per robot-tick
+     */
+    @Benchmark
+    public void scaling(Scaling scaling, RobotTicks counter) {
+        counter.robotTicks += scaling.arena.getRobotStore().count();
+        scaling.arena.step();
+    }
+
+    /**
+     * Checks cells for obstacles, the test every robot makes after moving.
+     *
+     * @param probes    the arena and the cells to check
+     * @param blackhole consumes the results
+     */
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public void obstacleLookup(Probes probes, Blackhole blackhole) {
+        RobotArena arena = probes.arena;
+        for (int i = 0; i < PROBES; i++) {
+            blackhole.consume(arena.isBlocked(probes.probeX[i], probes.probeY[i]));
+        }
+    }
+
+    /**
+     * Walks the robots standing on cells, the lookup used to find the prey of each hunter.
+     *
+     * @param probes    the arena and the cells to walk
+     * @param blackhole consumes the results
+     */
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public void cellLookup(Probes probes, Blackhole blackhole) {
+        SpatialGrid grid = probes.arena.getSpatialGrid();
+        for (int i = 0; i < PROBES; i++) {
+            int found = 0;
+            for (int slot = grid.firstInCell(probes.probeX[i], probes.probeY[i]); slot >= 0; slot = grid.next(slot)) {
+                found++;
+            }
+            blackhole.consume(found);
+        }
+    }
+
+    /**
+     * Builds the arena of a scenario. The arena is square and sized so that robots cover about a
+     * quarter of its cells; each cell is made an obstacle with the given probability.
+     *
+     * @param robots          the number of robots
+     * @param obstacleDensity the share of cells covered by obstacles
+     * @param mix             a robot type name, or {@code MIXED} for all types
+     * @param seed            the seed of the scenario
+     * @return the new arena
+     */
+    static RobotArena createArena(int robots, double obstacleDensity, String mix, long seed) {
+        int side = Math.max(16, (int) Math.ceil(Math.sqrt(robots * 4.0)));
+        RobotArena arena = new RobotArena(side, side, seed);
+        if (obstacleDensity > 0) {
+            SplittableRandom random = new SplittableRandom(seed ^ 0x9E3779B97F4A7C15L);
+            for (int y = 0; y < side; y++) {
+                for (int x = 0; x < side; x++) {
+                    if (random.nextDouble() < obstacleDensity) {
+                        arena.addObstacles(x, y, 1, 1);
+                    }
+                }
+            }
+        }
+        RobotArena.RobotType[] types = mix.equals("MIXED")
+                ? RobotArena.RobotType.values()
+                : new RobotArena.RobotType[] {RobotArena.RobotType.valueOf(mix)};
+        arena.addRandomRobots(robots, types);
+        return arena;
+    }
+
+    /**
+     * The arena advanced by {@link #step}, for every combination of robot count, obstacle density,
+     * type mix and engine.
+     */
+    @State(Scope.Benchmark)
+    public static class Scenario {
+
+        /**
+         * The number of robots in the arena.
+         */
+        @Param({"100", "1000", "10000", "100000", "1000000"})
+        public int robots;
+
+        /**
+         * The share of cells covered by obstacles.
+         */
+        @Param({"0.0", "0.25", "0.5"})
+        public double obstacleDensity;
+
+        /**
+         * The robot types in the arena: a single type, or {@code MIXED} for all types in equal parts.
+         */
+        @Param({"BASIC", "ADVANCED", "SENSOR", "MIXED"})
+        public String mix;
+
+        /**
+         * The tick engine: {@code sequential} on the benchmark thread, or {@code parallel} on the
+         * common pool.
+         */
+        @Param({"sequential", "parallel"})
+        public String engine;
+
+        /**
+         * The arena under test, rebuilt for every iteration so that kills do not thin it out.
+         */
+        RobotArena arena;
+
+        /**
+         * Builds the arena of the scenario.
+         */
+        @Setup(Level.Iteration)
+        public void setUp() {
+            arena = createArena(robots, obstacleDensity, mix, SEED);
+            arena.setTickEngine(engine.equals("parallel") ? TickEngine.parallel() : new TickEngine());
+        }
+    }
+
+    /**
+     * The arena advanced by {@link #scaling}, with a mix of all robot types and a quarter of the
+     * cells covered by obstacles, on a pool of its own.
+     */
+    @State(Scope.Benchmark)
+    public static class Scaling {
+
+        /**
+         * The number of robots in the arena.
+         */
+        @Param({"100000", "1000000"})
+        public int robots;
+
+        /**
+         * The number of threads of the pool the engine runs on.
+         */
+        @Param({"1", "2", "4", "8"})
+        public int threads;
+
+        /**
+         * The pool the engine runs on.
+         */
+        private ForkJoinPool pool;
+
+        /**
+         * The arena under test, rebuilt for every iteration so that kills do not thin it out.
+         */
+        RobotArena arena;
+
+        /**
+         * Starts the pool.
+         */
+        @Setup(Level.Trial)
+        public void startPool() {
+            pool = new ForkJoinPool(threads);
+        }
+
+        /**
+         * Builds the arena, with an engine using the same number of stripes per thread as
+         * {@link TickEngine#parallel()}.
+         */
+        @Setup(Level.Iteration)
+        public void setUp() {
+            arena = createArena(robots, 0.25, "MIXED", SEED);
+            arena.setTickEngine(new TickEngine(pool, threads * 4));
+        }
+
+        /**
+         * Shuts the pool down.
+         */
+        @TearDown(Level.Trial)
+        public void stopPool() {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The arena and the cells probed by the lookup benchmarks, which only depend on the number of
+     * robots and the share of cells covered by obstacles. The lookups do not change the arena, so
+     * it is built once per trial, with all robot types.
+     */
+    @State(Scope.Benchmark)
+    public static class Probes {
+
+        /**
+         * The number of robots in the arena.
+         */
+        @Param({"100", "1000", "10000", "100000", "1000000"})
+        public int robots;
+
+        /**
+         * The share of cells covered by obstacles.
+         */
+        @Param({"0.0", "0.25", "0.5"})
+        public double obstacleDensity;
+
+        /**
+         * The arena probed.
+         */
+        RobotArena arena;
+
+        /**
+         * The X coordinates of the cells probed.
+         */
+        final int[] probeX = new int[PROBES];
+
+        /**
+         * The Y coordinates of the cells probed.
+         */
+        final int[] probeY = new int[PROBES];
+
+        /**
+         * Builds the arena and picks the cells to probe.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+            arena = createArena(robots, obstacleDensity, "MIXED", SEED);
+            SplittableRandom random = new SplittableRandom(SEED);
+            for (int i = 0; i < PROBES; i++) {
+                probeX[i] = random.nextInt(arena.getSizeX());
+                probeY[i] = random.nextInt(arena.getSizeY());
+            }
+        }
+    }
+
+    /**
+     * Counts the robots moved during an iteration. JMH divides the iteration time by this count,
+     * which gives the time per robot-tick.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class RobotTicks {
+
+        /**
+         * The number of robots moved, summed over all ticks of the iteration.
+         */
+        public long robotTicks;
+
+        /**
+         * Resets the count at the start of every iteration.
+         */
+        @Setup(Level.Iteration)
+        public void clear() {
+            robotTicks = 0;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package application;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.image.WritableImage;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The RenderBenchmark class measures how long {@link RobotCanvas} takes to redraw an arena with JMH.
+ * A canvas only records the commands drawn on it; they are executed when the canvas is rendered. The
+ * canvas is not shown, so after every operation the benchmark takes a one-pixel snapshot of it,
+ * which makes JavaFX execute and discard the recorded commands right away. Each operation therefore
+ * includes the rendering of what was drawn, and the command buffer cannot grow from one operation
+ * to the next. The JavaFX toolkit is started once per fork, so a display is needed (or a headless
+ * platform such as Monocle). The canvas takes
+ * snapshots of nodes and updates pixel buffers, which JavaFX only allows on its application thread,
+ * so the setup and every measured call are handed to that thread and the benchmark thread waits for
+ * them; the hand-off adds a few microseconds to each operation.
+ * <p>
+ * {@code redraw} repaints the whole canvas with shapes and {@code redrawPixels} with the
+ * {@link PixelRasterizer}; {@code moveFew} moves a handful of robots and lets the
+ * canvas repaint only the area around them, which is what it does on most frames of a sparse arena.
+ * The {@code robotsDrawn} secondary result of {@code redraw} is the time per robot drawn. Scenarios are built by
+ * {@link ArenaBenchmark#createArena(int, double, String, long)} and run the same way as the
+ * {@link ArenaBenchmark}:
+ * <pre>
+ * java -cp "build/bench:$JMH:$FX" org.openjdk.jmh.Main RenderBenchmark -prof gc
+ * </pre>
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see ArenaBenchmark
+ */
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+    @State(Scope.Benchmark)
+    public class RenderBenchmark {
+
+    /**
+     * The width and height of the canvas, in pixels.
+     */
+    private static final double CANVAS_SIZE = 1200;
+
+    /**
+     * The number of robots {@link #moveFew()} moves before each repaint.
+     */
+    private static final int MOVED = 10;
+
+    /**
+     * The number of robots in the arena.
+     */
+    @Param({"100", "1000", "10000", "100000"})
+    public int robots;
+
+    /**
+     * The share of cells covered by obstacles.
+     */
+    @Param({"0.0", "0.25", "0.5"})
+    public double obstacleDensity;
+
+    /**
+     * The robot types in the arena: a single type, or {@code MIXED} for all types in equal parts.
+     */
+    @Param({"BASIC", "ADVANCED", "SENSOR", "MIXED"})
+    public String mix;
+
+    /**
+     * The canvas under test.
+     */
+    private RobotCanvas canvas;
+
+    /**
+     * A canvas of the same arena drawing in pixel mode.
+     */
+    private RobotCanvas pixelCanvas;
+
+    /**
+     * Takes the one-pixel snapshot that renders a canvas after each operation.
+     */
+    private SnapshotParameters rendering;
+
+    /**
+     * The image the snapshots are written to, reused by every operation.
+     */
+    private WritableImage rendered;
+
+    /**
+     * The arena drawn by the canvas.
+     */
+    private RobotArena arena;
+
+    /**
+     * The number of robots drawn by each redraw.
+     */
+    private int drawn;
+
+    /**
+     * The robots {@link #moveFew()} moves back and forth.
+     */
+    private Robot[] moved;
+
+    /**
+     * The X coordinates the moved robots started at.
+     */
+    private int[] startXs;
+
+    /**
+     * Whether the moved robots are currently one cell away from where they started.
+     */
+    private boolean away;
+
+    /**
+     * Starts the JavaFX toolkit and builds the canvas for the scenario.
+     *
+     * @throws InterruptedException if interrupted while waiting for the toolkit to start
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            Platform.startup(started::countDown);
+        } catch (IllegalStateException e) {
+            // 工具包已经启动
+            started.countDown();
+        }
+        started.await();
+        arena = ArenaBenchmark.createArena(robots, obstacleDensity, mix, ArenaBenchmark.SEED);
+        onFxThread(() -> {
+            canvas = new RobotCanvas(arena, CANVAS_SIZE, CANVAS_SIZE);
+            canvas.setRenderMode(RobotCanvas.RenderMode.SHAPES);
+            pixelCanvas = new RobotCanvas(arena, CANVAS_SIZE, CANVAS_SIZE);
+            pixelCanvas.setRenderMode(RobotCanvas.RenderMode.PIXELS);
+            rendering = new SnapshotParameters();
+            rendering.setViewport(new Rectangle2D(0, 0, 1, 1));
+            rendered = new WritableImage(1, 1);
+        });
+        drawn = arena.getRobotStore().count();
+
+        int count = Math.min(MOVED, drawn);
+        moved = new Robot[count];
+        startXs = new int[count];
+        for (int i = 0; i < count; i++) {
+            // 均匀地挑选机器人，使它们分散在整个竞技场中
+            moved[i] = arena.getRobots().get((int) ((long) i * drawn / count));
+            startXs[i] = moved[i].getX();
+        }
+    }
+
+    /**
+     * Redraws every obstacle and robot of the arena.
+     *
+     * @param counter counts the robots drawn, to report the time per robot
+     */
+    @Benchmark
+    public void redraw(RobotsDrawn counter) {
+        counter.robotsDrawn += drawn;
+        render(canvas, canvas::repaintAll);
+    }
+
+    /**
+     * Rasterizes every obstacle and robot of the arena into the pixel buffer and draws it.
+     *
+     * @param counter counts the robots drawn, to report the time per robot
+     */
+    @Benchmark
+    public void redrawPixels(RobotsDrawn counter) {
+        counter.robotsDrawn += drawn;
+        render(pixelCanvas, pixelCanvas::repaintAll);
+    }
+
+    /**
+     * Moves a few robots one cell sideways, or back, and repaints what changed. The robots are
+     * moved directly in the store, without the arena's collision checks, since only the canvas
+     * is measured.
+     */
+    @Benchmark
+    public void moveFew() {
+        away = !away;
+        for (int i = 0; i < moved.length; i++) {
+            int x = startXs[i];
+            moved[i].setX(away ? (x > 0 ? x - 1 : x + 1) : x);
+        }
+        arena.publishSnapshot();
+        render(canvas, canvas::updateCanvas);
+    }
+
+    /**
+     * Draws on a canvas and renders what was drawn, on the JavaFX application thread.
+     *
+     * @param target the canvas drawn on
+     * @param draw   draws on the canvas
+     */
+    private void render(RobotCanvas target, Runnable draw) {
+        onFxThread(() -> {
+            draw.run();
+            // 快照会执行并清空画布记录的绘图命令
+            target.snapshot(rendering, rendered);
+        });
+    }
+
+    /**
+     * Runs an action on the JavaFX application thread and waits for it to finish, passing on
+     * anything it throws.
+     *
+     * @param action the action to run
+     */
+    private static void onFxThread(Runnable action) {
+        if (Platform.isFxApplicationThread()) {
+            action.run();
+            return;
+        }
+        FutureTask<Void> task = new FutureTask<>(action, null);
+        Platform.runLater(task);
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the JavaFX application thread.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Counts the robots drawn during an iteration. JMH divides the iteration time by this count,
+     * which gives the time per robot drawn.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class RobotsDrawn {
+
+        /**
+         * The number of robots drawn, summed over all redraws of the iteration.
+         */
+        public long robotsDrawn;
+
+        /**
+         * Resets the count at the start of every iteration.
+         */
+        @Setup(Level.Iteration)
+        public void clear() {
+            robotsDrawn = 0;
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package application;
 
-import javafx.scene.paint.Color;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * The AdvancedRobot class represents a robot with advanced movement logic.
@@ -17,6 +16,11 @@ import java.util.Random;
  */
     public class AdvancedRobot extends Robot {
 
+    /**
+     * The default color of a AdvancedRobot (red), as a packed 0xAARRGGBB value.
+     */
+    public static final int COLOR = 0xFFFF0000;
+
     /**
      * Constructs a new AdvancedRobot object with specified starting position, direction, and color.
      * Inherits from the abstract class robot
@@ -26,43 +30,87 @@ import java.util.Random;
      * @param direction the initial direction of the robot
      */
     public AdvancedRobot(int x, int y, Direction direction) {
-        super(x, y, direction, Color.RED);  // AdvancedRobot uses red color
+        super(RobotArena.RobotType.ADVANCED, x, y, direction, COLOR);  // AdvancedRobot uses red color
+    }
+
+    /**
+     * Constructs a view over an AdvancedRobot that already lives in a store.
+     *
+     * @param store the store holding the robot
+     * @param slot  the slot of the robot in the store
+     */
+    AdvancedRobot(RobotStore store, int slot) {
+        super(store, slot, COLOR);
     }
 
     /**
-     * Moves the robot. Each time this method is called, there is a 50% chance the robot will
-     * randomly change its direction, then it moves one step forward in the current direction.
+     * Moves the robot. If a BasicRobot is within reach of the arena's {@link FlowField}, the robot
+     * turns towards it or lies in wait for it; otherwise there is a 50% chance the robot will
+     * randomly change its direction. Then it moves one step forward in the current direction.
      * If moving would cause the robot to go out of bounds, it will randomly adjust its direction
      * and be constrained within the boundary.
      */
     @Override
     public void move() {
+        RobotArena arena = store.getArena();
+        move(store, slot, arena != null ? arena.getFlowField() : null);
+    }
+
+    /**
+     * Applies the AdvancedRobot movement logic to the robot in the given slot of a store.
+     * A robot within range of prey in the flow field takes the next step of a shortest path to
+     * it; otherwise it wanders at random. Since the hunter and its prey both take one step per
+     * tick, the parity of the distance between them never changes while both move, so a hunter at
+     * an even distance waits for one tick instead, which lets it land on the prey's cell.
+     * The robot is kept inside the bounds of the store, see {@link RobotStore#getBounds()}.
+     *
+     * @param store the store holding the robot
+     * @param slot  the slot of the robot in the store
+     * @param field the flow field leading to prey, or null to always wander
+     * @see #move()
+     */
+    static void move(RobotStore store, int slot, FlowField field) {
         // Implement advanced movement logic
-        if (new Random().nextBoolean()) {
-            setDirection(Direction.values()[new Random().nextInt(Direction.values().length)]);
+        int distance = field != null ? field.distanceAt(store.getX(slot), store.getY(slot)) : FlowField.UNREACHED;
+        if (distance != FlowField.UNREACHED && distance % 2 == 0) {
+            // 双方每拍各走一步，距离的奇偶性不变；距离为偶数时原地等待一拍，让猎物走过来
+            return;
+        }
+        Direction pursuit = distance != FlowField.UNREACHED ? field.nextStep(store.getX(slot), store.getY(slot)) : null;
+        if (pursuit != null) {
+            store.setDirection(slot, pursuit);  // 沿流场追击最近的 BasicRobot
+        } else if (store.nextBoolean(slot)) {
+            store.setDirection(slot, store.nextDirection(slot));
         }
 
-        switch (getDirection()) {
+        int x = store.getX(slot);
+        int y = store.getY(slot);
+        switch (store.getDirection(slot)) {
             case UP:
-                setY(getY() - 1);
+                y--;
                 break;
             case DOWN:
-                setY(getY() + 1);
+                y++;
                 break;
             case LEFT:
-                setX(getX() - 1);
+                x--;
                 break;
             case RIGHT:
-                setX(getX() + 1);
+                x++;
                 break;
         }
 
         // Ensure the robot does not move out of bounds
-        if (getX() < 1 || getX() >= 17 || getY() < 1 || getY() >= 17) {
-            setDirection(Direction.random());
-            setX(Math.max(3, Math.min(getX(), 17))); // Set X to be within [3, 15]
-            setY(Math.max(3, Math.min(getY(), 17))); // Set Y to be within [3, 15]
+        ArenaBounds bounds = store.getBounds();
+        if (!bounds.contains(x, y)) {
+            if (!bounds.isWrapping()) {
+                store.setDirection(slot, store.nextDirection(slot));
+            }
+            x = bounds.constrainX(x);  // 夹在边界内，或在环形场地中绕回
+            y = bounds.constrainY(y);
         }
+        store.setX(slot, x);
+        store.setY(slot, y);
     }
     
     /**
@@ -81,9 +129,10 @@ import java.util.Random;
      * @return a newly created AdvancedRobot object
      */
     public static AdvancedRobot createRandom(int maxX, int maxY) {
-        int x = new Random().nextInt(maxX);
-        int y = new Random().nextInt(maxY);
-        Direction direction = Direction.values()[new Random().nextInt(Direction.values().length)];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int x = random.nextInt(maxX);
+        int y = random.nextInt(maxY);
+        Direction direction = Direction.random();
         return new AdvancedRobot(x, y, direction);
     }
 }
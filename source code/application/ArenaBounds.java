@@ -0,0 +1,137 @@
+package application;
+
+/**
+ * The ArenaBounds class describes the space robots move in: the width and height of the arena grid
+ * and what happens at its edges. In a bounded arena a robot that would step off the grid is kept
+ * on the border cell; in a wrapping arena (a torus) it re-enters on the opposite side.
+ * All robots of an arena share one ArenaBounds object, so their movement always follows the
+ * arena's actual size.
+ * ArenaBounds objects are immutable.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see RobotArena#getBounds()
+ */
+    public final class ArenaBounds {
+
+    /**
+     * Bounds covering every non-negative coordinate, used by robots that are not in an arena.
+     */
+    public static final ArenaBounds UNBOUNDED = new ArenaBounds(Integer.MAX_VALUE, Integer.MAX_VALUE, false);
+
+    /**
+     * The width of the arena grid.
+     */
+    private final int sizeX;
+
+    /**
+     * The height of the arena grid.
+     */
+    private final int sizeY;
+
+    /**
+     * Whether robots leaving one edge re-enter on the opposite edge.
+     */
+    private final boolean wrapping;
+
+    /**
+     * Constructs new ArenaBounds for a grid of the specified dimensions.
+     *
+     * @param sizeX    the width of the arena grid
+     * @param sizeY    the height of the arena grid
+     * @param wrapping true for a wrap-around (torus) arena, false for one with solid edges
+     * @throws IllegalArgumentException if either dimension is not positive
+     */
+    public ArenaBounds(int sizeX, int sizeY, boolean wrapping) {
+        if (sizeX <= 0 || sizeY <= 0) {
+            throw new IllegalArgumentException("Arena dimensions must be positive.");
+        }
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.wrapping = wrapping;
+    }
+
+    /**
+     * Checks whether the given cell lies on the arena grid.
+     *
+     * @param x the X coordinate of the cell
+     * @param y the Y coordinate of the cell
+     * @return true if the cell is inside the arena, false otherwise
+     */
+    public boolean contains(int x, int y) {
+        return x >= 0 && x < sizeX && y >= 0 && y < sizeY;
+    }
+
+    /**
+     * Brings an X coordinate back onto the grid: wrapped around in a torus arena,
+     * clamped to the nearest border column otherwise.
+     *
+     * @param x the X coordinate
+     * @return the corresponding X coordinate on the grid
+     */
+    public int constrainX(int x) {
+        return constrain(x, sizeX);
+    }
+
+    /**
+     * Brings a Y coordinate back onto the grid: wrapped around in a torus arena,
+     * clamped to the nearest border row otherwise.
+     *
+     * @param y the Y coordinate
+     * @return the corresponding Y coordinate on the grid
+     */
+    public int constrainY(int y) {
+        return constrain(y, sizeY);
+    }
+
+    /**
+     * Gets the width of the arena grid.
+     *
+     * @return the width of the arena grid
+     */
+    public int getSizeX() {
+        return sizeX;
+    }
+
+    /**
+     * Gets the height of the arena grid.
+     *
+     * @return the height of the arena grid
+     */
+    public int getSizeY() {
+        return sizeY;
+    }
+
+    /**
+     * Checks whether robots leaving one edge re-enter on the opposite edge.
+     *
+     * @return true for a wrap-around (torus) arena, false for one with solid edges
+     */
+    public boolean isWrapping() {
+        return wrapping;
+    }
+
+    /**
+     * Returns a short description of the bounds.
+     *
+     * @return a string describing the bounds
+     */
+    @Override
+    public String toString() {
+        return "ArenaBounds[" + sizeX + "x" + sizeY + (wrapping ? ", torus]" : "]");
+    }
+
+    /**
+     * Brings one coordinate back into {@code [0, size)}.
+     *
+     * @param value the coordinate
+     * @param size  the size of the grid along that axis
+     * @return the constrained coordinate
+     */
+    private int constrain(int value, int size) {
+        if (wrapping) {
+            return Math.floorMod(value, size);
+        }
+        return Math.max(0, Math.min(size - 1, value));
+    }
+}
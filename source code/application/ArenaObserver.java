@@ -0,0 +1,22 @@
+package application;
+
+/**
+ * The ArenaObserver interface is implemented by anything that wants to be told when a
+ * {@link RobotArena} has advanced, such as the JavaFX user interface or a statistics collector.
+ * Observers are called on the thread that advanced the arena; an observer that touches UI
+ * components is responsible for handing the work over to the UI thread itself.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see RobotArena#addObserver(ArenaObserver)
+ */
+    @FunctionalInterface
+    public interface ArenaObserver {
+
+    /**
+     * Called after the arena has advanced.
+     *
+     * @param arena the arena that has advanced
+     */
+    void arenaUpdated(RobotArena arena);
+}
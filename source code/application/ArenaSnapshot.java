@@ -0,0 +1,530 @@
+package application;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The ArenaSnapshot class is a consistent, read-only copy of the robots and obstacles of a
+ * {@link RobotArena} at the end of a tick. Renderers and other readers work on a snapshot instead
+ * of the live arena, so they never see a half-finished tick and never hold up the simulation.
+ * <p>
+ * Snapshots are double-buffered: the arena fills a spare snapshot and then publishes it in a single
+ * step. A reader pins the snapshot it is using with {@link RobotArena#acquireSnapshot()} and unpins
+ * it with {@link #close()}, ideally in a try-with-resources block. A pinned snapshot is never
+ * refilled; if the spare snapshot is still pinned when the arena publishes, a new one is created
+ * instead of waiting for the reader.
+ * <p>
+ * Readers that only look at part of the arena, such as a zoomed-in view, can find the robots and
+ * obstacles in a rectangle with {@link #forEachRobotIn} and {@link #forEachObstacleIn}. The first such
+ * query builds a region index: the arena is cut into square tiles, a power of two cells wide, and
+ * the robots and obstacles are counting-sorted by tile. The tiles are made large enough that there
+ * are never many more tiles than robots and obstacles, so building the index stays linear even for
+ * sparse arenas. The index is built at most once per snapshot.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see RobotArena#acquireSnapshot()
+ */
+    public class ArenaSnapshot implements AutoCloseable {
+
+    /**
+     * The robot types, cached to avoid copying the array on every lookup.
+     */
+    private static final RobotArena.RobotType[] TYPES = RobotArena.RobotType.values();
+
+    /**
+     * The directions, cached to avoid copying the array on every lookup.
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * The number of readers currently using this snapshot.
+     */
+    private final AtomicInteger pins = new AtomicInteger();
+
+    /**
+     * The tick at which the snapshot was taken.
+     */
+    private long tick;
+
+    /**
+     * The number of snapshots the arena had published, including this one, when it was taken.
+     */
+    private long sequence;
+
+    /**
+     * The width of the arena grid.
+     */
+    private int sizeX;
+
+    /**
+     * The height of the arena grid.
+     */
+    private int sizeY;
+
+    /**
+     * The number of robots in the snapshot.
+     */
+    private int size;
+
+    /**
+     * The unique identifier of each robot.
+     */
+    private int[] ids = new int[0];
+
+    /**
+     * The ordinal of the type of each robot.
+     */
+    private byte[] types = new byte[0];
+
+    /**
+     * The X coordinate of each robot.
+     */
+    private int[] xs = new int[0];
+
+    /**
+     * The Y coordinate of each robot.
+     */
+    private int[] ys = new int[0];
+
+    /**
+     * The ordinal of the direction of each robot.
+     */
+    private byte[] directions = new byte[0];
+
+    /**
+     * The color of each robot as a packed 0xAARRGGBB value.
+     */
+    private int[] colors = new int[0];
+
+    /**
+     * The obstacles in the arena.
+     */
+    private List<Obstacle> obstacles = Collections.emptyList();
+
+    /**
+     * The version of the obstacle map the obstacles were taken from.
+     */
+    private long obstacleVersion;
+
+    /**
+     * The base-2 logarithm of the width of a region index tile in cells.
+     */
+    private int tileShift;
+
+    /**
+     * The number of region index tiles along the X axis.
+     */
+    private int tilesX;
+
+    /**
+     * The start of each tile's robots in {@link #tileRobots}; tile {@code t} holds
+     * {@code [robotStart[t], robotStart[t + 1])}.
+     */
+    private int[] robotStart = new int[1];
+
+    /**
+     * The robot indices sorted by tile, ascending within each tile.
+     */
+    private int[] tileRobots = new int[0];
+
+    /**
+     * The start of each tile's obstacles in {@link #tileObstacles}.
+     */
+    private int[] obstacleStart = new int[1];
+
+    /**
+     * The obstacle indices sorted by tile.
+     */
+    private int[] tileObstacles = new int[0];
+
+    /**
+     * Whether the region index is up to date with the contents of the snapshot.
+     */
+    private boolean indexed;
+
+    /**
+     * Constructs an empty snapshot. Snapshots are created and filled by {@link RobotArena}.
+     */
+    ArenaSnapshot() {
+    }
+
+    /**
+     * Copies the current state of an arena into this snapshot, reusing its arrays where possible.
+     * Must only be called by the simulation thread on a snapshot that is not pinned.
+     *
+     * @param arena    the arena to copy
+     * @param sequence the number of snapshots the arena has published, including this one
+     */
+    void copyFrom(RobotArena arena, long sequence) {
+        RobotStore store = arena.getRobotStore();
+        int count = store.count();
+        if (ids.length < count) {
+            int capacity = Math.max(count, ids.length + (ids.length >> 1));
+            ids = new int[capacity];
+            types = new byte[capacity];
+            xs = new int[capacity];
+            ys = new int[capacity];
+            directions = new byte[capacity];
+            colors = new int[capacity];
+        }
+        int index = 0;
+        for (int slot = 0; slot < store.size(); slot++) {
+            if (!store.isAlive(slot)) {
+                continue;
+            }
+            ids[index] = store.getId(slot);
+            types[index] = (byte) store.getType(slot).ordinal();
+            xs[index] = store.getX(slot);
+            ys[index] = store.getY(slot);
+            directions[index] = (byte) store.getDirection(slot).ordinal();
+            colors[index] = store.getColor(slot);
+            index++;
+        }
+        size = count;
+        tick = arena.getTick();
+        this.sequence = sequence;
+        sizeX = arena.getSizeX();
+        sizeY = arena.getSizeY();
+        obstacles = arena.getObstacles();
+        obstacleVersion = arena.getObstacleMap().version();
+        invalidateIndex();
+    }
+
+    /**
+     * Marks the region index as out of date after the snapshot has been refilled.
+     */
+    private synchronized void invalidateIndex() {
+        indexed = false;
+    }
+
+    /**
+     * Pins this snapshot for a reader.
+     */
+    void pin() {
+        pins.incrementAndGet();
+    }
+
+    /**
+     * Checks whether any reader is still using this snapshot.
+     *
+     * @return true if the snapshot is pinned, false otherwise
+     */
+    boolean isPinned() {
+        return pins.get() > 0;
+    }
+
+    /**
+     * Releases this snapshot so that the arena may reuse it. A snapshot must be closed exactly
+     * once for every time it was acquired, and must not be read after it has been closed.
+     */
+    @Override
+    public void close() {
+        pins.decrementAndGet();
+    }
+
+    /**
+     * Gets the tick at which the snapshot was taken.
+     *
+     * @return the tick of the snapshot
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Gets the number of snapshots the arena had published, including this one, when it was taken.
+     * It grows with every publish, including those after edits that do not advance the tick, so a
+     * reader can tell whether anything may have changed since the snapshot it last looked at.
+     *
+     * @return the sequence number of the snapshot
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the width of the arena grid.
+     *
+     * @return the width of the arena grid
+     */
+    public int getSizeX() {
+        return sizeX;
+    }
+
+    /**
+     * Gets the height of the arena grid.
+     *
+     * @return the height of the arena grid
+     */
+    public int getSizeY() {
+        return sizeY;
+    }
+
+    /**
+     * Gets the number of robots in the snapshot.
+     *
+     * @return the number of robots
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the unique identifier of the robot at the given index.
+     *
+     * @param index the index of the robot, in arena order
+     * @return the ID of the robot
+     */
+    public int getId(int index) {
+        return ids[checkIndex(index)];
+    }
+
+    /**
+     * Gets the type of the robot at the given index.
+     *
+     * @param index the index of the robot, in arena order
+     * @return the type of the robot
+     */
+    public RobotArena.RobotType getType(int index) {
+        return TYPES[types[checkIndex(index)]];
+    }
+
+    /**
+     * Gets the X coordinate of the robot at the given index.
+     *
+     * @param index the index of the robot, in arena order
+     * @return the X coordinate
+     */
+    public int getX(int index) {
+        return xs[checkIndex(index)];
+    }
+
+    /**
+     * Gets the Y coordinate of the robot at the given index.
+     *
+     * @param index the index of the robot, in arena order
+     * @return the Y coordinate
+     */
+    public int getY(int index) {
+        return ys[checkIndex(index)];
+    }
+
+    /**
+     * Gets the direction of the robot at the given index.
+     *
+     * @param index the index of the robot, in arena order
+     * @return the direction
+     */
+    public Direction getDirection(int index) {
+        return DIRECTIONS[directions[checkIndex(index)]];
+    }
+
+    /**
+     * Gets the color of the robot at the given index.
+     *
+     * @param index the index of the robot, in arena order
+     * @return the color as a packed 0xAARRGGBB value
+     */
+    public int getColor(int index) {
+        return colors[checkIndex(index)];
+    }
+
+    /**
+     * Gets the obstacles in the arena.
+     *
+     * @return a read-only list of the obstacles
+     */
+    public List<Obstacle> getObstacles() {
+        return obstacles;
+    }
+
+    /**
+     * Gets a number that changes whenever obstacles are added or removed, so that a reader can
+     * tell whether the obstacles differ from those of an earlier snapshot without comparing them.
+     *
+     * @return the version of the obstacles
+     */
+    public long getObstacleVersion() {
+        return obstacleVersion;
+    }
+
+    /**
+     * Calls an action with the index of every robot inside a rectangle of the arena, using the
+     * region index. Robots of the same tile are visited in arena order.
+     *
+     * @param x      the X coordinate of the top-left cell
+     * @param y      the Y coordinate of the top-left cell
+     * @param width  the width of the rectangle in cells
+     * @param height the height of the rectangle in cells
+     * @param action called with the index of each robot inside the rectangle
+     */
+    public void forEachRobotIn(int x, int y, int width, int height, IntConsumer action) {
+        ensureIndexed();
+        forEachIn(x, y, width, height, robotStart, tileRobots, index -> {
+            int robotX = xs[index];
+            int robotY = ys[index];
+            if (robotX >= x && robotX - x < width && robotY >= y && robotY - y < height) {
+                action.accept(index);
+            }
+        });
+    }
+
+    /**
+     * Calls an action with every obstacle inside a rectangle of the arena, using the region index.
+     *
+     * @param x      the X coordinate of the top-left cell
+     * @param y      the Y coordinate of the top-left cell
+     * @param width  the width of the rectangle in cells
+     * @param height the height of the rectangle in cells
+     * @param action called with each obstacle inside the rectangle
+     */
+    public void forEachObstacleIn(int x, int y, int width, int height, Consumer<Obstacle> action) {
+        ensureIndexed();
+        forEachIn(x, y, width, height, obstacleStart, tileObstacles, index -> {
+            Obstacle obstacle = obstacles.get(index);
+            if (obstacle.getX() >= x && obstacle.getX() - x < width && obstacle.getY() >= y && obstacle.getY() - y < height) {
+                action.accept(obstacle);
+            }
+        });
+    }
+
+    /**
+     * Calls an action with every entry of the tiles overlapping a rectangle of the arena.
+     *
+     * @param x       the X coordinate of the top-left cell
+     * @param y       the Y coordinate of the top-left cell
+     * @param width   the width of the rectangle in cells
+     * @param height  the height of the rectangle in cells
+     * @param start   the start of each tile's entries
+     * @param entries the entries sorted by tile
+     * @param action  called with each entry of the overlapping tiles
+     */
+    private void forEachIn(int x, int y, int width, int height, int[] start, int[] entries, IntConsumer action) {
+        int fromX = Math.max(0, x);
+        int toX = (int) Math.min(sizeX, (long) x + width);
+        int fromY = Math.max(0, y);
+        int toY = (int) Math.min(sizeY, (long) y + height);
+        if (fromX >= toX || fromY >= toY) {
+            return;
+        }
+        for (int tileY = fromY >> tileShift; tileY <= (toY - 1) >> tileShift; tileY++) {
+            for (int tileX = fromX >> tileShift; tileX <= (toX - 1) >> tileShift; tileX++) {
+                int tile = tileY * tilesX + tileX;
+                for (int i = start[tile]; i < start[tile + 1]; i++) {
+                    action.accept(entries[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the region index if the snapshot has been refilled since it was last built.
+     */
+    private synchronized void ensureIndexed() {
+        if (indexed) {
+            return;
+        }
+        // 图块数量不超过机器人与障碍物总数的两倍，稀疏的大竞技场也能线性建立索引
+        long budget = Math.max(1024, 2L * (size + obstacles.size()));
+        tileShift = 3;
+        while (tileCount(tileShift) > budget) {
+            tileShift++;
+        }
+        tilesX = ((sizeX - 1) >> tileShift) + 1;
+        int tiles = (int) tileCount(tileShift);
+
+        if (robotStart.length < tiles + 1) {
+            robotStart = new int[tiles + 1];
+        }
+        if (tileRobots.length < size) {
+            tileRobots = new int[size];
+        }
+        sortByTile(robotStart, tileRobots, tiles, size, index -> tileOf(xs[index], ys[index]));
+
+        int obstacleCount = obstacles.size();
+        if (obstacleStart.length < tiles + 1) {
+            obstacleStart = new int[tiles + 1];
+        }
+        if (tileObstacles.length < obstacleCount) {
+            tileObstacles = new int[obstacleCount];
+        }
+        sortByTile(obstacleStart, tileObstacles, tiles, obstacleCount, index -> tileOf(obstacles.get(index).getX(), obstacles.get(index).getY()));
+        indexed = true;
+    }
+
+    /**
+     * Gets the number of tiles the arena is cut into with tiles of the given size.
+     *
+     * @param shift the base-2 logarithm of the tile width in cells
+     * @return the number of tiles
+     */
+    private long tileCount(int shift) {
+        return ((long) ((sizeX - 1) >> shift) + 1) * (((sizeY - 1) >> shift) + 1);
+    }
+
+    /**
+     * Gets the tile a cell belongs to.
+     *
+     * @param x the X coordinate of the cell
+     * @param y the Y coordinate of the cell
+     * @return the index of the tile
+     */
+    private int tileOf(int x, int y) {
+        return (y >> tileShift) * tilesX + (x >> tileShift);
+    }
+
+    /**
+     * Counting-sorts entries by tile, keeping them in ascending order within each tile.
+     *
+     * @param start   receives the start of each tile's entries, followed by the total
+     * @param entries receives the entries sorted by tile
+     * @param tiles   the number of tiles
+     * @param count   the number of entries
+     * @param tileOf  gives the tile of an entry
+     */
+    private static void sortByTile(int[] start, int[] entries, int tiles, int count, IntUnaryOperator tileOf) {
+        Arrays.fill(start, 0, tiles + 1, 0);
+        for (int i = 0; i < count; i++) {
+            start[tileOf.applyAsInt(i) + 1]++;
+        }
+        for (int tile = 0; tile < tiles; tile++) {
+            start[tile + 1] += start[tile];
+        }
+        for (int i = 0; i < count; i++) {
+            entries[start[tileOf.applyAsInt(i)]++] = i;
+        }
+        // 放置时起点已后移一个图块，整体右移还原
+        System.arraycopy(start, 0, start, 1, tiles);
+        start[0] = 0;
+    }
+
+    /**
+     * Returns a short description of the snapshot.
+     *
+     * @return a string describing the snapshot
+     */
+    @Override
+    public String toString() {
+        return "ArenaSnapshot[tick=" + tick + ", robots=" + size + ", obstacles=" + obstacles.size() + "]";
+    }
+
+    /**
+     * Checks that an index refers to a robot in the snapshot.
+     *
+     * @param index the index to check
+     * @return the index
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of range for " + size + " robots.");
+        }
+        return index;
+    }
+}
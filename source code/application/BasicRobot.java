@@ -1,7 +1,6 @@
 package application;
 
-import javafx.scene.paint.Color;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * The BasicRobot class represents a simple robot with basic movement logic.
@@ -14,6 +13,11 @@ import java.util.Random;
  */
     public class BasicRobot extends Robot {
 
+    /**
+     * The default color of a BasicRobot (blue), as a packed 0xAARRGGBB value.
+     */
+    public static final int COLOR = 0xFF0000FF;
+
     /**
      * Constructs a new BasicRobot object with specified starting position, direction, and color.
      * The BasicRobot uses blue color by default.
@@ -24,7 +28,17 @@ import java.util.Random;
      * @param direction the initial direction of the robot
      */
     public BasicRobot(int x, int y, Direction direction) {
-        super(x, y, direction, Color.BLUE);  // BasicRobot uses blue color
+        super(RobotArena.RobotType.BASIC, x, y, direction, COLOR);  // BasicRobot uses blue color
+    }
+
+    /**
+     * Constructs a view over a BasicRobot that already lives in a store.
+     *
+     * @param store the store holding the robot
+     * @param slot  the slot of the robot in the store
+     */
+    BasicRobot(RobotStore store, int slot) {
+        super(store, slot, COLOR);
     }
 
     /**
@@ -34,28 +48,47 @@ import java.util.Random;
      */
     @Override
     public void move() {
+        move(store, slot);
+    }
+
+    /**
+     * Applies the BasicRobot movement logic to the robot in the given slot of a store.
+     * The robot is kept inside the bounds of the store, see {@link RobotStore#getBounds()}.
+     *
+     * @param store the store holding the robot
+     * @param slot  the slot of the robot in the store
+     * @see #move()
+     */
+    static void move(RobotStore store, int slot) {
         // Implement basic movement logic
-        switch (getDirection()) {
+        int x = store.getX(slot);
+        int y = store.getY(slot);
+        switch (store.getDirection(slot)) {
             case UP:
-                setY(getY() - 1);
+                y--;
                 break;
             case DOWN:
-                setY(getY() + 1);
+                y++;
                 break;
             case LEFT:
-                setX(getX() - 1);
+                x--;
                 break;
             case RIGHT:
-                setX(getX() + 1);
+                x++;
                 break;
         }
 
         // Ensure the robot does not move out of bounds
-        if (getX() < 1 || getX() >= 17 || getY() < 1 || getY() >= 17) {
-            setDirection(Direction.random());
-            setX(Math.max(3, Math.min(getX(), 17))); // Set X to be within [3, 15]
-            setY(Math.max(3, Math.min(getY(), 17))); // Set Y to be within [3, 15]
+        ArenaBounds bounds = store.getBounds();
+        if (!bounds.contains(x, y)) {
+            if (!bounds.isWrapping()) {
+                store.setDirection(slot, store.nextDirection(slot));
+            }
+            x = bounds.constrainX(x);  // 夹在边界内，或在环形场地中绕回
+            y = bounds.constrainY(y);
         }
+        store.setX(slot, x);
+        store.setY(slot, y);
     }
 
     /**
@@ -75,9 +108,10 @@ import java.util.Random;
      * @return a newly created BasicRobot object
      */
     public static BasicRobot createRandom(int maxX, int maxY) {
-        int x = new Random().nextInt(maxX);
-        int y = new Random().nextInt(maxY);
-        Direction direction = Direction.values()[new Random().nextInt(Direction.values().length)];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int x = random.nextInt(maxX);
+        int y = random.nextInt(maxY);
+        Direction direction = Direction.random();
         return new BasicRobot(x, y, direction);
     }
 }
\ No newline at end of file
@@ -0,0 +1,236 @@
+package application;
+
+/**
+ * The Camera class is the part of the arena a {@link RobotCanvas} shows: a zoom factor and the arena
+ * position, in cells, at the top-left corner of the view.
+ * <p>
+ * At zoom 1 the whole width of the arena fits the view, which is how the canvas has always shown
+ * it; zooming in makes cells larger, up to {@link #MAX_CELL_SIZE} pixels. The position is kept such
+ * that the view never scrolls past the edges of the arena, and an arena smaller than the view stays
+ * at the top-left corner. The view size and arena size are passed to {@link #fit} before each frame,
+ * so resizing the canvas or loading another arena keeps the camera consistent.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see RobotCanvas#getCamera()
+ */
+    public class Camera {
+
+    /**
+     * The largest size of a cell on screen, in pixels, that zooming in can reach.
+     */
+    public static final double MAX_CELL_SIZE = 128;
+
+    /**
+     * The zoom factor; 1 fits the width of the arena to the view.
+     */
+    private double zoom = 1;
+
+    /**
+     * The X coordinate, in cells, of the arena position at the left edge of the view.
+     */
+    private double x;
+
+    /**
+     * The Y coordinate, in cells, of the arena position at the top edge of the view.
+     */
+    private double y;
+
+    /**
+     * The width of the arena grid.
+     */
+    private int sizeX = 1;
+
+    /**
+     * The height of the arena grid.
+     */
+    private int sizeY = 1;
+
+    /**
+     * The width of the view, in pixels.
+     */
+    private double width = 1;
+
+    /**
+     * The height of the view, in pixels.
+     */
+    private double height = 1;
+
+    /**
+     * Sets the size of the arena and of the view, and moves the camera back inside the arena if
+     * the new sizes leave it outside.
+     *
+     * @param sizeX  the width of the arena grid
+     * @param sizeY  the height of the arena grid
+     * @param width  the width of the view, in pixels
+     * @param height the height of the view, in pixels
+     */
+    public void fit(int sizeX, int sizeY, double width, double height) {
+        this.sizeX = Math.max(1, sizeX);
+        this.sizeY = Math.max(1, sizeY);
+        this.width = Math.max(1, width);
+        this.height = Math.max(1, height);
+        setZoom(zoom);
+    }
+
+    /**
+     * Gets the zoom factor.
+     *
+     * @return the zoom factor, 1 when the width of the arena fits the view
+     */
+    public double getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Sets the zoom factor, keeping the centre of the view in place.
+     *
+     * @param zoom the zoom factor; it is limited to between 1 and the factor that makes cells
+     *             {@link #MAX_CELL_SIZE} pixels large
+     */
+    public void setZoom(double zoom) {
+        zoomAt(zoom / this.zoom, width / 2, height / 2);
+    }
+
+    /**
+     * Multiplies the zoom factor, keeping the arena position under a point of the view in place,
+     * as when zooming with the mouse wheel.
+     *
+     * @param factor the factor to zoom by, more than 1 to zoom in
+     * @param pixelX the X coordinate of the point in the view, in pixels
+     * @param pixelY the Y coordinate of the point in the view, in pixels
+     */
+    public void zoomAt(double factor, double pixelX, double pixelY) {
+        double before = getCellSize();
+        double anchorX = x + pixelX / before;
+        double anchorY = y + pixelY / before;
+        double maxZoom = Math.max(1, MAX_CELL_SIZE / fitCellSize());
+        zoom = Math.max(1, Math.min(maxZoom, zoom * factor));
+        double after = getCellSize();
+        moveTo(anchorX - pixelX / after, anchorY - pixelY / after);
+    }
+
+    /**
+     * Moves the view by a distance in pixels, as when dragging the arena with the mouse.
+     *
+     * @param dx the distance to move the arena to the right, in pixels
+     * @param dy the distance to move the arena down, in pixels
+     */
+    public void pan(double dx, double dy) {
+        double cellSize = getCellSize();
+        moveTo(x - dx / cellSize, y - dy / cellSize);
+    }
+
+    /**
+     * Moves the top-left corner of the view to an arena position, limited to the arena.
+     *
+     * @param x the X coordinate, in cells
+     * @param y the Y coordinate, in cells
+     */
+    public void moveTo(double x, double y) {
+        double cellSize = getCellSize();
+        this.x = Math.max(0, Math.min(x, sizeX - width / cellSize));
+        this.y = Math.max(0, Math.min(y, sizeY - height / cellSize));
+    }
+
+    /**
+     * Shows the whole width of the arena again.
+     */
+    public void reset() {
+        zoom = 1;
+        x = 0;
+        y = 0;
+    }
+
+    /**
+     * Gets the size of a cell on screen.
+     *
+     * @return the cell size in pixels
+     */
+    public double getCellSize() {
+        return fitCellSize() * zoom;
+    }
+
+    /**
+     * Gets the X coordinate, in cells, of the arena position at the left edge of the view.
+     *
+     * @return the X coordinate
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Gets the Y coordinate, in cells, of the arena position at the top edge of the view.
+     *
+     * @return the Y coordinate
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Gets the first column of the arena that is at least partly visible.
+     *
+     * @return the X coordinate of the column
+     */
+    public int getFirstColumn() {
+        return (int) Math.floor(x);
+    }
+
+    /**
+     * Gets the first row of the arena that is at least partly visible.
+     *
+     * @return the Y coordinate of the row
+     */
+    public int getFirstRow() {
+        return (int) Math.floor(y);
+    }
+
+    /**
+     * Gets the number of columns of the arena that are at least partly visible.
+     *
+     * @return the number of columns
+     */
+    public int getVisibleColumns() {
+        return (int) Math.min(sizeX - getFirstColumn(), (long) Math.ceil(x + width / getCellSize()) - getFirstColumn());
+    }
+
+    /**
+     * Gets the number of rows of the arena that are at least partly visible.
+     *
+     * @return the number of rows
+     */
+    public int getVisibleRows() {
+        return (int) Math.min(sizeY - getFirstRow(), (long) Math.ceil(y + height / getCellSize()) - getFirstRow());
+    }
+
+    /**
+     * Converts an arena X coordinate into a view X coordinate.
+     *
+     * @param cellX the X coordinate in cells
+     * @return the X coordinate of the left edge of the cell in the view, in pixels
+     */
+    public double toViewX(double cellX) {
+        return (cellX - x) * getCellSize();
+    }
+
+    /**
+     * Converts an arena Y coordinate into a view Y coordinate.
+     *
+     * @param cellY the Y coordinate in cells
+     * @return the Y coordinate of the top edge of the cell in the view, in pixels
+     */
+    public double toViewY(double cellY) {
+        return (cellY - y) * getCellSize();
+    }
+
+    /**
+     * Gets the size of a cell when the width of the arena fits the view.
+     *
+     * @return the cell size in pixels
+     */
+    private double fitCellSize() {
+        return width / sizeX;
+    }
+}
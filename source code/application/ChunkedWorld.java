@@ -0,0 +1,355 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The ChunkedWorld class divides the plane of a {@link RobotArena} into square chunks of
+ * {@value #CHUNK_SIZE} by {@value #CHUNK_SIZE} cells and only keeps the chunks that contain
+ * something. Each chunk holds its own obstacle bitmap and its own robot index, both allocated on
+ * first use, and a chunk is dropped again as soon as it holds neither obstacles nor robots
+ * (nor distances of the {@link FlowField}, which keeps its tiles in the chunks as well).
+ * Memory therefore grows with the occupied area of the arena rather than with its total area, so
+ * arenas of a million by a million cells are practical as long as the robots stay clustered.
+ * <p>
+ * Chunks are found through an open-addressing hash table keyed by chunk coordinates, so a lookup
+ * never allocates. {@link ObstacleMap} and {@link SpatialGrid} store their data in the chunks of
+ * the same world.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see ObstacleMap
+ * @see SpatialGrid
+ */
+    public class ChunkedWorld {
+
+    /**
+     * The base-2 logarithm of the chunk size.
+     */
+    static final int CHUNK_SHIFT = 6;
+
+    /**
+     * The width and height of a chunk, in cells. A chunk row fits exactly into one {@code long}.
+     */
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    /**
+     * Masks a coordinate down to its position inside its chunk.
+     */
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * The number of cells in a chunk.
+     */
+    static final int CHUNK_CELLS = CHUNK_SIZE * CHUNK_SIZE;
+
+    /**
+     * The initial number of buckets in the chunk table.
+     */
+    private static final int INITIAL_TABLE_SIZE = 16;
+
+    /**
+     * The width of the arena grid.
+     */
+    private final int sizeX;
+
+    /**
+     * The height of the arena grid.
+     */
+    private final int sizeY;
+
+    /**
+     * The chunk table, using linear probing. The length is always a power of two.
+     */
+    private Chunk[] table = new Chunk[INITIAL_TABLE_SIZE];
+
+    /**
+     * The number of chunks currently allocated.
+     */
+    private int chunkCount;
+
+    /**
+     * Constructs a new, empty ChunkedWorld for an arena of the specified dimensions.
+     *
+     * @param sizeX the width of the arena grid
+     * @param sizeY the height of the arena grid
+     * @throws IllegalArgumentException if either dimension is not positive
+     */
+    public ChunkedWorld(int sizeX, int sizeY) {
+        if (sizeX <= 0 || sizeY <= 0) {
+            throw new IllegalArgumentException("World dimensions must be positive.");
+        }
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+    }
+
+    /**
+     * Gets the chunk containing the given cell, if it has been allocated.
+     *
+     * @param x the X coordinate of the cell
+     * @param y the Y coordinate of the cell
+     * @return the chunk, or null if nothing has been placed in it
+     */
+    Chunk chunkAt(int x, int y) {
+        int chunkX = x >> CHUNK_SHIFT;
+        int chunkY = y >> CHUNK_SHIFT;
+        int mask = table.length - 1;
+        for (int i = hash(chunkX, chunkY) & mask; ; i = (i + 1) & mask) {
+            Chunk chunk = table[i];
+            if (chunk == null || (chunk.chunkX == chunkX && chunk.chunkY == chunkY)) {
+                return chunk;
+            }
+        }
+    }
+
+    /**
+     * Gets the chunk containing the given cell, allocating it if necessary.
+     *
+     * @param x the X coordinate of the cell
+     * @param y the Y coordinate of the cell
+     * @return the chunk
+     */
+    Chunk chunkFor(int x, int y) {
+        Chunk chunk = chunkAt(x, y);
+        if (chunk == null) {
+            if ((chunkCount + 1) * 4 > table.length * 3) {
+                resize(table.length * 2);
+            }
+            chunk = new Chunk(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+            insert(chunk);
+            chunkCount++;
+        }
+        return chunk;
+    }
+
+    /**
+     * Drops a chunk if it no longer holds any obstacles or robots.
+     *
+     * @param chunk the chunk to check
+     */
+    void release(Chunk chunk) {
+        if (!chunk.isEmpty()) {
+            return;
+        }
+        int mask = table.length - 1;
+        int i = hash(chunk.chunkX, chunk.chunkY) & mask;
+        while (table[i] != chunk) {
+            if (table[i] == null) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        // 删除后向前移动后续元素，保持线性探测链完整
+        table[i] = null;
+        chunkCount--;
+        for (int j = (i + 1) & mask; table[j] != null; j = (j + 1) & mask) {
+            Chunk moved = table[j];
+            table[j] = null;
+            insert(moved);
+        }
+    }
+
+    /**
+     * Gets all allocated chunks, ordered by row of chunks and then by column.
+     *
+     * @return a new list of the chunks
+     */
+    List<Chunk> chunks() {
+        List<Chunk> list = new ArrayList<>(chunkCount);
+        for (Chunk chunk : table) {
+            if (chunk != null) {
+                list.add(chunk);
+            }
+        }
+        list.sort(Comparator.comparingInt((Chunk chunk) -> chunk.chunkY).thenComparingInt(chunk -> chunk.chunkX));
+        return list;
+    }
+
+    /**
+     * Removes the obstacle bitmaps of all chunks, dropping chunks that become empty.
+     */
+    void clearObstacles() {
+        for (Chunk chunk : chunks()) {
+            chunk.blocked = null;
+            chunk.obstacleCount = 0;
+            release(chunk);
+        }
+    }
+
+    /**
+     * Removes the robot indexes of all chunks, dropping chunks that become empty.
+     */
+    void clearRobots() {
+        for (Chunk chunk : chunks()) {
+            chunk.heads = null;
+            chunk.robotCount = 0;
+            release(chunk);
+        }
+    }
+
+    /**
+     * Gets the number of chunks currently allocated.
+     *
+     * @return the number of chunks
+     */
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * Gets the width of the arena grid.
+     *
+     * @return the width of the arena grid
+     */
+    public int getSizeX() {
+        return sizeX;
+    }
+
+    /**
+     * Gets the height of the arena grid.
+     *
+     * @return the height of the arena grid
+     */
+    public int getSizeY() {
+        return sizeY;
+    }
+
+    /**
+     * Checks whether the given cell lies inside the arena.
+     *
+     * @param x the X coordinate of the cell
+     * @param y the Y coordinate of the cell
+     * @return true if the cell is inside the arena, false otherwise
+     */
+    boolean isInside(int x, int y) {
+        return x >= 0 && x < sizeX && y >= 0 && y < sizeY;
+    }
+
+    /**
+     * Gets the index of a cell inside its chunk, in row-major order.
+     *
+     * @param x the X coordinate of the cell
+     * @param y the Y coordinate of the cell
+     * @return the index of the cell within its chunk
+     */
+    static int localIndex(int x, int y) {
+        return (y & CHUNK_MASK) << CHUNK_SHIFT | (x & CHUNK_MASK);
+    }
+
+    /**
+     * Places a chunk into the first free bucket of its probe sequence.
+     *
+     * @param chunk the chunk to place
+     */
+    private void insert(Chunk chunk) {
+        int mask = table.length - 1;
+        int i = hash(chunk.chunkX, chunk.chunkY) & mask;
+        while (table[i] != null) {
+            i = (i + 1) & mask;
+        }
+        table[i] = chunk;
+    }
+
+    /**
+     * Rehashes every chunk into a table of the given size.
+     *
+     * @param newSize the new number of buckets, a power of two
+     */
+    private void resize(int newSize) {
+        Chunk[] old = table;
+        table = new Chunk[newSize];
+        for (Chunk chunk : old) {
+            if (chunk != null) {
+                insert(chunk);
+            }
+        }
+    }
+
+    /**
+     * Hashes a pair of chunk coordinates.
+     *
+     * @param chunkX the chunk column
+     * @param chunkY the chunk row
+     * @return the hash
+     */
+    private static int hash(int chunkX, int chunkY) {
+        int h = chunkX * 0x9E3779B9 + chunkY;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * One square tile of the world, holding the obstacles and the robot index of its cells.
+     */
+    static final class Chunk {
+
+        /**
+         * The column of this chunk, i.e. the X coordinate of its cells divided by the chunk size.
+         */
+        final int chunkX;
+
+        /**
+         * The row of this chunk, i.e. the Y coordinate of its cells divided by the chunk size.
+         */
+        final int chunkY;
+
+        /**
+         * The obstacle bitmap, one {@code long} per row with bit {@code x} for column {@code x},
+         * or null if the chunk has no obstacles.
+         */
+        long[] blocked;
+
+        /**
+         * The number of blocked cells in this chunk.
+         */
+        int obstacleCount;
+
+        /**
+         * The first robot slot in each cell's bucket, or null if the chunk has no robots.
+         */
+        int[] heads;
+
+        /**
+         * The number of robots indexed in this chunk.
+         */
+        int robotCount;
+
+        /**
+         * The distance of each cell to the nearest prey, or null if the {@link FlowField} does not
+         * reach this chunk.
+         */
+        short[] flow;
+
+        /**
+         * Constructs an empty chunk.
+         *
+         * @param chunkX the column of the chunk
+         * @param chunkY the row of the chunk
+         */
+        Chunk(int chunkX, int chunkY) {
+            this.chunkX = chunkX;
+            this.chunkY = chunkY;
+        }
+
+        /**
+         * Checks whether the given cell belongs to this chunk.
+         *
+         * @param x the X coordinate of the cell
+         * @param y the Y coordinate of the cell
+         * @return true if the cell is in this chunk, false otherwise
+         */
+        boolean contains(int x, int y) {
+            return x >> CHUNK_SHIFT == chunkX && y >> CHUNK_SHIFT == chunkY;
+        }
+
+        /**
+         * Checks whether this chunk holds neither obstacles, robots nor flow field distances.
+         *
+         * @return true if the chunk can be dropped, false otherwise
+         */
+        boolean isEmpty() {
+            return obstacleCount == 0 && robotCount == 0 && flow == null;
+        }
+    }
+}
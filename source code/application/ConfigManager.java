@@ -1,11 +1,56 @@
 package application;
 
-import java.io.*;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * The ConfigManager class provides methods for saving and loading the state of a RobotArena to and from a file.
- * It uses Java's object serialization to serialize and deserialize the RobotArena object.
+ * Arenas are stored in a compact binary format designed for large arenas rather than with Java serialization:
+ * a fixed-size header followed by a body holding the robots column by column, including their colours, the
+ * obstacle bitmaps of the occupied chunks and the colours of obstacles that do not use the default colour.
+ * The body can optionally be compressed with Deflate.
+ * <p>
+ * Uncompressed files are loaded through a memory-mapped {@link FileChannel}, copying each column straight
+ * from the page cache into the arena's store, so millions of robots load in a fraction of a second.
+ * Every file records the version of the format it was written in, and files written in older versions
+ * remain readable.
+ * <p>
+ * Layout of version 2, all values little-endian:
+ * <pre>
+ * header (72 bytes)
+ *   int   magic "RARN"        short version          short flags (1 = torus, 2 = compressed)
+ *   int   sizeX               int   sizeY            long  seed
+ *   long  tick                long  spawned          int   sensorRange
+ *   int   flowRange           int   flowRebuildInterval
+ *   int   robots              int   obstacleChunks   int   customColors
+ *   long  body length before compression
+ * body
+ *   long[robots] random states
+ *   int[robots]  IDs, X, Y, initial X, initial Y, colours (six columns)
+ *   byte[robots] types, directions, initial directions (three columns)
+ *   per obstacle chunk: int chunkX, int chunkY, long[64] bitmap rows
+ *   per custom colour:  int x, int y, int colour
+ * </pre>
+ * Version 1 is the same without the robot colour column; its robots are loaded with the default colour
+ * of their type.
  *
  * @author [SHEN FANGJIE]
  * @version 1.0
@@ -13,31 +58,647 @@ import java.util.List;
     public class ConfigManager {
 
     /**
-     * Saves the state of a RobotArena to a specified file path.
-     * The RobotArena object is serialized and written to the file using an ObjectOutputStream.
+     * The first four bytes of every arena file, "RARN" when read in file order.
+     */
+    private static final int MAGIC = 0x4E524152;
+
+    /**
+     * The version of the format written by this class.
+     */
+    private static final short VERSION = 2;
+
+    /**
+     * The flag marking an arena that wraps around at its edges.
+     */
+    private static final short FLAG_TORUS = 1;
+
+    /**
+     * The flag marking a body compressed with Deflate.
+     */
+    private static final short FLAG_COMPRESSED = 2;
+
+    /**
+     * The size of the header in bytes.
+     */
+    private static final int HEADER_SIZE = 72;
+
+    /**
+     * The size of the buffer used to stream the body.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * The largest part of an uncompressed body mapped at once: 1 GB, well below the 2 GB a single
+     * mapping can hold.
+     */
+    private static final long MAP_WINDOW = 1L << 30;
+
+    /**
+     * The size of one robot in the body: its random state, six int columns and three byte columns.
+     */
+    private static final long ROBOT_RECORD_SIZE = 8 + 6 * 4 + 3;
+
+    /**
+     * The size of one robot in the body of a version 1 file, which has no colour column.
+     */
+    private static final long ROBOT_RECORD_SIZE_V1 = ROBOT_RECORD_SIZE - 4;
+
+    /**
+     * The size of one obstacle chunk in the body: its coordinates and its bitmap.
+     */
+    private static final long CHUNK_RECORD_SIZE = 8 + 8L * ChunkedWorld.CHUNK_SIZE;
+
+    /**
+     * Prevents instantiation of this utility class.
+     */
+    private ConfigManager() {
+    }
+
+    /**
+     * Saves the state of a RobotArena to a specified file path, without compression.
      *
      * @param arena    the RobotArena object to be saved
      * @param filePath the file path where the RobotArena should be saved
      * @throws IOException if an I/O error occurs while writing to the file
      */
     public static void saveConfig(RobotArena arena, String filePath) throws IOException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filePath))) {
-            oos.writeObject(arena);
+        saveConfig(arena, filePath, false);
+    }
+
+    /**
+     * Saves the state of a RobotArena to a specified file path: its size and edge behaviour, its seed and
+     * tick, its sensor and flow field settings, every robot including its colour and the state of its random
+     * stream, and every obstacle. Compressed files
+     * are smaller, especially when the arena holds large blocks of obstacles, but take longer to load.
+     *
+     * @param arena    the RobotArena object to be saved
+     * @param filePath the file path where the RobotArena should be saved
+     * @param compress true to compress the body of the file
+     * @throws IOException if an I/O error occurs while writing to the file
+     */
+    public static void saveConfig(RobotArena arena, String filePath, boolean compress) throws IOException {
+        RobotStore store = arena.getRobotStore();
+        int robots = store.count();
+        List<ChunkedWorld.Chunk> chunks = new ArrayList<>();
+        for (ChunkedWorld.Chunk chunk : arena.getWorld().chunks()) {
+            if (chunk.blocked != null) {
+                chunks.add(chunk);
+            }
+        }
+        Map<Long, Integer> colors = arena.getObstacleMap().customColors();
+        long bodyLength = ROBOT_RECORD_SIZE * robots + CHUNK_RECORD_SIZE * chunks.size() + 12L * colors.size();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putShort((short) ((arena.getBounds().isWrapping() ? FLAG_TORUS : 0) | (compress ? FLAG_COMPRESSED : 0)));
+        header.putInt(arena.getSizeX());
+        header.putInt(arena.getSizeY());
+        header.putLong(arena.getSeed());
+        header.putLong(arena.getTick());
+        header.putLong(store.getSpawned());
+        header.putInt(arena.getSensorRange());
+        header.putInt(arena.getFlowField().getRange());
+        header.putInt(arena.getFlowField().getRebuildInterval());
+        header.putInt(robots);
+        header.putInt(chunks.size());
+        header.putInt(colors.size());
+        header.putLong(bodyLength);
+        header.flip();
+
+        Path path = Paths.get(filePath);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            if (compress) {
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try (DeflaterOutputStream out = new DeflaterOutputStream(new UnclosableOutputStream(Channels.newOutputStream(channel)),
+                        deflater, BUFFER_SIZE)) {
+                    writeBody(new BodyWriter(Channels.newChannel(out)), store, chunks, colors);
+                } finally {
+                    deflater.end();
+                }
+            } else {
+                writeBody(new BodyWriter(channel), store, chunks, colors);
+            }
         }
     }
 
     /**
-     * Loads the state of a RobotArena from a specified file path.
-     * The file is read using an ObjectInputStream, and the RobotArena object is deserialized.
+     * Loads the state of a RobotArena from a specified file path. The robots continue from exactly where
+     * they were saved, but the flow field is rebuilt from scratch on the first tick, so AdvancedRobots may
+     * pursue their prey slightly differently than they would have in the saved arena.
      *
      * @param filePath the file path from which to load the RobotArena
-     * @return the deserialized RobotArena object
-     * @throws IOException if an I/O error occurs while reading from the file
-     * @throws ClassNotFoundException if the class of the serialized object cannot be found
+     * @return the loaded RobotArena object
+     * @throws IOException if an I/O error occurs while reading from the file, or the file is not an arena
+     *                     file or was written by a newer version of the program
      */
-    public static RobotArena loadConfig(String filePath) throws IOException, ClassNotFoundException {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filePath))) {
-            return (RobotArena) ois.readObject();
+    public static RobotArena loadConfig(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IOException("Not a robot arena file: " + filePath);
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a robot arena file: " + filePath);
+            }
+            short version = header.getShort();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported arena file version " + version + ": " + filePath);
+            }
+            short flags = header.getShort();
+            int sizeX = header.getInt();
+            int sizeY = header.getInt();
+            long seed = header.getLong();
+            long tick = header.getLong();
+            long spawned = header.getLong();
+            int sensorRange = header.getInt();
+            int flowRange = header.getInt();
+            int flowRebuildInterval = header.getInt();
+            int robots = header.getInt();
+            int chunkCount = header.getInt();
+            int colorCount = header.getInt();
+            long bodyLength = header.getLong();
+            if (sizeX <= 0 || sizeY <= 0 || robots < 0 || chunkCount < 0 || colorCount < 0 || sensorRange < 1
+                    || flowRange < 0 || flowRange > FlowField.MAX_RANGE || flowRebuildInterval < 1
+                    || bodyLength != (version == 1 ? ROBOT_RECORD_SIZE_V1 : ROBOT_RECORD_SIZE) * robots
+                            + CHUNK_RECORD_SIZE * chunkCount + 12L * colorCount) {
+                throw new IOException("Corrupt arena file header: " + filePath);
+            }
+
+            RobotArena arena = new RobotArena(new ArenaBounds(sizeX, sizeY, (flags & FLAG_TORUS) != 0), seed);
+            arena.setSensorRange(sensorRange);
+            arena.getFlowField().setRange(flowRange);
+            arena.getFlowField().setRebuildInterval(flowRebuildInterval);
+            if ((flags & FLAG_COMPRESSED) != 0) {
+                Inflater inflater = new Inflater();
+                try {
+                    ReadableByteChannel in = Channels.newChannel(new InflaterInputStream(
+                            new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE), inflater, BUFFER_SIZE));
+                    readBody(new BodyReader(in), version, arena, robots, spawned, chunkCount, colorCount);
+                } finally {
+                    inflater.end();
+                }
+            } else {
+                if (channel.size() < HEADER_SIZE + bodyLength) {
+                    throw new IOException("Truncated arena file: " + filePath);
+                }
+                readBody(new BodyReader(channel, HEADER_SIZE), version, arena, robots, spawned, chunkCount, colorCount);
+            }
+            arena.restore(tick);
+            return arena;
+        }
+    }
+
+    /**
+     * Writes the body of an arena file: the robot columns, the obstacle chunks and the custom colours.
+     * Tombstoned slots are skipped, so the file always holds the robots densely.
+     *
+     * @param out    the writer to write to
+     * @param store  the robots to write
+     * @param chunks the chunks holding obstacles
+     * @param colors the custom obstacle colours
+     * @throws IOException if an I/O error occurs
+     */
+    private static void writeBody(BodyWriter out, RobotStore store, List<ChunkedWorld.Chunk> chunks,
+            Map<Long, Integer> colors) throws IOException {
+        int size = store.size();
+        for (int slot = 0; slot < size; slot++) {
+            if (store.isAlive(slot)) {
+                out.putLong(store.getRandomState(slot));
+            }
+        }
+        for (int column = 0; column < 6; column++) {
+            for (int slot = 0; slot < size; slot++) {
+                if (store.isAlive(slot)) {
+                    out.putInt(intColumn(store, slot, column));
+                }
+            }
+        }
+        for (int column = 0; column < 3; column++) {
+            for (int slot = 0; slot < size; slot++) {
+                if (store.isAlive(slot)) {
+                    out.putByte(byteColumn(store, slot, column));
+                }
+            }
+        }
+        for (ChunkedWorld.Chunk chunk : chunks) {
+            out.putInt(chunk.chunkX);
+            out.putInt(chunk.chunkY);
+            for (long row : chunk.blocked) {
+                out.putLong(row);
+            }
+        }
+        for (Map.Entry<Long, Integer> color : colors.entrySet()) {
+            long key = color.getKey();
+            out.putInt((int) key);
+            out.putInt((int) (key >> 32));
+            out.putInt(color.getValue());
+        }
+        out.flush();
+    }
+
+    /**
+     * Gets one value of an int column of the format for a robot.
+     *
+     * @param store  the store holding the robot
+     * @param slot   the slot of the robot
+     * @param column 0 for the ID, 1 for X, 2 for Y, 3 for the initial X, 4 for the initial Y, 5 for the colour
+     * @return the value
+     */
+    private static int intColumn(RobotStore store, int slot, int column) {
+        switch (column) {
+            case 0:
+                return store.getId(slot);
+            case 1:
+                return store.getX(slot);
+            case 2:
+                return store.getY(slot);
+            case 3:
+                return store.getInitialX(slot);
+            case 4:
+                return store.getInitialY(slot);
+            default:
+                return store.getColor(slot);
+        }
+    }
+
+    /**
+     * Gets one value of a byte column of the format for a robot.
+     *
+     * @param store  the store holding the robot
+     * @param slot   the slot of the robot
+     * @param column 0 for the type, 1 for the direction, 2 for the initial direction
+     * @return the ordinal of the value
+     */
+    private static byte byteColumn(RobotStore store, int slot, int column) {
+        switch (column) {
+            case 0:
+                return (byte) store.getType(slot).ordinal();
+            case 1:
+                return (byte) store.getDirection(slot).ordinal();
+            default:
+                return (byte) store.getInitialDirection(slot).ordinal();
+        }
+    }
+
+    /**
+     * Reads the body of an arena file into a new arena.
+     *
+     * @param in         the reader to read from
+     * @param version    the version of the format the file was written in
+     * @param arena      the arena to fill
+     * @param robots     the number of robots in the file
+     * @param spawned    the number of robots ever added to the saved store
+     * @param chunkCount the number of obstacle chunks in the file
+     * @param colorCount the number of custom colours in the file
+     * @throws IOException if an I/O error occurs or the body is corrupt
+     */
+    private static void readBody(BodyReader in, short version, RobotArena arena, int robots, long spawned,
+            int chunkCount, int colorCount) throws IOException {
+        int capacity = Math.max(1, robots);
+        long[] randomStates = new long[capacity];
+        int[] ids = new int[capacity];
+        int[] xs = new int[capacity];
+        int[] ys = new int[capacity];
+        int[] initialXs = new int[capacity];
+        int[] initialYs = new int[capacity];
+        int[] robotColors = new int[capacity];
+        byte[] types = new byte[capacity];
+        byte[] directions = new byte[capacity];
+        byte[] initialDirections = new byte[capacity];
+        in.getLongs(randomStates, robots);
+        in.getInts(ids, robots);
+        in.getInts(xs, robots);
+        in.getInts(ys, robots);
+        in.getInts(initialXs, robots);
+        in.getInts(initialYs, robots);
+        if (version >= 2) {
+            in.getInts(robotColors, robots);
+        }
+        in.getBytes(types, robots);
+        in.getBytes(directions, robots);
+        in.getBytes(initialDirections, robots);
+
+        ArenaBounds bounds = arena.getBounds();
+        int typeCount = RobotArena.RobotType.values().length;
+        int directionCount = Direction.values().length;
+        int maxId = -1;
+        for (int i = 0; i < robots; i++) {
+            if (!bounds.contains(xs[i], ys[i]) || !bounds.contains(initialXs[i], initialYs[i])
+                    || types[i] < 0 || types[i] >= typeCount
+                    || directions[i] < 0 || directions[i] >= directionCount
+                    || initialDirections[i] < 0 || initialDirections[i] >= directionCount) {
+                throw new IOException("Corrupt robot record " + i + " in arena file.");
+            }
+            maxId = Math.max(maxId, ids[i]);
+        }
+        RobotStore store = arena.getRobotStore();
+        store.restore(robots, spawned, ids, types, xs, ys, directions, initialXs, initialYs, initialDirections,
+                randomStates);
+        Robot.reserveId(maxId);
+        if (version >= 2) {
+            for (int i = 0; i < robots; i++) {
+                // 只为颜色与类型默认颜色不同的机器人创建视图
+                if (robotColors[i] != store.getColor(i)) {
+                    store.view(i).setColor(robotColors[i]);
+                }
+            }
+        }
+
+        ObstacleMap obstacles = arena.getObstacleMap();
+        int chunksX = (arena.getSizeX() - 1 >> ChunkedWorld.CHUNK_SHIFT) + 1;
+        int chunksY = (arena.getSizeY() - 1 >> ChunkedWorld.CHUNK_SHIFT) + 1;
+        int[] coordinates = new int[2];
+        for (int i = 0; i < chunkCount; i++) {
+            in.getInts(coordinates, 2);
+            int chunkX = coordinates[0];
+            int chunkY = coordinates[1];
+            if (chunkX < 0 || chunkX >= chunksX || chunkY < 0 || chunkY >= chunksY) {
+                throw new IOException("Corrupt obstacle chunk " + i + " in arena file.");
+            }
+            long[] rows = new long[ChunkedWorld.CHUNK_SIZE];
+            in.getLongs(rows, rows.length);
+            obstacles.restoreChunk(chunkX, chunkY, rows);
+        }
+        int[] color = new int[3];
+        for (int i = 0; i < colorCount; i++) {
+            in.getInts(color, 3);
+            if (obstacles.isBlocked(color[0], color[1])) {
+                obstacles.add(new Obstacle(color[0], color[1], color[2]));
+            }
+        }
+    }
+
+    /**
+     * Writes the body of an arena file through a buffer, in little-endian order.
+     */
+    private static final class BodyWriter {
+
+        /**
+         * The channel the body is written to.
+         */
+        private final WritableByteChannel channel;
+
+        /**
+         * The buffer collecting values until it is full.
+         */
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        /**
+         * Constructs a writer for the given channel.
+         *
+         * @param channel the channel to write to
+         */
+        BodyWriter(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Writes a long.
+         *
+         * @param value the value
+         * @throws IOException if an I/O error occurs
+         */
+        void putLong(long value) throws IOException {
+            ensureRoom(8);
+            buffer.putLong(value);
+        }
+
+        /**
+         * Writes an int.
+         *
+         * @param value the value
+         * @throws IOException if an I/O error occurs
+         */
+        void putInt(int value) throws IOException {
+            ensureRoom(4);
+            buffer.putInt(value);
+        }
+
+        /**
+         * Writes a byte.
+         *
+         * @param value the value
+         * @throws IOException if an I/O error occurs
+         */
+        void putByte(byte value) throws IOException {
+            ensureRoom(1);
+            buffer.put(value);
+        }
+
+        /**
+         * Writes everything still in the buffer to the channel.
+         *
+         * @throws IOException if an I/O error occurs
+         */
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Flushes the buffer if it cannot take the given number of bytes.
+         *
+         * @param bytes the number of bytes about to be written
+         * @throws IOException if an I/O error occurs
+         */
+        private void ensureRoom(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Reads the body of an arena file in little-endian order, either by memory-mapping an
+     * uncompressed file or by streaming from a decompressing channel. An uncompressed body is
+     * mapped once, or in consecutive windows of {@link #MAP_WINDOW} bytes if it is larger, and every
+     * section is read in order from that mapping; mapping each record on its own would leave one
+     * mapping per obstacle chunk alive until the next garbage collection.
+     */
+    private static final class BodyReader {
+
+        /**
+         * The file to map, or null when streaming.
+         */
+        private final FileChannel file;
+
+        /**
+         * The position in the file of the start of the current mapping, when mapping.
+         */
+        private long position;
+
+        /**
+         * The channel to stream from, or null when mapping.
+         */
+        private final ReadableByteChannel stream;
+
+        /**
+         * The buffer holding the bytes not read yet: the current mapping of the file, or the
+         * streamed bytes.
+         */
+        private ByteBuffer buffer;
+
+        /**
+         * Constructs a reader that maps the regions of an uncompressed file.
+         *
+         * @param file     the file
+         * @param position the position of the body in the file
+         */
+        BodyReader(FileChannel file, long position) {
+            this.file = file;
+            this.position = position;
+            this.stream = null;
+            this.buffer = ByteBuffer.allocate(0);
+        }
+
+        /**
+         * Constructs a reader that streams from a channel.
+         *
+         * @param stream the channel
+         */
+        BodyReader(ReadableByteChannel stream) {
+            this.file = null;
+            this.stream = stream;
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            this.buffer.limit(0);
+        }
+
+        /**
+         * Reads longs into an array.
+         *
+         * @param target the array
+         * @param count  the number of values to read
+         * @throws IOException if an I/O error occurs or the body ends early
+         */
+        void getLongs(long[] target, int count) throws IOException {
+            for (int done = 0; done < count; ) {
+                ByteBuffer region = region(8L * (count - done), 8);
+                int n = region.remaining() / 8;
+                region.asLongBuffer().get(target, done, n);
+                region.position(region.position() + 8 * n);
+                done += n;
+            }
+        }
+
+        /**
+         * Reads ints into an array.
+         *
+         * @param target the array
+         * @param count  the number of values to read
+         * @throws IOException if an I/O error occurs or the body ends early
+         */
+        void getInts(int[] target, int count) throws IOException {
+            for (int done = 0; done < count; ) {
+                ByteBuffer region = region(4L * (count - done), 4);
+                int n = region.remaining() / 4;
+                region.asIntBuffer().get(target, done, n);
+                region.position(region.position() + 4 * n);
+                done += n;
+            }
+        }
+
+        /**
+         * Reads bytes into an array.
+         *
+         * @param target the array
+         * @param count  the number of values to read
+         * @throws IOException if an I/O error occurs or the body ends early
+         */
+        void getBytes(byte[] target, int count) throws IOException {
+            for (int done = 0; done < count; ) {
+                ByteBuffer region = region(count - done, 1);
+                int n = region.remaining();
+                region.get(target, done, n);
+                done += n;
+            }
+        }
+
+        /**
+         * Gets a buffer holding the next bytes of the body: a view of the current mapping or of the
+         * stream buffer, which is first remapped or refilled if it does not hold at least one whole
+         * value. The buffer may hold
+         * fewer bytes than wanted but never part of a value, and never more than wanted.
+         *
+         * @param wanted    the number of bytes the caller still needs
+         * @param valueSize the size of one value in bytes
+         * @return a little-endian buffer positioned at the next byte
+         * @throws IOException if an I/O error occurs or the body ends early
+         */
+        private ByteBuffer region(long wanted, int valueSize) throws IOException {
+            if (file != null && buffer.remaining() < valueSize) {
+                // 正文只映射一次；超过 1 GB 时从未读的位置起映射下一个窗口
+                position += buffer.position();
+                long length = Math.min(file.size() - position, MAP_WINDOW);
+                if (length < valueSize) {
+                    throw new EOFException("Truncated arena file.");
+                }
+                buffer = file.map(FileChannel.MapMode.READ_ONLY, position, length).order(ByteOrder.LITTLE_ENDIAN);
+            } else if (buffer.remaining() < valueSize) {
+                buffer.compact();
+                while (buffer.position() < valueSize) {
+                    if (stream.read(buffer) < 0) {
+                        throw new EOFException("Truncated arena file.");
+                    }
+                }
+                buffer.flip();
+            }
+            ByteBuffer slice = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            int usable = (int) Math.min(wanted, buffer.remaining() / valueSize * valueSize);
+            slice.limit(slice.position() + usable);
+            buffer.position(buffer.position() + usable);
+            return slice;
+        }
+    }
+
+    /**
+     * Passes writes through to another stream but leaves it open when closed, so that finishing the
+     * compressed body does not close the file channel before the header can be flushed.
+     */
+    private static final class UnclosableOutputStream extends OutputStream {
+
+        /**
+         * The stream writes are passed to.
+         */
+        private final OutputStream out;
+
+        /**
+         * Constructs a stream that passes writes to the given stream.
+         *
+         * @param out the stream to write to
+         */
+        UnclosableOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
         }
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,6 @@
 package application;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * The Direction enum represents the possible directions a robot can face and move.
@@ -72,12 +72,19 @@ import java.util.Random;
         return deltaY;
     }
 
+    /**
+     * The directions, cached to avoid copying the array on every call to {@link #random()}.
+     */
+    private static final Direction[] VALUES = values();
+
     /**
      * Returns a random direction from the available directions.
+     * The direction is drawn from the calling thread's own generator, so it is not reproducible;
+     * robot movement draws from the robot's seeded stream instead (see {@link RobotStore#nextDirection(int)}).
      *
      * @return a randomly selected Direction enum constant
      */
     public static Direction random() {
-        return values()[new Random().nextInt(values().length)];
+        return VALUES[ThreadLocalRandom.current().nextInt(VALUES.length)];
     }
 }
\ No newline at end of file
@@ -0,0 +1,431 @@
+package application;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The EventBus class carries the events of a {@link RobotArena}, such as kills and blocked robots,
+ * from the simulation to any number of consumers, for example a logger, a statistics collector or a
+ * user interface. Events are kept in a ring buffer of primitive arrays that is allocated once, so
+ * publishing an event takes no lock and allocates nothing, and robots moving on different threads
+ * can publish at the same time.
+ * <p>
+ * Every consumer {@link #subscribe() subscribes} and then drains its {@link Subscription} at its
+ * own pace, usually on a thread of its own (see {@link EventConsumer}). What happens when the
+ * slowest consumer falls a full buffer behind is chosen with a {@link Backpressure} policy: the
+ * simulation can wait for it, drop the new events, or overwrite the oldest ones. Without
+ * subscribers the buffer is never full and events are simply discarded as they are overwritten.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see RobotArena#getEventBus()
+ */
+    public class EventBus {
+
+    /**
+     * The number of events a bus holds unless another capacity is given.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * The kinds of event published by the simulation.
+     */
+    public enum EventType {
+        /**
+         * An AdvancedRobot destroyed a BasicRobot. The robot is the hunter, the other robot the victim.
+         */
+        KILL,
+        /**
+         * A SensorRobot found every direction blocked and stayed where it was.
+         */
+        BLOCKED,
+        /**
+         * A robot was added to the arena.
+         */
+        SPAWN,
+        /**
+         * A robot ran into an obstacle and had to try another direction.
+         */
+        COLLISION
+    }
+
+    /**
+     * What a publisher does when the slowest subscriber is a full buffer behind.
+     */
+    public enum Backpressure {
+        /**
+         * Wait until the slowest subscriber has drained some events. Nothing is lost, but a
+         * subscriber that stops draining stalls the simulation.
+         */
+        BLOCK,
+        /**
+         * Discard the new event and count it as dropped. The simulation never waits.
+         */
+        DROP,
+        /**
+         * Overwrite the oldest event. The simulation never waits and subscribers that fall behind
+         * skip ahead, counting the events they lost.
+         */
+        OVERWRITE
+    }
+
+    /**
+     * The event types by ordinal, used to decode the type column.
+     */
+    private static final EventType[] TYPES = EventType.values();
+
+    /**
+     * An empty subscriber list, shared by all buses without subscribers.
+     */
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+    /**
+     * The number of events the buffer holds, a power of two.
+     */
+    private final int capacity;
+
+    /**
+     * Masks a sequence number down to its index in the buffer.
+     */
+    private final int mask;
+
+    /**
+     * The policy applied when the buffer is full.
+     */
+    private final Backpressure backpressure;
+
+    /**
+     * The type of each buffered event, by ordinal.
+     */
+    private final byte[] types;
+
+    /**
+     * The tick of each buffered event.
+     */
+    private final long[] ticks;
+
+    /**
+     * The ID of the robot each buffered event is about.
+     */
+    private final int[] robotIds;
+
+    /**
+     * The ID of the other robot involved in each buffered event, or -1.
+     */
+    private final int[] otherIds;
+
+    /**
+     * The X coordinate of each buffered event.
+     */
+    private final int[] xs;
+
+    /**
+     * The Y coordinate of each buffered event.
+     */
+    private final int[] ys;
+
+    /**
+     * The sequence number of the event each buffer entry holds, or -1 while the entry is being
+     * written. Subscribers only read an entry whose stamp matches the sequence they expect.
+     */
+    private final AtomicLongArray stamps;
+
+    /**
+     * The sequence number the next published event will get.
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * The lowest cursor of any subscriber as last computed, so that publishers only scan the
+     * subscribers when the buffer looks full.
+     */
+    private volatile long gate;
+
+    /**
+     * The current subscribers, replaced as a whole whenever one subscribes or unsubscribes.
+     */
+    private volatile Subscription[] subscriptions = NO_SUBSCRIPTIONS;
+
+    /**
+     * The number of events discarded under {@link Backpressure#DROP}.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Constructs a new EventBus holding {@link #DEFAULT_CAPACITY} events that drops new events
+     * when a subscriber falls behind.
+     */
+    public EventBus() {
+        this(DEFAULT_CAPACITY, Backpressure.DROP);
+    }
+
+    /**
+     * Constructs a new EventBus with the given capacity and backpressure policy.
+     *
+     * @param capacity     the number of events the buffer holds; rounded up to a power of two
+     * @param backpressure the policy applied when the slowest subscriber is a full buffer behind
+     * @throws IllegalArgumentException if the capacity is not positive or larger than 2<sup>30</sup>
+     */
+    public EventBus(int capacity, Backpressure backpressure) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Event bus capacity must be between 1 and 2^30.");
+        }
+        int rounded = Integer.highestOneBit(capacity);
+        this.capacity = rounded < capacity ? rounded << 1 : rounded;
+        this.mask = this.capacity - 1;
+        this.backpressure = backpressure;
+        this.types = new byte[this.capacity];
+        this.ticks = new long[this.capacity];
+        this.robotIds = new int[this.capacity];
+        this.otherIds = new int[this.capacity];
+        this.xs = new int[this.capacity];
+        this.ys = new int[this.capacity];
+        this.stamps = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            stamps.set(i, -1);
+        }
+    }
+
+    /**
+     * Publishes an event. Safe to call from any number of threads at once; never locks and never
+     * allocates. Under {@link Backpressure#BLOCK} it spins until there is room.
+     *
+     * @param type    the type of the event
+     * @param tick    the tick during which the event happened
+     * @param robotId the ID of the robot the event is about
+     * @param otherId the ID of the other robot involved, or -1 if there is none
+     * @param x       the X coordinate where the event happened
+     * @param y       the Y coordinate where the event happened
+     * @return true if the event was published, false if it was dropped
+     */
+    public boolean publish(EventType type, long tick, int robotId, int otherId, int x, int y) {
+        long sequence;
+        while (true) {
+            sequence = claimed.get();
+            if (sequence - gate >= capacity) {
+                long lowest = lowestCursor(sequence);
+                gate = lowest;
+                if (sequence - lowest >= capacity) {
+                    if (backpressure == Backpressure.DROP) {
+                        dropped.incrementAndGet();
+                        return false;
+                    }
+                    if (backpressure == Backpressure.BLOCK) {
+                        Thread.onSpinWait();
+                        continue;
+                    }
+                }
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+
+        int index = (int) sequence & mask;
+        // 先作废旧的序号，读者据此发现条目正在被改写
+        stamps.set(index, -1);
+        VarHandle.releaseFence();
+        types[index] = (byte) type.ordinal();
+        ticks[index] = tick;
+        robotIds[index] = robotId;
+        otherIds[index] = otherId;
+        xs[index] = x;
+        ys[index] = y;
+        stamps.lazySet(index, sequence);
+        return true;
+    }
+
+    /**
+     * Registers a new subscriber. It receives every event published from now on.
+     *
+     * @return the new subscription
+     */
+    public synchronized Subscription subscribe() {
+        Subscription subscription = new Subscription(claimed.get());
+        Subscription[] current = subscriptions;
+        Subscription[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = subscription;
+        subscriptions = updated;
+        return subscription;
+    }
+
+    /**
+     * Gets the number of events the buffer holds.
+     *
+     * @return the capacity of the bus
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the policy applied when the slowest subscriber is a full buffer behind.
+     *
+     * @return the backpressure policy
+     */
+    public Backpressure getBackpressure() {
+        return backpressure;
+    }
+
+    /**
+     * Gets the total number of events published so far, including those nobody has read.
+     *
+     * @return the number of published events
+     */
+    public long getPublished() {
+        return claimed.get();
+    }
+
+    /**
+     * Gets the number of events discarded because a subscriber was too far behind.
+     *
+     * @return the number of dropped events
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Removes a subscriber, so that it no longer holds publishers back.
+     *
+     * @param subscription the subscription to remove
+     */
+    private synchronized void unsubscribe(Subscription subscription) {
+        Subscription[] current = subscriptions;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == subscription) {
+                Subscription[] updated = new Subscription[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                subscriptions = updated.length == 0 ? NO_SUBSCRIPTIONS : updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finds the lowest cursor among the subscribers.
+     *
+     * @param sequence the sequence being claimed, returned if there are no subscribers
+     * @return the sequence of the oldest event some subscriber has not read yet
+     */
+    private long lowestCursor(long sequence) {
+        long lowest = sequence;
+        for (Subscription subscription : subscriptions) {
+            lowest = Math.min(lowest, subscription.cursor.get());
+        }
+        return lowest;
+    }
+
+    /**
+     * One consumer's position in the stream of events. A subscription must only be drained by one
+     * thread at a time, and should be {@link #close() closed} when no longer needed, since an open
+     * subscription that is never drained fills the buffer.
+     */
+    public final class Subscription implements AutoCloseable {
+
+        /**
+         * The sequence number of the next event to read.
+         */
+        private final AtomicLong cursor;
+
+        /**
+         * The number of events overwritten before this subscriber could read them.
+         */
+        private volatile long lost;
+
+        /**
+         * Constructs a subscription that starts reading at the given sequence number.
+         *
+         * @param start the sequence number of the first event to read
+         */
+        private Subscription(long start) {
+            this.cursor = new AtomicLong(start);
+        }
+
+        /**
+         * Hands every event published since the last drain to the handler, in publishing order.
+         *
+         * @param handler the handler to call for each event
+         * @return the number of events handled
+         */
+        public int drain(EventHandler handler) {
+            return drain(handler, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Hands at most the given number of events to the handler, in publishing order. Draining
+         * stops early at an event that is still being written.
+         *
+         * @param handler the handler to call for each event
+         * @param limit   the maximum number of events to handle
+         * @return the number of events handled
+         */
+        public int drain(EventHandler handler, int limit) {
+            long sequence = cursor.get();
+            int handled = 0;
+            while (handled < limit) {
+                int index = (int) sequence & mask;
+                long stamp = stamps.get(index);
+                if (stamp != sequence) {
+                    long head = claimed.get();
+                    if (backpressure == Backpressure.OVERWRITE && (stamp > sequence || head - sequence > capacity)) {
+                        // 事件已被覆盖，跳到缓冲区中最旧的事件
+                        long oldest = Math.max(sequence + 1, head - capacity);
+                        lost += oldest - sequence;
+                        sequence = oldest;
+                        continue;
+                    }
+                    break;
+                }
+                EventType type = TYPES[types[index]];
+                long tick = ticks[index];
+                int robotId = robotIds[index];
+                int otherId = otherIds[index];
+                int x = xs[index];
+                int y = ys[index];
+                VarHandle.acquireFence();
+                if (stamps.get(index) != sequence) {
+                    continue;
+                }
+                handler.onEvent(type, tick, robotId, otherId, x, y);
+                sequence++;
+                handled++;
+                if ((handled & 1023) == 0) {
+                    cursor.lazySet(sequence);
+                }
+            }
+            cursor.lazySet(sequence);
+            return handled;
+        }
+
+        /**
+         * Gets the number of published events this subscriber has not read yet.
+         *
+         * @return the backlog of the subscriber
+         */
+        public long getBacklog() {
+            return Math.max(0, claimed.get() - cursor.get());
+        }
+
+        /**
+         * Gets the number of events that were overwritten before this subscriber could read them.
+         * Only {@link Backpressure#OVERWRITE} loses events this way.
+         *
+         * @return the number of lost events
+         */
+        public long getLost() {
+            return lost;
+        }
+
+        /**
+         * Unsubscribes, so that this subscriber no longer holds publishers back.
+         */
+        @Override
+        public void close() {
+            unsubscribe(this);
+        }
+    }
+}
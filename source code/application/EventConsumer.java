@@ -0,0 +1,121 @@
+package application;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The EventConsumer class drains an {@link EventBus} on a background thread of its own and hands
+ * each event to an {@link EventHandler}, so that slow work such as printing never runs inside the
+ * simulation. When there is nothing to read the thread sleeps for a short interval.
+ * <p>
+ * The thread is a daemon thread, so a consumer that is never closed does not keep the application
+ * alive; closing it drains what is left and unsubscribes from the bus.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see EventBus#subscribe()
+ */
+    public class EventConsumer implements AutoCloseable {
+
+    /**
+     * The largest number of events handled before the consumer reports its progress to the bus.
+     */
+    private static final int BATCH_SIZE = 4096;
+
+    /**
+     * How long the thread sleeps when there are no events, in nanoseconds.
+     */
+    private static final long IDLE_NANOS = 1_000_000L;
+
+    /**
+     * The subscription this consumer drains.
+     */
+    private final EventBus.Subscription subscription;
+
+    /**
+     * The handler receiving the events.
+     */
+    private final EventHandler handler;
+
+    /**
+     * The thread draining the subscription.
+     */
+    private final Thread thread;
+
+    /**
+     * Whether the consumer should keep draining.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Subscribes to a bus and starts draining it on a new daemon thread.
+     *
+     * @param bus     the bus to drain
+     * @param name    the name of the thread
+     * @param handler the handler receiving the events
+     */
+    public EventConsumer(EventBus bus, String name, EventHandler handler) {
+        this.subscription = bus.subscribe();
+        this.handler = handler;
+        this.thread = new Thread(this::drainLoop, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Starts a consumer that prints kills and blocked SensorRobots to standard output,
+     * in the same words the simulation used to print them itself.
+     *
+     * @param bus the bus to drain
+     * @return the running consumer
+     */
+    public static EventConsumer console(EventBus bus) {
+        return new EventConsumer(bus, "event-logger", (type, tick, robotId, otherId, x, y) -> {
+            switch (type) {
+                case KILL:
+                    System.out.println("AdvancedRobot ID: " + robotId + " has destroyed BasicRobot ID: " + otherId);
+                    break;
+                case BLOCKED:
+                    System.out.println("SensorRobot at (" + x + ", " + y + ") is blocked and cannot move.");
+                    break;
+                default:
+                    break;
+            }
+        });
+    }
+
+    /**
+     * Gets the subscription this consumer drains, for example to check its backlog.
+     *
+     * @return the subscription
+     */
+    public EventBus.Subscription getSubscription() {
+        return subscription;
+    }
+
+    /**
+     * Stops the consumer after it has handled every event already published, and unsubscribes it.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        subscription.close();
+    }
+
+    /**
+     * Drains the subscription until the consumer is closed, sleeping while there is nothing to read.
+     */
+    private void drainLoop() {
+        while (running) {
+            if (subscription.drain(handler, BATCH_SIZE) == 0) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+        subscription.drain(handler);
+    }
+}
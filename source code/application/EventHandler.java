@@ -0,0 +1,25 @@
+package application;
+
+/**
+ * The EventHandler interface receives the events drained from an {@link EventBus}.
+ * Events are passed as primitive values rather than event objects, so draining never allocates.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see EventBus.Subscription#drain(EventHandler)
+ */
+    @FunctionalInterface
+    public interface EventHandler {
+
+    /**
+     * Called once for every event, in the order the events were published.
+     *
+     * @param type    the type of the event
+     * @param tick    the tick during which the event happened
+     * @param robotId the ID of the robot the event is about
+     * @param otherId the ID of the other robot involved, or -1 if there is none
+     * @param x       the X coordinate where the event happened
+     * @param y       the Y coordinate where the event happened
+     */
+    void onEvent(EventBus.EventType type, long tick, int robotId, int otherId, int x, int y);
+}
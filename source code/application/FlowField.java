@@ -0,0 +1,634 @@
+package application;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The FlowField class guides the AdvancedRobots of a {@link RobotArena} towards their prey.
+ * It holds, for every cell within {@link #getRange() range} of a BasicRobot, the length of the
+ * shortest obstacle-free path to the nearest one. BasicRobots keep going straight until something
+ * stops them, so each one is placed on the cell it will reach by the end of the tick, which lets
+ * hunters head it off instead of trailing behind it. The field is built by one breadth-first search
+ * that starts from all BasicRobots at once, so it costs the same however many hunters read it,
+ * and a hunter finds its next step in constant time by stepping to the neighbouring cell with the
+ * smallest distance.
+ * <p>
+ * Only prey that some AdvancedRobot could reach within range is searched from. A path is never
+ * shorter than the number of rows and columns between its ends, so before the search the hunters
+ * are sorted into the chunks they stand in, and a BasicRobot is skipped unless a hunter in one of
+ * the chunks around it is close enough. A lone BasicRobot in a sparse arena therefore costs one
+ * lookup per tick instead of a search over every cell within range of it.
+ * <p>
+ * The field is refreshed at the start of every tick. Prey can only appear on cells close to where
+ * prey already was, so most ticks just seed the current prey cells and let the search lower the
+ * distances that became shorter; this touches only the cells around prey that moved. Distances
+ * that became longer, because prey moved away or was destroyed, are corrected by a full rebuild
+ * every {@link #getRebuildInterval() rebuild interval} ticks, or on the next tick after the
+ * obstacles have changed.
+ * <p>
+ * Distances are stored in tiles attached to the chunks of the arena's {@link ChunkedWorld}, so
+ * memory follows the area around the hunted prey rather than the size of the arena. A full rebuild
+ * resets the tiles it already has in place and only detaches the ones it no longer reaches, so a
+ * steady field is rebuilt without allocating.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see AdvancedRobot
+ */
+    public class FlowField {
+
+    /**
+     * The distance of a cell that no prey can be reached from within range.
+     */
+    public static final int UNREACHED = Short.MAX_VALUE;
+
+    /**
+     * The largest range the field can be given, so that every distance fits into a {@code short}.
+     */
+    public static final int MAX_RANGE = Short.MAX_VALUE - 1;
+
+    /**
+     * Marks the end of a list of hunters, or an empty bucket of the hunter table.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * The directions in the order neighbours are compared, which breaks ties between equally
+     * short paths the same way every time.
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * The arena whose prey the field leads to.
+     */
+    private final RobotArena arena;
+
+    /**
+     * The maximum path length the field covers, or 0 if the field is disabled.
+     */
+    private int range = 32;
+
+    /**
+     * The number of ticks between full rebuilds.
+     */
+    private int rebuildInterval = 8;
+
+    /**
+     * Whether the next refresh has to be a full rebuild.
+     */
+    private boolean dirty = true;
+
+    /**
+     * The tick at which the field was last fully rebuilt.
+     */
+    private long lastRebuild;
+
+    /**
+     * The chunks that currently carry a distance tile.
+     */
+    private final List<ChunkedWorld.Chunk> tiled = new ArrayList<>();
+
+    /**
+     * Distance tiles released by the last full rebuild, reused to avoid allocating new ones.
+     */
+    private final ArrayDeque<short[]> spareTiles = new ArrayDeque<>();
+
+    /**
+     * The X coordinates of the hunters of the current update.
+     */
+    private int[] hunterX = new int[16];
+
+    /**
+     * The Y coordinates of the hunters of the current update.
+     */
+    private int[] hunterY = new int[16];
+
+    /**
+     * The next hunter in the same chunk, per hunter, or {@link #NONE}.
+     */
+    private int[] hunterNext = new int[16];
+
+    /**
+     * The number of hunters of the current update.
+     */
+    private int hunterCount;
+
+    /**
+     * The chunks holding hunters, packed as {@code chunkY << 32 | chunkX}, in an open-addressing
+     * table using linear probing. The length is always a power of two.
+     */
+    private long[] hunterChunks = new long[16];
+
+    /**
+     * The first hunter in each chunk of {@link #hunterChunks}, or {@link #NONE} for an empty bucket.
+     */
+    private int[] hunterHeads = new int[16];
+
+    /**
+     * The spans of chunk columns around the prey being checked, as inclusive {@code from, to}
+     * pairs.
+     */
+    private final int[] columnSpans = new int[4];
+
+    /**
+     * The spans of chunk rows around the prey being checked, as inclusive {@code from, to} pairs.
+     */
+    private final int[] rowSpans = new int[4];
+
+    /**
+     * The X coordinates of the cells waiting in the search queue.
+     */
+    private int[] queueX = new int[64];
+
+    /**
+     * The Y coordinates of the cells waiting in the search queue.
+     */
+    private int[] queueY = new int[64];
+
+    /**
+     * The chunks of the cells waiting in the search queue, so that they need not be looked up again.
+     */
+    private ChunkedWorld.Chunk[] queueChunks = new ChunkedWorld.Chunk[64];
+
+    /**
+     * Constructs a new, empty FlowField for the given arena.
+     *
+     * @param arena the arena whose prey the field leads to
+     */
+    public FlowField(RobotArena arena) {
+        this.arena = arena;
+    }
+
+    /**
+     * Brings the field up to date with the current positions of the prey and the obstacles.
+     * Called by the {@link TickEngine} at the start of every tick, before any robot moves.
+     */
+    public void update() {
+        if (range == 0) {
+            clearTiles();
+            return;
+        }
+        long tick = arena.getTick();
+        boolean rebuild = dirty || tick - lastRebuild >= rebuildInterval;
+        if (rebuild) {
+            resetTiles();
+            lastRebuild = tick;
+            dirty = false;
+        }
+        RobotStore store = arena.getRobotStore();
+        ArenaBounds bounds = arena.getBounds();
+        indexHunters(store);
+        int tail = 0;
+        for (int slot = 0; hunterCount > 0 && slot < store.size(); slot++) {
+            if (!store.isAlive(slot) || store.getType(slot) != RobotArena.RobotType.BASIC) {
+                continue;
+            }
+            // BasicRobot 沿直线前进，以它下一步将到达的格子为目标
+            Direction heading = store.getDirection(slot);
+            int x = store.getX(slot);
+            int y = store.getY(slot);
+            int aheadX = bounds.isWrapping() ? bounds.constrainX(x + heading.getDeltaX()) : x + heading.getDeltaX();
+            int aheadY = bounds.isWrapping() ? bounds.constrainY(y + heading.getDeltaY()) : y + heading.getDeltaY();
+            if (bounds.contains(aheadX, aheadY) && !arena.isBlocked(aheadX, aheadY)) {
+                x = aheadX;
+                y = aheadY;
+            }
+            if (distanceAt(x, y) != 0 && !arena.isBlocked(x, y) && isHunted(x, y, bounds)) {
+                tail = enqueue(tail, x, y, setDistance(null, x, y, 0));
+            }
+        }
+        search(tail);
+        if (rebuild) {
+            releaseUnreachedTiles();
+        }
+    }
+
+    /**
+     * Marks the field as out of date, so that it is fully rebuilt at the start of the next tick.
+     * The arena calls this whenever its obstacles change.
+     */
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * Gets the length of the shortest path from a cell to the nearest prey.
+     *
+     * @param x the X coordinate of the cell
+     * @param y the Y coordinate of the cell
+     * @return the distance, or {@link #UNREACHED} if no prey is within range
+     */
+    public int distanceAt(int x, int y) {
+        if (!arena.getBounds().contains(x, y)) {
+            return UNREACHED;
+        }
+        ChunkedWorld.Chunk chunk = arena.getWorld().chunkAt(x, y);
+        if (chunk == null || chunk.flow == null) {
+            return UNREACHED;
+        }
+        return chunk.flow[ChunkedWorld.localIndex(x, y)];
+    }
+
+    /**
+     * Gets the direction a hunter standing on the given cell should take to get closer to prey.
+     *
+     * @param x the X coordinate of the hunter
+     * @param y the Y coordinate of the hunter
+     * @return the direction of the first step on a shortest path, or null if the hunter is on a
+     *         prey cell or no prey is within range
+     */
+    public Direction nextStep(int x, int y) {
+        int best = distanceAt(x, y);
+        if (best == 0 || best == UNREACHED) {
+            return null;
+        }
+        ArenaBounds bounds = arena.getBounds();
+        Direction step = null;
+        for (Direction direction : DIRECTIONS) {
+            int nextX = x + direction.getDeltaX();
+            int nextY = y + direction.getDeltaY();
+            if (bounds.isWrapping()) {
+                nextX = bounds.constrainX(nextX);
+                nextY = bounds.constrainY(nextY);
+            }
+            int distance = distanceAt(nextX, nextY);
+            if (distance < best) {
+                best = distance;
+                step = direction;
+            }
+        }
+        return step;
+    }
+
+    /**
+     * Gets the maximum path length the field covers.
+     *
+     * @return the range of the field, or 0 if it is disabled
+     */
+    public int getRange() {
+        return range;
+    }
+
+    /**
+     * Sets the maximum path length the field covers. Hunters further than this from any prey
+     * wander at random. A range of 0 disables pursuit altogether.
+     *
+     * @param range the new range
+     * @throws IllegalArgumentException if the range is negative or greater than {@link #MAX_RANGE}
+     */
+    public void setRange(int range) {
+        if (range < 0 || range > MAX_RANGE) {
+            throw new IllegalArgumentException("Flow field range must be between 0 and " + MAX_RANGE + ".");
+        }
+        this.range = range;
+        dirty = true;
+    }
+
+    /**
+     * Gets the number of ticks between full rebuilds of the field.
+     *
+     * @return the rebuild interval
+     */
+    public int getRebuildInterval() {
+        return rebuildInterval;
+    }
+
+    /**
+     * Sets the number of ticks between full rebuilds of the field. Shorter intervals keep the
+     * field closer to exact at the cost of more work; 1 rebuilds it on every tick.
+     *
+     * @param rebuildInterval the new rebuild interval
+     * @throws IllegalArgumentException if the interval is less than 1
+     */
+    public void setRebuildInterval(int rebuildInterval) {
+        if (rebuildInterval < 1) {
+            throw new IllegalArgumentException("Rebuild interval must be at least 1.");
+        }
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    /**
+     * Sorts the live AdvancedRobots into the chunks they stand in, so that {@link #isHunted} only
+     * looks at the hunters near a prey cell.
+     *
+     * @param store the store holding the robots
+     */
+    private void indexHunters(RobotStore store) {
+        hunterCount = 0;
+        for (int slot = 0; slot < store.size(); slot++) {
+            if (store.isAlive(slot) && store.getType(slot) == RobotArena.RobotType.ADVANCED) {
+                if (hunterCount == hunterX.length) {
+                    hunterX = Arrays.copyOf(hunterX, hunterCount * 2);
+                    hunterY = Arrays.copyOf(hunterY, hunterCount * 2);
+                    hunterNext = Arrays.copyOf(hunterNext, hunterCount * 2);
+                }
+                hunterX[hunterCount] = store.getX(slot);
+                hunterY[hunterCount] = store.getY(slot);
+                hunterCount++;
+            }
+        }
+        int tableSize = 16;
+        while (tableSize < hunterCount * 2) {
+            tableSize <<= 1;
+        }
+        // 表过大时也重新分配，避免猎手减少后每次清空一张大表
+        if (tableSize != hunterChunks.length && (tableSize > hunterChunks.length || tableSize * 4 < hunterChunks.length)) {
+            hunterChunks = new long[tableSize];
+            hunterHeads = new int[tableSize];
+        }
+        Arrays.fill(hunterHeads, NONE);
+        int mask = hunterHeads.length - 1;
+        for (int hunter = 0; hunter < hunterCount; hunter++) {
+            long key = chunkKey(hunterX[hunter] >> ChunkedWorld.CHUNK_SHIFT, hunterY[hunter] >> ChunkedWorld.CHUNK_SHIFT);
+            int i = hash(key) & mask;
+            while (hunterHeads[i] != NONE && hunterChunks[i] != key) {
+                i = (i + 1) & mask;
+            }
+            hunterChunks[i] = key;
+            hunterNext[hunter] = hunterHeads[i];
+            hunterHeads[i] = hunter;
+        }
+    }
+
+    /**
+     * Gets the first hunter standing in a chunk.
+     *
+     * @param chunkX the chunk column
+     * @param chunkY the chunk row
+     * @return the index of the first hunter in the chunk, or {@link #NONE} if there is none
+     */
+    private int firstHunterIn(int chunkX, int chunkY) {
+        long key = chunkKey(chunkX, chunkY);
+        int mask = hunterHeads.length - 1;
+        for (int i = hash(key) & mask; hunterHeads[i] != NONE; i = (i + 1) & mask) {
+            if (hunterChunks[i] == key) {
+                return hunterHeads[i];
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Checks whether any hunter is close enough to a prey cell for a path within range to join
+     * them. A path takes at least as many steps as there are rows and columns between its ends,
+     * so hunters further away than that could never read a distance seeded on the cell.
+     *
+     * @param x      the X coordinate of the prey cell
+     * @param y      the Y coordinate of the prey cell
+     * @param bounds the bounds of the arena
+     * @return true if the cell should be searched from, false otherwise
+     */
+    private boolean isHunted(int x, int y, ArenaBounds bounds) {
+        boolean wrapping = bounds.isWrapping();
+        int columnSpanCount = chunkSpans(x, bounds.getSizeX(), wrapping, columnSpans);
+        int rowSpanCount = chunkSpans(y, bounds.getSizeY(), wrapping, rowSpans);
+        for (int row = 0; row < rowSpanCount * 2; row += 2) {
+            for (int chunkY = rowSpans[row]; chunkY <= rowSpans[row + 1]; chunkY++) {
+                for (int column = 0; column < columnSpanCount * 2; column += 2) {
+                    for (int chunkX = columnSpans[column]; chunkX <= columnSpans[column + 1]; chunkX++) {
+                        for (int hunter = firstHunterIn(chunkX, chunkY); hunter != NONE; hunter = hunterNext[hunter]) {
+                            long steps = (long) gap(hunterX[hunter], x, bounds.getSizeX(), wrapping)
+                                    + gap(hunterY[hunter], y, bounds.getSizeY(), wrapping);
+                            if (steps <= range) {
+                                return true;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Works out which chunks along one axis lie within range of a coordinate. In a wrapping arena
+     * the range may run over an edge, in which case it is split into two spans.
+     *
+     * @param center   the coordinate
+     * @param size     the size of the arena along the axis
+     * @param wrapping whether the arena wraps around
+     * @param spans    receives the spans as inclusive {@code from, to} pairs of chunk indexes
+     * @return the number of spans, 1 or 2
+     */
+    private int chunkSpans(int center, int size, boolean wrapping, int[] spans) {
+        long low = (long) center - range;
+        long high = (long) center + range;
+        int last = (size - 1) >> ChunkedWorld.CHUNK_SHIFT;
+        if (!wrapping || high - low + 1 >= size) {
+            spans[0] = wrapping ? 0 : (int) Math.max(0, low) >> ChunkedWorld.CHUNK_SHIFT;
+            spans[1] = wrapping ? last : (int) Math.min(size - 1, high) >> ChunkedWorld.CHUNK_SHIFT;
+            return 1;
+        }
+        if (low < 0) {
+            spans[0] = (int) (low + size) >> ChunkedWorld.CHUNK_SHIFT;
+            spans[1] = last;
+            spans[2] = 0;
+            spans[3] = (int) high >> ChunkedWorld.CHUNK_SHIFT;
+            return 2;
+        }
+        if (high >= size) {
+            spans[0] = (int) low >> ChunkedWorld.CHUNK_SHIFT;
+            spans[1] = last;
+            spans[2] = 0;
+            spans[3] = (int) (high - size) >> ChunkedWorld.CHUNK_SHIFT;
+            return 2;
+        }
+        spans[0] = (int) low >> ChunkedWorld.CHUNK_SHIFT;
+        spans[1] = (int) high >> ChunkedWorld.CHUNK_SHIFT;
+        return 1;
+    }
+
+    /**
+     * Gets the number of steps between two coordinates along one axis, taking the shorter way
+     * round in a wrapping arena.
+     *
+     * @param from     the first coordinate
+     * @param to       the second coordinate
+     * @param size     the size of the arena along the axis
+     * @param wrapping whether the arena wraps around
+     * @return the number of steps
+     */
+    private static int gap(int from, int to, int size, boolean wrapping) {
+        int gap = Math.abs(from - to);
+        return wrapping ? Math.min(gap, size - gap) : gap;
+    }
+
+    /**
+     * Packs a pair of chunk coordinates into a key of the hunter table.
+     *
+     * @param chunkX the chunk column
+     * @param chunkY the chunk row
+     * @return the key
+     */
+    private static long chunkKey(int chunkX, int chunkY) {
+        return (long) chunkY << 32 | (chunkX & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Hashes a key of the hunter table.
+     *
+     * @param key the key
+     * @return the hash
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Runs the breadth-first search from the queued cells, lowering every distance that the
+     * queued cells make shorter and stopping at the range of the field. Most neighbours lie in the
+     * same chunk as the cell being expanded, so the chunk is only looked up again when a step
+     * crosses into another one.
+     *
+     * @param tail the number of cells already in the queue
+     */
+    private void search(int tail) {
+        ArenaBounds bounds = arena.getBounds();
+        ChunkedWorld world = arena.getWorld();
+        for (int head = 0; head < tail; head++) {
+            int x = queueX[head];
+            int y = queueY[head];
+            ChunkedWorld.Chunk chunk = queueChunks[head];
+            queueChunks[head] = null;
+            int distance = chunk.flow[ChunkedWorld.localIndex(x, y)] + 1;
+            if (distance > range) {
+                continue;
+            }
+            for (Direction direction : DIRECTIONS) {
+                int nextX = x + direction.getDeltaX();
+                int nextY = y + direction.getDeltaY();
+                if (bounds.isWrapping()) {
+                    nextX = bounds.constrainX(nextX);
+                    nextY = bounds.constrainY(nextY);
+                } else if (!bounds.contains(nextX, nextY)) {
+                    continue;
+                }
+                ChunkedWorld.Chunk next = chunk.contains(nextX, nextY) ? chunk : world.chunkAt(nextX, nextY);
+                if (next != null) {
+                    if (next.flow != null && next.flow[ChunkedWorld.localIndex(nextX, nextY)] <= distance) {
+                        continue;
+                    }
+                    if (next.blocked != null && (next.blocked[nextY & ChunkedWorld.CHUNK_MASK] & 1L << nextX) != 0) {
+                        continue;
+                    }
+                }
+                tail = enqueue(tail, nextX, nextY, setDistance(next, nextX, nextY, distance));
+            }
+        }
+    }
+
+    /**
+     * Appends a cell to the search queue, growing the queue if necessary.
+     *
+     * @param tail  the current length of the queue
+     * @param x     the X coordinate of the cell
+     * @param y     the Y coordinate of the cell
+     * @param chunk the chunk holding the cell
+     * @return the new length of the queue
+     */
+    private int enqueue(int tail, int x, int y, ChunkedWorld.Chunk chunk) {
+        if (tail == queueX.length) {
+            queueX = Arrays.copyOf(queueX, tail * 2);
+            queueY = Arrays.copyOf(queueY, tail * 2);
+            queueChunks = Arrays.copyOf(queueChunks, tail * 2);
+        }
+        queueX[tail] = x;
+        queueY[tail] = y;
+        queueChunks[tail] = chunk;
+        return tail + 1;
+    }
+
+    /**
+     * Stores the distance of a cell, giving its chunk a distance tile if it has none yet.
+     *
+     * @param chunk    the chunk holding the cell, or null to look it up and allocate it if necessary
+     * @param x        the X coordinate of the cell
+     * @param y        the Y coordinate of the cell
+     * @param distance the new distance
+     * @return the chunk holding the cell
+     */
+    private ChunkedWorld.Chunk setDistance(ChunkedWorld.Chunk chunk, int x, int y, int distance) {
+        if (chunk == null) {
+            chunk = arena.getWorld().chunkFor(x, y);
+        }
+        if (chunk.flow == null) {
+            short[] tile = spareTiles.poll();
+            if (tile == null) {
+                tile = new short[ChunkedWorld.CHUNK_CELLS];
+            }
+            Arrays.fill(tile, (short) UNREACHED);
+            chunk.flow = tile;
+            tiled.add(chunk);
+        }
+        chunk.flow[ChunkedWorld.localIndex(x, y)] = (short) distance;
+        return chunk;
+    }
+
+    /**
+     * Resets every distance tile to {@link #UNREACHED} in place, ready for a full rebuild.
+     */
+    private void resetTiles() {
+        for (ChunkedWorld.Chunk chunk : tiled) {
+            Arrays.fill(chunk.flow, (short) UNREACHED);
+        }
+    }
+
+    /**
+     * Detaches the distance tiles that a full rebuild did not reach, keeping them for reuse and
+     * dropping chunks that hold nothing else.
+     */
+    private void releaseUnreachedTiles() {
+        ChunkedWorld world = arena.getWorld();
+        int kept = 0;
+        for (ChunkedWorld.Chunk chunk : tiled) {
+            if (isReached(chunk.flow)) {
+                tiled.set(kept++, chunk);
+            } else {
+                spareTiles.push(chunk.flow);
+                chunk.flow = null;
+                world.release(chunk);
+            }
+        }
+        tiled.subList(kept, tiled.size()).clear();
+        while (spareTiles.size() > kept) {
+            spareTiles.pop();
+        }
+    }
+
+    /**
+     * Checks whether any cell of a distance tile is within range of prey.
+     *
+     * @param tile the distance tile
+     * @return true if at least one cell has a distance, false otherwise
+     */
+    private static boolean isReached(short[] tile) {
+        for (short distance : tile) {
+            if (distance != UNREACHED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Detaches every distance tile from its chunk, keeping the tiles for reuse and dropping
+     * chunks that hold nothing else.
+     */
+    private void clearTiles() {
+        ChunkedWorld world = arena.getWorld();
+        int used = tiled.size();
+        for (ChunkedWorld.Chunk chunk : tiled) {
+            spareTiles.push(chunk.flow);
+            chunk.flow = null;
+            world.release(chunk);
+        }
+        tiled.clear();
+        // 只保留上次用到的数量，猎物减少后多余的分块交给垃圾回收
+        while (spareTiles.size() > used) {
+            spareTiles.pop();
+        }
+    }
+}
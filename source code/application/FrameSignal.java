@@ -0,0 +1,127 @@
+package application;
+
+import javafx.application.Platform;
+
+/**
+ * The FrameSignal class carries "a newer state is ready" from the thread that advances the arena
+ * to the JavaFX application thread, without ever letting updates pile up.
+ * <p>
+ * At most one update is waiting on the FX application thread at any time. A frame posted while
+ * one is waiting is merged into it: the waiting update will show the latest state, and no second
+ * runnable is queued. Frames are numbered by the snapshot sequence they belong to, so the signal
+ * also counts the frames that were never shown because a newer one came first. However far the
+ * FX application thread falls behind, the queue holds one update, and the counters tell how much
+ * was skipped to keep it that way.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see ArenaSnapshot#getSequence()
+ */
+    public class FrameSignal {
+
+    /**
+     * The action that shows the latest state, run on the FX application thread.
+     */
+    private final Runnable action;
+
+    /**
+     * Whether an update is waiting on the FX application thread.
+     */
+    private boolean pending;
+
+    /**
+     * The number of the latest frame posted.
+     */
+    private long latestFrame = -1;
+
+    /**
+     * The number of the last frame shown, or -1 if none has been.
+     */
+    private long shownFrame = -1;
+
+    /**
+     * The number of frames merged into an update that was already waiting.
+     */
+    private long mergedFrames;
+
+    /**
+     * The number of frames never shown because a newer one was shown instead.
+     */
+    private long droppedFrames;
+
+    /**
+     * The number of updates run.
+     */
+    private long shownUpdates;
+
+    /**
+     * Constructs a signal that runs an action for the latest frame.
+     *
+     * @param action shows the latest state; it runs on the FX application thread
+     */
+    public FrameSignal(Runnable action) {
+        this.action = action;
+    }
+
+    /**
+     * Signals that a frame is ready, from any thread. Queues an update on the FX application thread
+     * unless one is waiting already, in which case the frame is merged into it.
+     *
+     * @param frame the number of the frame, normally the sequence of the snapshot it shows
+     */
+    public void post(long frame) {
+        synchronized (this) {
+            latestFrame = Math.max(latestFrame, frame);
+            if (pending) {
+                mergedFrames++;
+                return;
+            }
+            pending = true;
+        }
+        Platform.runLater(this::show);
+    }
+
+    /**
+     * Runs the action for the latest frame and counts the frames skipped since the last one.
+     */
+    private void show() {
+        synchronized (this) {
+            pending = false;
+            if (shownFrame >= 0 && latestFrame > shownFrame + 1) {
+                droppedFrames += latestFrame - shownFrame - 1;
+            }
+            shownFrame = latestFrame;
+            shownUpdates++;
+        }
+        action.run();
+    }
+
+    /**
+     * Gets the number of frames merged into an update that was already waiting.
+     *
+     * @return the number of merged frames
+     */
+    public synchronized long getMergedFrames() {
+        return mergedFrames;
+    }
+
+    /**
+     * Gets the number of frames that were never shown because a newer one was shown instead. This
+     * includes frames merged into a waiting update as well as snapshots that were published without
+     * being posted, such as those published by edits of the arena.
+     *
+     * @return the number of dropped frames
+     */
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Gets the number of updates run on the FX application thread.
+     *
+     * @return the number of updates
+     */
+    public synchronized long getShownUpdates() {
+        return shownUpdates;
+    }
+}
@@ -0,0 +1,53 @@
+package application;
+
+import javax.management.JMException;
+
+/**
+ * The HeadlessRunner class runs a {@link RobotArena} simulation without any user interface,
+ * so that it can be used on build machines and servers where the JavaFX toolkit is not available.
+ * The arena's {@link TickMetrics} are registered with JMX while it runs and printed at the end;
+ * run with {@code -XX:StartFlightRecording} to record a {@link TickEvent} for every tick.
+ * Usage: {@code java application.HeadlessRunner [sizeX sizeY robots ticks [torus]]}.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ */
+    public class HeadlessRunner {
+
+    /**
+     * Prevents instantiation of this utility class.
+     */
+    private HeadlessRunner() {
+    }
+
+    /**
+     * Runs a simulation and prints how long it took.
+     *
+     * @param args the arena width, arena height, number of robots, number of ticks and optionally
+     *             {@code torus} for a wrap-around arena
+     */
+    public static void main(String[] args) {
+        int sizeX = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int sizeY = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int robots = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long ticks = args.length > 3 ? Long.parseLong(args[3]) : 1000;
+        boolean torus = args.length > 4 && args[4].equalsIgnoreCase("torus");
+
+        RobotArena arena = new RobotArena(new ArenaBounds(sizeX, sizeY, torus), System.nanoTime());
+        arena.addRandomRobots(robots);
+        try {
+            // 注册到 JMX，运行期间可用 JConsole 查看
+            arena.getMetrics().register("headless");
+        } catch (JMException e) {
+            System.err.println("Could not register arena metrics: " + e.getMessage());
+        }
+
+        long start = System.nanoTime();
+        arena.run(ticks);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("Ran %d ticks in %.3f s (%.0f ticks/s), %d robots left.%n",
+                ticks, seconds, ticks / seconds, arena.getRobots().size());
+        System.out.println(arena.getMetrics());
+    }
+}
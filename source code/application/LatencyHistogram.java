@@ -0,0 +1,176 @@
+package application;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The LatencyHistogram class records durations in nanoseconds into logarithmic buckets, eight per
+ * power of two, so percentiles are accurate to within 12.5% whatever the scale of the durations.
+ * Recording never allocates and the histogram has a fixed size, so it can stay attached to a
+ * simulation that runs for days.
+ * <p>
+ * A histogram is written by a single thread, usually the one advancing the arena, and may be read
+ * from any other thread, for example by JMX. Readers see each value as soon as it is recorded,
+ * though statistics read while a value is being recorded may not yet include all of it.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see TickMetrics
+ */
+    public class LatencyHistogram {
+
+    /**
+     * The base-2 logarithm of the number of buckets per power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * The number of buckets per power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The number of buckets, enough for every non-negative {@code long}.
+     */
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * The number of values recorded into each bucket.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * The number of values recorded.
+     */
+    private volatile long count;
+
+    /**
+     * The sum of all values recorded.
+     */
+    private volatile long total;
+
+    /**
+     * The largest value recorded.
+     */
+    private volatile long max;
+
+    /**
+     * Records one duration. Negative durations are recorded as 0.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        int bucket = bucketOf(value);
+        buckets.lazySet(bucket, buckets.get(bucket) + 1);
+        total += value;
+        if (value > max) {
+            max = value;
+        }
+        count++;
+    }
+
+    /**
+     * Gets the number of durations recorded.
+     *
+     * @return the number of recorded durations
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the sum of all durations recorded.
+     *
+     * @return the total in nanoseconds
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Gets the mean of the durations recorded.
+     *
+     * @return the mean in nanoseconds, or 0 if nothing has been recorded
+     */
+    public double getMean() {
+        long n = count;
+        return n == 0 ? 0 : (double) total / n;
+    }
+
+    /**
+     * Gets the longest duration recorded.
+     *
+     * @return the maximum in nanoseconds
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the duration below which the given share of the recorded durations fall.
+     * The result is the upper edge of the bucket holding that duration, so it never understates it.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the duration in nanoseconds, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        long n = count;
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += buckets.get(bucket);
+            if (seen >= rank) {
+                return Math.min(max, upperEdge(bucket));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Forgets every duration recorded so far. Should be called from the recording thread, or
+     * while nothing is being recorded.
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            buckets.lazySet(bucket, 0);
+        }
+        count = 0;
+        total = 0;
+        max = 0;
+    }
+
+    /**
+     * Finds the bucket holding a value. Values below {@link #SUB_BUCKETS} get a bucket each;
+     * every power of two above that is split into {@link #SUB_BUCKETS} equal buckets.
+     *
+     * @param value the non-negative value
+     * @return the index of its bucket
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Gets the largest value that falls into a bucket.
+     *
+     * @param bucket the index of the bucket
+     * @return the upper edge of the bucket, inclusive
+     */
+    private static long upperEdge(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lower + width - 1;
+    }
+}
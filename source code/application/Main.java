@@ -1,10 +1,11 @@
 package application;
 import java.util.Random;
-import javafx.application.Platform;
 import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import java.util.ArrayList;
@@ -28,6 +29,8 @@ import javafx.scene.text.Font;
     public class Main extends Application {
     private RobotArena arena;
     private RobotCanvas robotCanvas;
+    private RobotStatusTable statusTable;
+    private EventConsumer eventLogger;
     private Stage primaryStage;
  
 /**
@@ -43,6 +46,7 @@ import javafx.scene.text.Font;
         int sizeY = 20;
         int numRobots = 5;
         arena = new RobotArena(sizeX, sizeY);
+        logEvents();
         arena.addRandomRobots(numRobots);
         robotCanvas = new RobotCanvas(arena, sizeX * 30, sizeY * 30);
 
@@ -54,48 +58,28 @@ import javafx.scene.text.Font;
         MenuBar menuBar = createMenuBar();
         root.setTop(menuBar);
 
-        // Create a TextArea for displaying robot positions
-        TextArea positionInfo = new TextArea();
-        positionInfo.setEditable(false);  
-        positionInfo.setPrefWidth(200);   
-        positionInfo.setWrapText(true);   
-
-        // Add the TextArea to the right side of the BorderPane
-        root.setRight(positionInfo);
-
-        // Initialize the position info display
-        updatePositionInfo(positionInfo);
-
-        // Set up the update callback in RobotArena
-        arena.setOnUpdate(() -> Platform.runLater(() -> {
-            robotCanvas.updateCanvas();
-            updatePositionInfo(positionInfo);
-        }));
+        // Create a table listing the robots, with a filter above it
+        statusTable = new RobotStatusTable(arena);
+        TextField filter = new TextField();
+        filter.setPromptText("Filter by ID or type");
+        filter.textProperty().addListener((observable, before, text) -> statusTable.setFilter(text));
+        VBox statusPane = new VBox(filter, statusTable);
+        VBox.setVgrow(statusTable, Priority.ALWAYS);
+        statusPane.setPrefWidth(320);
+
+        // Add the table to the right side of the BorderPane
+        root.setRight(statusPane);
+
+        // Set up the update callback in RobotArena; the canvas draws new snapshots by itself,
+        // and the table works out what changed on the simulation thread
+        arena.setOnUpdate(statusTable::update);
         
-        Scene scene = new Scene(root, sizeX * 30 + 220, sizeY * 30);  
+        Scene scene = new Scene(root, sizeX * 30 + 320, sizeY * 30);  
         primaryStage.setScene(scene);
         primaryStage.setTitle("Robot Arena");
         primaryStage.show();
     }
 
-/**
- * Update the text area to show the robot's current location.
- *
- * @param positionInfo    A text area that displays robot location information
- */       
-
-    private void updatePositionInfo(TextArea positionInfo) {
-        positionInfo.clear();  
-        StringBuilder sb = new StringBuilder();
-        for (Robot robot : arena.getRobots()) {
-            sb.append("Robot ID: ").append(robot.getId())
-              .append(", Position: (").append(robot.getX()).append(", ").append(robot.getY())
-              .append("), Direction: ").append(robot.getDirection())
-              .append("\n");
-        }
-        positionInfo.setText(sb.toString());
-    }
-
     /**
      * Creates and returns a menu bar with file, edit, run, and help menus.
      *
@@ -171,6 +155,46 @@ import javafx.scene.text.Font;
         return menuBar;
     }
 
+    /**
+     * Applies an edit to the arena between two ticks of the simulation, which may be running on
+     * a thread of its own.
+     *
+     * @param edit the edit to apply
+     */
+
+    private void edit(Runnable edit) {
+        robotCanvas.getSimulation().execute(edit);
+    }
+
+    /**
+     * Prints the events of the current arena to the console on a background thread,
+     * stopping the logger of the previous arena.
+     */
+
+    private void logEvents() {
+        if (eventLogger != null) {
+            eventLogger.close();
+        }
+        eventLogger = EventConsumer.console(arena.getEventBus());
+    }
+
+    /**
+     * Replaces the arena shown with another one. The robots of the current arena are stopped,
+     * and the canvas, the status table and the event logger are moved over to the new arena.
+     *
+     * @param newArena the arena to show from now on
+     */
+
+    private void showArena(RobotArena newArena) {
+        robotCanvas.setArena(newArena);
+        arena.setOnUpdate(null);
+        arena = newArena;
+        logEvents();
+        statusTable.setArena(arena);
+        arena.setOnUpdate(statusTable::update);
+    }
+
+
     /**
      * Prompts the user to confirm whether to create a new arena and to clear the current arena content.
      */
@@ -186,9 +210,9 @@ import javafx.scene.text.Font;
             int sizeX = 10;
             int sizeY = 10;
             int numRobots = 5;
-            arena = new RobotArena(sizeX, sizeY);
-            arena.addRandomRobots(numRobots);
-            robotCanvas.updateCanvas();
+            RobotArena newArena = new RobotArena(sizeX, sizeY);
+            newArena.addRandomRobots(numRobots);
+            showArena(newArena);
         }
     }
 
@@ -203,8 +227,7 @@ import javafx.scene.text.Font;
         File file = fileChooser.showOpenDialog(primaryStage);
         if (file != null) {
             try {
-                arena = ConfigManager.loadConfig(file.getAbsolutePath());
-                robotCanvas.updateCanvas();
+                showArena(ConfigManager.loadConfig(file.getAbsolutePath()));
             } catch (Exception e) {
                 Alert alert = new Alert(Alert.AlertType.ERROR);
                 alert.setTitle("Error");
@@ -225,6 +248,9 @@ import javafx.scene.text.Font;
         fileChooser.setTitle("Save Arena Configuration");
         File file = fileChooser.showSaveDialog(primaryStage);
         if (file != null) {
+            // 保存期间暂停模拟，避免读到进行中的一步
+            boolean running = robotCanvas.getSimulation().isRunning();
+            robotCanvas.stopMovement();
             try {
                 ConfigManager.saveConfig(arena, file.getAbsolutePath());
             } catch (Exception e) {
@@ -233,6 +259,10 @@ import javafx.scene.text.Font;
                 alert.setHeaderText("Failed to save arena configuration.");
                 alert.setContentText(e.getMessage());
                 alert.showAndWait();
+            } finally {
+                if (running) {
+                    robotCanvas.startMovement();
+                }
             }
         }
     }
@@ -269,14 +299,15 @@ import javafx.scene.text.Font;
             }
 
             try {
-                arena.addRobot(newRobot);
-                Platform.runLater(() -> {
-                    robotCanvas.updateCanvas();
+                int[] addedId = new int[1];
+                edit(() -> {
+                    arena.addRobot(newRobot);
+                    addedId[0] = newRobot.getId();
                 });
                 Alert successAlert = new Alert(Alert.AlertType.INFORMATION);
                 successAlert.setTitle("Success");
                 successAlert.setHeaderText("Robot added successfully.");
-                successAlert.setContentText("New robot ID: " + newRobot.getId());
+                successAlert.setContentText("New robot ID: " + addedId[0]);
                 successAlert.showAndWait();
             } catch (IllegalArgumentException e) {
                 Alert errorAlert = new Alert(Alert.AlertType.ERROR);
@@ -295,16 +326,21 @@ import javafx.scene.text.Font;
     private void removeRobot() {
         // Implement logic to remove a selected robot
         // For simplicity, we'll remove the first robot in the list
-        if (!arena.getRobots().isEmpty()) {
-            Robot removedRobot = arena.getRobots().remove(0);
-            Platform.runLater(() -> {
-                robotCanvas.updateCanvas();
-                Alert successAlert = new Alert(Alert.AlertType.INFORMATION);
-                successAlert.setTitle("Success");
-                successAlert.setHeaderText("Robot removed successfully.");
-                successAlert.setContentText("Removed robot ID: " + removedRobot.getId());
-                successAlert.showAndWait();
-            });
+        // 在编辑中读取 ID，模拟线程随后可能移动机器人所在的槽位
+        int[] removedId = {-1};
+        edit(() -> {
+            if (!arena.getRobots().isEmpty()) {
+                Robot robot = arena.getRobots().get(0);
+                removedId[0] = robot.getId();
+                arena.removeRobot(robot);
+            }
+        });
+        if (removedId[0] >= 0) {
+            Alert successAlert = new Alert(Alert.AlertType.INFORMATION);
+            successAlert.setTitle("Success");
+            successAlert.setHeaderText("Robot removed successfully.");
+            successAlert.setContentText("Removed robot ID: " + removedId[0]);
+            successAlert.showAndWait();
         } else {
             Alert errorAlert = new Alert(Alert.AlertType.WARNING);
             errorAlert.setTitle("Warning");
@@ -326,7 +362,7 @@ import javafx.scene.text.Font;
 
         Optional<ButtonType> result = alert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            arena.clear();
+            edit(arena::clear);
             robotCanvas.updateCanvas();
         }
     }
@@ -347,13 +383,8 @@ import javafx.scene.text.Font;
         try {
             // Create a new obstacle and add it to the arena
             Obstacle newObstacle = new Obstacle(fixedX, fixedY);
-            arena.addObstacle(newObstacle);
+            edit(() -> arena.addObstacle(newObstacle));
           
-            // Update canvas
-            Platform.runLater(() -> {
-                robotCanvas.updateCanvas();
-            });
-
             // Provide success tips
             Alert successAlert = new Alert(Alert.AlertType.INFORMATION);
             successAlert.setTitle("Success");
@@ -387,13 +418,8 @@ import javafx.scene.text.Font;
         try {
             // Create a new obstacle and add it to the arena
             Obstacle newObstacle = new Obstacle(fixedX, fixedY);
-            arena.addObstacle(newObstacle);
+            edit(() -> arena.addObstacle(newObstacle));
           
-            // Update canvas
-            Platform.runLater(() -> {
-                robotCanvas.updateCanvas();
-            });
-
             // Provide success tips
             Alert successAlert = new Alert(Alert.AlertType.INFORMATION);
             successAlert.setTitle("Success");
@@ -427,13 +453,8 @@ import javafx.scene.text.Font;
         try {
             // Create a new obstacle and add it to the arena
             Obstacle newObstacle = new Obstacle(fixedX, fixedY);
-            arena.addObstacle(newObstacle);
+            edit(() -> arena.addObstacle(newObstacle));
           
-            // Update canvas
-            Platform.runLater(() -> {
-                robotCanvas.updateCanvas();
-            });
-
             // Provide success tips
             Alert successAlert = new Alert(Alert.AlertType.INFORMATION);
             successAlert.setTitle("Success");
@@ -456,7 +477,7 @@ import javafx.scene.text.Font;
      */
     
     private void resetRobots() {
-        arena.resetRobots();
+        edit(arena::resetRobots);
         robotCanvas.updateCanvas();
     }
 
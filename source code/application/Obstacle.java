@@ -1,7 +1,5 @@
 package application;
 
-import javafx.scene.paint.Color;
-
 /**
  * The Obstacle class represents an obstacle in the robot arena.
  * An obstacle has a fixed position on the grid and a color for visual representation.
@@ -11,6 +9,12 @@ import javafx.scene.paint.Color;
  */
     public class Obstacle {
 
+    /**
+     * The color used for obstacles that are created without an explicit color (black),
+     * as a packed 0xAARRGGBB value.
+     */
+    public static final int DEFAULT_COLOR = 0xFF000000;
+
     /**
      * The X coordinate of the obstacle's position on the grid.
      */
@@ -22,9 +26,9 @@ import javafx.scene.paint.Color;
     private final int y;
 
     /**
-     * The color of the obstacle, used for visual representation.
+     * The color of the obstacle as a packed 0xAARRGGBB value, used for visual representation.
      */
-    private final Color color;
+    private final int color;
 
     /**
      * Constructs a new Obstacle object with specified position and default color (black).
@@ -33,7 +37,7 @@ import javafx.scene.paint.Color;
      * @param y the Y coordinate of the obstacle
      */
     public Obstacle(int x, int y) {
-        this(x, y, Color.BLACK);  // Default color is black
+        this(x, y, DEFAULT_COLOR);  // Default color is black
     }
 
     /**
@@ -41,9 +45,9 @@ import javafx.scene.paint.Color;
      *
      * @param x     the X coordinate of the obstacle
      * @param y     the Y coordinate of the obstacle
-     * @param color the color of the obstacle
+     * @param color the color of the obstacle as a packed 0xAARRGGBB value
      */
-    public Obstacle(int x, int y, Color color) {
+    public Obstacle(int x, int y, int color) {
         this.x = x;
         this.y = y;
         this.color = color;
@@ -70,9 +74,9 @@ import javafx.scene.paint.Color;
     /**
      * Gets the color of the obstacle.
      *
-     * @return the color of the obstacle
+     * @return the color of the obstacle as a packed 0xAARRGGBB value
      */
-    public Color getColor() {
+    public int getColor() {
         return color;
     }
 }
\ No newline at end of file
@@ -0,0 +1,498 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+/**
+ * The ObstacleMap class stores the obstacles of a {@link RobotArena} as occupancy bitmaps, one per
+ * chunk of a {@link ChunkedWorld}. Every cell of a chunk maps to one bit, so checking whether a cell
+ * is blocked takes constant time regardless of how many obstacles have been placed, and whole
+ * rectangles of cells can be blocked or cleared with one mask operation per chunk row.
+ * Bitmaps are only allocated for chunks that contain obstacles, so empty regions of a huge arena
+ * cost nothing.
+ * Obstacles with a colour other than the default are remembered separately so that they can still
+ * be drawn in their own colour.
+ * The map also remembers which chunks changed since {@link #takeChangedChunks()} was last called, so
+ * that a {@link TickRecorder} can write only those.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see Obstacle
+ */
+    public class ObstacleMap {
+
+    /**
+     * The chunked world whose chunks hold the obstacle bitmaps.
+     */
+    private final ChunkedWorld world;
+
+    /**
+     * The number of blocked cells.
+     */
+    private long count;
+
+    /**
+     * The colours of obstacles that do not use the default colour, keyed by packed cell position.
+     */
+    private final Map<Long, Integer> colors;
+
+    /**
+     * A cached list of obstacle objects, rebuilt lazily after the map has been modified.
+     */
+    private List<Obstacle> obstacleList;
+
+    /**
+     * Counts the changes made to the map, so that readers can tell whether it changed.
+     */
+    private long version;
+
+    /**
+     * The packed positions of the chunks changed since {@link #takeChangedChunks()} was last called.
+     * It never holds more entries than the world has chunks.
+     */
+    private final Set<Long> changedChunks = new HashSet<>();
+
+    /**
+     * Whether every obstacle was removed at once since {@link #takeChangedChunks()} was last called.
+     */
+    private boolean allChanged;
+
+    /**
+     * Constructs a new, empty ObstacleMap for an arena of the specified dimensions,
+     * with a chunked world of its own.
+     *
+     * @param sizeX the width of the arena grid
+     * @param sizeY the height of the arena grid
+     */
+    public ObstacleMap(int sizeX, int sizeY) {
+        this(new ChunkedWorld(sizeX, sizeY));
+    }
+
+    /**
+     * Constructs a new, empty ObstacleMap that keeps its bitmaps in the chunks of the given world.
+     *
+     * @param world the chunked world to store the obstacles in
+     */
+    public ObstacleMap(ChunkedWorld world) {
+        this.world = world;
+        this.colors = new HashMap<>();
+    }
+
+    /**
+     * Checks whether the given cell is blocked. Cells outside the arena are never blocked.
+     *
+     * @param x the X coordinate of the cell
+     * @param y the Y coordinate of the cell
+     * @return true if an obstacle occupies the cell, false otherwise
+     */
+    public boolean isBlocked(int x, int y) {
+        if (!world.isInside(x, y)) {
+            return false;
+        }
+        ChunkedWorld.Chunk chunk = world.chunkAt(x, y);
+        return chunk != null && chunk.blocked != null
+                && (chunk.blocked[y & ChunkedWorld.CHUNK_MASK] & 1L << x) != 0;
+    }
+
+    /**
+     * Adds an obstacle to the map, replacing any obstacle already in the same cell.
+     *
+     * @param obstacle the obstacle to add
+     * @throws IllegalArgumentException if the obstacle's position is out of bounds
+     */
+    public void add(Obstacle obstacle) {
+        int x = obstacle.getX();
+        int y = obstacle.getY();
+        if (!world.isInside(x, y)) {
+            throw new IllegalArgumentException("Obstacle position is out of bounds.");
+        }
+        ChunkedWorld.Chunk chunk = world.chunkFor(x, y);
+        if (chunk.blocked == null) {
+            chunk.blocked = new long[ChunkedWorld.CHUNK_SIZE];
+        }
+        int row = y & ChunkedWorld.CHUNK_MASK;
+        if ((chunk.blocked[row] & 1L << x) == 0) {
+            chunk.blocked[row] |= 1L << x;
+            chunk.obstacleCount++;
+            count++;
+        }
+        if (obstacle.getColor() == Obstacle.DEFAULT_COLOR) {
+            colors.remove(key(x, y));
+        } else {
+            colors.put(key(x, y), obstacle.getColor());
+        }
+        changedChunks.add(key(chunk.chunkX, chunk.chunkY));
+        obstacleList = null;
+        version++;
+    }
+
+    /**
+     * Removes the obstacle in the given cell, if there is one.
+     *
+     * @param x the X coordinate of the cell
+     * @param y the Y coordinate of the cell
+     * @return true if an obstacle was removed, false otherwise
+     */
+    public boolean remove(int x, int y) {
+        if (!isBlocked(x, y)) {
+            return false;
+        }
+        ChunkedWorld.Chunk chunk = world.chunkAt(x, y);
+        chunk.blocked[y & ChunkedWorld.CHUNK_MASK] &= ~(1L << x);
+        changedChunks.add(key(chunk.chunkX, chunk.chunkY));
+        releaseIfClear(chunk, 1);
+        colors.remove(key(x, y));
+        obstacleList = null;
+        version++;
+        return true;
+    }
+
+    /**
+     * Blocks every cell of a rectangle with default-coloured obstacles.
+     * The rectangle is clipped to the bounds of the arena.
+     *
+     * @param x      the X coordinate of the top-left cell
+     * @param y      the Y coordinate of the top-left cell
+     * @param width  the width of the rectangle in cells
+     * @param height the height of the rectangle in cells
+     */
+    public void fill(int x, int y, int width, int height) {
+        setRect(x, y, width, height, true);
+    }
+
+    /**
+     * Removes every obstacle inside a rectangle.
+     * The rectangle is clipped to the bounds of the arena.
+     *
+     * @param x      the X coordinate of the top-left cell
+     * @param y      the Y coordinate of the top-left cell
+     * @param width  the width of the rectangle in cells
+     * @param height the height of the rectangle in cells
+     */
+    public void clear(int x, int y, int width, int height) {
+        setRect(x, y, width, height, false);
+    }
+
+    /**
+     * Removes all obstacles from the map.
+     */
+    public void clearAll() {
+        world.clearObstacles();
+        count = 0;
+        colors.clear();
+        changedChunks.clear();
+        allChanged = true;
+        obstacleList = null;
+        version++;
+    }
+
+    /**
+     * Counts the blocked cells inside a rectangle, which is clipped to the bounds of the arena.
+     * Each chunk row covered by the rectangle costs one mask operation, and chunks without
+     * obstacles are skipped entirely, so the cost does not grow with the number of cells probed.
+     *
+     * @param x      the X coordinate of the top-left cell
+     * @param y      the Y coordinate of the top-left cell
+     * @param width  the width of the rectangle in cells
+     * @param height the height of the rectangle in cells
+     * @return the number of obstacles inside the rectangle
+     */
+    public long countInRect(int x, int y, int width, int height) {
+        int fromX = Math.max(0, x);
+        int toX = (int) Math.min(world.getSizeX(), (long) x + width);
+        int fromY = Math.max(0, y);
+        int toY = (int) Math.min(world.getSizeY(), (long) y + height);
+        long found = 0;
+        for (int chunkY = fromY >> ChunkedWorld.CHUNK_SHIFT; fromY < toY && chunkY <= (toY - 1) >> ChunkedWorld.CHUNK_SHIFT; chunkY++) {
+            int baseY = chunkY << ChunkedWorld.CHUNK_SHIFT;
+            int firstRow = Math.max(fromY, baseY) - baseY;
+            int lastRow = Math.min(toY, baseY + ChunkedWorld.CHUNK_SIZE) - baseY;
+            for (int chunkX = fromX >> ChunkedWorld.CHUNK_SHIFT; fromX < toX && chunkX <= (toX - 1) >> ChunkedWorld.CHUNK_SHIFT; chunkX++) {
+                int baseX = chunkX << ChunkedWorld.CHUNK_SHIFT;
+                ChunkedWorld.Chunk chunk = world.chunkAt(baseX, baseY);
+                if (chunk == null || chunk.blocked == null) {
+                    continue;
+                }
+                long mask = rowMask(Math.max(fromX, baseX) - baseX, Math.min(toX, baseX + ChunkedWorld.CHUNK_SIZE) - baseX);
+                for (int row = firstRow; row < lastRow; row++) {
+                    found += Long.bitCount(chunk.blocked[row] & mask);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Gets the number of blocked cells.
+     *
+     * @return the number of obstacles in the map
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Gets the obstacles in the map as a read-only list, chunk by chunk in row-major chunk order
+     * and row-major within each chunk.
+     * The list is cached and only rebuilt after the map has been modified.
+     *
+     * @return the list of obstacles
+     */
+    public List<Obstacle> toList() {
+        if (obstacleList == null) {
+            List<Obstacle> list = new ArrayList<>((int) Math.min(count, Integer.MAX_VALUE - 8));
+            for (ChunkedWorld.Chunk chunk : world.chunks()) {
+                if (chunk.blocked == null) {
+                    continue;
+                }
+                int baseX = chunk.chunkX << ChunkedWorld.CHUNK_SHIFT;
+                int baseY = chunk.chunkY << ChunkedWorld.CHUNK_SHIFT;
+                for (int row = 0; row < ChunkedWorld.CHUNK_SIZE; row++) {
+                    for (long bits = chunk.blocked[row]; bits != 0; bits &= bits - 1) {
+                        int x = baseX + Long.numberOfTrailingZeros(bits);
+                        int y = baseY + row;
+                        list.add(new Obstacle(x, y, colors.getOrDefault(key(x, y), Obstacle.DEFAULT_COLOR)));
+                    }
+                }
+            }
+            obstacleList = Collections.unmodifiableList(list);
+        }
+        return obstacleList;
+    }
+
+    /**
+     * Gets the colours of obstacles that do not use the default colour, so that they can be saved.
+     *
+     * @return a read-only map from packed cell position (X in the low 32 bits, Y in the high 32
+     *         bits) to colour
+     */
+    Map<Long, Integer> customColors() {
+        return Collections.unmodifiableMap(colors);
+    }
+
+    /**
+     * Gets a number that changes whenever obstacles are added or removed, so that a reader can
+     * tell cheaply whether the map has changed since it last looked.
+     *
+     * @return the number of changes made to the map
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * Replaces the obstacle bitmap of one chunk, for example with one read from a file.
+     *
+     * @param chunkX the column of the chunk
+     * @param chunkY the row of the chunk
+     * @param rows   the bitmap, one {@code long} per row with bit {@code x} for column {@code x};
+     *               adopted rather than copied
+     */
+    void restoreChunk(int chunkX, int chunkY, long[] rows) {
+        int blocked = 0;
+        for (long row : rows) {
+            blocked += Long.bitCount(row);
+        }
+        if (blocked == 0) {
+            return;
+        }
+        ChunkedWorld.Chunk chunk = world.chunkFor(chunkX << ChunkedWorld.CHUNK_SHIFT, chunkY << ChunkedWorld.CHUNK_SHIFT);
+        count += blocked - chunk.obstacleCount;
+        chunk.blocked = rows;
+        chunk.obstacleCount = blocked;
+        changedChunks.add(key(chunkX, chunkY));
+        obstacleList = null;
+        version++;
+    }
+
+    /**
+     * Replaces the obstacles of one chunk with the given bitmap, dropping the custom colours of the
+     * obstacles it had. Unlike {@link #restoreChunk}, an empty bitmap clears the chunk.
+     *
+     * @param chunkX the column of the chunk
+     * @param chunkY the row of the chunk
+     * @param rows   the bitmap, one {@code long} per row with bit {@code x} for column {@code x};
+     *               adopted rather than copied
+     */
+    void replaceChunk(int chunkX, int chunkY, long[] rows) {
+        ChunkedWorld.Chunk chunk = world.chunkAt(chunkX << ChunkedWorld.CHUNK_SHIFT, chunkY << ChunkedWorld.CHUNK_SHIFT);
+        if (chunk != null && chunk.blocked != null) {
+            forEachColor(chunk, colors::remove);
+            changedChunks.add(key(chunkX, chunkY));
+            releaseIfClear(chunk, chunk.obstacleCount);
+            obstacleList = null;
+            version++;
+        }
+        restoreChunk(chunkX, chunkY, rows);
+    }
+
+    /**
+     * Gets the chunks whose obstacles or colours changed since the previous call, and starts
+     * tracking changes afresh.
+     *
+     * @return the packed positions of the changed chunks (column in the low 32 bits, row in the
+     *         high 32 bits) in ascending order, or null if every obstacle was removed at once since
+     *         the previous call, in which case every chunk must be taken as changed
+     */
+    long[] takeChangedChunks() {
+        long[] changed = null;
+        if (!allChanged) {
+            changed = new long[changedChunks.size()];
+            int i = 0;
+            for (long chunk : changedChunks) {
+                changed[i++] = chunk;
+            }
+            Arrays.sort(changed);
+        }
+        changedChunks.clear();
+        allChanged = false;
+        return changed;
+    }
+
+    /**
+     * Passes the packed position of every custom-coloured obstacle of a chunk to an action. Costs
+     * one lookup per obstacle of the chunk, however many custom colours the map holds.
+     *
+     * @param chunk  the chunk to look in
+     * @param action receives the packed position (X in the low 32 bits, Y in the high 32 bits)
+     * @return the number of positions passed to the action
+     */
+    int forEachColor(ChunkedWorld.Chunk chunk, LongConsumer action) {
+        if (chunk.blocked == null || colors.isEmpty()) {
+            return 0;
+        }
+        int found = 0;
+        int baseX = chunk.chunkX << ChunkedWorld.CHUNK_SHIFT;
+        int baseY = chunk.chunkY << ChunkedWorld.CHUNK_SHIFT;
+        for (int row = 0; row < ChunkedWorld.CHUNK_SIZE; row++) {
+            for (long bits = chunk.blocked[row]; bits != 0; bits &= bits - 1) {
+                long key = key(baseX + Long.numberOfTrailingZeros(bits), baseY + row);
+                if (colors.containsKey(key)) {
+                    action.accept(key);
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Gets the colour of the obstacle in a cell.
+     *
+     * @param x the X coordinate of the cell
+     * @param y the Y coordinate of the cell
+     * @return the colour of the obstacle, or {@link Obstacle#DEFAULT_COLOR} if it has none of its
+     *         own or there is no obstacle
+     */
+    int colorAt(int x, int y) {
+        return colors.getOrDefault(key(x, y), Obstacle.DEFAULT_COLOR);
+    }
+
+    /**
+     * Sets or clears the bits of a rectangle, one mask operation per chunk row.
+     * Chunks are only allocated when cells are blocked, never when they are cleared.
+     *
+     * @param x      the X coordinate of the top-left cell
+     * @param y      the Y coordinate of the top-left cell
+     * @param width  the width of the rectangle in cells
+     * @param height the height of the rectangle in cells
+     * @param value  true to block the cells, false to clear them
+     */
+    private void setRect(int x, int y, int width, int height, boolean value) {
+        int fromX = Math.max(0, x);
+        int toX = (int) Math.min(world.getSizeX(), (long) x + width);
+        int fromY = Math.max(0, y);
+        int toY = (int) Math.min(world.getSizeY(), (long) y + height);
+        if (fromX >= toX || fromY >= toY) {
+            return;
+        }
+        for (int chunkY = fromY >> ChunkedWorld.CHUNK_SHIFT; chunkY <= (toY - 1) >> ChunkedWorld.CHUNK_SHIFT; chunkY++) {
+            int baseY = chunkY << ChunkedWorld.CHUNK_SHIFT;
+            int firstRow = Math.max(fromY, baseY) - baseY;
+            int lastRow = Math.min(toY, baseY + ChunkedWorld.CHUNK_SIZE) - baseY;
+            for (int chunkX = fromX >> ChunkedWorld.CHUNK_SHIFT; chunkX <= (toX - 1) >> ChunkedWorld.CHUNK_SHIFT; chunkX++) {
+                int baseX = chunkX << ChunkedWorld.CHUNK_SHIFT;
+                int firstColumn = Math.max(fromX, baseX) - baseX;
+                int lastColumn = Math.min(toX, baseX + ChunkedWorld.CHUNK_SIZE) - baseX;
+                long mask = rowMask(firstColumn, lastColumn);
+                ChunkedWorld.Chunk chunk = value ? world.chunkFor(baseX, baseY) : world.chunkAt(baseX, baseY);
+                if (chunk == null || (!value && chunk.blocked == null)) {
+                    continue;
+                }
+                if (chunk.blocked == null) {
+                    chunk.blocked = new long[ChunkedWorld.CHUNK_SIZE];
+                }
+                changedChunks.add(key(chunkX, chunkY));
+                int changed = 0;
+                for (int row = firstRow; row < lastRow; row++) {
+                    long before = chunk.blocked[row];
+                    long after = value ? before | mask : before & ~mask;
+                    changed += Long.bitCount(before ^ after);
+                    chunk.blocked[row] = after;
+                }
+                if (value) {
+                    chunk.obstacleCount += changed;
+                    count += changed;
+                } else {
+                    releaseIfClear(chunk, changed);
+                }
+            }
+        }
+        // 区域内的自定义颜色一律清除，使用默认颜色
+        for (Iterator<Long> it = colors.keySet().iterator(); it.hasNext(); ) {
+            long key = it.next();
+            int cellX = (int) key;
+            int cellY = (int) (key >> 32);
+            if (cellX >= fromX && cellX < toX && cellY >= fromY && cellY < toY) {
+                it.remove();
+            }
+        }
+        obstacleList = null;
+        version++;
+    }
+
+    /**
+     * Builds the mask selecting a range of columns within a chunk row.
+     *
+     * @param firstColumn the first column, inclusive
+     * @param lastColumn  the last column, exclusive
+     * @return the mask with the bits of the columns set
+     */
+    private static long rowMask(int firstColumn, int lastColumn) {
+        return (lastColumn == ChunkedWorld.CHUNK_SIZE ? -1L : (1L << lastColumn) - 1) & (-1L << firstColumn);
+    }
+
+    /**
+     * Accounts for obstacles cleared from a chunk, dropping its bitmap once it has no obstacles left.
+     *
+     * @param chunk   the chunk the obstacles were cleared from
+     * @param cleared the number of obstacles cleared
+     */
+    private void releaseIfClear(ChunkedWorld.Chunk chunk, int cleared) {
+        chunk.obstacleCount -= cleared;
+        count -= cleared;
+        if (chunk.obstacleCount == 0) {
+            chunk.blocked = null;
+            world.release(chunk);
+        }
+    }
+
+    /**
+     * Packs a cell position into a single key for the colour table.
+     *
+     * @param x the X coordinate of the cell
+     * @param y the Y coordinate of the cell
+     * @return the packed key
+     */
+    private static long key(int x, int y) {
+        return (long) y << 32 | (x & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,481 @@
+package application;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The PixelRasterizer class draws an {@link ArenaSnapshot} straight into a buffer of pixels, one
+ * solid block of colour per cell, for arenas with too many robots to draw as shapes. The buffer
+ * holds premultiplied 0xAARRGGBB pixels row by row, the layout of a JavaFX {@code PixelBuffer}
+ * with the {@code IntArgbPre} format, so {@link RobotCanvas} can show it without copying.
+ * <p>
+ * The image may be larger or smaller than the arena. Each cell covers the pixels from
+ * {@code floor(x * width / sizeX)} up to the start of the next cell, and always at least one, so
+ * an image smaller than the arena shows the last robot or obstacle drawn on each pixel.
+ * <p>
+ * A frame is drawn in three passes, each of which may be split over a {@link ForkJoinPool}: the
+ * pixels are cleared to transparent, the obstacles are drawn, then the robots on top of them.
+ * Writes within a pass only overlap where several robots share a cell or several cells share a
+ * pixel, and such a pixel ends up with the colour of one of them, not necessarily the same one
+ * every frame.
+ * <p>
+ * Both kinds of image can cover a window of the arena rather than all of it, for a zoomed-in view.
+ * Zoomed far out, where a pixel covers many cells, {@link #renderDensity} draws a heatmap of how
+ * many robots stand on each pixel instead of the colour of one of them.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see RobotCanvas.RenderMode#PIXELS
+ */
+    public class PixelRasterizer {
+
+    /**
+     * The largest width and height of the image {@link #extent(int, double)} suggests, in pixels.
+     */
+    public static final int MAX_EXTENT = 4096;
+
+    /**
+     * The smallest number of pixels, obstacles or robots worth drawing in a separate task.
+     */
+    private static final int MIN_WORK_PER_TASK = 16384;
+
+    /**
+     * The pass that clears the pixels.
+     */
+    private static final int CLEAR = 0;
+
+    /**
+     * The pass that draws the obstacles.
+     */
+    private static final int OBSTACLES = 1;
+
+    /**
+     * The pass that draws the robots.
+     */
+    private static final int ROBOTS = 2;
+
+    /**
+     * The pass that colours the pixels of a heatmap by their robot count.
+     */
+    private static final int HEAT = 3;
+
+    /**
+     * The premultiplied heatmap colours, from a translucent green for the fewest robots through
+     * yellow to an opaque red for the most.
+     */
+    private static final int[] HEAT_COLORS = new int[256];
+
+    static {
+        for (int i = 0; i < HEAT_COLORS.length; i++) {
+            double level = (i + 1) / (double) HEAT_COLORS.length;
+            int red = (int) (0xFF * Math.min(1, 2 * level));
+            int green = (int) (0xFF * Math.min(1, 2 * (1 - level)));
+            int alpha = (int) (0x60 + 0x9F * level);
+            HEAT_COLORS[i] = premultiply(alpha << 24 | red << 16 | green << 8);
+        }
+    }
+
+    /**
+     * The pool the passes are split over, or null to draw on the calling thread.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The robot count of each pixel of the last heatmap, reused between frames.
+     */
+    private int[] counts = new int[0];
+
+    /**
+     * Constructs a PixelRasterizer that draws on the calling thread.
+     */
+    public PixelRasterizer() {
+        this(null);
+    }
+
+    /**
+     * Constructs a PixelRasterizer that splits each pass over the given pool.
+     *
+     * @param pool the pool to draw on, or null to draw on the calling thread
+     */
+    public PixelRasterizer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Creates a PixelRasterizer that uses the common pool.
+     *
+     * @return a parallel PixelRasterizer
+     */
+    public static PixelRasterizer parallel() {
+        return new PixelRasterizer(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Works out how many pixels wide or high an image of the arena should be: a whole number of
+     * pixels per cell, as close to the cell size on screen as possible, but never more than
+     * {@link #MAX_EXTENT} pixels.
+     *
+     * @param cells    the number of cells along the side
+     * @param cellSize the size of a cell on screen, in pixels
+     * @return the number of pixels along the side
+     */
+    public static int extent(int cells, double cellSize) {
+        long perCell = Math.max(1, (long) cellSize);
+        return (int) Math.max(1, Math.min(MAX_EXTENT, cells * perCell));
+    }
+
+    /**
+     * Draws a snapshot into a buffer of pixels.
+     *
+     * @param snapshot the snapshot to draw
+     * @param pixels   the buffer to draw into, holding at least {@code width * height} pixels
+     * @param width    the width of the image, in pixels
+     * @param height   the height of the image, in pixels
+     * @throws IllegalArgumentException if the buffer is too small for the image
+     */
+    public void render(ArenaSnapshot snapshot, IntBuffer pixels, int width, int height) {
+        render(snapshot, 0, 0, snapshot.getSizeX(), snapshot.getSizeY(), pixels, width, height);
+    }
+
+    /**
+     * Draws a window of a snapshot into a buffer of pixels.
+     *
+     * @param snapshot the snapshot to draw
+     * @param x        the X coordinate of the top-left cell of the window
+     * @param y        the Y coordinate of the top-left cell of the window
+     * @param cellsX   the width of the window in cells
+     * @param cellsY   the height of the window in cells
+     * @param pixels   the buffer to draw into, holding at least {@code width * height} pixels
+     * @param width    the width of the image, in pixels
+     * @param height   the height of the image, in pixels
+     * @throws IllegalArgumentException if the buffer is too small for the image
+     */
+    public void render(ArenaSnapshot snapshot, int x, int y, int cellsX, int cellsY, IntBuffer pixels, int width, int height) {
+        Frame frame = new Frame(snapshot, x, y, cellsX, cellsY, pixels, width, height);
+        run(frame, CLEAR, height);
+        run(frame, OBSTACLES, frame.obstacles.size());
+        run(frame, ROBOTS, snapshot.size());
+    }
+
+    /**
+     * Draws a heatmap of a window of a snapshot into a buffer of pixels: the obstacles, and over
+     * them every pixel with robots in a colour that grows from green to red with the logarithm of
+     * its robot count relative to the busiest pixel. The image should be no larger than the window,
+     * so that every pixel covers at least one cell. Robots are counted on the calling thread; the
+     * other passes may run in parallel.
+     *
+     * @param snapshot the snapshot to draw
+     * @param x        the X coordinate of the top-left cell of the window
+     * @param y        the Y coordinate of the top-left cell of the window
+     * @param cellsX   the width of the window in cells
+     * @param cellsY   the height of the window in cells
+     * @param pixels   the buffer to draw into, holding at least {@code width * height} pixels
+     * @param width    the width of the image, in pixels
+     * @param height   the height of the image, in pixels
+     * @throws IllegalArgumentException if the buffer is too small for the image
+     */
+    public void renderDensity(ArenaSnapshot snapshot, int x, int y, int cellsX, int cellsY, IntBuffer pixels, int width, int height) {
+        Frame frame = new Frame(snapshot, x, y, cellsX, cellsY, pixels, width, height);
+        run(frame, CLEAR, height);
+        run(frame, OBSTACLES, frame.obstacles.size());
+
+        int area = width * height;
+        if (counts.length < area) {
+            counts = new int[area];
+        } else {
+            Arrays.fill(counts, 0, area, 0);
+        }
+        int max = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            int pixel = frame.pixelOf(snapshot.getX(i), snapshot.getY(i));
+            if (pixel >= 0) {
+                max = Math.max(max, ++counts[pixel]);
+            }
+        }
+        frame.counts = counts;
+        frame.logMax = Math.log1p(max);
+        run(frame, HEAT, height);
+    }
+
+    /**
+     * Runs one pass, on the pool if there is enough work for it.
+     *
+     * @param frame the frame being drawn
+     * @param pass  the pass to run
+     * @param work  the number of rows, obstacles or robots the pass covers
+     */
+    private void run(Frame frame, int pass, int work) {
+        // 按行划分的步骤，每行的像素数计入工作量
+        long weight = pass == CLEAR || pass == HEAT ? (long) work * frame.width : work;
+        if (pool != null && weight >= MIN_WORK_PER_TASK) {
+            pool.invoke(new PassTask(frame, pass, 0, work));
+        } else {
+            frame.draw(pass, 0, work);
+        }
+    }
+
+    /**
+     * Converts a packed 0xAARRGGBB color into a premultiplied one.
+     *
+     * @param argb the packed color
+     * @return the color with each channel multiplied by its alpha
+     */
+    static int premultiply(int argb) {
+        int alpha = argb >>> 24;
+        if (alpha == 0xFF) {
+            return argb;
+        }
+        if (alpha == 0) {
+            return 0;
+        }
+        int red = ((argb >> 16) & 0xFF) * alpha / 0xFF;
+        int green = ((argb >> 8) & 0xFF) * alpha / 0xFF;
+        int blue = (argb & 0xFF) * alpha / 0xFF;
+        return alpha << 24 | red << 16 | green << 8 | blue;
+    }
+
+    /**
+     * The state of one frame being drawn, shared by the tasks of its passes.
+     */
+    private static final class Frame {
+
+        /**
+         * The snapshot being drawn.
+         */
+        final ArenaSnapshot snapshot;
+
+        /**
+         * The obstacles of the snapshot.
+         */
+        final List<Obstacle> obstacles;
+
+        /**
+         * The buffer being drawn into.
+         */
+        final IntBuffer pixels;
+
+        /**
+         * The width of the image, in pixels.
+         */
+        final int width;
+
+        /**
+         * The height of the image, in pixels.
+         */
+        final int height;
+
+        /**
+         * The X coordinate of the top-left cell of the window being drawn.
+         */
+        final int originX;
+
+        /**
+         * The Y coordinate of the top-left cell of the window being drawn.
+         */
+        final int originY;
+
+        /**
+         * The width of the window in cells.
+         */
+        final int cellsX;
+
+        /**
+         * The height of the window in cells.
+         */
+        final int cellsY;
+
+        /**
+         * The robot count of each pixel, for a heatmap.
+         */
+        int[] counts;
+
+        /**
+         * The logarithm of one more than the largest robot count of a pixel, for a heatmap.
+         */
+        double logMax;
+
+        /**
+         * The number of pixels per cell horizontally, possibly less than one.
+         */
+        final double scaleX;
+
+        /**
+         * The number of pixels per cell vertically, possibly less than one.
+         */
+        final double scaleY;
+
+        /**
+         * Constructs the state of a frame.
+         *
+         * @param snapshot the snapshot being drawn
+         * @param x        the X coordinate of the top-left cell of the window
+         * @param y        the Y coordinate of the top-left cell of the window
+         * @param cellsX   the width of the window in cells
+         * @param cellsY   the height of the window in cells
+         * @param pixels   the buffer being drawn into
+         * @param width    the width of the image, in pixels
+         * @param height   the height of the image, in pixels
+         * @throws IllegalArgumentException if the buffer is too small for the image
+         */
+        Frame(ArenaSnapshot snapshot, int x, int y, int cellsX, int cellsY, IntBuffer pixels, int width, int height) {
+            if ((long) width * height > pixels.capacity()) {
+                throw new IllegalArgumentException("Pixel buffer too small for a " + width + "x" + height + " image.");
+            }
+            this.snapshot = snapshot;
+            this.obstacles = snapshot.getObstacles();
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+            this.originX = x;
+            this.originY = y;
+            this.cellsX = Math.max(1, cellsX);
+            this.cellsY = Math.max(1, cellsY);
+            this.scaleX = (double) width / this.cellsX;
+            this.scaleY = (double) height / this.cellsY;
+        }
+
+        /**
+         * Runs part of a pass.
+         *
+         * @param pass the pass to run
+         * @param from the first row, obstacle or robot, inclusive
+         * @param to   the last row, obstacle or robot, exclusive
+         */
+        void draw(int pass, int from, int to) {
+            switch (pass) {
+                case CLEAR:
+                    for (int row = from; row < to; row++) {
+                        int start = row * width;
+                        for (int i = start; i < start + width; i++) {
+                            pixels.put(i, 0);
+                        }
+                    }
+                    break;
+                case OBSTACLES:
+                    for (int i = from; i < to; i++) {
+                        Obstacle obstacle = obstacles.get(i);
+                        fillCell(obstacle.getX(), obstacle.getY(), premultiply(obstacle.getColor()));
+                    }
+                    break;
+                case ROBOTS:
+                    for (int i = from; i < to; i++) {
+                        fillCell(snapshot.getX(i), snapshot.getY(i), premultiply(snapshot.getColor(i)));
+                    }
+                    break;
+                default:
+                    for (int i = from * width; i < to * width; i++) {
+                        if (counts[i] > 0) {
+                            // 按对数缩放，少量机器人的像素也清晰可见
+                            int level = (int) (Math.log1p(counts[i]) / logMax * (HEAT_COLORS.length - 1));
+                            pixels.put(i, HEAT_COLORS[level]);
+                        }
+                    }
+                    break;
+            }
+        }
+
+        /**
+         * Gets the pixel a cell's top-left corner falls on.
+         *
+         * @param x the X coordinate of the cell
+         * @param y the Y coordinate of the cell
+         * @return the index of the pixel, or -1 if the cell is outside the window
+         */
+        int pixelOf(int x, int y) {
+            int column = x - originX;
+            int row = y - originY;
+            if (column < 0 || row < 0 || column >= cellsX || row >= cellsY) {
+                return -1;
+            }
+            return Math.min(height - 1, (int) (row * scaleY)) * width + Math.min(width - 1, (int) (column * scaleX));
+        }
+
+        /**
+         * Fills the pixels covered by a cell. Cells outside the window are ignored.
+         *
+         * @param x     the X coordinate of the cell
+         * @param y     the Y coordinate of the cell
+         * @param color the premultiplied color to fill with
+         */
+        private void fillCell(int x, int y, int color) {
+            int column = x - originX;
+            int row = y - originY;
+            if (column < 0 || row < 0 || column >= cellsX || row >= cellsY) {
+                return;
+            }
+            int left = Math.min(width - 1, (int) (column * scaleX));
+            int top = Math.min(height - 1, (int) (row * scaleY));
+            int right = Math.min(width, Math.max(left + 1, (int) ((column + 1) * scaleX)));
+            int bottom = Math.min(height, Math.max(top + 1, (int) ((row + 1) * scaleY)));
+            for (int pixelY = top; pixelY < bottom; pixelY++) {
+                int start = pixelY * width;
+                for (int pixelX = left; pixelX < right; pixelX++) {
+                    pixels.put(start + pixelX, color);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a range of a pass, splitting it in two while it is large enough.
+     */
+    private static final class PassTask extends RecursiveAction {
+
+        /**
+         * Serial version for the serializable {@link RecursiveAction} superclass.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The frame being drawn.
+         */
+        private final transient Frame frame;
+
+        /**
+         * The pass to run.
+         */
+        private final int pass;
+
+        /**
+         * The first row, obstacle or robot of the range, inclusive.
+         */
+        private final int from;
+
+        /**
+         * The last row, obstacle or robot of the range, exclusive.
+         */
+        private final int to;
+
+        /**
+         * Constructs a task running the range {@code [from, to)} of a pass.
+         *
+         * @param frame the frame being drawn
+         * @param pass  the pass to run
+         * @param from  the first row, obstacle or robot, inclusive
+         * @param to    the last row, obstacle or robot, exclusive
+         */
+        PassTask(Frame frame, int pass, int from, int to) {
+            this.frame = frame;
+            this.pass = pass;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Runs the range, or splits it in two.
+         */
+        @Override
+        protected void compute() {
+            long weight = pass == CLEAR || pass == HEAT ? (long) (to - from) * frame.width : to - from;
+            if (weight > MIN_WORK_PER_TASK && to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PassTask(frame, pass, from, middle), new PassTask(frame, pass, middle, to));
+            } else {
+                frame.draw(pass, from, to);
+            }
+        }
+    }
+}
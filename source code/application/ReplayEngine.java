@@ -0,0 +1,717 @@
+package application;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The ReplayEngine class plays back a recording written by a {@link TickRecorder}. It rebuilds the
+ * recorded run in an arena of its own, {@link #getArena()}, which can be shown in a
+ * {@link RobotCanvas} or followed by any {@link ArenaObserver} exactly like a live arena: every
+ * replayed tick publishes a snapshot and notifies the observers. The replay arena must only be
+ * moved by its replay engine, so it refuses to be advanced with {@link RobotArena#run(long)}.
+ * <p>
+ * The replay can be stepped one tick at a time, {@link #play(double) played} at any rate, or
+ * {@link #seek(long) moved to any tick}. Seeking finds the nearest keyframe at or before the tick
+ * by binary search over the keyframe index and applies at most one keyframe interval of deltas
+ * from there. Recordings whose recorder was never closed, for example because the process died,
+ * have no index; it is rebuilt by scanning the recording once when it is opened, and the replay
+ * ends at the last complete frame.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see TickRecorder
+ */
+    public class ReplayEngine implements AutoCloseable {
+
+    /**
+     * The robot types, cached to avoid copying the array on every lookup.
+     */
+    private static final RobotArena.RobotType[] TYPES = RobotArena.RobotType.values();
+
+    /**
+     * The directions, cached to avoid copying the array on every lookup.
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * The recording being played back.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The arena the recording is replayed in.
+     */
+    private final RobotArena arena;
+
+    /**
+     * The buffer holding the kind and length of a frame.
+     */
+    private final ByteBuffer head = ByteBuffer.allocate(6);
+
+    /**
+     * The buffer holding the payload of the frame last read.
+     */
+    private ByteBuffer payload = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * The kind of the frame last read.
+     */
+    private byte kind;
+
+    /**
+     * The ticks of the keyframes, ascending.
+     */
+    private long[] keyframeTicks = new long[16];
+
+    /**
+     * The file offsets of the keyframes.
+     */
+    private long[] keyframeOffsets = new long[16];
+
+    /**
+     * The number of keyframes.
+     */
+    private int keyframes;
+
+    /**
+     * The tick of the last frame in the recording.
+     */
+    private long lastTick;
+
+    /**
+     * The offset in the file at which the frames end.
+     */
+    private long end;
+
+    /**
+     * The offset in the file of the next frame to apply.
+     */
+    private long position;
+
+    /**
+     * Whether {@link #stop()} has been called since playing started.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Opens a recording and shows its first keyframe in the replay arena.
+     *
+     * @param file the recording to play back
+     * @throws IOException if the file cannot be read, is not a recording, was written by another
+     *                     version of the program or holds no keyframe
+     */
+    public ReplayEngine(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(TickRecorder.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0);
+            header.flip();
+            if (header.getInt() != TickRecorder.MAGIC) {
+                throw new IOException("Not a robot arena recording: " + file);
+            }
+            short version = header.getShort();
+            if (version != TickRecorder.VERSION) {
+                throw new IOException("Unsupported recording version " + version + ": " + file);
+            }
+            short flags = header.getShort();
+            int sizeX = header.getInt();
+            int sizeY = header.getInt();
+            long seed = header.getLong();
+            if (sizeX <= 0 || sizeY <= 0) {
+                throw new IOException("Corrupt recording header: " + file);
+            }
+            this.arena = new RobotArena(new ArenaBounds(sizeX, sizeY, (flags & TickRecorder.FLAG_TORUS) != 0), seed);
+            arena.setReplay(true);
+            if (!readIndex()) {
+                scanIndex();
+            }
+            if (keyframes == 0) {
+                throw new IOException("Recording holds no keyframe: " + file);
+            }
+            loadKeyframe(0);
+            arena.replayed(keyframeTicks[0], true);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the arena the recording is replayed in.
+     *
+     * @return the replay arena
+     */
+    public RobotArena getArena() {
+        return arena;
+    }
+
+    /**
+     * Gets the tick the replay arena currently shows.
+     *
+     * @return the current tick
+     */
+    public long getTick() {
+        return arena.getTick();
+    }
+
+    /**
+     * Gets the tick at which the recording starts.
+     *
+     * @return the first tick
+     */
+    public long getFirstTick() {
+        return keyframeTicks[0];
+    }
+
+    /**
+     * Gets the tick at which the recording ends.
+     *
+     * @return the last tick
+     */
+    public long getLastTick() {
+        return lastTick;
+    }
+
+    /**
+     * Replays the next tick, together with the edits made before it, and notifies the observers.
+     * At the end of the recording, the edits made after the last tick are applied instead.
+     *
+     * @return true if anything was replayed, false if the end of the recording has been reached
+     * @throws IOException if the recording cannot be read or is corrupt
+     */
+    public boolean step() throws IOException {
+        return advance(true);
+    }
+
+    /**
+     * Moves the replay to the state right after the given tick and notifies the observers once.
+     * Moving forward within the current keyframe interval continues from the current state;
+     * anything else starts from the nearest keyframe at or before the tick.
+     *
+     * @param tick the tick to move to
+     * @throws IOException              if the recording cannot be read or is corrupt
+     * @throws IllegalArgumentException if the tick is outside the recording
+     */
+    public void seek(long tick) throws IOException {
+        if (tick < getFirstTick() || tick > lastTick) {
+            throw new IllegalArgumentException("Tick " + tick + " is outside the recording ("
+                    + getFirstTick() + " to " + lastTick + ").");
+        }
+        int keyframe = Arrays.binarySearch(keyframeTicks, 0, keyframes, tick);
+        if (keyframe < 0) {
+            keyframe = -keyframe - 2;
+        }
+        long current = arena.getTick();
+        if (current > tick || current < keyframeTicks[keyframe]) {
+            loadKeyframe(keyframe);
+        }
+        while (arena.getTick() < tick && advance(false)) {
+            // 只在到达目标帧后通知观察者
+        }
+        arena.replayed(arena.getTick(), true);
+    }
+
+    /**
+     * Plays the recording to its end, as for {@link #play(double, long)}.
+     *
+     * @param ticksPerSecond the number of ticks to replay per second, or 0 or less to replay as
+     *                       fast as possible
+     * @return the number of ticks replayed
+     * @throws IOException if the recording cannot be read or is corrupt
+     */
+    public long play(double ticksPerSecond) throws IOException {
+        return play(ticksPerSecond, lastTick);
+    }
+
+    /**
+     * Plays the recording on the calling thread, one tick at a time at the given rate, until the
+     * given tick or the end of the recording is reached or {@link #stop()} is called from another
+     * thread. The observers are notified after every tick.
+     *
+     * @param ticksPerSecond the number of ticks to replay per second, or 0 or less to replay as
+     *                       fast as possible
+     * @param untilTick      the tick at which to stop
+     * @return the number of ticks replayed
+     * @throws IOException if the recording cannot be read or is corrupt
+     */
+    public long play(double ticksPerSecond, long untilTick) throws IOException {
+        stopped = false;
+        long interval = ticksPerSecond > 0 ? (long) (1e9 / ticksPerSecond) : 0;
+        long next = System.nanoTime();
+        long played = 0;
+        while (!stopped && arena.getTick() < untilTick) {
+            if (interval > 0) {
+                next += interval;
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            if (!advance(true)) {
+                break;
+            }
+            played++;
+        }
+        return played;
+    }
+
+    /**
+     * Asks a replay running in {@link #play(double, long)} on another thread to stop after the
+     * current tick.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Closes the recording. The replay arena keeps showing the last replayed tick.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Applies the frames up to and including the next tick. Keyframes on the way are skipped,
+     * since the state they hold has already been reached through the deltas.
+     *
+     * @param notify true to notify the observers afterwards
+     * @return true if anything was applied
+     * @throws IOException if the recording cannot be read or is corrupt
+     */
+    private boolean advance(boolean notify) throws IOException {
+        boolean applied = false;
+        long tick = arena.getTick();
+        while (position < end) {
+            long next = readFrame(position);
+            if (kind == TickRecorder.KEYFRAME) {
+                position = next;
+                continue;
+            }
+            if (kind != TickRecorder.TICK && kind != TickRecorder.EDIT) {
+                break;
+            }
+            long frameTick = getVarLong(payload);
+            applyDelta();
+            position = next;
+            applied = true;
+            if (kind == TickRecorder.TICK) {
+                tick = frameTick;
+                break;
+            }
+        }
+        if (applied) {
+            arena.replayed(tick, notify);
+        }
+        return applied;
+    }
+
+    /**
+     * Replaces the state of the replay arena with a keyframe and continues from there.
+     *
+     * @param keyframe the index of the keyframe
+     * @throws IOException if the recording cannot be read or is corrupt
+     */
+    private void loadKeyframe(int keyframe) throws IOException {
+        long next = readFrame(keyframeOffsets[keyframe]);
+        if (kind != TickRecorder.KEYFRAME) {
+            throw new IOException("Corrupt recording: no keyframe at offset " + keyframeOffsets[keyframe] + ".");
+        }
+        long tick = getVarLong(payload);
+        int count = getCount(payload);
+        int capacity = Math.max(1, count);
+        int[] ids = new int[capacity];
+        byte[] types = new byte[capacity];
+        int[] xs = new int[capacity];
+        int[] ys = new int[capacity];
+        byte[] directions = new byte[capacity];
+        int maxId = -1;
+        int id = 0;
+        for (int i = 0; i < count; i++) {
+            id += (int) unzigzag(getVarLong(payload));
+            ids[i] = id;
+            types[i] = getOrdinal(payload, TYPES.length);
+            xs[i] = getCoordinate(payload, arena.getSizeX());
+            ys[i] = getCoordinate(payload, arena.getSizeY());
+            directions[i] = getOrdinal(payload, DIRECTIONS.length);
+            maxId = Math.max(maxId, id);
+        }
+        // 关键帧中的位置同时作为初始位置
+        arena.getRobotStore().restore(count, 0, ids, types, xs, ys, directions,
+                Arrays.copyOf(xs, capacity), Arrays.copyOf(ys, capacity), Arrays.copyOf(directions, capacity),
+                new long[capacity]);
+        Robot.reserveId(maxId);
+        arena.getSpatialGrid().rebuild(arena.getRobotStore());
+        readObstacles();
+        arena.replayed(tick, false);
+        position = next;
+    }
+
+    /**
+     * Applies the delta in the payload, whose tick has already been read, to the replay arena.
+     * Changes refer to robots by their index in store order, which the replay store shares with
+     * the recorded one, so a single cursor walks the slots.
+     *
+     * @throws IOException if the delta is corrupt
+     */
+    private void applyDelta() throws IOException {
+        RobotStore store = arena.getRobotStore();
+        SpatialGrid grid = arena.getSpatialGrid();
+        ArenaBounds bounds = arena.getBounds();
+        int changes = getCount(payload);
+        int index = -1;
+        int slot = -1;
+        for (int i = 0; i < changes; i++) {
+            long target = index + getVarLong(payload) + 1;
+            while (index < target) {
+                slot++;
+                if (slot >= store.size()) {
+                    throw new IOException("Corrupt recording: change refers to a missing robot.");
+                }
+                if (store.isAlive(slot)) {
+                    index++;
+                }
+            }
+            int flags = payload.get();
+            if ((flags & TickRecorder.MOVED) != 0) {
+                int x = store.getX(slot) + (int) unzigzag(getVarLong(payload));
+                int y = store.getY(slot) + (int) unzigzag(getVarLong(payload));
+                if (!bounds.contains(x, y)) {
+                    throw new IOException("Corrupt recording: robot moved out of the arena.");
+                }
+                store.setX(slot, x);
+                store.setY(slot, y);
+                grid.move(slot, x, y);
+            }
+            if ((flags & TickRecorder.TURNED) != 0) {
+                store.setDirection(slot, DIRECTIONS[getOrdinal(payload, DIRECTIONS.length)]);
+            }
+            if ((flags & TickRecorder.REMOVED) != 0) {
+                grid.remove(slot);
+                store.remove(slot);
+            }
+        }
+        int spawns = getCount(payload);
+        int id = 0;
+        for (int i = 0; i < spawns; i++) {
+            id += (int) unzigzag(getVarLong(payload));
+            RobotArena.RobotType type = TYPES[getOrdinal(payload, TYPES.length)];
+            int x = getCoordinate(payload, arena.getSizeX());
+            int y = getCoordinate(payload, arena.getSizeY());
+            Direction direction = DIRECTIONS[getOrdinal(payload, DIRECTIONS.length)];
+            grid.insert(store.add(id, type, x, y, direction), x, y);
+            Robot.reserveId(id);
+        }
+        readObstacles();
+    }
+
+    /**
+     * Applies the obstacles in the payload, if the frame holds any, according to its obstacle flag.
+     *
+     * @throws IOException if the obstacles are corrupt
+     */
+    private void readObstacles() throws IOException {
+        int flag = payload.get();
+        if (flag == TickRecorder.ALL_OBSTACLES) {
+            applyObstacles();
+        } else if (flag == TickRecorder.CHANGED_CHUNKS) {
+            applyChangedChunks();
+        } else if (flag != 0) {
+            throw new IOException("Corrupt recording: unknown obstacle flag " + flag + ".");
+        }
+    }
+
+    /**
+     * Replaces every obstacle of the replay arena with the obstacles in the payload.
+     *
+     * @throws IOException if the obstacles are corrupt
+     */
+    private void applyObstacles() throws IOException {
+        ObstacleMap obstacles = arena.getObstacleMap();
+        obstacles.clearAll();
+        int chunksX = (arena.getSizeX() - 1 >> ChunkedWorld.CHUNK_SHIFT) + 1;
+        int chunksY = (arena.getSizeY() - 1 >> ChunkedWorld.CHUNK_SHIFT) + 1;
+        int chunks = getCount(payload);
+        for (int i = 0; i < chunks; i++) {
+            int chunkX = getCoordinate(payload, chunksX);
+            int chunkY = getCoordinate(payload, chunksY);
+            long[] rows = new long[ChunkedWorld.CHUNK_SIZE];
+            payload.asLongBuffer().get(rows);
+            payload.position(payload.position() + 8 * rows.length);
+            obstacles.restoreChunk(chunkX, chunkY, rows);
+        }
+        int colors = getCount(payload);
+        for (int i = 0; i < colors; i++) {
+            int x = getCoordinate(payload, arena.getSizeX());
+            int y = getCoordinate(payload, arena.getSizeY());
+            int color = (int) getVarLong(payload);
+            if (obstacles.isBlocked(x, y)) {
+                obstacles.add(new Obstacle(x, y, color));
+            }
+        }
+    }
+
+    /**
+     * Replaces the obstacles of the chunks in the payload, leaving the other chunks as they are.
+     *
+     * @throws IOException if the obstacles are corrupt
+     */
+    private void applyChangedChunks() throws IOException {
+        ObstacleMap obstacles = arena.getObstacleMap();
+        int chunksX = (arena.getSizeX() - 1 >> ChunkedWorld.CHUNK_SHIFT) + 1;
+        int chunksY = (arena.getSizeY() - 1 >> ChunkedWorld.CHUNK_SHIFT) + 1;
+        int chunks = getCount(payload);
+        for (int i = 0; i < chunks; i++) {
+            int chunkX = getCoordinate(payload, chunksX);
+            int chunkY = getCoordinate(payload, chunksY);
+            long[] rows = new long[ChunkedWorld.CHUNK_SIZE];
+            payload.asLongBuffer().get(rows);
+            payload.position(payload.position() + 8 * rows.length);
+            obstacles.replaceChunk(chunkX, chunkY, rows);
+            int colors = getCount(payload);
+            for (int j = 0; j < colors; j++) {
+                int x = getCoordinate(payload, arena.getSizeX());
+                int y = getCoordinate(payload, arena.getSizeY());
+                int color = (int) getVarLong(payload);
+                if (obstacles.isBlocked(x, y)) {
+                    obstacles.add(new Obstacle(x, y, color));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the keyframe index written when the recorder was closed.
+     *
+     * @return true if the recording has an index, false if it was never closed
+     * @throws IOException if the index cannot be read or is corrupt
+     */
+    private boolean readIndex() throws IOException {
+        long size = channel.size();
+        if (size < TickRecorder.HEADER_SIZE + TickRecorder.TRAILER_SIZE) {
+            return false;
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(TickRecorder.TRAILER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(trailer, size - TickRecorder.TRAILER_SIZE);
+        trailer.flip();
+        long indexOffset = trailer.getLong();
+        if (trailer.getInt() != TickRecorder.INDEX_MAGIC) {
+            return false;
+        }
+        if (indexOffset < TickRecorder.HEADER_SIZE || indexOffset >= size - TickRecorder.TRAILER_SIZE) {
+            throw new IOException("Corrupt recording: bad index offset.");
+        }
+        readFrame(indexOffset);
+        if (kind != TickRecorder.INDEX) {
+            throw new IOException("Corrupt recording: no index at offset " + indexOffset + ".");
+        }
+        lastTick = getVarLong(payload);
+        int count = getCount(payload);
+        long tick = 0;
+        long offset = 0;
+        for (int i = 0; i < count; i++) {
+            tick += getVarLong(payload);
+            offset += getVarLong(payload);
+            if (offset < TickRecorder.HEADER_SIZE || offset >= indexOffset) {
+                throw new IOException("Corrupt recording: bad keyframe offset.");
+            }
+            addKeyframe(tick, offset);
+        }
+        end = indexOffset;
+        return true;
+    }
+
+    /**
+     * Rebuilds the keyframe index of a recording that was never closed by reading every frame.
+     * The recording is taken to end at the last complete frame.
+     *
+     * @throws IOException if the recording cannot be read
+     */
+    private void scanIndex() throws IOException {
+        long size = channel.size();
+        long at = TickRecorder.HEADER_SIZE;
+        end = at;
+        while (at < size) {
+            long next;
+            try {
+                next = readFrame(at);
+            } catch (EOFException e) {
+                break;
+            }
+            if (kind == TickRecorder.INDEX) {
+                break;
+            }
+            long tick = getVarLong(payload);
+            if (kind == TickRecorder.KEYFRAME) {
+                addKeyframe(tick, at);
+            }
+            lastTick = Math.max(lastTick, tick);
+            at = next;
+            end = at;
+        }
+    }
+
+    /**
+     * Appends a keyframe to the index.
+     *
+     * @param tick   the tick of the keyframe
+     * @param offset the offset of the keyframe in the file
+     * @throws IOException if the keyframe is out of order
+     */
+    private void addKeyframe(long tick, long offset) throws IOException {
+        if (keyframes > 0 && tick <= keyframeTicks[keyframes - 1]) {
+            throw new IOException("Corrupt recording: keyframes out of order.");
+        }
+        if (keyframes == keyframeTicks.length) {
+            keyframeTicks = Arrays.copyOf(keyframeTicks, keyframes * 2);
+            keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframes * 2);
+        }
+        keyframeTicks[keyframes] = tick;
+        keyframeOffsets[keyframes] = offset;
+        keyframes++;
+    }
+
+    /**
+     * Reads the frame starting at the given offset: its kind into {@link #kind} and its payload
+     * into {@link #payload}.
+     *
+     * @param at the offset of the frame
+     * @return the offset of the frame after it
+     * @throws IOException  if an I/O error occurs or the frame is corrupt
+     * @throws EOFException if the file ends inside the frame
+     */
+    private long readFrame(long at) throws IOException {
+        head.clear();
+        while (head.hasRemaining()) {
+            if (channel.read(head, at + head.position()) < 0) {
+                break;
+            }
+        }
+        head.flip();
+        if (head.remaining() < 2) {
+            throw new EOFException("Truncated recording.");
+        }
+        kind = head.get();
+        long length = getVarLong(head);
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Corrupt recording: frame too long.");
+        }
+        int size = (int) length;
+        if (payload.capacity() < size) {
+            payload = ByteBuffer.allocate(Math.max(size, payload.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        payload.clear().limit(size);
+        long start = at + head.position();
+        readFully(payload, start);
+        payload.flip();
+        return start + size;
+    }
+
+    /**
+     * Fills a buffer from the recording, starting at the given offset.
+     *
+     * @param buffer the buffer to fill
+     * @param at     the offset to read from
+     * @throws IOException  if an I/O error occurs
+     * @throws EOFException if the file ends before the buffer is full
+     */
+    private void readFully(ByteBuffer buffer, long at) throws IOException {
+        long offset = at - buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Truncated recording.");
+            }
+        }
+    }
+
+    /**
+     * Decodes an unsigned varint.
+     *
+     * @param in the buffer to decode from
+     * @return the value
+     * @throws IOException if the varint is longer than ten bytes or runs past the buffer
+     */
+    private static long getVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!in.hasRemaining()) {
+                throw new EOFException("Truncated recording frame.");
+            }
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt recording: varint too long.");
+    }
+
+    /**
+     * Decodes a count, which must fit into an int.
+     *
+     * @param in the buffer to decode from
+     * @return the count
+     * @throws IOException if the count is corrupt
+     */
+    private static int getCount(ByteBuffer in) throws IOException {
+        long count = getVarLong(in);
+        if (count > Integer.MAX_VALUE) {
+            throw new IOException("Corrupt recording: bad count.");
+        }
+        return (int) count;
+    }
+
+    /**
+     * Decodes a coordinate, which must be less than the given limit.
+     *
+     * @param in    the buffer to decode from
+     * @param limit the exclusive upper bound
+     * @return the coordinate
+     * @throws IOException if the coordinate is out of range
+     */
+    private static int getCoordinate(ByteBuffer in, int limit) throws IOException {
+        long value = getVarLong(in);
+        if (value >= limit) {
+            throw new IOException("Corrupt recording: coordinate out of range.");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Decodes an enum ordinal, which must be less than the given count.
+     *
+     * @param in    the buffer to decode from
+     * @param count the number of constants
+     * @return the ordinal
+     * @throws IOException if the ordinal is out of range
+     */
+    private static byte getOrdinal(ByteBuffer in, int count) throws IOException {
+        if (!in.hasRemaining()) {
+            throw new EOFException("Truncated recording frame.");
+        }
+        byte ordinal = in.get();
+        if (ordinal < 0 || ordinal >= count) {
+            throw new IOException("Corrupt recording: bad enum ordinal " + ordinal + ".");
+        }
+        return ordinal;
+    }
+
+    /**
+     * Reverses {@link TickRecorder#zigzag(long)}.
+     *
+     * @param value the zigzag-encoded number
+     * @return the signed number
+     */
+    private static long unzigzag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+}
@@ -1,78 +1,85 @@
 package application;
 
-import javafx.scene.paint.Color;
-
 /**
  * The abstract Robot class serves as a base for all robot types, providing common properties and methods.
  * It defines the basic structure and behavior that all robots should have, including movement and reset functionality.
+ * A Robot is a thin view over one slot of a {@link RobotStore}; its position and direction live in the store.
  *
  * @author [SHEN FANGJIE]
  * @version 1.0
  */
     public abstract class Robot {
 
-    /**
-     * A unique identifier for each robot instance.
-     */
-    protected int id;
-
     /**
      * A static counter to generate unique IDs for each new robot.
      */
     protected static int nextId = 0;
 
     /**
-     * The current X coordinate of the robot.
-     */
-    protected int x;
-
-    /**
-     * The current Y coordinate of the robot.
+     * The store holding the state of this robot. A robot that has not been added to an arena
+     * owns a private single-robot store.
      */
-    protected int y;
+    RobotStore store;
 
     /**
-     * The current direction the robot is facing.
+     * The slot of this robot in its store.
      */
-    protected Direction direction;
+    int slot;
 
     /**
-     * The initial X coordinate of the robot, used for resetting.
+     * The color of the robot as a packed 0xAARRGGBB value, used for visual representation.
      */
-    protected int initialX;
+    protected int color;  // 添加颜色属性
 
     /**
-     * The initial Y coordinate of the robot, used for resetting.
+     * Constructs a new Robot object with specified type, starting position, direction, and color.
+     *
+     * @param type      the type of the robot
+     * @param x         the initial X coordinate of the robot
+     * @param y         the initial Y coordinate of the robot
+     * @param direction the initial direction of the robot
+     * @param color     the color of the robot as a packed 0xAARRGGBB value
      */
-    protected int initialY;
+    protected Robot(RobotArena.RobotType type, int x, int y, Direction direction, int color) {
+        int id = nextId();
+        this.store = new RobotStore(1, id);
+        this.slot = store.add(id, type, x, y, direction);
+        store.bind(slot, this);
+        this.color = color;  // 初始化颜色
+    }
 
     /**
-     * The initial direction of the robot, used for resetting.
+     * Constructs a view over a robot that already lives in a store.
+     *
+     * @param store the store holding the robot
+     * @param slot  the slot of the robot in the store
+     * @param color the color of the robot as a packed 0xAARRGGBB value
      */
-    protected Direction initialDirection;
+    Robot(RobotStore store, int slot, int color) {
+        this.store = store;
+        this.slot = slot;
+        this.color = color;
+    }
 
     /**
-     * The color of the robot, used for visual representation.
+     * Allocates a new unique robot ID.
+     *
+     * @return the next unused ID
      */
-    protected Color color;  // 添加颜色属性
+    static int nextId() {
+        return nextId++;
+    }
 
     /**
-     * Constructs a new Robot object with specified starting position, direction, and color.
+     * Makes sure IDs allocated from now on are greater than the given ID, for example after robots
+     * have been loaded from a file.
      *
-     * @param x        the initial X coordinate of the robot
-     * @param y        the initial Y coordinate of the robot
-     * @param direction the initial direction of the robot
-     * @param color    the color of the robot
-     */
-    public Robot(int x, int y, Direction direction, Color color) {
-        this.id = nextId++;
-        this.x = x;
-        this.y = y;
-        this.direction = direction;
-        this.initialX = x;
-        this.initialY = y;
-        this.initialDirection = direction;
-        this.color = color;  // 初始化颜色
+     * @param usedId an ID that is already taken
+     */
+    static void reserveId(int usedId) {
+        if (nextId <= usedId) {
+            nextId = usedId + 1;
+        }
     }
 
     /**
@@ -81,7 +88,16 @@ import javafx.scene.paint.Color;
      * @return the ID of the robot
      */
     public int getId() {
-        return id;
+        return store.getId(slot);
+    }
+
+    /**
+     * Gets the type of the robot.
+     *
+     * @return the type of the robot
+     */
+    public RobotArena.RobotType getType() {
+        return store.getType(slot);
     }
 
     /**
@@ -90,7 +106,7 @@ import javafx.scene.paint.Color;
      * @return the X coordinate of the robot
      */
     public int getX() {
-        return x;
+        return store.getX(slot);
     }
 
     /**
@@ -99,7 +115,7 @@ import javafx.scene.paint.Color;
      * @param x the new X coordinate of the robot
      */
     public void setX(int x) {
-        this.x = x;
+        store.setX(slot, x);
     }
 
     /**
@@ -108,7 +124,7 @@ import javafx.scene.paint.Color;
      * @return the Y coordinate of the robot
      */
     public int getY() {
-        return y;
+        return store.getY(slot);
     }
 
     /**
@@ -117,7 +133,7 @@ import javafx.scene.paint.Color;
      * @param y the new Y coordinate of the robot
      */
     public void setY(int y) {
-        this.y = y;
+        store.setY(slot, y);
     }
 
     /**
@@ -126,7 +142,7 @@ import javafx.scene.paint.Color;
      * @return the direction of the robot
      */
     public Direction getDirection() {
-        return direction;
+        return store.getDirection(slot);
     }
 
     /**
@@ -135,24 +151,24 @@ import javafx.scene.paint.Color;
      * @param direction the new direction of the robot
      */
     public void setDirection(Direction direction) {
-        this.direction = direction;
+        store.setDirection(slot, direction);
     }
 
     /**
      * Gets the color of the robot.
      *
-     * @return the color of the robot
+     * @return the color of the robot as a packed 0xAARRGGBB value
      */
-    public Color getColor() {
+    public int getColor() {
         return color;
     }
 
     /**
      * Sets the color of the robot.
      *
-     * @param color the new color of the robot
+     * @param color the new color of the robot as a packed 0xAARRGGBB value
      */
-    public void setColor(Color color) {
+    public void setColor(int color) {
         this.color = color;
     }
 
@@ -165,8 +181,17 @@ import javafx.scene.paint.Color;
      * Resets the robot to its initial state, including position and direction.
      */
     public void reset() {
-        this.x = initialX;
-        this.y = initialY;
-        this.direction = initialDirection;
+        store.reset(slot);
+    }
+
+    /**
+     * Moves this robot out of its current store into a private single-robot store, keeping its
+     * current and initial state. Called by a store when the robot is removed from it.
+     */
+    void detach() {
+        RobotStore own = new RobotStore(1, getId());
+        int ownSlot = own.add(getId(), getType(), getX(), getY(), getDirection(),
+                store.getInitialX(slot), store.getInitialY(slot), store.getInitialDirection(slot));
+        own.bind(ownSlot, this);
     }
 }
\ No newline at end of file
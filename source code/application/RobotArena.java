@@ -1,14 +1,20 @@
 package application;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
-import javafx.application.Platform;
+import java.util.SplittableRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
 
 /**
  * The RobotArena class represents a simulation environment for managing and controlling multiple robots.
- * It maintains a grid of specified dimensions, a list of robots, and a list of obstacles within the arena.
+ * It maintains a grid of specified dimensions, a list of robots, and a bitmap of obstacles within the arena.
+ * The grid is stored sparsely in a {@link ChunkedWorld}, so memory follows the occupied area rather than the size.
  * The class provides methods to add robots, move them, detect collisions, and reset their states.
+ * It does not depend on JavaFX: the simulation is advanced with {@link #step()} or {@link #run(long)},
+ * and user interfaces follow it by registering an {@link ArenaObserver}.
  *
  * @author [SHEN FANGJIE]
  * @version 1.0
@@ -26,14 +32,49 @@ import javafx.application.Platform;
     private int sizeY;
 
     /**
-     * A list of robots in the arena.
+     * The size and edge behaviour of the arena, shared by every robot in it.
+     */
+    private final ArenaBounds bounds;
+
+    /**
+     * The seed from which all random decisions in the arena are derived.
+     */
+    private final long seed;
+
+    /**
+     * The generator used to place randomly created robots, derived from the seed.
+     */
+    private final SplittableRandom spawnRandom;
+
+    /**
+     * The robots in the arena, stored column by column.
+     */
+    private RobotStore store;
+
+    /**
+     * A read-only list view of the robots in the store.
      */
     private List<Robot> robots;
 
     /**
-     * A list of obstacles in the arena.
+     * The chunks the arena is divided into, holding the obstacle bitmaps and the robot index.
+     */
+    private ChunkedWorld world;
+
+    /**
+     * The obstacles in the arena, stored as occupancy bitmaps in the chunks of the world.
+     */
+    private ObstacleMap obstacles;  // 新增障碍物列表
+
+    /**
+     * A spatial index of the robots in the arena, kept up to date as robots move.
+     */
+    private SpatialGrid grid;
+
+    /**
+     * The engine that advances the arena by one tick.
      */
-    private List<Obstacle> obstacles;  // 新增障碍物列表
+    private TickEngine engine;
 
     /**
      * A callback function that is invoked when the arena state changes, typically used to update the UI.
@@ -41,155 +82,595 @@ import javafx.application.Platform;
     private Runnable onUpdateCallback;
 
     /**
-     * Constructs a new RobotArena object with specified dimensions.
+     * The observers notified after every batch of ticks.
+     */
+    private final List<ArenaObserver> observers = new CopyOnWriteArrayList<>();
+
+    /**
+     * The number of ticks the arena has been advanced by.
+     */
+    private long tick;
+
+    /**
+     * The interval, in ticks, at which observers are notified in the middle of a batch, or 0.
+     */
+    private long notifyInterval;
+
+    /**
+     * The field leading the AdvancedRobots to the nearest BasicRobot.
+     */
+    private final FlowField flowField;
+
+    /**
+     * How many cells ahead a SensorRobot senses obstacles and other robots.
+     */
+    private int sensorRange = 1;
+
+    /**
+     * The most recently published snapshot, read by other threads.
+     */
+    private volatile ArenaSnapshot front;
+
+    /**
+     * The previously published snapshot, refilled by the next publish unless a reader still pins it.
+     */
+    private ArenaSnapshot back;
+
+    /**
+     * The number of snapshots published so far.
+     */
+    private long published;
+
+    /**
+     * Whether the arena was edited since the last snapshot was published. Edits only set this
+     * flag, so a run of edits costs one copy of the arena instead of one per edit.
+     */
+    private volatile boolean snapshotStale;
+
+    /**
+     * The bus the arena publishes its events on.
+     */
+    private volatile EventBus events = new EventBus();
+
+    /**
+     * The timings and counters of the arena's ticks.
+     */
+    private final TickMetrics metrics = new TickMetrics();
+
+    /**
+     * The recorder writing the arena's ticks to a file, or null.
+     */
+    private TickRecorder recorder;
+
+    /**
+     * Whether the arena is driven by a {@link ReplayEngine} rather than by its own ticks.
+     */
+    private boolean replay;
+
+    /**
+     * Constructs a new RobotArena object with specified dimensions and a random seed.
      *
      * @param sizeX the width of the arena grid
      * @param sizeY the height of the arena grid
      */
     public RobotArena(int sizeX, int sizeY) {
-        this.sizeX = sizeX;
-        this.sizeY = sizeY;
-        this.robots = new ArrayList<>();
-        this.obstacles = new ArrayList<>();  // 初始化障碍物列表
+        this(sizeX, sizeY, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Constructs a new RobotArena object with specified dimensions and seed.
+     * Two arenas built with the same seed and given the same sequence of operations
+     * evolve identically, whatever {@link TickEngine} they use.
+     *
+     * @param sizeX the width of the arena grid
+     * @param sizeY the height of the arena grid
+     * @param seed  the seed from which all random decisions in the arena are derived
+     */
+    public RobotArena(int sizeX, int sizeY, long seed) {
+        this(new ArenaBounds(sizeX, sizeY, false), seed);
+    }
+
+    /**
+     * Constructs a new RobotArena object with the specified bounds and seed. Use bounds with
+     * wrapping enabled for a torus arena, in which robots leaving one edge re-enter on the other.
+     *
+     * @param bounds the size and edge behaviour of the arena
+     * @param seed   the seed from which all random decisions in the arena are derived
+     */
+    public RobotArena(ArenaBounds bounds, long seed) {
+        this.bounds = bounds;
+        this.sizeX = bounds.getSizeX();
+        this.sizeY = bounds.getSizeY();
+        this.seed = seed;
+        this.spawnRandom = new SplittableRandom(seed);
+        this.store = new RobotStore(seed);
+        this.store.setBounds(bounds);
+        this.store.setArena(this);
+        this.robots = new AbstractList<Robot>() {
+            @Override
+            public Robot get(int index) {
+                return store.view(store.liveSlot(index));
+            }
+
+            @Override
+            public int size() {
+                return store.count();
+            }
+        };
+        this.world = new ChunkedWorld(sizeX, sizeY);
+        this.obstacles = new ObstacleMap(world);  // 初始化障碍物列表
+        this.grid = new SpatialGrid(world);
+        this.flowField = new FlowField(this);
+        this.engine = new TickEngine();
+        publishSnapshot();
     }
 
     /**
      * Adds a robot to the arena if its initial position is within the bounds of the grid.
+     * The robot's state is moved into the arena's store and the robot object becomes a view over it.
      *
      * @param robot the robot to be added
      * @throws IllegalArgumentException if the robot's initial position is out of bounds
      */
     public void addRobot(Robot robot) {
-        if (robot.getX() >= 0 && robot.getX() < sizeX && robot.getY() >= 0 && robot.getY() < sizeY) {
-            robots.add(robot);
+        if (bounds.contains(robot.getX(), robot.getY())) {
+            RobotStore source = robot.store;
+            int sourceSlot = robot.slot;
+            int slot = store.add(robot.getId(), robot.getType(), robot.getX(), robot.getY(), robot.getDirection(),
+                    source.getInitialX(sourceSlot), source.getInitialY(sourceSlot), source.getInitialDirection(sourceSlot));
+            store.bind(slot, robot);
+            grid.insert(slot, robot.getX(), robot.getY());
+            markEdited();
+            events.publish(EventBus.EventType.SPAWN, tick, robot.getId(), -1, robot.getX(), robot.getY());
+            snapshotStale = true;
         } else {
             throw new IllegalArgumentException("Robot position is out of bounds.");
         }
     }
 
+    /**
+     * Adds a robot of the given type straight into the arena's store without creating a robot object.
+     *
+     * @param type      the type of the robot
+     * @param x         the initial X coordinate of the robot
+     * @param y         the initial Y coordinate of the robot
+     * @param direction the initial direction of the robot
+     * @return the ID of the new robot
+     * @throws IllegalArgumentException if the position is out of bounds
+     */
+    public int addRobot(RobotType type, int x, int y, Direction direction) {
+        int id = insertRobot(type, x, y, direction);
+        snapshotStale = true;
+        return id;
+    }
+
+    /**
+     * Adds a robot of the given type to the store and the spatial index without publishing a snapshot.
+     *
+     * @param type      the type of the robot
+     * @param x         the initial X coordinate of the robot
+     * @param y         the initial Y coordinate of the robot
+     * @param direction the initial direction of the robot
+     * @return the ID of the new robot
+     * @throws IllegalArgumentException if the position is out of bounds
+     */
+    private int insertRobot(RobotType type, int x, int y, Direction direction) {
+        if (!bounds.contains(x, y)) {
+            throw new IllegalArgumentException("Robot position is out of bounds.");
+        }
+        int id = Robot.nextId();
+        int slot = store.add(id, type, x, y, direction);
+        grid.insert(slot, x, y);
+        markEdited();
+        events.publish(EventBus.EventType.SPAWN, tick, id, -1, x, y);
+        return id;
+    }
+
+    /**
+     * Removes a robot from the arena. The robot's slot becomes a tombstone, so no other robot
+     * moves; tombstones are compacted away once they make up a large share of the store.
+     *
+     * @param robot the robot to be removed
+     * @return true if the robot was in the arena, false otherwise
+     */
+    public boolean removeRobot(Robot robot) {
+        if (robot.store != store) {
+            return false;
+        }
+        int slot = robot.slot;
+        grid.remove(slot);
+        store.remove(slot);
+        markEdited();
+        compactIfNeeded();
+        snapshotStale = true;
+        return true;
+    }
+
+    /**
+     * Compacts the robot store if enough robots have been removed, rebuilding the spatial index
+     * if any slot moved. Only called between ticks, so compaction never changes the outcome of a
+     * tick: robots keep their relative order either way.
+     */
+    private void compactIfNeeded() {
+        if (store.compactIfNeeded()) {
+            grid.rebuild(store);
+        }
+    }
+
     /**
      * Adds a specified number of random robots to the arena.
      * Each robot's type is chosen randomly from the available types.
+     * The robots are written straight into the arena's store, so no robot objects are created.
+     * Positions, types and directions are drawn from the arena's seeded generator.
      *
      * @param count the number of robots to add
      */
     public void addRandomRobots(int count) {
-        Random random = new Random();
+        addRandomRobots(count, RobotType.values());
+    }
+
+    /**
+     * Adds a specified number of random robots to the arena, choosing each robot's type randomly
+     * from the given types. Listing a type more than once makes it proportionally more common.
+     *
+     * @param count the number of robots to add
+     * @param types the types to choose from
+     * @throws IllegalArgumentException if no types are given
+     */
+    public void addRandomRobots(int count, RobotType... types) {
+        if (types.length == 0) {
+            throw new IllegalArgumentException("At least one robot type is required.");
+        }
+        SplittableRandom random = spawnRandom;
+        Direction[] directions = Direction.values();
 
+        store.ensureCapacity(store.size() + count);
         for (int i = 0; i < count; i++) {
-            RobotType type = RobotType.values()[random.nextInt(RobotType.values().length)];
-            switch (type) {
-                case BASIC:
-                    robots.add(BasicRobot.createRandom(sizeX, sizeY));
-                    break;
-                case ADVANCED:
-                    robots.add(AdvancedRobot.createRandom(sizeX, sizeY));
-                    break;
-                case SENSOR:
-                    robots.add(SensorRobot.createRandom(sizeX, sizeY));
-                    break;
-                default:
-                    throw new IllegalStateException("Unexpected robot type: " + type);
-            }
+            RobotType type = types[random.nextInt(types.length)];
+            insertRobot(type, random.nextInt(sizeX), random.nextInt(sizeY), directions[random.nextInt(directions.length)]);
         }
+        snapshotStale = true;
     }
 
     /**
      * Clears all robots and obstacles from the arena.
      */
     public void clear() {
-        robots.clear();
-        obstacles.clear();  // 清除所有障碍物
+        store.clear();
+        obstacles.clearAll();  // 清除所有障碍物
+        grid.clear();
+        markEdited();
+        flowField.invalidate();
+        snapshotStale = true;
     }
 
     /**
      * Resets the state of all robots in the arena.
      */
     public void resetRobots() {
-        for (Robot robot : robots) {
-            robot.reset();  // 假设每个机器人有一个 reset() 方法
-        }
+        store.resetAll();
+        grid.rebuild(store);
+        markEdited();
+        flowField.invalidate();
+        snapshotStale = true;
     }
 
     /**
      * Moves all robots in the arena, handling obstacle and robot-robot collisions.
+     * This is the same as {@link #step()}.
      */
     public void moveRobots() {
-        // 移动所有机器人
-        for (Robot robot : robots) {
-            robot.move();
-            // 检查是否与障碍物发生碰撞
-            if (isCollidingWithObstacle(robot)) {
-                robot.setDirection(Direction.random());  // 随机改变方向
-                robot.move();  // 再次尝试移动
-            }
-        }
+        step();
+    }
 
-        // 检测并处理机器人之间的碰撞
-        detectCollisions();
+    /**
+     * Advances the simulation by one tick and notifies the observers.
+     * The tick itself is carried out by the arena's {@link TickEngine}.
+     */
+    public void step() {
+        run(1);
     }
 
     /**
-     * Checks if a robot is colliding with any obstacle in the arena.
+     * Advances the simulation by the given number of ticks as one batch.
+     * The observers are notified once the batch is complete, and in between only every
+     * {@link #setNotifyInterval(long) notify interval} ticks, if one is set.
      *
-     * @param robot the robot to check for collision
-     * @return true if the robot is colliding with an obstacle, false otherwise
+     * @param ticks the number of ticks to run
      */
-    private boolean isCollidingWithObstacle(Robot robot) {
-        for (Obstacle obstacle : obstacles) {
-            if (robot.getX() == obstacle.getX() && robot.getY() == obstacle.getY()) {
-                return true;
-            }
+    public void step(int ticks) {
+        run(ticks);
+    }
+
+    /**
+     * Advances the simulation by the given number of ticks as one batch.
+     * The observers are notified once the batch is complete, and in between only every
+     * {@link #setNotifyInterval(long) notify interval} ticks, if one is set.
+     *
+     * @param ticks the number of ticks to run
+     * @throws IllegalStateException if the arena shows a replay
+     */
+    public void run(long ticks) {
+        checkNotReplay();
+        if (ticks <= 0) {
+            return;
         }
-        return false;
+        for (long i = 1; i < ticks; i++) {
+            tickOnce();
+            endTick(false);
+        }
+        tickOnce();
+        endTick(true);
     }
 
     /**
-     * Detects and handles collisions between robots.
-     * Specifically, it checks for collisions between AdvancedRobots and BasicRobots,
-     * where AdvancedRobots can destroy BasicRobots upon collision.
+     * Advances the simulation until the condition holds, checking it after every tick.
+     * The observers are notified as for {@link #run(long)}.
+     *
+     * @param condition the condition that ends the run
+     * @return the number of ticks that were run
      */
-    private void detectCollisions() {
-        List<Robot> toRemove = new ArrayList<>();
+    public long runUntil(Predicate<RobotArena> condition) {
+        return runUntil(condition, Long.MAX_VALUE);
+    }
 
-        // 遍历所有机器人，检查是否有 AdvancedRobot 和 BasicRobot 相遇
-        for (int i = 0; i < robots.size(); i++) {
-            Robot robot1 = robots.get(i);
-            if (robot1 instanceof AdvancedRobot) {
-                for (int j = i + 1; j < robots.size(); j++) {
-                    Robot robot2 = robots.get(j);
-                    if (robot2 instanceof BasicRobot && robot1.getX() == robot2.getX() && robot1.getY() == robot2.getY()) {
-                        // AdvancedRobot 消灭 BasicRobot
-                        toRemove.add(robot2);
-                        System.out.println("AdvancedRobot ID: " + robot1.getId() + " has destroyed BasicRobot ID: " + robot2.getId());
-                        break;
-                    }
-                }
+    /**
+     * Advances the simulation until the condition holds or the tick limit is reached,
+     * checking the condition after every tick. The observers are notified as for {@link #run(long)}.
+     * The condition is checked before the tick ends, since the observers have to be notified
+     * within the last tick, so the time it takes counts towards the tick in the arena's metrics.
+     *
+     * @param condition the condition that ends the run
+     * @param maxTicks  the maximum number of ticks to run
+     * @return the number of ticks that were run
+     * @throws IllegalStateException if the arena shows a replay
+     */
+    public long runUntil(Predicate<RobotArena> condition, long maxTicks) {
+        checkNotReplay();
+        long ran = 0;
+        while (ran < maxTicks) {
+            tickOnce();
+            ran++;
+            boolean last = ran == maxTicks || condition.test(this);
+            endTick(last);
+            if (last) {
+                break;
             }
         }
+        return ran;
+    }
+
+    /**
+     * Runs a single tick and compacts the store, measuring both in the arena's metrics.
+     * If a recorder is attached, the edits made since the previous tick and the changes made by
+     * this tick are recorded around it. The tick is ended by {@link #endTick(boolean)}.
+     */
+    private void tickOnce() {
+        metrics.beginTick(store.count());
+        long recording = 0;
+        if (recorder != null) {
+            long start = System.nanoTime();
+            recorder.beforeTick();
+            recording = System.nanoTime() - start;
+        }
+        // 移动所有机器人并处理碰撞
+        engine.tick(this);
+        tick++;
+        long start = System.nanoTime();
+        compactIfNeeded();
+        long compacted = System.nanoTime();
+        metrics.recordPhase(TickMetrics.Phase.COMPACTION, compacted - start);
+        if (recorder != null) {
+            recorder.afterTick();
+            metrics.recordPhase(TickMetrics.Phase.RECORDING, recording + System.nanoTime() - compacted);
+        }
+    }
 
-        // 移除被消灭的 BasicRobot
-        robots.removeAll(toRemove);
+    /**
+     * Ends the tick run by {@link #tickOnce()}, notifying the observers first if it is the last
+     * tick of a batch or falls on the notify interval, so that their time counts towards the tick.
+     *
+     * @param last true if the tick is the last of its batch
+     */
+    private void endTick(boolean last) {
+        if (last || notifyInterval > 0 && tick % notifyInterval == 0) {
+            updateView();
+        }
+        metrics.endTick(tick, store.count());
+    }
 
-        // 确保在 UI 线程上更新视图
-        Platform.runLater(() -> {
+    /**
+     * Brings the arena up to date after a {@link ReplayEngine} has applied a recorded frame
+     * directly to its store, spatial index and obstacles.
+     *
+     * @param tick   the tick the arena has been replayed to
+     * @param notify true to publish a snapshot and notify the observers
+     */
+    void replayed(long tick, boolean notify) {
+        this.tick = tick;
+        compactIfNeeded();
+        flowField.invalidate();
+        if (notify) {
             updateView();
-        });
+        }
+    }
+
+    /**
+     * Marks the arena as driven by a {@link ReplayEngine}, so that it can no longer be advanced
+     * by its own ticks.
+     *
+     * @param replay true if the arena shows a replay
+     */
+    void setReplay(boolean replay) {
+        this.replay = replay;
+    }
+
+    /**
+     * Makes sure the arena is not a replay arena before it is advanced.
+     *
+     * @throws IllegalStateException if the arena shows a replay
+     */
+    private void checkNotReplay() {
+        if (replay) {
+            throw new IllegalStateException("A replay arena can only be moved by its replay engine.");
+        }
+    }
+
+    /**
+     * Tells the recorder, if there is one, that the robots have been edited outside a tick.
+     */
+    private void markEdited() {
+        if (recorder != null) {
+            recorder.edited();
+        }
     }
 
     /**
-     * Updates the view by invoking the provided callback function.
+     * Brings the arena up to date after its store and obstacles have been filled in directly,
+     * as {@link ConfigManager} does when loading a file.
+     *
+     * @param tick the tick the arena was saved at
+     */
+    void restore(long tick) {
+        this.tick = tick;
+        grid.rebuild(store);
+        flowField.invalidate();
+        publishSnapshot();
+    }
+
+    /**
+     * Gets the interval, in ticks, at which observers are notified in the middle of a batch.
+     *
+     * @return the notify interval, or 0 if observers are only notified at the end of a batch
+     */
+    public long getNotifyInterval() {
+        return notifyInterval;
+    }
+
+    /**
+     * Sets the interval, in ticks, at which observers are notified in the middle of a batch.
+     * Observers are always notified when a batch ends.
+     *
+     * @param notifyInterval the notify interval, or 0 to notify only at the end of a batch
+     */
+    public void setNotifyInterval(long notifyInterval) {
+        this.notifyInterval = Math.max(0, notifyInterval);
+    }
+
+    /**
+     * Updates the view by publishing a new snapshot and then invoking the update callback and
+     * every registered observer. They run on the thread that advanced the arena.
      */
     private void updateView() {
-        // 这里可以通知 RobotCanvas 重新绘制
-        // 例如，通过回调或事件机制
+        long start = System.nanoTime();
+        publishSnapshot();
+        // 通知 RobotCanvas 等观察者重新绘制
         if (onUpdateCallback != null) {
             onUpdateCallback.run();
         }
+        for (ArenaObserver observer : observers) {
+            observer.arenaUpdated(this);
+        }
+        metrics.recordPhase(TickMetrics.Phase.OBSERVERS, System.nanoTime() - start);
+    }
+
+    /**
+     * Gets the seed from which all random decisions in the arena are derived.
+     *
+     * @return the seed of the arena
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Copies the current state of the arena into a snapshot and publishes it for readers.
+     * The spare snapshot is reused unless a reader still pins it, in which case a new one is
+     * created, so publishing never waits for a reader.
+     * This is done automatically whenever observers are notified; edits made through the arena's
+     * methods are published by {@link #publishEdits()}.
+     */
+    public synchronized void publishSnapshot() {
+        snapshotStale = false;
+        ArenaSnapshot target = back;
+        if (target == null || target.isPinned()) {
+            target = new ArenaSnapshot();
+        }
+        target.copyFrom(this, ++published);
+        back = front;
+        front = target;
+    }
+
+    /**
+     * Publishes a snapshot if the arena was edited since the last one was published. Called once
+     * at the end of a run of edits, such as by {@link SimulationLoop#execute(Runnable)}, and by
+     * {@link #acquireSnapshot()}, so that edits never need a copy of the arena each.
+     * <p>
+     * It must not be called while another thread advances the arena; edits are made between
+     * ticks, so publishing them at the end of the edit keeps that true.
+     */
+    public void publishEdits() {
+        if (snapshotStale) {
+            synchronized (this) {
+                if (snapshotStale) {
+                    publishSnapshot();
+                }
+            }
+        }
+    }
+
+    /**
+     * Acquires the most recently published snapshot of the arena, first publishing the edits
+     * made since, if any. The snapshot is pinned and will not change until it is closed, so it
+     * can be read from any thread while the simulation keeps running. Callers must close it when
+     * they are done, ideally with try-with-resources.
+     *
+     * @return the latest snapshot, pinned for the caller
+     */
+    public ArenaSnapshot acquireSnapshot() {
+        publishEdits();
+        while (true) {
+            ArenaSnapshot snapshot = front;
+            snapshot.pin();
+            // 固定后再次确认它仍是最新快照，否则它可能正被重新填充
+            if (snapshot == front) {
+                return snapshot;
+            }
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Gets the number of ticks the arena has been advanced by.
+     *
+     * @return the current tick count
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Registers an observer to be notified after every batch of ticks.
+     *
+     * @param observer the observer to add
+     */
+    public void addObserver(ArenaObserver observer) {
+        observers.add(observer);
+    }
+
+    /**
+     * Removes a previously registered observer.
+     *
+     * @param observer the observer to remove
+     */
+    public void removeObserver(ArenaObserver observer) {
+        observers.remove(observer);
     }
 
     /**
      * Gets the list of robots in the arena.
+     * The list is a read-only live view of the arena's store; robot objects are created on demand.
+     * Use {@link #addRobot(Robot)} and {@link #removeRobot(Robot)} to change the robots.
      *
      * @return the list of robots
      */
@@ -197,15 +678,182 @@ import javafx.application.Platform;
         return robots;
     }
 
+    /**
+     * Gets all robots located exactly at the given coordinates, using the arena's spatial index.
+     *
+     * @param x the X coordinate
+     * @param y the Y coordinate
+     * @return a new list of the robots at the given position
+     */
+    public List<Robot> getRobotsAt(int x, int y) {
+        List<Robot> result = new ArrayList<>();
+        for (int slot = grid.firstInCell(x, y); slot >= 0; slot = grid.next(slot)) {
+            if (store.getX(slot) == x && store.getY(slot) == y) {
+                result.add(store.view(slot));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the spatial index of the robots in the arena.
+     *
+     * @return the spatial grid of the arena
+     */
+    public SpatialGrid getSpatialGrid() {
+        return grid;
+    }
+
+    /**
+     * Gets the chunks the arena is divided into. Only chunks holding obstacles or robots exist.
+     *
+     * @return the chunked world of the arena
+     */
+    public ChunkedWorld getWorld() {
+        return world;
+    }
+
+    /**
+     * Gets the columnar store holding the state of the robots in the arena.
+     *
+     * @return the robot store of the arena
+     */
+    public RobotStore getRobotStore() {
+        return store;
+    }
+
     /**
      * Gets the list of obstacles in the arena.
+     * The list is a read-only view built from the obstacle bitmap; use {@link #addObstacle(Obstacle)}
+     * and {@link #removeObstacle(int, int)} to change the obstacles.
      *
      * @return the list of obstacles
      */
     public List<Obstacle> getObstacles() {
+        return obstacles.toList();
+    }
+
+    /**
+     * Gets the obstacle bitmap of the arena.
+     *
+     * @return the obstacle map
+     */
+    public ObstacleMap getObstacleMap() {
         return obstacles;
     }
 
+    /**
+     * Checks whether the given cell is blocked by an obstacle.
+     *
+     * @param x the X coordinate of the cell
+     * @param y the Y coordinate of the cell
+     * @return true if the cell is blocked, false otherwise
+     */
+    public boolean isBlocked(int x, int y) {
+        return obstacles.isBlocked(x, y);
+    }
+
+    /**
+     * Gets the bus the arena publishes its events on, such as kills, spawns and blocked robots.
+     * Consumers subscribe to it, usually through an {@link EventConsumer}.
+     *
+     * @return the event bus of the arena
+     */
+    public EventBus getEventBus() {
+        return events;
+    }
+
+    /**
+     * Gets the timings and counters of the arena's ticks, which can also be
+     * {@link TickMetrics#register(String) published through JMX}.
+     *
+     * @return the metrics of the arena
+     */
+    public TickMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Replaces the bus the arena publishes its events on, for example with one of a different
+     * capacity or {@link EventBus.Backpressure backpressure} policy. Should only be called
+     * between ticks; subscribers of the old bus receive no further events.
+     *
+     * @param events the new event bus
+     * @throws IllegalArgumentException if the bus is null
+     */
+    public void setEventBus(EventBus events) {
+        if (events == null) {
+            throw new IllegalArgumentException("Event bus must not be null.");
+        }
+        this.events = events;
+    }
+
+    /**
+     * Gets the recorder writing the arena's ticks to a file.
+     *
+     * @return the recorder, or null if the arena is not being recorded
+     */
+    public TickRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Starts recording the arena with the given recorder, which immediately writes a keyframe of
+     * the current state; from then on every tick and every edit is recorded until the recorder is
+     * closed. Passing null stops recording without closing the previous recorder.
+     *
+     * @param recorder the recorder to attach, or null
+     * @throws IllegalStateException if the recorder is closed or already records an arena
+     * @throws java.io.UncheckedIOException if the keyframe cannot be written
+     */
+    public void setRecorder(TickRecorder recorder) {
+        if (recorder != null && recorder != this.recorder) {
+            recorder.start(this);
+        }
+        this.recorder = recorder;
+    }
+
+    /**
+     * Gets the field leading the AdvancedRobots to the nearest BasicRobot. Its range can be
+     * changed, or set to 0 to let the hunters wander at random.
+     *
+     * @return the flow field of the arena
+     */
+    public FlowField getFlowField() {
+        return flowField;
+    }
+
+    /**
+     * Gets how many cells ahead a SensorRobot senses obstacles and other robots.
+     *
+     * @return the sensor range, at least 1
+     */
+    public int getSensorRange() {
+        return sensorRange;
+    }
+
+    /**
+     * Sets how many cells ahead a SensorRobot senses obstacles and other robots.
+     *
+     * @param sensorRange the new sensor range
+     * @throws IllegalArgumentException if the range is less than 1
+     */
+    public void setSensorRange(int sensorRange) {
+        if (sensorRange < 1) {
+            throw new IllegalArgumentException("Sensor range must be at least 1.");
+        }
+        this.sensorRange = sensorRange;
+    }
+
+    /**
+     * Gets the size and edge behaviour of the arena, which every robot in it moves within.
+     *
+     * @return the bounds of the arena
+     */
+    public ArenaBounds getBounds() {
+        return bounds;
+    }
+
     /**
      * Gets the width of the arena grid.
      *
@@ -224,8 +872,28 @@ import javafx.application.Platform;
         return sizeY;
     }
 
+    /**
+     * Gets the engine that advances the arena by one tick.
+     *
+     * @return the tick engine of the arena
+     */
+    public TickEngine getTickEngine() {
+        return engine;
+    }
+
+    /**
+     * Sets the engine that advances the arena by one tick, for example a parallel engine
+     * created with {@link TickEngine#parallel()}.
+     *
+     * @param engine the new tick engine
+     */
+    public void setTickEngine(TickEngine engine) {
+        this.engine = engine;
+    }
+
     /**
      * Sets the callback function to be invoked when the arena state changes.
+     * The callback runs on the thread that advanced the arena, which is not necessarily the UI thread.
      *
      * @param callback the callback function
      */
@@ -240,13 +908,59 @@ import javafx.application.Platform;
      * @throws IllegalArgumentException if the obstacle's position is out of bounds
      */
     public void addObstacle(Obstacle obstacle) {
-        if (obstacle.getX() >= 0 && obstacle.getX() < sizeX && obstacle.getY() >= 0 && obstacle.getY() < sizeY) {
+        if (bounds.contains(obstacle.getX(), obstacle.getY())) {
             obstacles.add(obstacle);
+            flowField.invalidate();
+            snapshotStale = true;
         } else {
             throw new IllegalArgumentException("Obstacle position is out of bounds.");
         }
     }
 
+    /**
+     * Removes the obstacle at the given position, if there is one.
+     *
+     * @param x the X coordinate of the obstacle
+     * @param y the Y coordinate of the obstacle
+     * @return true if an obstacle was removed, false otherwise
+     */
+    public boolean removeObstacle(int x, int y) {
+        boolean removed = obstacles.remove(x, y);
+        if (removed) {
+            flowField.invalidate();
+            snapshotStale = true;
+        }
+        return removed;
+    }
+
+    /**
+     * Blocks every cell of a rectangle with obstacles. The rectangle is clipped to the arena.
+     *
+     * @param x      the X coordinate of the top-left cell
+     * @param y      the Y coordinate of the top-left cell
+     * @param width  the width of the rectangle in cells
+     * @param height the height of the rectangle in cells
+     */
+    public void addObstacles(int x, int y, int width, int height) {
+        obstacles.fill(x, y, width, height);
+        flowField.invalidate();
+        snapshotStale = true;
+    }
+
+    /**
+     * Removes every obstacle inside a rectangle. The rectangle is clipped to the arena.
+     *
+     * @param x      the X coordinate of the top-left cell
+     * @param y      the Y coordinate of the top-left cell
+     * @param width  the width of the rectangle in cells
+     * @param height the height of the rectangle in cells
+     */
+    public void removeObstacles(int x, int y, int width, int height) {
+        obstacles.clear(x, y, width, height);
+        flowField.invalidate();
+        snapshotStale = true;
+    }
+
     /**
      * An enum defining the types of robots that can be added to the arena.
      */
@@ -1,31 +1,395 @@
 package application;
 
-import javafx.animation.Animation;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import javafx.animation.AnimationTimer;
+import javafx.scene.SnapshotParameters;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
-import javafx.util.Duration;
+import javafx.scene.text.Text;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The RobotCanvas class represents a graphical canvas for visualizing robots and obstacles in a RobotArena.
  * It provides methods to start and stop the movement of robots, as well as to update and draw the current state of the arena.
+ * <p>
+ * The canvas only repaints what changed since the previous frame. It compares the robots of the latest
+ * snapshot with those it drew last, in arena order, and marks the cells robots left or entered, plus the
+ * cells of changed obstacles, as dirty. Only the area around the dirty cells is cleared and repainted:
+ * the obstacles come from a cached image that is rendered again only when the obstacles change, and only
+ * the robots whose drawings can reach into that area are drawn again. Robots are drawn slightly larger
+ * than their cell and with a label, so the area and the robots considered extend a few cells beyond the
+ * dirty ones. When so much has changed that a partial repaint would cost more, the whole canvas is
+ * repainted instead.
+ * <p>
+ * Robots are blitted from a {@link SpriteAtlas} that holds one pre-rendered image per robot type and
+ * color at the current cell size, so each robot costs one image copy plus its label. Labels are only
+ * drawn while cells are at least {@link #LABEL_CELL_SIZE} pixels wide: below that a label covers
+ * several neighbouring cells and cannot be read anyway, and skipping it keeps the text drawn per
+ * frame bounded by the number of cells that fit on the canvas rather than by the number of robots.
+ * <p>
+ * Past a few hundred thousand robots even that is too slow, so the canvas can instead draw in
+ * {@link RenderMode#PIXELS} mode: a {@link PixelRasterizer} writes the colour of every obstacle and
+ * robot straight into the pixel buffer behind a {@link WritableImage}, in parallel, and the image is
+ * drawn scaled to the canvas. Robots are then solid blocks without wheels, antennas or labels.
+ * <p>
+ * What is shown is set by a {@link Camera}: the mouse wheel zooms around the pointer, dragging pans
+ * and a double click shows the whole arena again. Only the robots and obstacles in the visible
+ * window of the arena, plus the few cells around it whose robots reach into it, are drawn; they are
+ * found with the snapshot's region index rather than by testing every robot. In
+ * {@link RenderMode#AUTO} mode the zoom also sets the level of detail: sprites while cells are
+ * large enough to tell robots apart, pixels below that, and a heatmap of robot density once a
+ * pixel covers several cells.
+ * <p>
+ * The robots are moved by a {@link SimulationLoop} on a thread of its own, at a tick rate of its
+ * own. While the canvas is part of a scene, an {@link AnimationTimer} checks on every pulse whether
+ * the arena has published a new snapshot, and draws it if so. With interpolation on, robots glide
+ * from their previous cell to their new one over the tick period instead of jumping, which takes a
+ * full repaint on every pulse of the glide.
  *
  * @author [SHEN FANGJIE]
  * @version 1.0
  */
    public class RobotCanvas extends Canvas {
 
+    /**
+     * The ways the canvas can draw the arena.
+     */
+    public enum RenderMode {
+
+        /**
+         * Draw every robot as its sprite with an ID label, repainting only what changed.
+         */
+        SHAPES,
+
+        /**
+         * Draw every cell as a block of pixels written directly into an image.
+         */
+        PIXELS,
+
+        /**
+         * Draw a heatmap of how many robots stand on each part of the view.
+         */
+        HEATMAP,
+
+        /**
+         * Choose a mode by the zoom and the number of robots in view.
+         */
+        AUTO
+    }
+
+    /**
+     * The number of robots in view from which {@link RenderMode#AUTO} draws pixels.
+     */
+    public static final int PIXEL_MODE_ROBOTS = 200_000;
+
+    /**
+     * The cell size, in pixels, below which {@link RenderMode#AUTO} draws pixels.
+     */
+    public static final double SPRITE_CELL_SIZE = 4;
+
+    /**
+     * The cell size, in pixels, below which {@link RenderMode#AUTO} draws a heatmap.
+     */
+    public static final double HEATMAP_CELL_SIZE = 1;
+
+    /**
+     * The cell size, in pixels, below which robots are drawn without their ID labels.
+     */
+    public static final double LABEL_CELL_SIZE = 24;
+
+    /**
+     * The width and height, in pixels of the view, of a heatmap bucket.
+     */
+    private static final int HEATMAP_PIXELS = 4;
+
+    /**
+     * The fastest tick rate at which robots glide between cells when interpolation is on; above
+     * it, ticks come about as often as frames.
+     */
+    public static final double MAX_GLIDE_RATE = 30;
+
+    /**
+     * The zoom factor of one notch of the mouse wheel.
+     */
+    private static final double ZOOM_STEP = 1.25;
+
+    /**
+     * The share of the arena's cells above which the whole canvas is repainted rather than the
+     * area around the dirty cells.
+     */
+    private static final double FULL_REPAINT_SHARE = 0.25;
+
+    /**
+     * The X offset of a robot's label from the corner of its cell, in pixels.
+     */
+    private static final double LABEL_X = 5;
+
+    /**
+     * The Y offset of a robot's label baseline from the corner of its cell, in pixels.
+     */
+    private static final double LABEL_Y = 15;
+
     /**
      * The RobotArena instance that this canvas is associated with.
      */
     private RobotArena arena;
 
     /**
-     * A Timeline object used to animate the movement of robots on the canvas.
+     * The loop moving the robots of the arena on a thread of its own.
+     */
+    private SimulationLoop simulation;
+
+    /**
+     * Draws the latest snapshot on every pulse while the canvas is part of a scene.
+     */
+    private final AnimationTimer renderTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            drawIfChanged();
+        }
+    };
+
+    /**
+     * Whether robots glide between cells instead of jumping.
+     */
+    private boolean interpolation;
+
+    /**
+     * The sequence number of the snapshot drawn last, or -1 if none has been drawn.
+     */
+    private long drawnSequence = -1;
+
+    /**
+     * When the snapshot drawn last was first drawn, from {@link System#nanoTime()}.
+     */
+    private long drawnSince;
+
+    /**
+     * Whether the previous frame showed robots between two cells.
+     */
+    private boolean gliding;
+
+    /**
+     * The sequence number of the snapshot {@link #fromXs} and {@link #fromYs} were worked out for.
+     */
+    private long fromSequence = -1;
+
+    /**
+     * The X coordinate each robot of the latest snapshot glides from, by snapshot index.
+     */
+    private int[] fromXs = new int[0];
+
+    /**
+     * The Y coordinate each robot of the latest snapshot glides from, by snapshot index.
+     */
+    private int[] fromYs = new int[0];
+
+    /**
+     * JavaFX colors for the packed 0xAARRGGBB values used by the simulation, created on first use.
+     */
+    private final Map<Integer, Color> colors = new HashMap<>();
+
+    /**
+     * The robot sprites, rendered once per type, color and cell size.
+     */
+    private final SpriteAtlas sprites = new SpriteAtlas(this::paintRobot);
+
+    /**
+     * The part of the arena shown on the canvas.
+     */
+    private final Camera camera = new Camera();
+
+    /**
+     * The X coordinate of the camera in the previous frame, in cells.
+     */
+    private double drawnViewX;
+
+    /**
+     * The Y coordinate of the camera in the previous frame, in cells.
+     */
+    private double drawnViewY;
+
+    /**
+     * The X coordinate of the top-left cell of the window being drawn: the visible cells plus
+     * {@link #reach} cells on every side, limited to the arena.
+     */
+    private int windowX;
+
+    /**
+     * The Y coordinate of the top-left cell of the window being drawn.
+     */
+    private int windowY;
+
+    /**
+     * The width of the window being drawn, in cells.
+     */
+    private int windowWidth;
+
+    /**
+     * The height of the window being drawn, in cells.
+     */
+    private int windowHeight;
+
+    /**
+     * The X coordinate of the mouse when the last drag event was handled, in pixels.
+     */
+    private double dragX;
+
+    /**
+     * The Y coordinate of the mouse when the last drag event was handled, in pixels.
+     */
+    private double dragY;
+
+    /**
+     * How the canvas draws the arena.
+     */
+    private RenderMode renderMode = RenderMode.AUTO;
+
+    /**
+     * Draws the arena into {@link #pixels} in pixel mode.
+     */
+    private final PixelRasterizer rasterizer = PixelRasterizer.parallel();
+
+    /**
+     * The pixels of the image drawn in pixel mode, or null if pixel mode has not been used.
+     */
+    private IntBuffer pixels;
+
+    /**
+     * The pixel buffer wrapping {@link #pixels}.
+     */
+    private PixelBuffer<IntBuffer> pixelBuffer;
+
+    /**
+     * The image shown in pixel mode, backed by {@link #pixelBuffer}.
+     */
+    private WritableImage pixelImage;
+
+    /**
+     * An off-screen canvas the obstacles are drawn on before they are cached as an image.
+     */
+    private final Canvas obstacleLayer = new Canvas();
+
+    /**
+     * The obstacles as last drawn, on a transparent background, or null if not drawn yet.
+     */
+    private WritableImage obstacleImage;
+
+    /**
+     * The obstacles the cached image shows.
+     */
+    private List<Obstacle> drawnObstacles;
+
+    /**
+     * The obstacle version the cached image shows, or -1 if the image must be redrawn.
+     */
+    private long obstacleVersion = -1;
+
+    /**
+     * The cell size the cached obstacle image was drawn at.
+     */
+    private double layerCellSize;
+
+    /**
+     * The X coordinate, in cells, of the camera when the cached obstacle image was drawn.
+     */
+    private double layerViewX;
+
+    /**
+     * The Y coordinate, in cells, of the camera when the cached obstacle image was drawn.
+     */
+    private double layerViewY;
+
+    /**
+     * The canvas width the cached obstacle image was drawn for.
+     */
+    private double layerWidth;
+
+    /**
+     * The canvas height the cached obstacle image was drawn for.
+     */
+    private double layerHeight;
+
+    /**
+     * The cell size of the previous frame, or -1 if the next frame must repaint everything.
+     */
+    private double drawnCellSize = -1;
+
+    /**
+     * The canvas height of the previous frame.
+     */
+    private double drawnHeight;
+
+    /**
+     * The arena width of the previous frame.
      */
-    private Timeline timeline;
+    private int drawnSizeX;
+
+    /**
+     * The arena height of the previous frame.
+     */
+    private int drawnSizeY;
+
+    /**
+     * The number of robots drawn in the previous frame.
+     */
+    private int drawnCount;
+
+    /**
+     * The IDs of the robots drawn in the previous frame, in arena order.
+     */
+    private int[] drawnIds = new int[0];
+
+    /**
+     * The X coordinates of the robots drawn in the previous frame.
+     */
+    private int[] drawnXs = new int[0];
+
+    /**
+     * The Y coordinates of the robots drawn in the previous frame.
+     */
+    private int[] drawnYs = new int[0];
+
+    /**
+     * The type ordinals of the robots drawn in the previous frame.
+     */
+    private byte[] drawnTypes = new byte[0];
+
+    /**
+     * The colors of the robots drawn in the previous frame.
+     */
+    private int[] drawnColors = new int[0];
+
+    /**
+     * The cells of the window that changed since the previous frame, indexed by
+     * {@code row * windowWidth + column} within the window.
+     */
+    private final BitSet dirty = new BitSet();
+
+    /**
+     * The number of cells a robot's drawing can reach beyond its own cell, at least 1.
+     */
+    private int reach = 1;
+
+    /**
+     * The number of digits in the longest robot ID {@link #reach} was measured for.
+     */
+    private int reachDigits;
+
+    /**
+     * The number of cells the previous frame repainted, or -1 if it repainted the whole canvas.
+     */
+    private long repaintedCells;
 
     /**
      * Constructs a new RobotCanvas object with specified dimensions and associates it with a RobotArena.
@@ -37,81 +401,705 @@ import javafx.util.Duration;
     public RobotCanvas(RobotArena arena, double width, double height) {
         super(width, height);
         this.arena = arena;
+        this.simulation = new SimulationLoop(arena);
+
+        // 只在画布显示时按脉冲绘制
+        sceneProperty().addListener((observable, oldScene, newScene) -> {
+            if (newScene != null) {
+                renderTimer.start();
+            } else {
+                renderTimer.stop();
+            }
+        });
+
+        // 滚轮缩放，拖动平移，双击显示整个竞技场
+        setOnScroll(event -> {
+            if (event.getDeltaY() != 0) {
+                camera.zoomAt(event.getDeltaY() > 0 ? ZOOM_STEP : 1 / ZOOM_STEP, event.getX(), event.getY());
+                drawRobotsAndObstacles();
+            }
+        });
+        setOnMousePressed(event -> {
+            dragX = event.getX();
+            dragY = event.getY();
+        });
+        setOnMouseDragged(event -> {
+            camera.pan(event.getX() - dragX, event.getY() - dragY);
+            dragX = event.getX();
+            dragY = event.getY();
+            drawRobotsAndObstacles();
+        });
+        setOnMouseClicked(event -> {
+            if (event.getClickCount() == 2) {
+                camera.reset();
+                drawRobotsAndObstacles();
+            }
+        });
         drawRobotsAndObstacles();
     }
 
     /**
-     * Starts the animation that moves the robots in the arena at regular intervals.
-     * If the animation is already running, this method does nothing.
+     * Starts moving the robots in the arena at the simulation's tick rate, two ticks per second
+     * unless it has been changed. If the robots are already moving, this method does nothing.
      */
     public void startMovement() {
-        if (timeline != null && timeline.getStatus() == Animation.Status.RUNNING) {
-            return;
-        }
-
-        timeline = new Timeline(new KeyFrame(Duration.seconds(0.5), event -> {
-            arena.moveRobots();  // 调用 RobotArena 的 moveRobots 方法
-            drawRobotsAndObstacles();  // 重新绘制画布
-        }));
-        timeline.setCycleCount(Timeline.INDEFINITE);
-        timeline.play();
+        simulation.start();  // 在独立线程上调用 RobotArena 的 run 方法
     }
 
     /**
-     * Stops the animation that moves the robots in the arena.
+     * Stops moving the robots in the arena, after the tick in progress, and draws the state the
+     * arena stopped in.
      */
     public void stopMovement() {
-        if (timeline != null) {
-            timeline.stop();
-        }
+        simulation.stop();
+        drawRobotsAndObstacles();
     }
 
     /**
-     * Updates the canvas by redrawing all robots and obstacles.
+     * Shows another arena on the canvas, for example one that was just created or opened. The
+     * robots of the current arena are stopped first. The new arena gets a loop of its own with the
+     * same tick rate, lag policy and catch-up limit, which stays stopped until
+     * {@link #startMovement()} is called. The camera is reset to show the whole new arena.
+     *
+     * @param arena the RobotArena to visualize
+     */
+    public void setArena(RobotArena arena) {
+        SimulationLoop previous = simulation;
+        previous.stop();
+        this.arena = arena;
+        simulation = new SimulationLoop(arena);
+        simulation.setTickRate(previous.getTickRate());
+        simulation.setLagPolicy(previous.getLagPolicy());
+        simulation.setMaxCatchUpTicks(previous.getMaxCatchUpTicks());
+
+        // 新竞技场的快照序号与旧的无关，清除上一帧的记录
+        drawnSequence = -1;
+        fromSequence = -1;
+        drawnCount = 0;
+        gliding = false;
+        camera.reset();
+        repaintAll();
+    }
+
+    /**
+     * Gets the loop that moves the robots. Use it to change the tick rate and lag policy, and to
+     * edit the arena safely while the robots are moving.
+     *
+     * @return the simulation loop of the canvas
+     */
+    public SimulationLoop getSimulation() {
+        return simulation;
+    }
+
+    /**
+     * Checks whether robots glide between cells instead of jumping.
+     *
+     * @return true if interpolation is on
+     */
+    public boolean isInterpolation() {
+        return interpolation;
+    }
+
+    /**
+     * Sets whether robots glide from their previous cell to their new one over a tick, which only
+     * applies when sprites are drawn and the tick rate is at most {@link #MAX_GLIDE_RATE}.
+     *
+     * @param interpolation true to interpolate robot positions between ticks
+     */
+    public void setInterpolation(boolean interpolation) {
+        this.interpolation = interpolation;
+        fromSequence = -1;
+    }
+
+    /**
+     * Updates the canvas to the latest snapshot of the arena, repainting only what changed since
+     * the previous frame.
      */
     public void updateCanvas() {
         drawRobotsAndObstacles();
     }
 
     /**
-     * Draws all robots and obstacles on the canvas.
+     * Repaints the whole canvas from the latest snapshot of the arena, for example after something
+     * else has drawn on it.
+     */
+    public void repaintAll() {
+        drawnCellSize = -1;
+        obstacleVersion = -1;
+        drawRobotsAndObstacles();
+    }
+
+    /**
+     * Gets the camera that sets the part of the arena shown. After changing it, call
+     * {@link #updateCanvas()} to show the new view.
+     *
+     * @return the camera of the canvas
+     */
+    public Camera getCamera() {
+        return camera;
+    }
+
+    /**
+     * Gets how the canvas draws the arena.
+     *
+     * @return the render mode
+     */
+    public RenderMode getRenderMode() {
+        return renderMode;
+    }
+
+    /**
+     * Sets how the canvas draws the arena, and repaints it in the new mode.
+     *
+     * @param renderMode the render mode
+     */
+    public void setRenderMode(RenderMode renderMode) {
+        this.renderMode = renderMode;
+        repaintAll();
+    }
+
+    /**
+     * Gets the number of cells the previous frame repainted.
+     *
+     * @return the number of cells, or -1 if the previous frame repainted the whole canvas
+     */
+    public long getRepaintedCells() {
+        return repaintedCells;
+    }
+
+    /**
+     * Draws the latest snapshot of the arena in the render mode that suits the current zoom: the
+     * area around the cells that changed since the previous frame, or the whole view if that is
+     * cheaper or the view has moved.
      */
     private void drawRobotsAndObstacles() {
         GraphicsContext gc = getGraphicsContext2D();
+
+        try (ArenaSnapshot snapshot = arena.acquireSnapshot()) {
+            int sizeX = snapshot.getSizeX();
+            int sizeY = snapshot.getSizeY();
+            camera.fit(sizeX, sizeY, getWidth(), getHeight());
+            double cellSize = camera.getCellSize();
+            long now = System.nanoTime();
+            if (snapshot.getSequence() != drawnSequence) {
+                drawnSequence = snapshot.getSequence();
+                drawnSince = now;
+            }
+            RenderMode mode = chooseMode(snapshot, cellSize);
+            if (mode != RenderMode.SHAPES) {
+                drawPixels(gc, snapshot, cellSize, mode == RenderMode.HEATMAP);
+                // 切回图形模式时需要整体重绘
+                drawnCellSize = -1;
+                gliding = false;
+                return;
+            }
+
+            sprites.setCellSize(cellSize);
+            int previousReach = reach;
+            updateReach(gc, maxId(snapshot), cellSize);
+            // 可见区域向外扩展 reach 格，以包含绘制伸入视野的机器人
+            windowX = Math.max(0, camera.getFirstColumn() - reach);
+            windowY = Math.max(0, camera.getFirstRow() - reach);
+            windowWidth = Math.min(sizeX, camera.getFirstColumn() + camera.getVisibleColumns() + reach) - windowX;
+            windowHeight = Math.min(sizeY, camera.getFirstRow() + camera.getVisibleRows() + reach) - windowY;
+            long cells = (long) windowWidth * windowHeight;
+            double progress = glideProgress(snapshot, now);
+            // 滑动过程中及滑动结束后的一帧都需整体重绘
+            boolean full = cellSize != drawnCellSize || camera.getX() != drawnViewX || camera.getY() != drawnViewY
+                    || getHeight() != drawnHeight || sizeX != drawnSizeX || sizeY != drawnSizeY
+                    || reach != previousReach || cells > Integer.MAX_VALUE || progress < 1 || gliding;
+            dirty.clear();
+
+            // 障碍物图层只在障碍物、缩放、视图位置或画布大小改变时重建
+            boolean layerStale = snapshot.getObstacleVersion() != obstacleVersion || cellSize != layerCellSize
+                    || camera.getX() != layerViewX || camera.getY() != layerViewY
+                    || getWidth() != layerWidth || getHeight() != layerHeight;
+            if (layerStale) {
+                if (!full) {
+                    markObstacleChanges(snapshot);
+                }
+                drawObstacleLayer(snapshot);
+            }
+            if (!full) {
+                markRobotChanges(snapshot);
+            }
+            long side = 2L * reach + 1;
+            if (!full && dirty.cardinality() * side * side > FULL_REPAINT_SHARE * cells) {
+                full = true;
+            }
+
+            if (full) {
+                // 变化过多或视图改变时整体重绘
+                gc.clearRect(0, 0, getWidth(), getHeight());
+                gc.drawImage(obstacleImage, 0, 0);
+                snapshot.forEachRobotIn(windowX, windowY, windowWidth, windowHeight, i -> drawRobot(gc, snapshot, i, cellSize, progress));
+                repaintedCells = -1;
+            } else if (!dirty.isEmpty()) {
+                repaintDirty(gc, snapshot, cellSize);
+            } else {
+                repaintedCells = 0;
+            }
+
+            rememberRobots(snapshot);
+            gliding = progress < 1;
+            drawnCellSize = cellSize;
+            drawnViewX = camera.getX();
+            drawnViewY = camera.getY();
+            drawnHeight = getHeight();
+            drawnSizeX = sizeX;
+            drawnSizeY = sizeY;
+        }
+    }
+
+    /**
+     * Draws the latest snapshot if the arena has published a new one since the last frame, or if
+     * robots are still gliding. Called on every pulse by the render timer.
+     */
+    private void drawIfChanged() {
+        long sequence;
+        try (ArenaSnapshot snapshot = arena.acquireSnapshot()) {
+            sequence = snapshot.getSequence();
+        }
+        if (sequence != drawnSequence || gliding) {
+            drawRobotsAndObstacles();
+        }
+    }
+
+    /**
+     * Works out how far robots have glided towards the cells of a snapshot. When a snapshot is
+     * drawn for the first time, the cells the robots glide from are taken from the previous frame,
+     * matched by ID in arena order as in {@link #markRobotChanges}.
+     *
+     * @param snapshot the snapshot about to be drawn
+     * @param now      the current time, from {@link System#nanoTime()}
+     * @return the share of the tick period since the snapshot was first drawn, from 0 to 1, or 1
+     *         if robots do not glide
+     */
+    private double glideProgress(ArenaSnapshot snapshot, long now) {
+        double rate = simulation.getTickRate();
+        if (!interpolation || !simulation.isRunning() || rate > MAX_GLIDE_RATE) {
+            return 1;
+        }
+        if (fromSequence != snapshot.getSequence()) {
+            if (fromXs.length < snapshot.size()) {
+                fromXs = new int[snapshot.size()];
+                fromYs = new int[snapshot.size()];
+            }
+            int previous = 0;
+            for (int i = 0; i < snapshot.size(); i++) {
+                int id = snapshot.getId(i);
+                while (previous < drawnCount && drawnIds[previous] != id) {
+                    previous++;
+                }
+                if (previous < drawnCount) {
+                    fromXs[i] = drawnXs[previous];
+                    fromYs[i] = drawnYs[previous];
+                    previous++;
+                } else {
+                    fromXs[i] = snapshot.getX(i);
+                    fromYs[i] = snapshot.getY(i);
+                }
+            }
+            fromSequence = snapshot.getSequence();
+        }
+        return Math.min(1, (now - drawnSince) * rate / 1e9);
+    }
+
+    /**
+     * Picks the render mode for a frame. In {@link RenderMode#AUTO} mode this is the level of
+     * detail: a heatmap when cells are smaller than {@link #HEATMAP_CELL_SIZE}, pixels when they are
+     * smaller than {@link #SPRITE_CELL_SIZE} or about {@link #PIXEL_MODE_ROBOTS} robots are in view,
+     * and shapes otherwise.
+     *
+     * @param snapshot the snapshot to draw
+     * @param cellSize the size of each cell on the grid
+     * @return the render mode to draw the frame in, never {@link RenderMode#AUTO}
+     */
+    private RenderMode chooseMode(ArenaSnapshot snapshot, double cellSize) {
+        if (renderMode != RenderMode.AUTO) {
+            return renderMode;
+        }
+        if (cellSize < HEATMAP_CELL_SIZE) {
+            return RenderMode.HEATMAP;
+        }
+        // 按可见面积估算视野内的机器人数量
+        double visible = (double) camera.getVisibleColumns() * camera.getVisibleRows()
+                / ((double) snapshot.getSizeX() * snapshot.getSizeY());
+        if (cellSize < SPRITE_CELL_SIZE || snapshot.size() * visible >= PIXEL_MODE_ROBOTS) {
+            return RenderMode.PIXELS;
+        }
+        return RenderMode.SHAPES;
+    }
+
+    /**
+     * Draws the visible part of a snapshot in pixel or heatmap mode: the rasterizer fills the
+     * image's pixels, and the image is drawn scaled over the visible cells without smoothing.
+     * A pixel image has a whole number of pixels per cell; a heatmap has one pixel per
+     * {@link #HEATMAP_PIXELS} pixels of the view, and never more than one per cell.
+     *
+     * @param gc       the GraphicsContext to draw on
+     * @param snapshot the snapshot to draw
+     * @param cellSize the size of each cell on the grid
+     * @param heatmap  true to draw a heatmap of robot density, false to draw every cell's colour
+     */
+    private void drawPixels(GraphicsContext gc, ArenaSnapshot snapshot, double cellSize, boolean heatmap) {
+        int x = camera.getFirstColumn();
+        int y = camera.getFirstRow();
+        int columns = camera.getVisibleColumns();
+        int rows = camera.getVisibleRows();
+        int width;
+        int height;
+        if (heatmap) {
+            width = (int) Math.max(1, Math.min(Math.min(columns, PixelRasterizer.MAX_EXTENT), Math.ceil(columns * cellSize / HEATMAP_PIXELS)));
+            height = (int) Math.max(1, Math.min(Math.min(rows, PixelRasterizer.MAX_EXTENT), Math.ceil(rows * cellSize / HEATMAP_PIXELS)));
+        } else {
+            width = PixelRasterizer.extent(columns, cellSize);
+            height = PixelRasterizer.extent(rows, cellSize);
+        }
+        if (pixelImage == null || pixelImage.getWidth() != width || pixelImage.getHeight() != height) {
+            pixels = ByteBuffer.allocateDirect(width * height * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+            pixelBuffer = new PixelBuffer<>(width, height, pixels, PixelFormat.getIntArgbPreInstance());
+            pixelImage = new WritableImage(pixelBuffer);
+        }
+
+        if (heatmap) {
+            rasterizer.renderDensity(snapshot, x, y, columns, rows, pixels, width, height);
+        } else {
+            rasterizer.render(snapshot, x, y, columns, rows, pixels, width, height);
+        }
+        pixelBuffer.updateBuffer(buffer -> null);  // 整幅图像均已更新
+
         gc.clearRect(0, 0, getWidth(), getHeight());
+        gc.save();
+        gc.setImageSmoothing(false);
+        gc.drawImage(pixelImage, camera.toViewX(x), camera.toViewY(y), columns * cellSize, rows * cellSize);
+        gc.restore();
+        repaintedCells = -1;
+    }
 
-        double cellSize = getWidth() / arena.getSizeX();
+    /**
+     * Repaints the area around the dirty cells. The cells within {@link #reach} of a dirty cell are
+     * cleared, in runs along each row, and refilled from the obstacle image; every robot whose
+     * drawing can reach into them is drawn again.
+     *
+     * @param gc       the GraphicsContext to draw on
+     * @param snapshot the snapshot to draw
+     * @param cellSize the size of each cell on the grid
+     */
+    private void repaintDirty(GraphicsContext gc, ArenaSnapshot snapshot, double cellSize) {
+        BitSet repaint = dilate(dirty, windowWidth, windowHeight, reach);
+        // 裁剪区域按整像素向外取整，因此再多考虑一格内的机器人
+        BitSet redraw = dilate(repaint, windowWidth, windowHeight, reach + 1);
 
-        // Draw all obstacles
-        for (Obstacle obstacle : arena.getObstacles()) {
-            gc.setFill(obstacle.getColor());  // 设置填充颜色为障碍物的颜色
-            gc.fillRect(obstacle.getX() * cellSize, obstacle.getY() * cellSize, cellSize, cellSize);
+        gc.save();
+        gc.beginPath();
+        for (int start = repaint.nextSetBit(0); start >= 0; ) {
+            int row = start / windowWidth;
+            int rowEnd = (row + 1) * windowWidth;
+            int end = repaint.nextClearBit(start);
+            if (end > rowEnd) {
+                end = rowEnd;
+            }
+            double left = Math.floor(camera.toViewX(windowX + start - row * windowWidth));
+            double top = Math.floor(camera.toViewY(windowY + row));
+            double right = Math.ceil(camera.toViewX(windowX + end - row * windowWidth));
+            double bottom = Math.ceil(camera.toViewY(windowY + row + 1));
+            gc.rect(left, top, right - left, bottom - top);
+            start = repaint.nextSetBit(end);
+        }
+        gc.clip();
+        gc.clearRect(0, 0, getWidth(), getHeight());
+        gc.drawImage(obstacleImage, 0, 0);
+        snapshot.forEachRobotIn(windowX, windowY, windowWidth, windowHeight, i -> {
+            if (redraw.get((snapshot.getY(i) - windowY) * windowWidth + snapshot.getX(i) - windowX)) {
+                drawRobot(gc, snapshot, i, cellSize, 1);
+            }
+        });
+        gc.restore();
+        repaintedCells = repaint.cardinality();
+    }
+
+    /**
+     * Marks the cells of robots that moved, appeared, disappeared or changed type or color since
+     * the previous frame. Both frames hold the robots in arena order, which only changes by robots
+     * being removed or appended, so a robot whose ID does not match the next remembered one means
+     * the remembered robot has gone.
+     *
+     * @param snapshot the snapshot about to be drawn
+     */
+    private void markRobotChanges(ArenaSnapshot snapshot) {
+        int previous = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            int id = snapshot.getId(i);
+            while (previous < drawnCount && drawnIds[previous] != id) {
+                markDirty(drawnXs[previous], drawnYs[previous]);
+                previous++;
+            }
+            int x = snapshot.getX(i);
+            int y = snapshot.getY(i);
+            if (previous == drawnCount) {
+                markDirty(x, y);
+                continue;
+            }
+            if (x != drawnXs[previous] || y != drawnYs[previous]
+                    || snapshot.getType(i).ordinal() != drawnTypes[previous] || snapshot.getColor(i) != drawnColors[previous]) {
+                markDirty(drawnXs[previous], drawnYs[previous]);
+                markDirty(x, y);
+            }
+            previous++;
+        }
+        for (; previous < drawnCount; previous++) {
+            markDirty(drawnXs[previous], drawnYs[previous]);
+        }
+    }
+
+    /**
+     * Marks the cells whose obstacle appeared, disappeared or changed color since the cached
+     * obstacle image was drawn.
+     *
+     * @param snapshot the snapshot about to be drawn
+     */
+    private void markObstacleChanges(ArenaSnapshot snapshot) {
+        Map<Long, Integer> before = new HashMap<>();
+        for (Obstacle obstacle : drawnObstacles) {
+            before.put(cellKey(obstacle.getX(), obstacle.getY()), obstacle.getColor());
+        }
+        for (Obstacle obstacle : snapshot.getObstacles()) {
+            Integer color = before.remove(cellKey(obstacle.getX(), obstacle.getY()));
+            if (color == null || color != obstacle.getColor()) {
+                markDirty(obstacle.getX(), obstacle.getY());
+            }
+        }
+        for (long cell : before.keySet()) {
+            markDirty((int) cell, (int) (cell >> 32));
+        }
+    }
+
+    /**
+     * Marks a cell as dirty if it lies in the window being drawn.
+     *
+     * @param x the X coordinate of the cell
+     * @param y the Y coordinate of the cell
+     */
+    private void markDirty(int x, int y) {
+        int column = x - windowX;
+        int row = y - windowY;
+        if (column >= 0 && row >= 0 && column < windowWidth && row < windowHeight) {
+            dirty.set(row * windowWidth + column);
+        }
+    }
+
+    /**
+     * Draws the obstacles in the window of a snapshot on the off-screen layer and caches the
+     * result as an image with a transparent background.
+     *
+     * @param snapshot the snapshot whose obstacles to draw
+     */
+    private void drawObstacleLayer(ArenaSnapshot snapshot) {
+        obstacleLayer.setWidth(getWidth());
+        obstacleLayer.setHeight(getHeight());
+        GraphicsContext layer = obstacleLayer.getGraphicsContext2D();
+        layer.clearRect(0, 0, getWidth(), getHeight());
+        double cellSize = camera.getCellSize();
+
+        snapshot.forEachObstacleIn(windowX, windowY, windowWidth, windowHeight, obstacle -> {
+            double x = camera.toViewX(obstacle.getX());
+            double y = camera.toViewY(obstacle.getY());
+            layer.setFill(toColor(obstacle.getColor()));  // 设置填充颜色为障碍物的颜色
+            layer.fillRect(x, y, cellSize, cellSize);
 
             // Optional: Draw a border to distinguish obstacles
-            gc.setStroke(Color.BLACK);
-            gc.strokeRect(obstacle.getX() * cellSize, obstacle.getY() * cellSize, cellSize, cellSize);
+            layer.setStroke(Color.BLACK);
+            layer.strokeRect(x, y, cellSize, cellSize);
+        });
+
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        if (obstacleImage != null && (obstacleImage.getWidth() != Math.ceil(getWidth())
+                || obstacleImage.getHeight() != Math.ceil(getHeight()))) {
+            obstacleImage = null;
+        }
+        obstacleImage = obstacleLayer.snapshot(parameters, obstacleImage);
+        drawnObstacles = snapshot.getObstacles();
+        obstacleVersion = snapshot.getObstacleVersion();
+        layerCellSize = camera.getCellSize();
+        layerViewX = camera.getX();
+        layerViewY = camera.getY();
+        layerWidth = getWidth();
+        layerHeight = getHeight();
+    }
+
+    /**
+     * Draws one robot of a snapshot from its sprite, with its ID label if cells are large enough.
+     *
+     * @param gc       the GraphicsContext to draw on
+     * @param snapshot the snapshot holding the robot
+     * @param i        the index of the robot in the snapshot
+     * @param cellSize the size of each cell on the grid
+     * @param progress how far the robot has glided from its previous cell, from 0 to 1
+     */
+    private void drawRobot(GraphicsContext gc, ArenaSnapshot snapshot, int i, double cellSize, double progress) {
+        double cellX = snapshot.getX(i);
+        double cellY = snapshot.getY(i);
+        // 只在相邻格之间滑动，环形竞技场的跨边移动直接跳到新位置
+        if (progress < 1 && Math.abs(cellX - fromXs[i]) <= 1 && Math.abs(cellY - fromYs[i]) <= 1) {
+            cellX = fromXs[i] + (cellX - fromXs[i]) * progress;
+            cellY = fromYs[i] + (cellY - fromYs[i]) * progress;
         }
+        double x = camera.toViewX(cellX);
+        double y = camera.toViewY(cellY);
+        RobotArena.RobotType type = snapshot.getType(i);
+        int argb = snapshot.getColor(i);
+        Color color = toColor(argb);
 
-        // Draw all robots, using their color properties
-        for (Robot robot : arena.getRobots()) {
-            double x = robot.getX() * cellSize;
-            double y = robot.getY() * cellSize;
+        if (!sprites.draw(gc, type, argb, x, y, color)) {
+            paintRobot(gc, type, x, y, cellSize, color);
+        }
+
+        // Draw robot ID
+        if (cellSize >= LABEL_CELL_SIZE) {
+            gc.setFill(Color.BLACK);
+            gc.fillText("ID: " + snapshot.getId(i), x + LABEL_X, y + LABEL_Y);
+        }
+    }
 
-            if (robot instanceof AdvancedRobot) {
+    /**
+     * Paints a robot's body, wheels and antennas with shape calls. Used to render sprites, and
+     * to draw robots directly when the sprite atlas is full.
+     *
+     * @param gc       the GraphicsContext to draw on
+     * @param type     the type of the robot
+     * @param x        the X coordinate of the top-left corner of the robot
+     * @param y        the Y coordinate of the top-left corner of the robot
+     * @param cellSize the size of each cell on the grid
+     * @param color    the color of the robot
+     */
+    private void paintRobot(GraphicsContext gc, RobotArena.RobotType type, double x, double y, double cellSize, Color color) {
+        switch (type) {
+            case ADVANCED:
                 // Draw AdvancedRobot with wheels
-                drawAdvancedRobot(gc, x, y, cellSize, ((AdvancedRobot) robot).getColor());
-            } else if (robot instanceof SensorRobot) {
+                drawAdvancedRobot(gc, x, y, cellSize, color);
+                break;
+            case SENSOR:
                 // Draw SensorRobot with antennas
-                drawSensorRobot(gc, x, y, cellSize, ((SensorRobot) robot).getColor());
-            } else {
+                drawSensorRobot(gc, x, y, cellSize, color);
+                break;
+            default:
                 // Draw BasicRobot as a simple square
-                drawBasicRobot(gc, x, y, cellSize, robot.getColor());
-            }
+                drawBasicRobot(gc, x, y, cellSize, color);
+                break;
+        }
+    }
 
-            // Draw robot ID
-            gc.setFill(Color.BLACK);
-            gc.fillText("ID: " + robot.getId(), x + 5, y + 15);
+    /**
+     * Remembers the robots of a snapshot as the robots drawn, for comparison with the next frame.
+     *
+     * @param snapshot the snapshot that has been drawn
+     */
+    private void rememberRobots(ArenaSnapshot snapshot) {
+        int count = snapshot.size();
+        if (drawnIds.length < count) {
+            int capacity = Math.max(count, drawnIds.length + (drawnIds.length >> 1));
+            drawnIds = Arrays.copyOf(drawnIds, capacity);
+            drawnXs = Arrays.copyOf(drawnXs, capacity);
+            drawnYs = Arrays.copyOf(drawnYs, capacity);
+            drawnTypes = Arrays.copyOf(drawnTypes, capacity);
+            drawnColors = Arrays.copyOf(drawnColors, capacity);
+        }
+        for (int i = 0; i < count; i++) {
+            drawnIds[i] = snapshot.getId(i);
+            drawnXs[i] = snapshot.getX(i);
+            drawnYs[i] = snapshot.getY(i);
+            drawnTypes[i] = (byte) snapshot.getType(i).ordinal();
+            drawnColors[i] = snapshot.getColor(i);
+        }
+        drawnCount = count;
+    }
+
+    /**
+     * Works out how many cells beyond its own a robot's drawing can reach: its sprite reaches past
+     * the cell by the atlas margin, and the ID label, if drawn at this cell size, is as wide as the
+     * longest ID makes it.
+     * The label is only measured again when the longest ID gains a digit or the cell size changes.
+     *
+     * @param gc       the GraphicsContext whose font the labels use
+     * @param maxId    the largest robot ID to be drawn
+     * @param cellSize the size of each cell on the grid
+     */
+    private void updateReach(GraphicsContext gc, int maxId, double cellSize) {
+        int digits = Integer.toString(Math.max(0, maxId)).length();
+        if (digits == reachDigits && cellSize == drawnCellSize) {
+            return;
         }
+        // 精灵图块的边距，加一像素的插值余量
+        double outside = sprites.getMargin() + 1;
+        if (cellSize >= LABEL_CELL_SIZE) {
+            Text label = new Text("ID: " + "8".repeat(digits));
+            label.setFont(gc.getFont());
+            double width = LABEL_X + label.getLayoutBounds().getWidth();
+            double height = LABEL_Y + label.getLayoutBounds().getMaxY();
+            outside = Math.max(outside, Math.max(width, height) - cellSize);
+        }
+        reach = Math.max(1, (int) Math.ceil(outside / cellSize));
+        reachDigits = digits;
+    }
+
+    /**
+     * Gets the largest robot ID in a snapshot.
+     *
+     * @param snapshot the snapshot
+     * @return the largest ID, or -1 if there are no robots
+     */
+    private static int maxId(ArenaSnapshot snapshot) {
+        int maxId = -1;
+        for (int i = 0; i < snapshot.size(); i++) {
+            maxId = Math.max(maxId, snapshot.getId(i));
+        }
+        return maxId;
+    }
+
+    /**
+     * Packs the coordinates of a cell into a single key, X in the low 32 bits and Y in the high.
+     *
+     * @param x the X coordinate of the cell
+     * @param y the Y coordinate of the cell
+     * @return the key of the cell
+     */
+    private static long cellKey(int x, int y) {
+        return (long) y << 32 | (x & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Grows a set of cells by the given number of cells in every direction, clipped to the window.
+     *
+     * @param cells  the cells, indexed by {@code row * sizeX + column} within the window
+     * @param sizeX  the width of the window in cells
+     * @param sizeY  the height of the window in cells
+     * @param radius the number of cells to grow by
+     * @return a new set holding the grown cells
+     */
+    private static BitSet dilate(BitSet cells, int sizeX, int sizeY, int radius) {
+        BitSet grown = new BitSet();
+        for (int cell = cells.nextSetBit(0); cell >= 0; cell = cells.nextSetBit(cell + 1)) {
+            int x = cell % sizeX;
+            int y = cell / sizeX;
+            int fromX = Math.max(0, x - radius);
+            int toX = Math.min(sizeX - 1, x + radius);
+            for (int row = Math.max(0, y - radius); row <= Math.min(sizeY - 1, y + radius); row++) {
+                grown.set(row * sizeX + fromX, row * sizeX + toX + 1);
+            }
+        }
+        return grown;
+    }
+
+    /**
+     * Converts a packed 0xAARRGGBB color from the simulation into a JavaFX color.
+     *
+     * @param argb the packed color
+     * @return the matching JavaFX color
+     */
+    private Color toColor(int argb) {
+        return colors.computeIfAbsent(argb, c -> Color.rgb((c >> 16) & 0xFF, (c >> 8) & 0xFF, c & 0xFF, ((c >>> 24) & 0xFF) / 255.0));
     }
 
     /**
@@ -0,0 +1,561 @@
+package application;
+
+import javafx.beans.property.LongProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.SimpleLongProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The RobotStatusTable class lists the ID, type, position and direction of every robot in an arena.
+ * It is a {@link TableView}, so only the rows that are on screen have cells; the other robots are
+ * just row objects.
+ * <p>
+ * The table is brought up to date with {@link #update()}, which may be called from any thread,
+ * usually the one that advanced the arena. It compares the latest snapshot with the one the rows
+ * show, in arena order, and hands the FX application thread only the differences: the robots that
+ * were removed, the robots that moved or turned, and the robots that were added. Moves and turns
+ * update the properties of existing rows, so the visible cells redraw themselves, while the list of
+ * rows only changes when robots come and go. The differences go through a {@link FrameSignal}, so
+ * at most one of them waits on the FX application thread; if the table is updated again before
+ * it is applied, it is replaced by the differences to the newer snapshot.
+ * <p>
+ * Rows can be sorted by any column and filtered with {@link #setFilter(String)}; both work on the
+ * rows, never on the arena. The ID and type of a robot never change, so sorting by them stays
+ * correct as the robots move. Positions and directions change every tick, so a table sorted by
+ * them is sorted again at most once every {@link #RESORT_NANOS} instead of after every tick.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ */
+    public class RobotStatusTable extends TableView<RobotStatusTable.Row> {
+
+    /**
+     * The shortest time between two sorts of a table sorted by position or direction, in
+     * nanoseconds.
+     */
+    public static final long RESORT_NANOS = 1_000_000_000L;
+
+    /**
+     * The directions, cached to avoid copying the array on every lookup.
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * One robot's row in the table. Rows are only changed on the FX application thread.
+     */
+    public static final class Row {
+
+        /**
+         * The unique identifier of the robot.
+         */
+        private final int id;
+
+        /**
+         * The type of the robot.
+         */
+        private final RobotArena.RobotType type;
+
+        /**
+         * The position of the robot, packed as Y in the high 32 bits and X in the low 32 bits so
+         * that sorting by it sorts by row and then by column.
+         */
+        private final LongProperty position;
+
+        /**
+         * The direction the robot faces.
+         */
+        private final ObjectProperty<Direction> direction;
+
+        /**
+         * Constructs the row of a robot.
+         *
+         * @param id        the unique identifier of the robot
+         * @param type      the type of the robot
+         * @param x         the X coordinate of the robot
+         * @param y         the Y coordinate of the robot
+         * @param direction the direction the robot faces
+         */
+        Row(int id, RobotArena.RobotType type, int x, int y, Direction direction) {
+            this.id = id;
+            this.type = type;
+            this.position = new SimpleLongProperty(pack(x, y));
+            this.direction = new SimpleObjectProperty<>(direction);
+        }
+
+        /**
+         * Gets the unique identifier of the robot.
+         *
+         * @return the ID of the robot
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Gets the type of the robot.
+         *
+         * @return the type of the robot
+         */
+        public RobotArena.RobotType getType() {
+            return type;
+        }
+
+        /**
+         * Gets the X coordinate of the robot.
+         *
+         * @return the X coordinate
+         */
+        public int getX() {
+            return (int) position.get();
+        }
+
+        /**
+         * Gets the Y coordinate of the robot.
+         *
+         * @return the Y coordinate
+         */
+        public int getY() {
+            return (int) (position.get() >> 32);
+        }
+
+        /**
+         * Gets the direction the robot faces.
+         *
+         * @return the direction
+         */
+        public Direction getDirection() {
+            return direction.get();
+        }
+    }
+
+    /**
+     * The differences between two snapshots, worked out by {@link #update()} and applied to the
+     * rows on the FX application thread. Its arrays grow as changes are added, so an update with
+     * few changes stays small.
+     */
+    private static final class Update {
+
+        /**
+         * The IDs of the robots that were removed.
+         */
+        int[] removed = new int[0];
+
+        /**
+         * The number of robots that were removed.
+         */
+        int removedCount;
+
+        /**
+         * The robots that moved or turned, as {@code id, x, y, direction} quadruples.
+         */
+        int[] changed = new int[0];
+
+        /**
+         * The number of robots that moved or turned.
+         */
+        int changedCount;
+
+        /**
+         * The rows of the robots that were added, in arena order.
+         */
+        final List<Row> added = new ArrayList<>();
+
+        /**
+         * Adds a robot that was removed.
+         *
+         * @param id the ID of the robot
+         */
+        void remove(int id) {
+            if (removedCount == removed.length) {
+                removed = Arrays.copyOf(removed, Math.max(16, removedCount * 2));
+            }
+            removed[removedCount++] = id;
+        }
+
+        /**
+         * Adds a robot that moved or turned.
+         *
+         * @param id        the ID of the robot
+         * @param x         the new X coordinate
+         * @param y         the new Y coordinate
+         * @param direction the ordinal of the new direction
+         */
+        void change(int id, int x, int y, int direction) {
+            int at = changedCount * 4;
+            if (at == changed.length) {
+                changed = Arrays.copyOf(changed, Math.max(64, at * 2));
+            }
+            changed[at] = id;
+            changed[at + 1] = x;
+            changed[at + 2] = y;
+            changed[at + 3] = direction;
+            changedCount++;
+        }
+    }
+
+    /**
+     * The arena whose robots are listed.
+     */
+    private volatile RobotArena arena;
+
+    /**
+     * Every robot's row, in arena order.
+     */
+    private final ObservableList<Row> rows = FXCollections.observableArrayList();
+
+    /**
+     * Every robot's row by robot ID, used to apply updates.
+     */
+    private final Map<Integer, Row> rowsById = new HashMap<>();
+
+    /**
+     * The rows that pass the filter.
+     */
+    private final FilteredList<Row> filtered = new FilteredList<>(rows);
+
+    /**
+     * The filtered rows in the order chosen by the column headers.
+     */
+    private final SortedList<Row> sorted = new SortedList<>(filtered);
+
+    /**
+     * The column showing each robot's position.
+     */
+    private final TableColumn<Row, Number> positionColumn = new TableColumn<>("Position");
+
+    /**
+     * The column showing each robot's direction.
+     */
+    private final TableColumn<Row, Direction> directionColumn = new TableColumn<>("Direction");
+
+    /**
+     * When the rows were last sorted, from {@link System#nanoTime()}.
+     */
+    private long sortedAt;
+
+    /**
+     * Runs the waiting update on the FX application thread, at most one at a time.
+     */
+    private final FrameSignal signal = new FrameSignal(this::applyPending);
+
+    /**
+     * The IDs of the robots the rows show once every update handed to the FX application thread
+     * is applied, in arena order.
+     */
+    private int[] seenIds = new int[0];
+
+    /**
+     * The packed positions of the robots the rows show.
+     */
+    private long[] seenPositions = new long[0];
+
+    /**
+     * The direction ordinals of the robots the rows show.
+     */
+    private byte[] seenDirections = new byte[0];
+
+    /**
+     * The number of robots the rows show.
+     */
+    private int seenCount;
+
+    /**
+     * The IDs of the robots in the snapshot of the waiting update, in arena order.
+     */
+    private int[] nextIds = new int[0];
+
+    /**
+     * The packed positions of the robots in the snapshot of the waiting update.
+     */
+    private long[] nextPositions = new long[0];
+
+    /**
+     * The direction ordinals of the robots in the snapshot of the waiting update.
+     */
+    private byte[] nextDirections = new byte[0];
+
+    /**
+     * The number of robots in the snapshot of the waiting update.
+     */
+    private int nextCount;
+
+    /**
+     * The update waiting to be applied, or null if there is none.
+     */
+    private Update pending;
+
+    /**
+     * Constructs a table listing the robots of an arena. The rows are filled from the latest
+     * snapshot at the next pulse.
+     *
+     * @param arena the arena whose robots to list
+     */
+    public RobotStatusTable(RobotArena arena) {
+        this.arena = arena;
+
+        TableColumn<Row, Number> idColumn = new TableColumn<>("ID");
+        idColumn.setCellValueFactory(data -> new ReadOnlyObjectWrapper<>(data.getValue().getId()));
+        TableColumn<Row, RobotArena.RobotType> typeColumn = new TableColumn<>("Type");
+        typeColumn.setCellValueFactory(data -> new ReadOnlyObjectWrapper<>(data.getValue().getType()));
+        positionColumn.setCellValueFactory(data -> data.getValue().position);
+        positionColumn.setCellFactory(column -> new TableCell<>() {
+            @Override
+            protected void updateItem(Number item, boolean empty) {
+                super.updateItem(item, empty);
+                // 只为可见单元格格式化坐标
+                long packed = empty || item == null ? 0 : item.longValue();
+                setText(empty || item == null ? null : "(" + (int) packed + ", " + (int) (packed >> 32) + ")");
+            }
+        });
+        directionColumn.setCellValueFactory(data -> data.getValue().direction);
+        getColumns().addAll(Arrays.asList(idColumn, typeColumn, positionColumn, directionColumn));
+        setColumnResizePolicy(CONSTRAINED_RESIZE_POLICY);
+
+        setItems(sorted);
+        setSortPolicy(table -> {
+            resort();
+            return true;
+        });
+        update();
+    }
+
+    /**
+     * Lists the robots of another arena instead, for example one that was just created or opened.
+     * Call it on the FX application thread once nothing updates the table for the previous arena
+     * any more. The rows are emptied at once and filled from the new arena's latest snapshot at
+     * the next pulse.
+     *
+     * @param arena the arena whose robots to list
+     */
+    public void setArena(RobotArena arena) {
+        synchronized (this) {
+            this.arena = arena;
+            // 丢弃旧竞技场的等待更新，从空表开始比较
+            pending = null;
+            seenCount = 0;
+        }
+        rows.clear();
+        rowsById.clear();
+        update();
+    }
+
+    /**
+     * Shows only the robots whose ID starts with the given text or whose type contains it,
+     * ignoring case.
+     *
+     * @param text the text to filter by, or an empty string to show every robot
+     */
+    public void setFilter(String text) {
+        String filter = text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+        filtered.setPredicate(filter.isEmpty() ? null : row -> Integer.toString(row.getId()).startsWith(filter)
+                || row.getType().name().toLowerCase(Locale.ROOT).contains(filter));
+    }
+
+    /**
+     * Gets the number of robots listed, whether they pass the filter or not.
+     *
+     * @return the number of rows
+     */
+    public int getRobotCount() {
+        return rows.size();
+    }
+
+    /**
+     * Gets the signal that hands updates to the FX application thread, whose counters tell how
+     * many snapshots the table skipped to keep up.
+     *
+     * @return the update signal
+     */
+    public FrameSignal getUpdateSignal() {
+        return signal;
+    }
+
+    /**
+     * Brings the table up to date with the latest snapshot of the arena. The differences are
+     * worked out on the calling thread and applied on the FX application thread at its next
+     * pulse.
+     */
+    public void update() {
+        long frame;
+        try (ArenaSnapshot snapshot = arena.acquireSnapshot()) {
+            frame = snapshot.getSequence();
+            if (!diff(snapshot)) {
+                return;
+            }
+        }
+        signal.post(frame);
+    }
+
+    /**
+     * Works out the differences between a snapshot and the robots the rows show, and makes them
+     * the waiting update, replacing the one that was waiting. Both hold the robots in arena order,
+     * which only changes by robots being removed or appended, so a robot whose ID does not match
+     * the next one shown means the robot shown has gone.
+     *
+     * @param snapshot the latest snapshot
+     * @return true if the snapshot differs from the robots the rows show, false otherwise
+     */
+    private synchronized boolean diff(ArenaSnapshot snapshot) {
+        int count = snapshot.size();
+        // 只在发现第一处变化时才创建更新，无变化的一步不分配内存
+        Update update = null;
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            int id = snapshot.getId(i);
+            while (previous < seenCount && seenIds[previous] != id) {
+                update = update == null ? new Update() : update;
+                update.remove(seenIds[previous++]);
+            }
+            int x = snapshot.getX(i);
+            int y = snapshot.getY(i);
+            Direction direction = snapshot.getDirection(i);
+            if (previous == seenCount) {
+                update = update == null ? new Update() : update;
+                update.added.add(new Row(id, snapshot.getType(i), x, y, direction));
+                continue;
+            }
+            if (seenPositions[previous] != pack(x, y) || seenDirections[previous] != direction.ordinal()) {
+                update = update == null ? new Update() : update;
+                update.change(id, x, y, direction.ordinal());
+            }
+            previous++;
+        }
+        while (previous < seenCount) {
+            update = update == null ? new Update() : update;
+            update.remove(seenIds[previous++]);
+        }
+
+        if (update == null) {
+            // 表格已显示这一状态，丢弃等待中的更新
+            pending = null;
+            return false;
+        }
+        if (nextIds.length < count) {
+            int capacity = Math.max(count, nextIds.length + (nextIds.length >> 1));
+            nextIds = Arrays.copyOf(nextIds, capacity);
+            nextPositions = Arrays.copyOf(nextPositions, capacity);
+            nextDirections = Arrays.copyOf(nextDirections, capacity);
+        }
+        for (int i = 0; i < count; i++) {
+            nextIds[i] = snapshot.getId(i);
+            nextPositions[i] = pack(snapshot.getX(i), snapshot.getY(i));
+            nextDirections[i] = (byte) snapshot.getDirection(i).ordinal();
+        }
+        nextCount = count;
+        pending = update;
+        return true;
+    }
+
+    /**
+     * Takes the waiting update, from then on comparing snapshots with the robots it shows.
+     *
+     * @return the waiting update, or null if there is none
+     */
+    private synchronized Update takePending() {
+        Update update = pending;
+        if (update == null) {
+            return null;
+        }
+        pending = null;
+        int[] ids = seenIds;
+        long[] positions = seenPositions;
+        byte[] directions = seenDirections;
+        seenIds = nextIds;
+        seenPositions = nextPositions;
+        seenDirections = nextDirections;
+        seenCount = nextCount;
+        nextIds = ids;
+        nextPositions = positions;
+        nextDirections = directions;
+        return update;
+    }
+
+    /**
+     * Applies the waiting update, if there is one. Runs on the FX application thread.
+     */
+    private void applyPending() {
+        Update update = takePending();
+        if (update != null) {
+            apply(update);
+        }
+    }
+
+    /**
+     * Applies the differences between two snapshots to the rows. Removed rows are taken out in a
+     * single change and added rows appended in another; moved or turned robots only have their
+     * row's properties set.
+     *
+     * @param update the differences to apply
+     */
+    private void apply(Update update) {
+        if (update.removedCount > 0) {
+            Set<Row> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < update.removedCount; i++) {
+                Row row = rowsById.remove(update.removed[i]);
+                if (row != null) {
+                    gone.add(row);
+                }
+            }
+            rows.removeAll(gone);
+        }
+        for (int i = 0; i < update.changedCount; i++) {
+            int at = i * 4;
+            Row row = rowsById.get(update.changed[at]);
+            if (row != null) {
+                row.position.set(pack(update.changed[at + 1], update.changed[at + 2]));
+                row.direction.set(DIRECTIONS[update.changed[at + 3]]);
+            }
+        }
+        if (!update.added.isEmpty()) {
+            for (Row row : update.added) {
+                rowsById.put(row.getId(), row);
+            }
+            rows.addAll(update.added);
+        }
+
+        // 按位置或方向排序时，限制重新排序的频率
+        boolean volatileOrder = getSortOrder().contains(positionColumn) || getSortOrder().contains(directionColumn);
+        if (volatileOrder && update.changedCount > 0 && System.nanoTime() - sortedAt >= RESORT_NANOS) {
+            resort();
+        }
+    }
+
+    /**
+     * Sorts the rows again by the order chosen in the column headers. A new comparator is set
+     * each time, because the sorted list only sorts again when its comparator changes.
+     */
+    private void resort() {
+        Comparator<Row> comparator = getComparator();
+        sorted.setComparator(comparator == null ? null : (a, b) -> comparator.compare(a, b));
+        sortedAt = System.nanoTime();
+    }
+
+    /**
+     * Packs a position into a single value that sorts by row and then by column.
+     *
+     * @param x the X coordinate
+     * @param y the Y coordinate
+     * @return the packed position
+     */
+    private static long pack(int x, int y) {
+        return (long) y << 32 | (x & 0xFFFFFFFFL);
+    }
+}
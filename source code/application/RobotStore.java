@@ -0,0 +1,763 @@
+package application;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The RobotStore class keeps the state of many robots in parallel primitive arrays (one column per
+ * property) instead of one heap object per robot. A robot is identified by its slot, the row index
+ * shared by all columns, so moving every robot is a single linear sweep over tightly packed arrays.
+ * {@link Robot} objects are thin views over a slot and are only created when someone asks for them.
+ * Every robot also owns a private random number stream, derived from the store's seed and the order
+ * in which robots were added, so that its random decisions are reproducible and never allocate.
+ * <p>
+ * Removing a robot only marks its slot as a tombstone, which takes constant time; no other robot
+ * moves. Tombstones are skipped by everyone walking the slots and are squeezed out by
+ * {@link #compact()}, which keeps the surviving robots in their original relative order. Slot
+ * order therefore always matches the order in which robots were added, no matter when compaction
+ * runs, which keeps simulations and replays deterministic.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see Robot
+ */
+    public class RobotStore {
+
+    /**
+     * The capacity used when no initial capacity is given.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The robot types, cached to avoid copying the array on every lookup.
+     */
+    private static final RobotArena.RobotType[] TYPES = RobotArena.RobotType.values();
+
+    /**
+     * The directions, cached to avoid copying the array on every lookup.
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * The increment of the SplitMix64 generator (the 64-bit golden ratio).
+     */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * {@link #compactIfNeeded()} compacts once at least one slot in this many is a tombstone.
+     */
+    private static final int COMPACT_RATIO = 4;
+
+    /**
+     * The seed from which the random streams of the robots are derived.
+     */
+    private final long seed;
+
+    /**
+     * The bounds the robots in this store move within.
+     */
+    private ArenaBounds bounds = ArenaBounds.UNBOUNDED;
+
+    /**
+     * The arena this store belongs to, or null for the private store of a robot outside any arena.
+     */
+    private RobotArena arena;
+
+    /**
+     * The number of robots ever added to the store, used to give each one a distinct stream.
+     */
+    private long spawned;
+
+    /**
+     * The number of slots in use, including tombstones that have not been compacted yet.
+     */
+    private int size;
+
+    /**
+     * The slots whose robots have been removed but not yet compacted away.
+     */
+    private final BitSet removed = new BitSet();
+
+    /**
+     * The number of tombstones, i.e. the number of bits set in {@link #removed}.
+     */
+    private int removedCount;
+
+    /**
+     * The slot of each live robot in list order, rebuilt lazily while there are tombstones.
+     */
+    private int[] liveSlots = new int[0];
+
+    /**
+     * Whether {@link #liveSlots} has to be rebuilt before it is used again.
+     */
+    private boolean liveSlotsStale = true;
+
+    /**
+     * The unique identifier of each robot.
+     */
+    private int[] ids;
+
+    /**
+     * The ordinal of the {@link RobotArena.RobotType} of each robot.
+     */
+    private byte[] types;
+
+    /**
+     * The current X coordinate of each robot.
+     */
+    private int[] xs;
+
+    /**
+     * The current Y coordinate of each robot.
+     */
+    private int[] ys;
+
+    /**
+     * The ordinal of the current {@link Direction} of each robot.
+     */
+    private byte[] directions;
+
+    /**
+     * The initial X coordinate of each robot, used for resetting.
+     */
+    private int[] initialXs;
+
+    /**
+     * The initial Y coordinate of each robot, used for resetting.
+     */
+    private int[] initialYs;
+
+    /**
+     * The ordinal of the initial {@link Direction} of each robot, used for resetting.
+     */
+    private byte[] initialDirections;
+
+    /**
+     * The state of the SplitMix64 random number stream of each robot.
+     */
+    private long[] randomStates;
+
+    /**
+     * The view object of each robot, or null if no view has been created for the slot yet.
+     */
+    private Robot[] views;
+
+    /**
+     * Constructs a new, empty RobotStore with a default capacity.
+     *
+     * @param seed the seed from which the random streams of the robots are derived
+     */
+    public RobotStore(long seed) {
+        this(DEFAULT_CAPACITY, seed);
+    }
+
+    /**
+     * Constructs a new, empty RobotStore with the specified initial capacity.
+     *
+     * @param capacity the number of robots the store can hold before growing
+     * @param seed     the seed from which the random streams of the robots are derived
+     */
+    public RobotStore(int capacity, long seed) {
+        capacity = Math.max(1, capacity);
+        this.seed = seed;
+        ids = new int[capacity];
+        types = new byte[capacity];
+        xs = new int[capacity];
+        ys = new int[capacity];
+        directions = new byte[capacity];
+        initialXs = new int[capacity];
+        initialYs = new int[capacity];
+        initialDirections = new byte[capacity];
+        randomStates = new long[capacity];
+        views = new Robot[capacity];
+    }
+
+    /**
+     * Appends a robot whose initial state equals its current state.
+     *
+     * @param id        the unique identifier of the robot
+     * @param type      the type of the robot
+     * @param x         the X coordinate of the robot
+     * @param y         the Y coordinate of the robot
+     * @param direction the direction of the robot
+     * @return the slot of the new robot
+     */
+    public int add(int id, RobotArena.RobotType type, int x, int y, Direction direction) {
+        return add(id, type, x, y, direction, x, y, direction);
+    }
+
+    /**
+     * Appends a robot with separate current and initial state.
+     *
+     * @param id               the unique identifier of the robot
+     * @param type             the type of the robot
+     * @param x                the current X coordinate of the robot
+     * @param y                the current Y coordinate of the robot
+     * @param direction        the current direction of the robot
+     * @param initialX         the initial X coordinate of the robot
+     * @param initialY         the initial Y coordinate of the robot
+     * @param initialDirection the initial direction of the robot
+     * @return the slot of the new robot
+     */
+    public int add(int id, RobotArena.RobotType type, int x, int y, Direction direction,
+            int initialX, int initialY, Direction initialDirection) {
+        ensureCapacity(size + 1);
+        int slot = size++;
+        ids[slot] = id;
+        types[slot] = (byte) type.ordinal();
+        xs[slot] = x;
+        ys[slot] = y;
+        directions[slot] = (byte) direction.ordinal();
+        initialXs[slot] = initialX;
+        initialYs[slot] = initialY;
+        initialDirections[slot] = (byte) initialDirection.ordinal();
+        randomStates[slot] = mix(seed + GOLDEN_GAMMA * ++spawned);
+        views[slot] = null;
+        liveSlotsStale = true;
+        return slot;
+    }
+
+    /**
+     * Removes the robot in the given slot by marking the slot as a tombstone. No other robot moves,
+     * so this takes constant time; the slot is reclaimed by the next {@link #compact()}.
+     * Removing a slot that is already a tombstone does nothing.
+     *
+     * @param slot the slot to remove
+     * @return true if a robot was removed, false if the slot was already a tombstone
+     */
+    public boolean remove(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " is out of range for " + size + " slots.");
+        }
+        if (removed.get(slot)) {
+            return false;
+        }
+        if (views[slot] != null) {
+            views[slot].detach();
+            views[slot] = null;
+        }
+        removed.set(slot);
+        removedCount++;
+        liveSlotsStale = true;
+        return true;
+    }
+
+    /**
+     * Removes every robot whose slot is set in the given bit set, leaving tombstones as
+     * {@link #remove(int)} does.
+     *
+     * @param marked the slots to remove
+     */
+    public void removeAll(BitSet marked) {
+        for (int slot = marked.nextSetBit(0); slot >= 0 && slot < size; slot = marked.nextSetBit(slot + 1)) {
+            remove(slot);
+        }
+    }
+
+    /**
+     * Checks whether the given slot holds a live robot rather than a tombstone.
+     *
+     * @param slot the slot to check
+     * @return true if the slot is in use and its robot has not been removed
+     */
+    public boolean isAlive(int slot) {
+        return slot >= 0 && slot < size && !removed.get(slot);
+    }
+
+    /**
+     * Squeezes all tombstones out of the store in a single pass. The remaining robots keep their
+     * relative order but may move to lower slots, so any index keyed by slot must be rebuilt
+     * afterwards.
+     *
+     * @return true if any slot changed, false if there were no tombstones
+     */
+    public boolean compact() {
+        if (removedCount == 0) {
+            return false;
+        }
+        int to = removed.nextSetBit(0);
+        for (int from = to + 1; from < size; from++) {
+            if (removed.get(from)) {
+                continue;
+            }
+            ids[to] = ids[from];
+            types[to] = types[from];
+            xs[to] = xs[from];
+            ys[to] = ys[from];
+            directions[to] = directions[from];
+            initialXs[to] = initialXs[from];
+            initialYs[to] = initialYs[from];
+            initialDirections[to] = initialDirections[from];
+            randomStates[to] = randomStates[from];
+            views[to] = views[from];
+            if (views[to] != null) {
+                views[to].slot = to;
+            }
+            to++;
+        }
+        Arrays.fill(views, to, size, null);
+        size = to;
+        removed.clear();
+        removedCount = 0;
+        liveSlotsStale = true;
+        return true;
+    }
+
+    /**
+     * Compacts the store if tombstones make up a large enough share of its slots, so that the cost
+     * of compaction is spread over many removals.
+     *
+     * @return true if the store was compacted, false otherwise
+     */
+    public boolean compactIfNeeded() {
+        return removedCount > 0 && removedCount * COMPACT_RATIO >= size && compact();
+    }
+
+    /**
+     * Removes all robots from the store.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            if (views[i] != null) {
+                views[i].detach();
+            }
+        }
+        Arrays.fill(views, 0, size, null);
+        size = 0;
+        removed.clear();
+        removedCount = 0;
+        liveSlotsStale = true;
+    }
+
+    /**
+     * Resets the robot in the given slot to its initial position and direction.
+     *
+     * @param slot the slot of the robot
+     */
+    public void reset(int slot) {
+        xs[slot] = initialXs[slot];
+        ys[slot] = initialYs[slot];
+        directions[slot] = initialDirections[slot];
+    }
+
+    /**
+     * Resets every robot in the store to its initial position and direction.
+     */
+    public void resetAll() {
+        System.arraycopy(initialXs, 0, xs, 0, size);
+        System.arraycopy(initialYs, 0, ys, 0, size);
+        System.arraycopy(initialDirections, 0, directions, 0, size);
+    }
+
+    /**
+     * Gets the number of slots in use, including tombstones. Walking the slots from 0 to this
+     * value and skipping those that are not {@link #isAlive(int) alive} visits every robot.
+     *
+     * @return the number of slots in use
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of live robots in the store.
+     *
+     * @return the number of robots, not counting tombstones
+     */
+    public int count() {
+        return size - removedCount;
+    }
+
+    /**
+     * Gets the slot of the live robot at the given position in list order, skipping tombstones.
+     * While there are no tombstones the position is the slot itself; otherwise a table of live
+     * slots is rebuilt once after each change and then reused.
+     *
+     * @param index the position of the robot among the live robots
+     * @return the slot of the robot
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public int liveSlot(int index) {
+        if (index < 0 || index >= count()) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of range for " + count() + " robots.");
+        }
+        if (removedCount == 0) {
+            return index;
+        }
+        if (liveSlotsStale) {
+            if (liveSlots.length < count()) {
+                liveSlots = new int[ids.length];
+            }
+            int next = 0;
+            for (int slot = removed.nextClearBit(0); slot < size; slot = removed.nextClearBit(slot + 1)) {
+                liveSlots[next++] = slot;
+            }
+            liveSlotsStale = false;
+        }
+        return liveSlots[index];
+    }
+
+    /**
+     * Gets the unique identifier of the robot in the given slot.
+     *
+     * @param slot the slot of the robot
+     * @return the ID of the robot
+     */
+    public int getId(int slot) {
+        return ids[slot];
+    }
+
+    /**
+     * Gets the type of the robot in the given slot.
+     *
+     * @param slot the slot of the robot
+     * @return the type of the robot
+     */
+    public RobotArena.RobotType getType(int slot) {
+        return TYPES[types[slot]];
+    }
+
+    /**
+     * Gets the X coordinate of the robot in the given slot.
+     *
+     * @param slot the slot of the robot
+     * @return the X coordinate
+     */
+    public int getX(int slot) {
+        return xs[slot];
+    }
+
+    /**
+     * Sets the X coordinate of the robot in the given slot.
+     *
+     * @param slot the slot of the robot
+     * @param x    the new X coordinate
+     */
+    public void setX(int slot, int x) {
+        xs[slot] = x;
+    }
+
+    /**
+     * Gets the Y coordinate of the robot in the given slot.
+     *
+     * @param slot the slot of the robot
+     * @return the Y coordinate
+     */
+    public int getY(int slot) {
+        return ys[slot];
+    }
+
+    /**
+     * Sets the Y coordinate of the robot in the given slot.
+     *
+     * @param slot the slot of the robot
+     * @param y    the new Y coordinate
+     */
+    public void setY(int slot, int y) {
+        ys[slot] = y;
+    }
+
+    /**
+     * Gets the direction of the robot in the given slot.
+     *
+     * @param slot the slot of the robot
+     * @return the direction
+     */
+    public Direction getDirection(int slot) {
+        return DIRECTIONS[directions[slot]];
+    }
+
+    /**
+     * Sets the direction of the robot in the given slot.
+     *
+     * @param slot      the slot of the robot
+     * @param direction the new direction
+     */
+    public void setDirection(int slot, Direction direction) {
+        directions[slot] = (byte) direction.ordinal();
+    }
+
+    /**
+     * Gets the initial X coordinate of the robot in the given slot.
+     *
+     * @param slot the slot of the robot
+     * @return the initial X coordinate
+     */
+    public int getInitialX(int slot) {
+        return initialXs[slot];
+    }
+
+    /**
+     * Gets the initial Y coordinate of the robot in the given slot.
+     *
+     * @param slot the slot of the robot
+     * @return the initial Y coordinate
+     */
+    public int getInitialY(int slot) {
+        return initialYs[slot];
+    }
+
+    /**
+     * Gets the initial direction of the robot in the given slot.
+     *
+     * @param slot the slot of the robot
+     * @return the initial direction
+     */
+    public Direction getInitialDirection(int slot) {
+        return DIRECTIONS[initialDirections[slot]];
+    }
+
+    /**
+     * Draws the next 64 random bits from the stream of the robot in the given slot.
+     * Only the robot's own stream is advanced, so robots in different slots can draw
+     * concurrently and the result never depends on the order in which they do so.
+     *
+     * @param slot the slot of the robot
+     * @return 64 random bits
+     */
+    public long nextLong(int slot) {
+        long state = randomStates[slot] + GOLDEN_GAMMA;
+        randomStates[slot] = state;
+        return mix(state);
+    }
+
+    /**
+     * Draws a random int in {@code [0, bound)} from the stream of the robot in the given slot.
+     *
+     * @param slot  the slot of the robot
+     * @param bound the exclusive upper bound, which must be positive
+     * @return a random int between 0 (inclusive) and the bound (exclusive)
+     */
+    public int nextInt(int slot, int bound) {
+        return (int) (((nextLong(slot) >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * Draws a random boolean from the stream of the robot in the given slot.
+     *
+     * @param slot the slot of the robot
+     * @return a random boolean
+     */
+    public boolean nextBoolean(int slot) {
+        return nextLong(slot) < 0;
+    }
+
+    /**
+     * Draws a random direction from the stream of the robot in the given slot.
+     *
+     * @param slot the slot of the robot
+     * @return a random direction
+     */
+    public Direction nextDirection(int slot) {
+        return DIRECTIONS[nextInt(slot, DIRECTIONS.length)];
+    }
+
+    /**
+     * Gets the seed from which the random streams of the robots are derived.
+     *
+     * @return the seed of the store
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Gets the bounds the robots in this store move within. A store that does not belong to an
+     * arena uses {@link ArenaBounds#UNBOUNDED}.
+     *
+     * @return the bounds of the store
+     */
+    public ArenaBounds getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Sets the bounds the robots in this store move within.
+     *
+     * @param bounds the new bounds
+     */
+    void setBounds(ArenaBounds bounds) {
+        this.bounds = bounds;
+    }
+
+    /**
+     * Gets the arena this store belongs to.
+     *
+     * @return the arena, or null if the store does not belong to one
+     */
+    RobotArena getArena() {
+        return arena;
+    }
+
+    /**
+     * Sets the arena this store belongs to.
+     *
+     * @param arena the owning arena
+     */
+    void setArena(RobotArena arena) {
+        this.arena = arena;
+    }
+
+    /**
+     * Gets the current state of the random stream of the robot in the given slot, so that it can
+     * be saved and later restored.
+     *
+     * @param slot the slot of the robot
+     * @return the state of the robot's random stream
+     */
+    long getRandomState(int slot) {
+        return randomStates[slot];
+    }
+
+    /**
+     * Gets the number of robots ever added to the store, from which the random stream of the
+     * next robot is derived.
+     *
+     * @return the number of robots spawned
+     */
+    long getSpawned() {
+        return spawned;
+    }
+
+    /**
+     * Replaces the contents of the store with robots read from a file. The arrays are adopted
+     * rather than copied and may be longer than the number of robots.
+     *
+     * @param count             the number of robots
+     * @param spawned           the number of robots ever added to the saved store
+     * @param ids               the IDs of the robots
+     * @param types             the type ordinals of the robots
+     * @param xs                the X coordinates of the robots
+     * @param ys                the Y coordinates of the robots
+     * @param directions        the direction ordinals of the robots
+     * @param initialXs         the initial X coordinates of the robots
+     * @param initialYs         the initial Y coordinates of the robots
+     * @param initialDirections the initial direction ordinals of the robots
+     * @param randomStates      the states of the robots' random streams
+     */
+    void restore(int count, long spawned, int[] ids, byte[] types, int[] xs, int[] ys, byte[] directions,
+            int[] initialXs, int[] initialYs, byte[] initialDirections, long[] randomStates) {
+        clear();
+        this.ids = ids;
+        this.types = types;
+        this.xs = xs;
+        this.ys = ys;
+        this.directions = directions;
+        this.initialXs = initialXs;
+        this.initialYs = initialYs;
+        this.initialDirections = initialDirections;
+        this.randomStates = randomStates;
+        this.views = new Robot[Math.max(1, ids.length)];
+        this.size = count;
+        this.spawned = spawned;
+        liveSlotsStale = true;
+    }
+
+    /**
+     * Gets the color of the robot in the given slot: the color of its view if one has been
+     * created, otherwise the default color of its type.
+     *
+     * @param slot the slot of the robot
+     * @return the color as a packed 0xAARRGGBB value
+     */
+    public int getColor(int slot) {
+        Robot robot = views[slot];
+        if (robot != null) {
+            return robot.getColor();
+        }
+        switch (getType(slot)) {
+            case ADVANCED:
+                return AdvancedRobot.COLOR;
+            case SENSOR:
+                return SensorRobot.COLOR;
+            default:
+                return BasicRobot.COLOR;
+        }
+    }
+
+    /**
+     * Gets the view object for the robot in the given slot, creating it on first use.
+     * The same view is returned for a slot until the robot is removed.
+     *
+     * @param slot the slot of the robot
+     * @return the robot view
+     */
+    public Robot view(int slot) {
+        checkSlot(slot);
+        Robot robot = views[slot];
+        if (robot == null) {
+            switch (getType(slot)) {
+                case ADVANCED:
+                    robot = new AdvancedRobot(this, slot);
+                    break;
+                case SENSOR:
+                    robot = new SensorRobot(this, slot);
+                    break;
+                default:
+                    robot = new BasicRobot(this, slot);
+                    break;
+            }
+            views[slot] = robot;
+        }
+        return robot;
+    }
+
+    /**
+     * Binds an existing view object to the given slot.
+     *
+     * @param slot  the slot of the robot
+     * @param robot the view to bind
+     */
+    void bind(int slot, Robot robot) {
+        views[slot] = robot;
+        robot.store = this;
+        robot.slot = slot;
+    }
+
+    /**
+     * Grows the columns so that they can hold at least the given number of robots.
+     *
+     * @param capacity the required capacity
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, newCapacity);
+        types = Arrays.copyOf(types, newCapacity);
+        xs = Arrays.copyOf(xs, newCapacity);
+        ys = Arrays.copyOf(ys, newCapacity);
+        directions = Arrays.copyOf(directions, newCapacity);
+        initialXs = Arrays.copyOf(initialXs, newCapacity);
+        initialYs = Arrays.copyOf(initialYs, newCapacity);
+        initialDirections = Arrays.copyOf(initialDirections, newCapacity);
+        randomStates = Arrays.copyOf(randomStates, newCapacity);
+        views = Arrays.copyOf(views, newCapacity);
+    }
+
+    /**
+     * Scrambles a 64-bit value with the SplitMix64 finaliser.
+     *
+     * @param z the value to scramble
+     * @return the scrambled value
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Checks that a slot refers to a robot in the store.
+     *
+     * @param slot the slot to check
+     * @throws IndexOutOfBoundsException if the slot is not in use or its robot has been removed
+     */
+    private void checkSlot(int slot) {
+        if (!isAlive(slot)) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " does not hold a robot.");
+        }
+    }
+}
@@ -1,15 +1,15 @@
 package application;
 
-import javafx.scene.paint.Color;
-import java.util.HashSet;
-import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * The SensorRobot class represents a robot with advanced movement logic that can detect and avoid obstacles.
- * It extends the {@link Robot} class and uses a set of predefined obstacle coordinates to navigate safely within the grid.
- * The robot will attempt to move in its current direction, but if it encounters an obstacle or boundary, it will randomly
- * change direction until it finds a clear path or exhausts all attempts.
+ * It extends the {@link Robot} class and senses the obstacles and robots of the arena it lives in to navigate safely within the grid.
+ * Before each step it looks ahead as far as the arena's {@link RobotArena#getSensorRange() sensor range}, using range
+ * queries on the arena's obstacle map and spatial index, so sensing never allocates and costs little however far it reaches.
+ * The robot will attempt to move in its current direction, but if it senses an obstacle, another robot or the boundary, it will randomly
+ * change direction until it finds a clear path or exhausts all attempts, in which case it publishes a blocked event
+ * on the arena's {@link EventBus}.
  *
  * @author [Your Name]
  * @version 1.0
@@ -18,16 +18,9 @@ import java.util.Set;
     public class SensorRobot extends Robot {
 
     /**
-     * A set of points representing the coordinates of obstacles that the SensorRobot must avoid.
+     * The default color of a SensorRobot (yellow), as a packed 0xAARRGGBB value.
      */
-    private static final Set<Point> obstacles = new HashSet<>();
-
-    static {
-        // Initialize the set of obstacles with predefined coordinates
-        obstacles.add(new Point(5, 5));
-        obstacles.add(new Point(3, 10));
-        obstacles.add(new Point(8, 8));
-    }
+    public static final int COLOR = 0xFFFFFF00;
 
     /**
      * Constructs a new SensorRobot object with specified starting position, direction, and color.
@@ -38,7 +31,17 @@ import java.util.Set;
      * @param direction the initial direction of the robot
      */
     public SensorRobot(int x, int y, Direction direction) {
-        super(x, y, direction, Color.YELLOW);  // SensorRobot uses yellow color
+        super(RobotArena.RobotType.SENSOR, x, y, direction, COLOR);  // SensorRobot uses yellow color
+    }
+
+    /**
+     * Constructs a view over a SensorRobot that already lives in a store.
+     *
+     * @param store the store holding the robot
+     * @param slot  the slot of the robot in the store
+     */
+    SensorRobot(RobotStore store, int slot) {
+        super(store, slot, COLOR);
     }
 
     /**
@@ -48,9 +51,30 @@ import java.util.Set;
      */
     @Override
     public void move() {
+        move(store, slot, store.getArena());
+    }
+
+    /**
+     * Applies the SensorRobot movement logic to the robot in the given slot of a store.
+     * The robot senses the obstacles and robots of the given arena; robots are seen where the
+     * arena's spatial index last placed them, which during a tick is where they started it.
+     *
+     * @param store the store holding the robot
+     * @param slot  the slot of the robot in the store
+     * @param arena the arena to sense, or null if the robot is not in an arena
+     * @see #move()
+     */
+    static void move(RobotStore store, int slot, RobotArena arena) {
         // Implement advanced movement logic
-        if (new Random().nextBoolean()) {
-            setDirection(Direction.values()[new Random().nextInt(Direction.values().length)]);
+        if (store.nextBoolean(slot)) {
+            store.setDirection(slot, store.nextDirection(slot));
+        }
+
+        ArenaBounds bounds = store.getBounds();
+        int range = arena != null ? arena.getSensorRange() : 1;
+        if (bounds.isWrapping()) {
+            // 环形场地中探测范围不能绕回机器人自身
+            range = Math.min(range, Math.min(bounds.getSizeX(), bounds.getSizeY()) - 1);
         }
 
         // Attempt to move
@@ -60,42 +84,103 @@ import java.util.Set;
 
         while (!moved && attempts < maxAttempts) {
             // Calculate the next position
-            int nextX = getX();
-            int nextY = getY();
+            int nextX = store.getX(slot);
+            int nextY = store.getY(slot);
 
-            switch (getDirection()) {
+            switch (store.getDirection(slot)) {
                 case UP:
-                    nextY = getY() - 1;
+                    nextY--;
                     break;
                 case DOWN:
-                    nextY = getY() + 1;
+                    nextY++;
                     break;
                 case LEFT:
-                    nextX = getX() - 1;
+                    nextX--;
                     break;
                 case RIGHT:
-                    nextX = getX() + 1;
+                    nextX++;
                     break;
             }
 
-            // Check if the next position is within bounds and not an obstacle
-            if (nextX >= 2 && nextX < 17 && nextY >= 2 && nextY < 17 && !obstacles.contains(new Point(nextX, nextY))) {
-                setX(nextX);
-                setY(nextY);
+            // 环形场地中越界的位置绕回另一侧
+            if (bounds.isWrapping()) {
+                nextX = bounds.constrainX(nextX);
+                nextY = bounds.constrainY(nextY);
+            }
+
+            // Check if the next position is within bounds and nothing is sensed ahead
+            if (bounds.contains(nextX, nextY) && isClear(arena, bounds, store.getX(slot), store.getY(slot), store.getDirection(slot), range)) {
+                store.setX(slot, nextX);
+                store.setY(slot, nextY);
                 moved = true;
             } else {
                 // If an obstacle or boundary is encountered, randomly change direction
-                setDirection(Direction.random());
+                store.setDirection(slot, store.nextDirection(slot));
                 attempts++;
             }
         }
 
         // If all directions are blocked, remain stationary
-        if (!moved) {
-            System.out.println("SensorRobot at (" + getX() + ", " + getY() + ") is blocked and cannot move.");
+        if (!moved && arena != null) {
+            arena.getEventBus().publish(EventBus.EventType.BLOCKED, arena.getTick(), store.getId(slot), -1,
+                    store.getX(slot), store.getY(slot));
         }
     }
 
+    /**
+     * Senses the strip of cells ahead of a robot, from the next cell up to the sensor range.
+     * In a wrap-around arena the strip continues on the opposite side of the arena.
+     *
+     * @param arena     the arena to sense, or null if the robot is not in an arena
+     * @param bounds    the bounds of the arena
+     * @param x         the X coordinate of the robot
+     * @param y         the Y coordinate of the robot
+     * @param direction the direction the robot is facing
+     * @param range     the number of cells to look ahead, at least 1
+     * @return true if there are no obstacles or robots in the strip, false otherwise
+     */
+    private static boolean isClear(RobotArena arena, ArenaBounds bounds, int x, int y, Direction direction, int range) {
+        if (arena == null) {
+            return true;
+        }
+        int left = direction.getDeltaX() < 0 ? x - range : x + direction.getDeltaX();
+        int top = direction.getDeltaY() < 0 ? y - range : y + direction.getDeltaY();
+        int width = direction.getDeltaX() != 0 ? range : 1;
+        int height = direction.getDeltaY() != 0 ? range : 1;
+        if (bounds.isWrapping()) {
+            int sizeX = bounds.getSizeX();
+            int sizeY = bounds.getSizeY();
+            if (left < 0 || left + width > sizeX) {
+                int start = Math.floorMod(left, sizeX);
+                int firstPart = sizeX - start;
+                return isClear(arena, start, top, Math.min(width, firstPart), height)
+                        && (width <= firstPart || isClear(arena, 0, top, width - firstPart, height));
+            }
+            if (top < 0 || top + height > sizeY) {
+                int start = Math.floorMod(top, sizeY);
+                int firstPart = sizeY - start;
+                return isClear(arena, left, start, width, Math.min(height, firstPart))
+                        && (height <= firstPart || isClear(arena, left, 0, width, height - firstPart));
+            }
+        }
+        return isClear(arena, left, top, width, height);
+    }
+
+    /**
+     * Checks that a rectangle of the arena holds no obstacles and no robots.
+     *
+     * @param arena  the arena to sense
+     * @param x      the X coordinate of the top-left cell
+     * @param y      the Y coordinate of the top-left cell
+     * @param width  the width of the rectangle in cells
+     * @param height the height of the rectangle in cells
+     * @return true if the rectangle is empty, false otherwise
+     */
+    private static boolean isClear(RobotArena arena, int x, int y, int width, int height) {
+        return arena.getObstacleMap().countInRect(x, y, width, height) == 0
+                && arena.getSpatialGrid().countInRect(x, y, width, height) == 0;
+    }
+
     /**
      * Resets the state of the robot to its initial state.
      * This method calls the reset method from the parent class {@link Robot}.
@@ -113,60 +198,10 @@ import java.util.Set;
      * @return a newly created SensorRobot object
      */
     public static SensorRobot createRandom(int maxX, int maxY) {
-        int x = new Random().nextInt(maxX);
-        int y = new Random().nextInt(maxY);
-        Direction direction = Direction.values()[new Random().nextInt(Direction.values().length)];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int x = random.nextInt(maxX);
+        int y = random.nextInt(maxY);
+        Direction direction = Direction.random();
         return new SensorRobot(x, y, direction);
     }
-
-    /**
-     * A helper class used to represent a point on the grid with X and Y coordinates.
-     * This class is used to check for obstacles and ensure that two points with the same coordinates are considered equal.
-     */
-    private static class Point {
-        /**
-         * The X coordinate of the point.
-         */
-        private final int x;
-
-        /**
-         * The Y coordinate of the point.
-         */
-        private final int y;
-
-        /**
-         * Constructs a new Point object with specified coordinates.
-         *
-         * @param x the X coordinate of the point
-         * @param y the Y coordinate of the point
-         */
-        public Point(int x, int y) {
-            this.x = x;
-            this.y = y;
-        }
-
-        /**
-         * Checks if this point is equal to another object.
-         *
-         * @param o the object to compare with
-         * @return true if the objects are equal, false otherwise
-         */
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            Point point = (Point) o;
-            return x == point.x && y == point.y;
-        }
-
-        /**
-         * Returns a hash code value for the point.
-         *
-         * @return the hash code value
-         */
-        @Override
-        public int hashCode() {
-            return 31 * x + y;
-        }
-    }
 }
\ No newline at end of file
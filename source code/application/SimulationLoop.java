@@ -0,0 +1,344 @@
+package application;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The SimulationLoop class advances a {@link RobotArena} on a thread of its own at a fixed tick
+ * rate, so that the speed of the simulation no longer depends on how fast the user interface draws,
+ * and the user interface stays responsive however long a tick takes.
+ * <p>
+ * Ticks are scheduled on a fixed grid of {@code 1 / tickRate} seconds. When a tick takes longer
+ * than its period, the loop falls behind, and its {@link LagPolicy} decides what happens next:
+ * {@link LagPolicy#CATCH_UP} runs the missed ticks back to back, up to
+ * {@link #getMaxCatchUpTicks()} at a time, while {@link LagPolicy#SKIP} drops them and runs a single
+ * tick. Ticks that are dropped either way are counted by {@link #getSkippedTicks()}. At the
+ * {@link #UNTHROTTLED} rate the loop runs ticks as fast as it can, in batches sized to take about
+ * {@link #BATCH_NANOS}, so that observers are still notified only about as often as a screen is
+ * refreshed. A batch of ticks is run with a single {@link RobotArena#run(long)} call, which
+ * notifies the arena's observers once at its end.
+ * <p>
+ * The arena must not be changed by other threads while the loop runs. Edits from the user
+ * interface go through {@link #execute(Runnable)}, which runs them between two batches.
+ * The thread is a daemon thread. If a tick throws an exception the loop stops and the exception
+ * goes to the thread's uncaught exception handler.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see RobotCanvas#getSimulation()
+ */
+    public class SimulationLoop {
+
+    /**
+     * The tick rate at which the loop runs ticks as fast as it can.
+     */
+    public static final double UNTHROTTLED = Double.POSITIVE_INFINITY;
+
+    /**
+     * The slowest tick rate, in ticks per second.
+     */
+    public static final double MIN_TICK_RATE = 1;
+
+    /**
+     * How long an unthrottled batch of ticks should take, in nanoseconds: about half a frame at
+     * 60 frames per second.
+     */
+    public static final long BATCH_NANOS = 8_000_000L;
+
+    /**
+     * What the loop does with the ticks it missed after falling behind its schedule.
+     */
+    public enum LagPolicy {
+
+        /**
+         * Run the missed ticks back to back, up to the catch-up limit, so the simulation keeps its
+         * pace on average.
+         */
+        CATCH_UP,
+
+        /**
+         * Drop the missed ticks and run a single one, so the simulation slows down instead of
+         * running in bursts.
+         */
+        SKIP
+    }
+
+    /**
+     * The arena being advanced.
+     */
+    private final RobotArena arena;
+
+    /**
+     * Held while a batch of ticks or an edit runs. The lock is fair, so edits from the user
+     * interface are not starved by an unthrottled loop.
+     */
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    /**
+     * The number of ticks per second, or {@link #UNTHROTTLED}.
+     */
+    private volatile double tickRate = 2;
+
+    /**
+     * What the loop does after falling behind.
+     */
+    private volatile LagPolicy lagPolicy = LagPolicy.CATCH_UP;
+
+    /**
+     * The largest number of missed ticks run back to back when catching up.
+     */
+    private volatile int maxCatchUpTicks = 5;
+
+    /**
+     * The number of ticks the loop has run.
+     */
+    private volatile long ticksRun;
+
+    /**
+     * The number of ticks the loop has dropped after falling behind.
+     */
+    private volatile long skippedTicks;
+
+    /**
+     * The thread running the loop, or null if it is stopped.
+     */
+    private Thread thread;
+
+    /**
+     * Whether the loop should keep running.
+     */
+    private volatile boolean running;
+
+    /**
+     * Constructs a stopped loop for an arena.
+     *
+     * @param arena the arena to advance
+     */
+    public SimulationLoop(RobotArena arena) {
+        this.arena = arena;
+    }
+
+    /**
+     * Gets the arena the loop advances.
+     *
+     * @return the arena
+     */
+    public RobotArena getArena() {
+        return arena;
+    }
+
+    /**
+     * Starts advancing the arena on a new thread, after publishing the edits made so far. Does
+     * nothing if the loop is already running.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        arena.publishEdits();
+        running = true;
+        thread = new Thread(this::loop, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the loop and waits for the batch it is running to finish. Does nothing if the loop is
+     * not running.
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        if (thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        thread = null;
+    }
+
+    /**
+     * Checks whether the loop is running.
+     *
+     * @return true if the loop is advancing the arena, false otherwise
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Runs an edit of the arena between two batches of ticks, on the calling thread, waiting for
+     * the current batch to finish first, and publishes a single snapshot once it is done however
+     * many changes it made. Exceptions thrown by the edit are passed on to the caller.
+     *
+     * @param edit the edit to run
+     */
+    public void execute(Runnable edit) {
+        lock.lock();
+        try {
+            edit.run();
+        } finally {
+            // 在下一批模拟开始前发布编辑，读者线程就不会在模拟期间发布
+            arena.publishEdits();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the tick rate.
+     *
+     * @return the number of ticks per second, or {@link #UNTHROTTLED}
+     */
+    public double getTickRate() {
+        return tickRate;
+    }
+
+    /**
+     * Sets the tick rate. The new rate takes effect immediately, and the schedule starts again
+     * from the next tick.
+     *
+     * @param tickRate the number of ticks per second, at least {@link #MIN_TICK_RATE}, or
+     *                 {@link #UNTHROTTLED}
+     * @throws IllegalArgumentException if the rate is below the minimum or not a number
+     */
+    public void setTickRate(double tickRate) {
+        if (!(tickRate >= MIN_TICK_RATE)) {
+            throw new IllegalArgumentException("Tick rate must be at least " + MIN_TICK_RATE + " per second: " + tickRate);
+        }
+        this.tickRate = tickRate;
+        wake();
+    }
+
+    /**
+     * Gets what the loop does after falling behind.
+     *
+     * @return the lag policy
+     */
+    public LagPolicy getLagPolicy() {
+        return lagPolicy;
+    }
+
+    /**
+     * Sets what the loop does after falling behind.
+     *
+     * @param lagPolicy the lag policy
+     */
+    public void setLagPolicy(LagPolicy lagPolicy) {
+        this.lagPolicy = lagPolicy;
+    }
+
+    /**
+     * Gets the largest number of missed ticks run back to back when catching up.
+     *
+     * @return the catch-up limit
+     */
+    public int getMaxCatchUpTicks() {
+        return maxCatchUpTicks;
+    }
+
+    /**
+     * Sets the largest number of missed ticks run back to back when catching up. Ticks missed
+     * beyond it are dropped, so that a loop that cannot keep up at all does not fall further and
+     * further behind.
+     *
+     * @param maxCatchUpTicks the catch-up limit
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public void setMaxCatchUpTicks(int maxCatchUpTicks) {
+        if (maxCatchUpTicks <= 0) {
+            throw new IllegalArgumentException("Catch-up limit must be positive.");
+        }
+        this.maxCatchUpTicks = maxCatchUpTicks;
+    }
+
+    /**
+     * Gets the number of ticks the loop has run.
+     *
+     * @return the number of ticks
+     */
+    public long getTicksRun() {
+        return ticksRun;
+    }
+
+    /**
+     * Gets the number of ticks the loop has dropped after falling behind its schedule.
+     *
+     * @return the number of ticks
+     */
+    public long getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    /**
+     * Wakes the loop if it is waiting for its next tick, so that it sees a new tick rate.
+     */
+    private synchronized void wake() {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Runs ticks until the loop is stopped, waiting between them to keep to the tick rate.
+     */
+    private void loop() {
+        try {
+            double rate = Double.NaN;
+            long next = 0;
+            long batch = 1;
+            while (running) {
+                if (tickRate != rate) {
+                    // 速率改变后从现在起重新排程
+                    rate = tickRate;
+                    next = System.nanoTime();
+                    batch = 1;
+                }
+                if (rate == UNTHROTTLED) {
+                    long start = System.nanoTime();
+                    runTicks(batch);
+                    long took = System.nanoTime() - start;
+                    if (took < BATCH_NANOS / 2) {
+                        batch *= 2;
+                    } else if (took > BATCH_NANOS * 2 && batch > 1) {
+                        batch /= 2;
+                    }
+                    continue;
+                }
+
+                long period = (long) (1e9 / rate);
+                long now = System.nanoTime();
+                if (now < next) {
+                    LockSupport.parkNanos(next - now);
+                    continue;
+                }
+                long due = (now - next) / period + 1;
+                long ticks = lagPolicy == LagPolicy.CATCH_UP ? Math.min(due, maxCatchUpTicks) : 1;
+                runTicks(ticks);
+                skippedTicks += due - ticks;
+                next += due * period;
+            }
+        } finally {
+            running = false;
+        }
+    }
+
+    /**
+     * Runs a batch of ticks while holding the edit lock.
+     *
+     * @param ticks the number of ticks to run
+     */
+    private void runTicks(long ticks) {
+        lock.lock();
+        try {
+            arena.run(ticks);
+        } finally {
+            lock.unlock();
+        }
+        ticksRun += ticks;
+    }
+}
@@ -0,0 +1,391 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * The SpatialGrid class is a grid index over the robots in a {@link RobotStore}.
+ * Every robot is kept in the bucket of the cell it stands on, so that "who is at (x, y)" can be
+ * answered by looking at a single bucket instead of scanning every robot in the arena.
+ * The buckets live in the chunks of a {@link ChunkedWorld}: a chunk only gets bucket heads while
+ * robots stand in it and gives them up when the last one leaves, so the index grows with the
+ * occupied area of the arena rather than with its total area.
+ * Buckets are intrusive doubly linked lists of robot slots, so inserting, removing and moving a
+ * robot within a chunk never allocates. A bucket is walked with {@link #firstInCell(int, int)} and
+ * {@link #next(int)}.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ */
+    public class SpatialGrid {
+
+    /**
+     * Marks the end of a bucket list, or a slot that is not indexed.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * The chunked world whose chunks hold the bucket heads.
+     */
+    private final ChunkedWorld world;
+
+    /**
+     * The next slot in the same bucket, per slot.
+     */
+    private int[] next = new int[0];
+
+    /**
+     * The previous slot in the same bucket, per slot.
+     */
+    private int[] prev = new int[0];
+
+    /**
+     * The chunk each slot is currently indexed in, or null.
+     */
+    private ChunkedWorld.Chunk[] chunkOf = new ChunkedWorld.Chunk[0];
+
+    /**
+     * The cell within its chunk each slot is currently indexed in, or {@link #NONE}.
+     */
+    private int[] cellOf = new int[0];
+
+    /**
+     * Constructs a new SpatialGrid covering an arena of the specified dimensions,
+     * with a chunked world of its own.
+     *
+     * @param sizeX the width of the arena grid
+     * @param sizeY the height of the arena grid
+     */
+    public SpatialGrid(int sizeX, int sizeY) {
+        this(new ChunkedWorld(sizeX, sizeY));
+    }
+
+    /**
+     * Constructs a new SpatialGrid that keeps its buckets in the chunks of the given world.
+     *
+     * @param world the chunked world to index the robots in
+     */
+    public SpatialGrid(ChunkedWorld world) {
+        this.world = world;
+    }
+
+    /**
+     * Inserts a robot slot into the bucket of the cell containing the given position.
+     *
+     * @param slot the slot of the robot
+     * @param x    the X coordinate of the robot
+     * @param y    the Y coordinate of the robot
+     */
+    public void insert(int slot, int x, int y) {
+        ensureCapacity(slot + 1);
+        x = clampX(x);
+        y = clampY(y);
+        link(slot, world.chunkFor(x, y), ChunkedWorld.localIndex(x, y));
+    }
+
+    /**
+     * Removes a robot slot from the index. Slots that are not indexed are ignored.
+     *
+     * @param slot the slot of the robot
+     */
+    public void remove(int slot) {
+        if (slot < cellOf.length && cellOf[slot] != NONE) {
+            unlink(slot);
+        }
+    }
+
+    /**
+     * Updates the index after a robot has moved. The slot is only moved between buckets
+     * if its new position falls into a different cell.
+     *
+     * @param slot the slot of the robot
+     * @param x    the new X coordinate of the robot
+     * @param y    the new Y coordinate of the robot
+     */
+    public void move(int slot, int x, int y) {
+        x = clampX(x);
+        y = clampY(y);
+        if (slot < cellOf.length && cellOf[slot] != NONE) {
+            ChunkedWorld.Chunk chunk = chunkOf[slot];
+            if (chunk.contains(x, y)) {
+                // 同一区块内移动时无需查找区块
+                int cell = ChunkedWorld.localIndex(x, y);
+                if (cellOf[slot] != cell) {
+                    unlinkFromBucket(slot);
+                    linkIntoBucket(slot, chunk, cell);
+                }
+                return;
+            }
+            unlink(slot);
+        }
+        insert(slot, x, y);
+    }
+
+    /**
+     * Updates the index after a robot has moved, as long as it is still inside the chunk it is
+     * indexed in. A robot that left its chunk is only unlinked from the bucket it was in and must
+     * then be indexed again with {@link #relocate(int, int, int)}. A call only touches the buckets of
+     * the robot's chunk, so calls for robots indexed in different chunks may run concurrently.
+     *
+     * @param slot the slot of the robot
+     * @param x    the new X coordinate of the robot
+     * @param y    the new Y coordinate of the robot
+     * @return true if the robot is indexed at its new position, false if it still has to be relocated
+     */
+    boolean moveInChunk(int slot, int x, int y) {
+        if (slot >= cellOf.length || cellOf[slot] == NONE) {
+            return false;
+        }
+        x = clampX(x);
+        y = clampY(y);
+        ChunkedWorld.Chunk chunk = chunkOf[slot];
+        if (!chunk.contains(x, y)) {
+            // 区块留给 relocate 释放，这里不能修改区块表
+            unlinkFromBucket(slot);
+            chunk.robotCount--;
+            return false;
+        }
+        int cell = ChunkedWorld.localIndex(x, y);
+        if (cellOf[slot] != cell) {
+            unlinkFromBucket(slot);
+            linkIntoBucket(slot, chunk, cell);
+        }
+        return true;
+    }
+
+    /**
+     * Indexes a robot that {@link #moveInChunk(int, int, int)} could not index, or that was not
+     * indexed at all, and releases the chunk it left if no robot is left in it.
+     *
+     * @param slot the slot of the robot
+     * @param x    the X coordinate of the robot
+     * @param y    the Y coordinate of the robot
+     */
+    void relocate(int slot, int x, int y) {
+        ChunkedWorld.Chunk left = slot < chunkOf.length ? chunkOf[slot] : null;
+        insert(slot, x, y);
+        if (left != null && left.robotCount == 0 && left.heads != null) {
+            left.heads = null;
+            world.release(left);
+        }
+    }
+
+    /**
+     * Gets the row of the chunk a robot is indexed in.
+     *
+     * @param slot the slot of the robot
+     * @return the row of the robot's chunk, or -1 if the robot is not indexed
+     */
+    int indexedChunkRow(int slot) {
+        return slot < cellOf.length && cellOf[slot] != NONE ? chunkOf[slot].chunkY : NONE;
+    }
+
+    /**
+     * Gets the first slot in the bucket of the given cell.
+     *
+     * @param x the X coordinate
+     * @param y the Y coordinate
+     * @return the first slot in the cell, or -1 if the cell is empty
+     */
+    public int firstInCell(int x, int y) {
+        x = clampX(x);
+        y = clampY(y);
+        ChunkedWorld.Chunk chunk = world.chunkAt(x, y);
+        if (chunk == null || chunk.heads == null) {
+            return NONE;
+        }
+        return chunk.heads[ChunkedWorld.localIndex(x, y)];
+    }
+
+    /**
+     * Gets the slot following the given slot in the same bucket.
+     *
+     * @param slot the current slot
+     * @return the next slot in the cell, or -1 if there are no more
+     */
+    public int next(int slot) {
+        return next[slot];
+    }
+
+    /**
+     * Counts the robots standing inside a rectangle, which is clipped to the bounds of the arena.
+     * Chunks without robots are skipped entirely, so a sparse neighbourhood costs little however
+     * large the rectangle is. The count reflects the index as it was last updated, which during a
+     * tick is the position of every robot at the start of the tick.
+     *
+     * @param x      the X coordinate of the top-left cell
+     * @param y      the Y coordinate of the top-left cell
+     * @param width  the width of the rectangle in cells
+     * @param height the height of the rectangle in cells
+     * @return the number of robots inside the rectangle
+     */
+    public int countInRect(int x, int y, int width, int height) {
+        int fromX = Math.max(0, x);
+        int toX = (int) Math.min(world.getSizeX(), (long) x + width);
+        int fromY = Math.max(0, y);
+        int toY = (int) Math.min(world.getSizeY(), (long) y + height);
+        int found = 0;
+        for (int chunkY = fromY >> ChunkedWorld.CHUNK_SHIFT; fromY < toY && chunkY <= (toY - 1) >> ChunkedWorld.CHUNK_SHIFT; chunkY++) {
+            int baseY = chunkY << ChunkedWorld.CHUNK_SHIFT;
+            int rowEnd = Math.min(toY, baseY + ChunkedWorld.CHUNK_SIZE);
+            for (int chunkX = fromX >> ChunkedWorld.CHUNK_SHIFT; fromX < toX && chunkX <= (toX - 1) >> ChunkedWorld.CHUNK_SHIFT; chunkX++) {
+                int baseX = chunkX << ChunkedWorld.CHUNK_SHIFT;
+                ChunkedWorld.Chunk chunk = world.chunkAt(baseX, baseY);
+                if (chunk == null || chunk.heads == null) {
+                    continue;
+                }
+                int columnEnd = Math.min(toX, baseX + ChunkedWorld.CHUNK_SIZE);
+                for (int cellY = Math.max(fromY, baseY); cellY < rowEnd; cellY++) {
+                    for (int cellX = Math.max(fromX, baseX); cellX < columnEnd; cellX++) {
+                        for (int slot = chunk.heads[ChunkedWorld.localIndex(cellX, cellY)]; slot != NONE; slot = next[slot]) {
+                            found++;
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Removes all robots from the index. Only chunks that hold robots are visited.
+     */
+    public void clear() {
+        world.clearRobots();
+        Arrays.fill(chunkOf, null);
+        Arrays.fill(cellOf, NONE);
+    }
+
+    /**
+     * Rebuilds the index from scratch for all live robots in a store. Tombstones are not indexed.
+     *
+     * @param store the store whose robots should be indexed
+     */
+    public void rebuild(RobotStore store) {
+        clear();
+        int size = store.size();
+        ensureCapacity(size);
+        for (int slot = 0; slot < size; slot++) {
+            if (store.isAlive(slot)) {
+                insert(slot, store.getX(slot), store.getY(slot));
+            }
+        }
+    }
+
+    /**
+     * Gets the chunked world holding the buckets of this index.
+     *
+     * @return the chunked world
+     */
+    public ChunkedWorld getWorld() {
+        return world;
+    }
+
+    /**
+     * Links a slot into a chunk, giving the chunk bucket heads if it has none yet.
+     *
+     * @param slot  the slot to link
+     * @param chunk the chunk to link it into
+     * @param cell  the cell within the chunk
+     */
+    private void link(int slot, ChunkedWorld.Chunk chunk, int cell) {
+        if (chunk.heads == null) {
+            chunk.heads = new int[ChunkedWorld.CHUNK_CELLS];
+            Arrays.fill(chunk.heads, NONE);
+        }
+        chunk.robotCount++;
+        linkIntoBucket(slot, chunk, cell);
+    }
+
+    /**
+     * Unlinks a slot from its chunk, releasing the chunk's bucket heads when it becomes empty.
+     *
+     * @param slot the slot to unlink
+     */
+    private void unlink(int slot) {
+        ChunkedWorld.Chunk chunk = chunkOf[slot];
+        unlinkFromBucket(slot);
+        chunkOf[slot] = null;
+        if (--chunk.robotCount == 0) {
+            chunk.heads = null;
+            world.release(chunk);
+        }
+    }
+
+    /**
+     * Pushes a slot onto the front of a cell's bucket.
+     *
+     * @param slot  the slot to link
+     * @param chunk the chunk holding the cell
+     * @param cell  the cell within the chunk
+     */
+    private void linkIntoBucket(int slot, ChunkedWorld.Chunk chunk, int cell) {
+        int head = chunk.heads[cell];
+        next[slot] = head;
+        prev[slot] = NONE;
+        if (head != NONE) {
+            prev[head] = slot;
+        }
+        chunk.heads[cell] = slot;
+        chunkOf[slot] = chunk;
+        cellOf[slot] = cell;
+    }
+
+    /**
+     * Unlinks a slot from the bucket it is currently in, leaving the chunk's robot count alone.
+     *
+     * @param slot the slot to unlink
+     */
+    private void unlinkFromBucket(int slot) {
+        int before = prev[slot];
+        int after = next[slot];
+        if (before != NONE) {
+            next[before] = after;
+        } else {
+            chunkOf[slot].heads[cellOf[slot]] = after;
+        }
+        if (after != NONE) {
+            prev[after] = before;
+        }
+        cellOf[slot] = NONE;
+    }
+
+    /**
+     * Grows the per-slot arrays so that they can hold at least the given number of slots.
+     *
+     * @param capacity the required number of slots
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= cellOf.length) {
+            return;
+        }
+        int oldLength = cellOf.length;
+        int newLength = Math.max(capacity, Math.max(16, oldLength + (oldLength >> 1)));
+        next = Arrays.copyOf(next, newLength);
+        prev = Arrays.copyOf(prev, newLength);
+        chunkOf = Arrays.copyOf(chunkOf, newLength);
+        cellOf = Arrays.copyOf(cellOf, newLength);
+        Arrays.fill(cellOf, oldLength, newLength, NONE);
+    }
+
+    /**
+     * Clamps an X coordinate to the arena, since robots may briefly step outside the grid
+     * before being corrected.
+     *
+     * @param x the X coordinate
+     * @return the nearest column inside the arena
+     */
+    private int clampX(int x) {
+        return Math.max(0, Math.min(world.getSizeX() - 1, x));
+    }
+
+    /**
+     * Clamps a Y coordinate to the arena, since robots may briefly step outside the grid
+     * before being corrected.
+     *
+     * @param y the Y coordinate
+     * @return the nearest row inside the arena
+     */
+    private int clampY(int y) {
+        return Math.max(0, Math.min(world.getSizeY() - 1, y));
+    }
+}
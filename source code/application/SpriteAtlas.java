@@ -0,0 +1,221 @@
+package application;
+
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The SpriteAtlas class caches pre-rendered robot sprites in a single image, so a robot is drawn
+ * with one {@code drawImage} call instead of the several shape calls its drawing is made of.
+ * <p>
+ * There is one sprite per robot type and color, rendered on first use at the current cell size
+ * by a {@link Painter} and copied into a free tile of the atlas. Each tile is the cell plus a
+ * transparent margin on every side, wide enough for the wheels and antennas that stick out of
+ * the cell. The atlas grows as sprites are added, up to {@link #MAX_SIZE} pixels on each side;
+ * once it is full, or when a single tile would not fit, {@link #draw} declines and the caller
+ * paints the robot itself. Changing the cell size empties the atlas, and the sprites are
+ * rendered again at the new size as they are needed.
+ * <p>
+ * The atlas must only be used on the JavaFX application thread.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see RobotCanvas
+ */
+    public class SpriteAtlas {
+
+    /**
+     * The largest width and height of the atlas image, in pixels, which every graphics card
+     * supports as a texture size.
+     */
+    public static final int MAX_SIZE = 4096;
+
+    /**
+     * The number of tile columns the atlas aims for.
+     */
+    private static final int COLUMNS = 16;
+
+    /**
+     * Paints a robot's body, wheels and antennas; the ID label is not part of a sprite.
+     */
+    @FunctionalInterface
+    public interface Painter {
+
+        /**
+         * Paints a robot whose cell has the given top-left corner.
+         *
+         * @param gc       the GraphicsContext to draw on
+         * @param type     the type of the robot
+         * @param x        the X coordinate of the top-left corner of the robot's cell
+         * @param y        the Y coordinate of the top-left corner of the robot's cell
+         * @param cellSize the size of each cell on the grid
+         * @param color    the color of the robot
+         */
+        void paint(GraphicsContext gc, RobotArena.RobotType type, double x, double y, double cellSize, Color color);
+    }
+
+    /**
+     * Paints the sprites when they are first needed.
+     */
+    private final Painter painter;
+
+    /**
+     * The canvas a sprite is painted on before it is copied into the atlas.
+     */
+    private final Canvas scratch = new Canvas();
+
+    /**
+     * The parameters used to copy the scratch canvas, keeping its background transparent.
+     */
+    private final SnapshotParameters parameters = new SnapshotParameters();
+
+    /**
+     * The tile index of every sprite rendered, keyed by robot type ordinal (high 32 bits) and
+     * color (low 32 bits).
+     */
+    private final Map<Long, Integer> tiles = new HashMap<>();
+
+    /**
+     * The atlas image, or null if no sprite has been rendered at the current cell size.
+     */
+    private WritableImage image;
+
+    /**
+     * The cell size the sprites are rendered at, or -1 if none has been set.
+     */
+    private double cellSize = -1;
+
+    /**
+     * The width and height of a tile, in pixels.
+     */
+    private int tileSize;
+
+    /**
+     * The width of the transparent border around the cell in a tile, in pixels.
+     */
+    private double margin;
+
+    /**
+     * The number of tile columns in the atlas.
+     */
+    private int columns;
+
+    /**
+     * The number of tiles the atlas can hold at the current cell size.
+     */
+    private int capacity;
+
+    /**
+     * Constructs an empty atlas whose sprites are painted by the given painter.
+     *
+     * @param painter paints a sprite the first time it is needed
+     */
+    public SpriteAtlas(Painter painter) {
+        this.painter = painter;
+        parameters.setFill(Color.TRANSPARENT);
+    }
+
+    /**
+     * Sets the cell size sprites are drawn at. If it differs from the current one, the atlas is
+     * emptied, and sprites are rendered again at the new size as they are drawn.
+     *
+     * @param cellSize the size of each cell on the grid, in pixels
+     */
+    public void setCellSize(double cellSize) {
+        if (cellSize == this.cellSize) {
+            return;
+        }
+        this.cellSize = cellSize;
+        // 轮子和天线向外伸出四分之一格，再加上线宽
+        tileSize = (int) Math.ceil(cellSize * 1.5 + 4);
+        margin = (tileSize - cellSize) / 2;
+        columns = Math.min(COLUMNS, MAX_SIZE / tileSize);
+        capacity = columns * (MAX_SIZE / tileSize);
+        tiles.clear();
+        image = null;
+    }
+
+    /**
+     * Gets the width of the transparent border around the cell in each sprite, which is how far
+     * a sprite reaches beyond its cell.
+     *
+     * @return the margin in pixels
+     */
+    public double getMargin() {
+        return margin;
+    }
+
+    /**
+     * Gets the number of sprites rendered at the current cell size.
+     *
+     * @return the number of sprites
+     */
+    public int size() {
+        return tiles.size();
+    }
+
+    /**
+     * Draws a robot's sprite, rendering it first if it is not in the atlas yet.
+     *
+     * @param gc    the GraphicsContext to draw on
+     * @param type  the type of the robot
+     * @param color the color of the robot as a packed 0xAARRGGBB value
+     * @param x     the X coordinate of the top-left corner of the robot's cell
+     * @param y     the Y coordinate of the top-left corner of the robot's cell
+     * @param paint the JavaFX color of the robot, used if the sprite must be rendered
+     * @return true if the sprite was drawn, false if the atlas is full or the cell size is too
+     *         large for it, in which case the caller must paint the robot itself
+     */
+    public boolean draw(GraphicsContext gc, RobotArena.RobotType type, int color, double x, double y, Color paint) {
+        long key = (long) type.ordinal() << 32 | (color & 0xFFFFFFFFL);
+        Integer tile = tiles.get(key);
+        if (tile == null) {
+            if (tiles.size() >= capacity) {
+                return false;
+            }
+            tile = tiles.size();
+            render(tile, type, paint);
+            tiles.put(key, tile);
+        }
+        double sourceX = (tile % columns) * tileSize;
+        double sourceY = (tile / columns) * tileSize;
+        gc.drawImage(image, sourceX, sourceY, tileSize, tileSize, x - margin, y - margin, tileSize, tileSize);
+        return true;
+    }
+
+    /**
+     * Paints a sprite on the scratch canvas and copies it into the given tile, growing the atlas
+     * image if the tile lies beyond it.
+     *
+     * @param tile  the index of the tile to fill
+     * @param type  the type of the robot
+     * @param paint the color of the robot
+     */
+    private void render(int tile, RobotArena.RobotType type, Color paint) {
+        int rows = tile / columns + 1;
+        if (image == null || image.getHeight() < rows * tileSize) {
+            // 图集按行数翻倍增长，并复制已有的精灵
+            int height = Math.min(MAX_SIZE / tileSize, Math.max(rows, image == null ? 1 : (int) image.getHeight() / tileSize * 2));
+            WritableImage grown = new WritableImage(columns * tileSize, height * tileSize);
+            if (image != null) {
+                grown.getPixelWriter().setPixels(0, 0, (int) image.getWidth(), (int) image.getHeight(), image.getPixelReader(), 0, 0);
+            }
+            image = grown;
+        }
+
+        scratch.setWidth(tileSize);
+        scratch.setHeight(tileSize);
+        GraphicsContext gc = scratch.getGraphicsContext2D();
+        gc.clearRect(0, 0, tileSize, tileSize);
+        gc.save();
+        painter.paint(gc, type, margin, margin, cellSize, paint);
+        gc.restore();
+        WritableImage sprite = scratch.snapshot(parameters, null);
+        image.getPixelWriter().setPixels((tile % columns) * tileSize, (tile / columns) * tileSize,
+                tileSize, tileSize, sprite.getPixelReader(), 0, 0);
+    }
+}
@@ -0,0 +1,750 @@
+package application;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The TickEngine class advances a {@link RobotArena} by one tick, optionally spreading the work
+ * over a {@link ForkJoinPool}. A tick starts by refreshing the arena's {@link FlowField}, which the
+ * AdvancedRobots only read while they move, and then runs in four phases:
+ * <ol>
+ * <li>every robot is moved; robots only read their own state and the obstacles, so slot ranges
+ * are moved in parallel;</li>
+ * <li>the spatial index is updated and the AdvancedRobots are sorted into horizontal stripes of
+ * the arena by their position; both are done with a counting sort over blocks of slots, and the
+ * robots are then relinked band by band, each band owning whole rows of chunks, so only the few
+ * robots that crossed into another chunk are indexed on a single thread;</li>
+ * <li>each stripe resolves its kills in parallel; a kill needs both robots on the same cell, so it
+ * never crosses a stripe boundary;</li>
+ * <li>the destroyed robots are removed, leaving tombstones in the store that the arena compacts
+ * at tick boundaries.</li>
+ * </ol>
+ * Tombstoned slots are skipped in every phase, and the time of each phase is recorded in the
+ * arena's {@link TickMetrics}.
+ * Within a cell, AdvancedRobots are matched to BasicRobots in ascending slot order, so the outcome
+ * of a tick does not depend on the number of threads or on how the work was scheduled.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see RobotArena#setTickEngine(TickEngine)
+ */
+    public class TickEngine {
+
+    /**
+     * The smallest number of robot slots worth moving in a separate task.
+     */
+    private static final int MIN_SLOTS_PER_TASK = 8192;
+
+    /**
+     * The pool running the parallel phases, or null to run everything on the calling thread.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The number of horizontal stripes the arena is split into for kill resolution.
+     */
+    private final int stripes;
+
+    /**
+     * The AdvancedRobot slots of the current tick, grouped by stripe and ascending within a stripe.
+     */
+    private int[] hunters = new int[0];
+
+    /**
+     * The start offset of each stripe in {@link #hunters}; stripe {@code s} occupies
+     * {@code [stripeStart[s], stripeStart[s + 1])}.
+     */
+    private int[] stripeStart;
+
+    /**
+     * The kills found by each stripe, packed as {@code hunter << 32 | victim}.
+     */
+    private long[][] stripeKills;
+
+    /**
+     * The number of kills found by each stripe.
+     */
+    private int[] stripeKillCount;
+
+    /**
+     * The live robot slots of the current tick, grouped by the band of the chunk they were indexed
+     * in and ascending within a band; the robots that were not indexed come after the last band.
+     */
+    private int[] bandSlots = new int[0];
+
+    /**
+     * The start offset of each band in {@link #bandSlots}; band {@code b} occupies
+     * {@code [bandStart[b], bandStart[b + 1])}, and the robots that were not indexed occupy
+     * {@code [bandStart[bands], bandStart[bands + 1])}.
+     */
+    private int[] bandStart;
+
+    /**
+     * The number of bands the rows of chunks are split into during the current tick, at most
+     * {@link #stripes}.
+     */
+    private int bands;
+
+    /**
+     * The robots of each band that left their chunk during the current tick.
+     */
+    private int[][] bandMoved;
+
+    /**
+     * The number of robots of each band that left their chunk.
+     */
+    private int[] bandMovedCount;
+
+    /**
+     * The robots to index on the calling thread at the end of the index phase, in ascending slot order.
+     */
+    private int[] relocated = new int[0];
+
+    /**
+     * The counts of each block of slots, {@link #blockColumns} per block: the hunters of every
+     * stripe, then the robots of every band, then the robots that were not indexed. After counting
+     * they are turned into the offsets each block writes its slots at.
+     */
+    private int[] blockCounts = new int[0];
+
+    /**
+     * The number of counts kept for each block of slots during the current tick.
+     */
+    private int blockColumns;
+
+    /**
+     * Marks the BasicRobot slots already claimed by a hunter during the current tick.
+     * A boolean array is used because, unlike a {@link java.util.BitSet}, its elements can be written
+     * from different threads without interfering with each other.
+     */
+    private boolean[] claimed = new boolean[0];
+
+    /**
+     * Constructs a TickEngine that runs every tick on the calling thread.
+     */
+    public TickEngine() {
+        this(null, 1);
+    }
+
+    /**
+     * Constructs a TickEngine that runs the parallel phases of each tick on the given pool.
+     *
+     * @param pool    the pool to run on, or null to run on the calling thread
+     * @param stripes the number of horizontal stripes used for kill resolution
+     * @throws IllegalArgumentException if the number of stripes is not positive
+     */
+    public TickEngine(ForkJoinPool pool, int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive.");
+        }
+        this.pool = pool;
+        this.stripes = stripes;
+        this.stripeStart = new int[stripes + 1];
+        this.stripeKills = new long[stripes][8];
+        this.stripeKillCount = new int[stripes];
+        this.bandStart = new int[stripes + 2];
+        this.bandMoved = new int[stripes][8];
+        this.bandMovedCount = new int[stripes];
+    }
+
+    /**
+     * Creates a TickEngine that uses the common pool, with a few stripes per available core.
+     *
+     * @return a parallel TickEngine
+     */
+    public static TickEngine parallel() {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        return new TickEngine(pool, pool.getParallelism() * 4);
+    }
+
+    /**
+     * Advances the arena by one tick.
+     *
+     * @param arena the arena to advance
+     */
+    public void tick(RobotArena arena) {
+        RobotStore store = arena.getRobotStore();
+        int size = store.size();
+        if (claimed.length < size) {
+            claimed = new boolean[Math.max(size, claimed.length + (claimed.length >> 1))];
+        }
+
+        TickMetrics metrics = arena.getMetrics();
+
+        // 刷新流场，之后各线程只读取它
+        long start = System.nanoTime();
+        arena.getFlowField().update();
+        start = lap(metrics, TickMetrics.Phase.FLOW_FIELD, start);
+
+        // Phase 1: move every robot
+        if (isParallel(size)) {
+            pool.invoke(new MoveTask(arena, 0, size));
+        } else {
+            moveRange(arena, 0, size);
+        }
+        start = lap(metrics, TickMetrics.Phase.MOVE, start);
+
+        // Phase 2: update the index and sort hunters into stripes
+        if (isParallel(size)) {
+            indexInParallel(arena, size);
+        } else {
+            groupHunters(arena, size);
+        }
+        start = lap(metrics, TickMetrics.Phase.INDEX, start);
+
+        // Phase 3: resolve kills stripe by stripe
+        Arrays.fill(stripeKillCount, 0);
+        if (isParallel(stripeStart[stripes])) {
+            pool.invoke(new KillTask(arena, 0, stripes));
+        } else {
+            for (int stripe = 0; stripe < stripes; stripe++) {
+                resolveStripe(arena, stripe);
+            }
+        }
+        start = lap(metrics, TickMetrics.Phase.COLLISION, start);
+
+        // Phase 4: remove the destroyed robots
+        removeDestroyed(arena);
+        lap(metrics, TickMetrics.Phase.REMOVAL, start);
+    }
+
+    /**
+     * Records the time since the start of a phase in the arena's metrics.
+     *
+     * @param metrics the metrics of the arena
+     * @param phase   the phase that just finished
+     * @param start   when the phase started, from {@link System#nanoTime()}
+     * @return the current time, which is when the next phase starts
+     */
+    private static long lap(TickMetrics metrics, TickMetrics.Phase phase, long start) {
+        long now = System.nanoTime();
+        metrics.recordPhase(phase, now - start);
+        return now;
+    }
+
+    /**
+     * Checks whether a phase covering the given number of robots should run on the pool.
+     *
+     * @param work the number of robots the phase covers
+     * @return true if the phase should be split into parallel tasks, false to run it inline
+     */
+    private boolean isParallel(int work) {
+        return pool != null && work >= MIN_SLOTS_PER_TASK;
+    }
+
+    /**
+     * Updates the spatial index for every robot and groups the AdvancedRobots by stripe with a
+     * counting sort, which keeps them in ascending slot order within each stripe.
+     *
+     * @param arena the arena being advanced
+     * @param size  the number of robots in the arena
+     */
+    private void groupHunters(RobotArena arena, int size) {
+        RobotStore store = arena.getRobotStore();
+        SpatialGrid grid = arena.getSpatialGrid();
+        int stripeHeight = stripeHeight(arena);
+
+        Arrays.fill(stripeStart, 0);
+        int hunterCount = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (!store.isAlive(slot)) {
+                continue;
+            }
+            grid.move(slot, store.getX(slot), store.getY(slot));
+            if (store.getType(slot) == RobotArena.RobotType.ADVANCED) {
+                stripeStart[stripeOf(store.getY(slot), stripeHeight) + 1]++;
+                hunterCount++;
+            }
+        }
+        for (int s = 0; s < stripes; s++) {
+            stripeStart[s + 1] += stripeStart[s];
+        }
+        if (hunters.length < hunterCount) {
+            hunters = new int[hunterCount];
+        }
+        int[] next = Arrays.copyOf(stripeStart, stripes);
+        for (int slot = 0; slot < size; slot++) {
+            if (store.isAlive(slot) && store.getType(slot) == RobotArena.RobotType.ADVANCED) {
+                hunters[next[stripeOf(store.getY(slot), stripeHeight)]++] = slot;
+            }
+        }
+    }
+
+    /**
+     * Updates the spatial index and groups the AdvancedRobots by stripe on the pool, with the same
+     * result as {@link #groupHunters(RobotArena, int)}. Blocks of slots first count their hunters per
+     * stripe and their robots per band in parallel; the counts are turned into offsets, so that the
+     * blocks can then write their slots in parallel while keeping them in ascending slot order. Each
+     * band then moves its robots within their chunks, which no other band touches, and the robots
+     * that left their chunk are finally indexed on the calling thread.
+     *
+     * @param arena the arena being advanced
+     * @param size  the number of robots in the arena
+     */
+    private void indexInParallel(RobotArena arena, int size) {
+        int chunkRows = (arena.getSizeY() + ChunkedWorld.CHUNK_SIZE - 1) >> ChunkedWorld.CHUNK_SHIFT;
+        bands = Math.max(1, Math.min(stripes, chunkRows));
+        blockColumns = stripes + bands + 1;
+        int blocks = (size + MIN_SLOTS_PER_TASK - 1) / MIN_SLOTS_PER_TASK;
+        if (blockCounts.length < blocks * blockColumns) {
+            blockCounts = new int[blocks * blockColumns];
+        } else {
+            Arrays.fill(blockCounts, 0, blocks * blockColumns, 0);
+        }
+        pool.invoke(new IndexTask(arena, IndexStep.COUNT, 0, blocks));
+
+        // 把计数转换为每个块的写入位置
+        int hunterCount = 0;
+        for (int s = 0; s < stripes; s++) {
+            stripeStart[s] = hunterCount;
+            hunterCount = toOffsets(s, blocks, hunterCount);
+        }
+        stripeStart[stripes] = hunterCount;
+        int robotCount = 0;
+        for (int b = 0; b <= bands; b++) {
+            bandStart[b] = robotCount;
+            robotCount = toOffsets(stripes + b, blocks, robotCount);
+        }
+        bandStart[bands + 1] = robotCount;
+        if (hunters.length < hunterCount) {
+            hunters = new int[hunterCount];
+        }
+        if (bandSlots.length < robotCount) {
+            bandSlots = new int[robotCount];
+        }
+        pool.invoke(new IndexTask(arena, IndexStep.SCATTER, 0, blocks));
+
+        Arrays.fill(bandMovedCount, 0);
+        pool.invoke(new IndexTask(arena, IndexStep.RELINK, 0, bands));
+
+        int unindexed = bandStart[bands + 1] - bandStart[bands];
+        int count = unindexed;
+        for (int b = 0; b < bands; b++) {
+            count += bandMovedCount[b];
+        }
+        if (count == 0) {
+            return;
+        }
+        if (relocated.length < count) {
+            relocated = new int[count];
+        }
+        System.arraycopy(bandSlots, bandStart[bands], relocated, 0, unindexed);
+        int offset = unindexed;
+        for (int b = 0; b < bands; b++) {
+            System.arraycopy(bandMoved[b], 0, relocated, offset, bandMovedCount[b]);
+            offset += bandMovedCount[b];
+        }
+        Arrays.sort(relocated, 0, count);
+        RobotStore store = arena.getRobotStore();
+        SpatialGrid grid = arena.getSpatialGrid();
+        for (int i = 0; i < count; i++) {
+            int slot = relocated[i];
+            grid.relocate(slot, store.getX(slot), store.getY(slot));
+        }
+    }
+
+    /**
+     * Replaces one column of the block counts by the offsets the blocks write at.
+     *
+     * @param column the column of the counts
+     * @param blocks the number of blocks
+     * @param offset the offset of the first block
+     * @return the offset following the last block
+     */
+    private int toOffsets(int column, int blocks, int offset) {
+        for (int block = 0; block < blocks; block++) {
+            int index = block * blockColumns + column;
+            int count = blockCounts[index];
+            blockCounts[index] = offset;
+            offset += count;
+        }
+        return offset;
+    }
+
+    /**
+     * Counts the hunters of every stripe and the robots of every band in a block of slots, or
+     * writes them at the offsets of the block.
+     *
+     * @param arena the arena being advanced
+     * @param block the block of slots
+     * @param write false to count, true to write the slots
+     */
+    private void sortBlock(RobotArena arena, int block, boolean write) {
+        RobotStore store = arena.getRobotStore();
+        SpatialGrid grid = arena.getSpatialGrid();
+        int stripeHeight = stripeHeight(arena);
+        int chunkRows = (arena.getSizeY() + ChunkedWorld.CHUNK_SIZE - 1) >> ChunkedWorld.CHUNK_SHIFT;
+        int base = block * blockColumns;
+        int to = Math.min(store.size(), (block + 1) * MIN_SLOTS_PER_TASK);
+        for (int slot = block * MIN_SLOTS_PER_TASK; slot < to; slot++) {
+            if (!store.isAlive(slot)) {
+                continue;
+            }
+            if (store.getType(slot) == RobotArena.RobotType.ADVANCED) {
+                int index = base + stripeOf(store.getY(slot), stripeHeight);
+                if (write) {
+                    hunters[blockCounts[index]] = slot;
+                }
+                blockCounts[index]++;
+            }
+            int chunkRow = grid.indexedChunkRow(slot);
+            int index = base + stripes + (chunkRow < 0 ? bands : chunkRow * bands / chunkRows);
+            if (write) {
+                bandSlots[blockCounts[index]] = slot;
+            }
+            blockCounts[index]++;
+        }
+    }
+
+    /**
+     * Moves the robots of a band within their chunks, and keeps those that left their chunk for
+     * the calling thread to index.
+     *
+     * @param arena the arena being advanced
+     * @param band  the band to relink
+     */
+    private void relinkBand(RobotArena arena, int band) {
+        RobotStore store = arena.getRobotStore();
+        SpatialGrid grid = arena.getSpatialGrid();
+        for (int i = bandStart[band]; i < bandStart[band + 1]; i++) {
+            int slot = bandSlots[i];
+            if (!grid.moveInChunk(slot, store.getX(slot), store.getY(slot))) {
+                int count = bandMovedCount[band];
+                if (count == bandMoved[band].length) {
+                    bandMoved[band] = Arrays.copyOf(bandMoved[band], count * 2);
+                }
+                bandMoved[band][count] = slot;
+                bandMovedCount[band] = count + 1;
+            }
+        }
+    }
+
+    /**
+     * Collects the kills of all stripes in ascending hunter order, publishes them on the arena's
+     * {@link EventBus} and removes the victims from the store and the spatial index. Each removal
+     * only leaves a tombstone.
+     *
+     * @param arena the arena being advanced
+     */
+    private void removeDestroyed(RobotArena arena) {
+        int total = 0;
+        for (int s = 0; s < stripes; s++) {
+            total += stripeKillCount[s];
+        }
+        if (total == 0) {
+            return;
+        }
+        long[] kills = new long[total];
+        int offset = 0;
+        for (int s = 0; s < stripes; s++) {
+            System.arraycopy(stripeKills[s], 0, kills, offset, stripeKillCount[s]);
+            offset += stripeKillCount[s];
+        }
+        Arrays.sort(kills);
+
+        RobotStore store = arena.getRobotStore();
+        SpatialGrid grid = arena.getSpatialGrid();
+        EventBus events = arena.getEventBus();
+        for (long kill : kills) {
+            int hunter = (int) (kill >>> 32);
+            int victim = (int) kill;
+            claimed[victim] = false;
+            events.publish(EventBus.EventType.KILL, arena.getTick(), store.getId(hunter), store.getId(victim),
+                    store.getX(victim), store.getY(victim));
+            grid.remove(victim);
+            store.remove(victim);
+        }
+    }
+
+    /**
+     * Gets the height of one stripe for the given arena.
+     *
+     * @param arena the arena being advanced
+     * @return the number of rows in each stripe
+     */
+    private int stripeHeight(RobotArena arena) {
+        return Math.max(1, (arena.getSizeY() + stripes - 1) / stripes);
+    }
+
+    /**
+     * Maps a row to its stripe. Rows outside the arena are clamped to the border stripes.
+     *
+     * @param y            the row
+     * @param stripeHeight the number of rows in each stripe
+     * @return the stripe containing the row
+     */
+    private int stripeOf(int y, int stripeHeight) {
+        return Math.max(0, Math.min(stripes - 1, y / stripeHeight));
+    }
+
+    /**
+     * Moves a range of robot slots, splitting the range while it is large enough.
+     */
+    private static final class MoveTask extends RecursiveAction {
+
+        /**
+         * Serial version for the serializable {@link RecursiveAction} superclass.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The arena being advanced.
+         */
+        private final transient RobotArena arena;
+
+        /**
+         * The first slot of the range, inclusive.
+         */
+        private final int from;
+
+        /**
+         * The last slot of the range, exclusive.
+         */
+        private final int to;
+
+        /**
+         * Constructs a task moving the robots in {@code [from, to)}.
+         *
+         * @param arena the arena being advanced
+         * @param from  the first slot, inclusive
+         * @param to    the last slot, exclusive
+         */
+        MoveTask(RobotArena arena, int from, int to) {
+            this.arena = arena;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Moves the robots in the range, or splits it in two.
+         */
+        @Override
+        protected void compute() {
+            if (to - from > MIN_SLOTS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new MoveTask(arena, from, middle), new MoveTask(arena, middle, to));
+            } else {
+                moveRange(arena, from, to);
+            }
+        }
+    }
+
+    /**
+     * Moves the robots in a range of slots. A robot that ends up on an obstacle publishes a
+     * collision, picks a random direction and tries once more.
+     *
+     * @param arena the arena being advanced
+     * @param from  the first slot, inclusive
+     * @param to    the last slot, exclusive
+     */
+    private static void moveRange(RobotArena arena, int from, int to) {
+        RobotStore store = arena.getRobotStore();
+        ObstacleMap obstacles = arena.getObstacleMap();
+        for (int slot = from; slot < to; slot++) {
+            if (!store.isAlive(slot)) {
+                continue;
+            }
+            moveRobot(arena, store, slot);
+            // 检查是否与障碍物发生碰撞
+            if (obstacles.isBlocked(store.getX(slot), store.getY(slot))) {
+                arena.getMetrics().countObstacleHit();
+                arena.getEventBus().publish(EventBus.EventType.COLLISION, arena.getTick(), store.getId(slot), -1,
+                        store.getX(slot), store.getY(slot));
+                store.setDirection(slot, store.nextDirection(slot));  // 随机改变方向
+                moveRobot(arena, store, slot);  // 再次尝试移动
+            }
+        }
+    }
+
+    /**
+     * Moves the robot in the given slot once, using the movement logic of its type.
+     *
+     * @param arena the arena being advanced
+     * @param store the store holding the robot
+     * @param slot  the slot of the robot
+     */
+    private static void moveRobot(RobotArena arena, RobotStore store, int slot) {
+        switch (store.getType(slot)) {
+            case ADVANCED:
+                AdvancedRobot.move(store, slot, arena.getFlowField());
+                break;
+            case SENSOR:
+                SensorRobot.move(store, slot, arena);
+                break;
+            default:
+                BasicRobot.move(store, slot);
+                break;
+        }
+    }
+
+    /**
+     * The steps of the index phase that run on the pool.
+     */
+    private enum IndexStep {
+
+        /**
+         * Counts the hunters and robots of each block of slots.
+         */
+        COUNT,
+
+        /**
+         * Writes the hunters and robots of each block of slots at its offsets.
+         */
+        SCATTER,
+
+        /**
+         * Moves the robots of each band within their chunks.
+         */
+        RELINK
+    }
+
+    /**
+     * Runs one step of the index phase over a range of blocks of slots, or of bands, splitting the
+     * range while it has more than one.
+     */
+    private final class IndexTask extends RecursiveAction {
+
+        /**
+         * Serial version for the serializable {@link RecursiveAction} superclass.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The arena being advanced.
+         */
+        private final transient RobotArena arena;
+
+        /**
+         * The step to run.
+         */
+        private final IndexStep step;
+
+        /**
+         * The first block or band of the range, inclusive.
+         */
+        private final int from;
+
+        /**
+         * The last block or band of the range, exclusive.
+         */
+        private final int to;
+
+        /**
+         * Constructs a task running a step over the blocks or bands in {@code [from, to)}.
+         *
+         * @param arena the arena being advanced
+         * @param step  the step to run
+         * @param from  the first block or band, inclusive
+         * @param to    the last block or band, exclusive
+         */
+        IndexTask(RobotArena arena, IndexStep step, int from, int to) {
+            this.arena = arena;
+            this.step = step;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Runs the step for the single block or band in the range, or splits the range in two.
+         */
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new IndexTask(arena, step, from, middle), new IndexTask(arena, step, middle, to));
+            } else if (step == IndexStep.RELINK) {
+                relinkBand(arena, from);
+            } else {
+                sortBlock(arena, from, step == IndexStep.SCATTER);
+            }
+        }
+    }
+
+    /**
+     * Resolves the kills of a range of stripes, splitting the range while it has more than one stripe.
+     */
+    private final class KillTask extends RecursiveAction {
+
+        /**
+         * Serial version for the serializable {@link RecursiveAction} superclass.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The arena being advanced.
+         */
+        private final transient RobotArena arena;
+
+        /**
+         * The first stripe of the range, inclusive.
+         */
+        private final int from;
+
+        /**
+         * The last stripe of the range, exclusive.
+         */
+        private final int to;
+
+        /**
+         * Constructs a task resolving the kills of the stripes in {@code [from, to)}.
+         *
+         * @param arena the arena being advanced
+         * @param from  the first stripe, inclusive
+         * @param to    the last stripe, exclusive
+         */
+        KillTask(RobotArena arena, int from, int to) {
+            this.arena = arena;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Resolves the kills of the single stripe in the range, or splits the range in two.
+         */
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new KillTask(arena, from, middle), new KillTask(arena, middle, to));
+            } else {
+                resolveStripe(arena, from);
+            }
+        }
+    }
+
+    /**
+     * Matches every hunter of a stripe with the lowest-slot unclaimed BasicRobot on its cell.
+     * Hunters are visited in ascending slot order.
+     *
+     * @param arena  the arena being advanced
+     * @param stripe the stripe to resolve
+     */
+    private void resolveStripe(RobotArena arena, int stripe) {
+        RobotStore store = arena.getRobotStore();
+        SpatialGrid grid = arena.getSpatialGrid();
+        for (int i = stripeStart[stripe]; i < stripeStart[stripe + 1]; i++) {
+            int hunter = hunters[i];
+            int x = store.getX(hunter);
+            int y = store.getY(hunter);
+            int victim = -1;
+            for (int other = grid.firstInCell(x, y); other >= 0; other = grid.next(other)) {
+                if (store.getType(other) == RobotArena.RobotType.BASIC && !claimed[other]
+                        && store.getX(other) == x && store.getY(other) == y
+                        && (victim < 0 || other < victim)) {
+                    victim = other;
+                }
+            }
+            if (victim >= 0) {
+                // AdvancedRobot 消灭 BasicRobot
+                claimed[victim] = true;
+                int count = stripeKillCount[stripe];
+                if (count == stripeKills[stripe].length) {
+                    stripeKills[stripe] = Arrays.copyOf(stripeKills[stripe], count * 2);
+                }
+                stripeKills[stripe][count] = (long) hunter << 32 | victim;
+                stripeKillCount[stripe] = count + 1;
+            }
+        }
+    }
+}
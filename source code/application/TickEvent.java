@@ -0,0 +1,115 @@
+package application;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The TickEvent class is the JDK Flight Recorder event committed for every tick of a
+ * {@link RobotArena}. Its duration covers the whole tick and its fields break the tick down into
+ * phases, so a recording shows both slow ticks and where their time went. The event is only
+ * created while a recording has it enabled.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see TickMetrics
+ */
+    @Name("application.Tick")
+    @Label("Arena Tick")
+    @Category("Robot Arena")
+    @Description("One tick of a robot arena simulation")
+    @StackTrace(false)
+    final class TickEvent extends Event {
+
+    /**
+     * The number of the tick.
+     */
+    @Label("Tick")
+    long tick;
+
+    /**
+     * The number of robots in the arena at the start of the tick.
+     */
+    @Label("Robots")
+    int robots;
+
+    /**
+     * The number of BasicRobots destroyed in the tick.
+     */
+    @Label("Kills")
+    int kills;
+
+    /**
+     * The number of times a robot ran into an obstacle in the tick.
+     */
+    @Label("Obstacle Hits")
+    long obstacleHits;
+
+    /**
+     * The time spent refreshing the flow field.
+     */
+    @Label("Flow Field")
+    @Timespan
+    long flowField;
+
+    /**
+     * The time spent moving the robots.
+     */
+    @Label("Move")
+    @Timespan
+    long move;
+
+    /**
+     * The time spent updating the spatial index.
+     */
+    @Label("Index")
+    @Timespan
+    long index;
+
+    /**
+     * The time spent finding kills.
+     */
+    @Label("Collision Detection")
+    @Timespan
+    long collision;
+
+    /**
+     * The time spent removing destroyed robots.
+     */
+    @Label("Removal")
+    @Timespan
+    long removal;
+
+    /**
+     * The time spent compacting the robot store.
+     */
+    @Label("Compaction")
+    @Timespan
+    long compaction;
+
+    /**
+     * The time spent writing the tick to the arena's recorder.
+     */
+    @Label("Recording")
+    @Timespan
+    long recording;
+
+    /**
+     * The time spent publishing a snapshot and notifying the observers, 0 on ticks that do not notify.
+     */
+    @Label("Observers")
+    @Timespan
+    long observers;
+
+    /**
+     * The bytes allocated by the ticking thread during the tick, or -1 if unknown.
+     */
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+}
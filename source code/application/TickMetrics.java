@@ -0,0 +1,569 @@
+package application;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jdk.jfr.EventType;
+
+/**
+ * The TickMetrics class measures where the time of a {@link RobotArena} goes. It keeps a
+ * {@link LatencyHistogram} for whole ticks and one for each {@link Phase} of a tick, and counts
+ * robots, kills, obstacle hits and the bytes allocated per tick. Every arena has one, filled in by
+ * the arena and its {@link TickEngine} as they run.
+ * <p>
+ * The metrics can be read directly, through JMX once {@link #register(String) registered} with the
+ * platform MBean server, or from a JDK Flight Recorder recording, which receives a
+ * {@link TickEvent} for every tick while that event is enabled.
+ * <p>
+ * Metrics are recorded by the thread advancing the arena and may be read from any thread.
+ * Allocation is measured for the advancing thread only, which is where a tick allocates; the
+ * parallel move phase does not allocate.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see RobotArena#getMetrics()
+ */
+    public class TickMetrics implements TickMetricsMXBean {
+
+    /**
+     * The parts of a tick that are timed separately.
+     */
+    public enum Phase {
+        /**
+         * Refreshing the flow field that guides the AdvancedRobots.
+         */
+        FLOW_FIELD,
+        /**
+         * Moving every robot, including the obstacle check after each move.
+         */
+        MOVE,
+        /**
+         * Updating the spatial index and grouping the hunters into stripes.
+         */
+        INDEX,
+        /**
+         * Finding the BasicRobots that share a cell with an AdvancedRobot.
+         */
+        COLLISION,
+        /**
+         * Removing the destroyed robots and publishing the kills.
+         */
+        REMOVAL,
+        /**
+         * Compacting the robot store once enough robots have been removed.
+         */
+        COMPACTION,
+        /**
+         * Writing the tick and any edits made before it to the arena's {@link TickRecorder}. This
+         * only happens while a recorder is attached.
+         */
+        RECORDING,
+        /**
+         * Publishing a snapshot and notifying the observers. This happens at the end of a tick, and
+         * only on the ticks that notify; outside a tick, as after a replayed frame, it is only
+         * added to the phase histogram.
+         */
+        OBSERVERS
+    }
+
+    /**
+     * The phases in order.
+     */
+    private static final Phase[] PHASES = Phase.values();
+
+    /**
+     * The Flight Recorder type of {@link TickEvent}, checked before creating an event.
+     */
+    private static final EventType TICK_EVENT = EventType.getEventType(TickEvent.class);
+
+    /**
+     * The thread bean used to measure allocation, or null if the JVM cannot measure it.
+     */
+    private static final com.sun.management.ThreadMXBean ALLOCATION = allocationBean();
+
+    /**
+     * The durations of whole ticks.
+     */
+    private final LatencyHistogram tickTimes = new LatencyHistogram();
+
+    /**
+     * The durations of each phase, indexed by ordinal.
+     */
+    private final LatencyHistogram[] phaseTimes = new LatencyHistogram[PHASES.length];
+
+    /**
+     * The durations of each phase in the current tick, indexed by ordinal.
+     */
+    private final long[] currentPhases = new long[PHASES.length];
+
+    /**
+     * The obstacle hits of the current tick, counted from the threads moving the robots.
+     */
+    private final LongAdder obstacleHits = new LongAdder();
+
+    /**
+     * When the current tick started, from {@link System#nanoTime()}.
+     */
+    private long tickStart;
+
+    /**
+     * The bytes the ticking thread had allocated when the current tick started.
+     */
+    private long allocationStart;
+
+    /**
+     * The number of robots when the current tick started.
+     */
+    private int robotsAtStart;
+
+    /**
+     * The Flight Recorder event of the current tick, or null if the event is disabled.
+     */
+    private TickEvent event;
+
+    /**
+     * The number of ticks measured.
+     */
+    private volatile long ticks;
+
+    /**
+     * The duration of the most recent tick.
+     */
+    private volatile long lastTickNanos;
+
+    /**
+     * The number of robot moves simulated, summed over all ticks.
+     */
+    private volatile long robotTicks;
+
+    /**
+     * The number of robots after the most recent tick.
+     */
+    private volatile int robotCount;
+
+    /**
+     * The kills of the most recent tick.
+     */
+    private volatile long killsLastTick;
+
+    /**
+     * The kills of all ticks.
+     */
+    private volatile long totalKills;
+
+    /**
+     * The obstacle hits of the most recent tick.
+     */
+    private volatile long obstacleHitsLastTick;
+
+    /**
+     * The obstacle hits of all ticks.
+     */
+    private volatile long totalObstacleHits;
+
+    /**
+     * The bytes allocated in the most recent tick.
+     */
+    private volatile long allocatedLastTick = -1;
+
+    /**
+     * The bytes allocated in all ticks.
+     */
+    private volatile long totalAllocated;
+
+    /**
+     * The name under which these metrics are registered with JMX, or null.
+     */
+    private ObjectName registeredName;
+
+    /**
+     * Constructs a new, empty TickMetrics object.
+     */
+    public TickMetrics() {
+        for (int i = 0; i < phaseTimes.length; i++) {
+            phaseTimes[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Marks the start of a tick. Called by the arena before it runs its {@link TickEngine}.
+     *
+     * @param robots the number of robots in the arena
+     */
+    void beginTick(int robots) {
+        robotsAtStart = robots;
+        obstacleHits.reset();
+        Arrays.fill(currentPhases, 0);
+        if (TICK_EVENT.isEnabled()) {
+            event = new TickEvent();
+            event.begin();
+        }
+        allocationStart = ALLOCATION != null ? ALLOCATION.getCurrentThreadAllocatedBytes() : -1;
+        tickStart = System.nanoTime();
+    }
+
+    /**
+     * Records the duration of one phase.
+     *
+     * @param phase the phase
+     * @param nanos the duration in nanoseconds
+     */
+    void recordPhase(Phase phase, long nanos) {
+        phaseTimes[phase.ordinal()].record(nanos);
+        currentPhases[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * Counts a robot running into an obstacle. Safe to call from the threads moving the robots.
+     */
+    void countObstacleHit() {
+        obstacleHits.increment();
+    }
+
+    /**
+     * Marks the end of a tick and folds its measurements into the totals.
+     *
+     * @param tick   the number of the tick that ended
+     * @param robots the number of robots left in the arena
+     */
+    void endTick(long tick, int robots) {
+        long duration = System.nanoTime() - tickStart;
+        long allocated = allocationStart >= 0 ? ALLOCATION.getCurrentThreadAllocatedBytes() - allocationStart : -1;
+        int kills = Math.max(0, robotsAtStart - robots);
+        long hits = obstacleHits.sum();
+
+        tickTimes.record(duration);
+        lastTickNanos = duration;
+        robotTicks += robotsAtStart;
+        robotCount = robots;
+        killsLastTick = kills;
+        totalKills += kills;
+        obstacleHitsLastTick = hits;
+        totalObstacleHits += hits;
+        allocatedLastTick = allocated;
+        if (allocated >= 0) {
+            totalAllocated += allocated;
+        }
+        ticks++;
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.tick = tick;
+                event.robots = robotsAtStart;
+                event.kills = kills;
+                event.obstacleHits = hits;
+                event.flowField = currentPhases[Phase.FLOW_FIELD.ordinal()];
+                event.move = currentPhases[Phase.MOVE.ordinal()];
+                event.index = currentPhases[Phase.INDEX.ordinal()];
+                event.collision = currentPhases[Phase.COLLISION.ordinal()];
+                event.removal = currentPhases[Phase.REMOVAL.ordinal()];
+                event.compaction = currentPhases[Phase.COMPACTION.ordinal()];
+                event.recording = currentPhases[Phase.RECORDING.ordinal()];
+                event.observers = currentPhases[Phase.OBSERVERS.ordinal()];
+                event.allocated = allocated;
+                event.commit();
+            }
+            event = null;
+        }
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server under
+     * {@code application:type=TickMetrics,name=<name>}, replacing any earlier registration.
+     *
+     * @param name the name identifying the arena, for example {@code "headless"}
+     * @return the object name the metrics were registered under
+     * @throws JMException if the name is malformed or already taken by another bean
+     */
+    public synchronized ObjectName register(String name) throws JMException {
+        unregister();
+        ObjectName objectName = new ObjectName("application:type=TickMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        registeredName = objectName;
+        return objectName;
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server, if they are registered.
+     *
+     * @throws JMException if the bean could not be unregistered
+     */
+    public synchronized void unregister() throws JMException {
+        if (registeredName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(registeredName)) {
+                server.unregisterMBean(registeredName);
+            }
+            registeredName = null;
+        }
+    }
+
+    /**
+     * Gets the histogram of the tick durations.
+     *
+     * @return the tick histogram
+     */
+    public LatencyHistogram getTickTimes() {
+        return tickTimes;
+    }
+
+    /**
+     * Gets the histogram of the durations of one phase.
+     *
+     * @param phase the phase
+     * @return the histogram of the phase
+     */
+    public LatencyHistogram getPhaseTimes(Phase phase) {
+        return phaseTimes[phase.ordinal()];
+    }
+
+    @Override
+    public long getTicks() {
+        return ticks;
+    }
+
+    @Override
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    @Override
+    public double getTickMeanNanos() {
+        return tickTimes.getMean();
+    }
+
+    @Override
+    public long getTickP99Nanos() {
+        return tickTimes.getPercentile(99);
+    }
+
+    @Override
+    public long getTickMaxNanos() {
+        return tickTimes.getMax();
+    }
+
+    @Override
+    public int getRobotCount() {
+        return robotCount;
+    }
+
+    @Override
+    public double getRobotsPerSecond() {
+        long nanos = tickTimes.getTotal();
+        return nanos == 0 ? 0 : robotTicks * 1e9 / nanos;
+    }
+
+    @Override
+    public long getKillsLastTick() {
+        return killsLastTick;
+    }
+
+    @Override
+    public double getKillsPerTick() {
+        long n = ticks;
+        return n == 0 ? 0 : (double) totalKills / n;
+    }
+
+    @Override
+    public long getObstacleHitsLastTick() {
+        return obstacleHitsLastTick;
+    }
+
+    @Override
+    public double getObstacleHitsPerTick() {
+        long n = ticks;
+        return n == 0 ? 0 : (double) totalObstacleHits / n;
+    }
+
+    @Override
+    public long getAllocatedBytesLastTick() {
+        return allocatedLastTick;
+    }
+
+    @Override
+    public double getAllocatedBytesPerTick() {
+        long n = ticks;
+        if (ALLOCATION == null) {
+            return -1;
+        }
+        return n == 0 ? 0 : (double) totalAllocated / n;
+    }
+
+    @Override
+    public List<PhaseStatistics> getPhases() {
+        List<PhaseStatistics> phases = new ArrayList<>(PHASES.length);
+        for (Phase phase : PHASES) {
+            phases.add(new PhaseStatistics(phase, phaseTimes[phase.ordinal()]));
+        }
+        return phases;
+    }
+
+    /**
+     * Forgets every measurement taken so far. Measurements of a tick that is running while the
+     * metrics are reset may be partly kept.
+     */
+    @Override
+    public void reset() {
+        tickTimes.reset();
+        for (LatencyHistogram histogram : phaseTimes) {
+            histogram.reset();
+        }
+        ticks = 0;
+        lastTickNanos = 0;
+        robotTicks = 0;
+        killsLastTick = 0;
+        totalKills = 0;
+        obstacleHitsLastTick = 0;
+        totalObstacleHits = 0;
+        allocatedLastTick = -1;
+        totalAllocated = 0;
+    }
+
+    /**
+     * Returns a one-line summary of the metrics, suitable for logging.
+     *
+     * @return a string describing the metrics
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%d ticks, mean %.3f ms, p99 %.3f ms, %.0f robots/s, %.2f kills/tick, %.0f B/tick",
+                ticks, getTickMeanNanos() / 1e6, getTickP99Nanos() / 1e6, getRobotsPerSecond(),
+                getKillsPerTick(), getAllocatedBytesPerTick()));
+        for (Phase phase : PHASES) {
+            LatencyHistogram histogram = phaseTimes[phase.ordinal()];
+            sb.append(String.format("%n  %-10s mean %.3f ms, p99 %.3f ms", phase, histogram.getMean() / 1e6,
+                    histogram.getPercentile(99) / 1e6));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Looks up the thread bean that can measure allocation.
+     *
+     * @return the bean, or null if allocation cannot be measured
+     */
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The timing statistics of one phase, as shown by JMX clients.
+     */
+    public static final class PhaseStatistics {
+
+        /**
+         * The phase the statistics are about.
+         */
+        private final Phase phase;
+
+        /**
+         * The number of times the phase ran.
+         */
+        private final long count;
+
+        /**
+         * The mean duration of the phase.
+         */
+        private final double meanNanos;
+
+        /**
+         * The median duration of the phase.
+         */
+        private final long p50Nanos;
+
+        /**
+         * The 99th percentile of the duration of the phase.
+         */
+        private final long p99Nanos;
+
+        /**
+         * The longest duration of the phase.
+         */
+        private final long maxNanos;
+
+        /**
+         * Constructs the statistics of a phase from its histogram.
+         *
+         * @param phase     the phase
+         * @param histogram the histogram of its durations
+         */
+        PhaseStatistics(Phase phase, LatencyHistogram histogram) {
+            this.phase = phase;
+            this.count = histogram.getCount();
+            this.meanNanos = histogram.getMean();
+            this.p50Nanos = histogram.getPercentile(50);
+            this.p99Nanos = histogram.getPercentile(99);
+            this.maxNanos = histogram.getMax();
+        }
+
+        /**
+         * Gets the name of the phase.
+         *
+         * @return the name of the phase
+         */
+        public String getPhase() {
+            return phase.name();
+        }
+
+        /**
+         * Gets the number of times the phase ran.
+         *
+         * @return the count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the mean duration of the phase.
+         *
+         * @return the mean in nanoseconds
+         */
+        public double getMeanNanos() {
+            return meanNanos;
+        }
+
+        /**
+         * Gets the median duration of the phase.
+         *
+         * @return the median in nanoseconds
+         */
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        /**
+         * Gets the 99th percentile of the duration of the phase.
+         *
+         * @return the percentile in nanoseconds
+         */
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        /**
+         * Gets the longest duration of the phase.
+         *
+         * @return the maximum in nanoseconds
+         */
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+    }
+}
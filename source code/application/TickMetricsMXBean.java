@@ -0,0 +1,118 @@
+package application;
+
+import java.util.List;
+
+/**
+ * The TickMetricsMXBean interface is the management interface of {@link TickMetrics}, through which
+ * JConsole, VisualVM and other JMX clients read the timings and counters of a running arena.
+ * All durations are in nanoseconds.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see TickMetrics#register(String)
+ */
+    public interface TickMetricsMXBean {
+
+    /**
+     * Gets the number of ticks measured since the metrics were last reset.
+     *
+     * @return the number of ticks
+     */
+    long getTicks();
+
+    /**
+     * Gets the duration of the most recent tick.
+     *
+     * @return the duration in nanoseconds
+     */
+    long getLastTickNanos();
+
+    /**
+     * Gets the mean duration of a tick.
+     *
+     * @return the mean in nanoseconds
+     */
+    double getTickMeanNanos();
+
+    /**
+     * Gets the 99th percentile of the tick duration.
+     *
+     * @return the percentile in nanoseconds
+     */
+    long getTickP99Nanos();
+
+    /**
+     * Gets the longest tick.
+     *
+     * @return the maximum in nanoseconds
+     */
+    long getTickMaxNanos();
+
+    /**
+     * Gets the number of robots in the arena after the most recent tick.
+     *
+     * @return the number of robots
+     */
+    int getRobotCount();
+
+    /**
+     * Gets the number of robot moves simulated per second of tick time.
+     *
+     * @return the robots per second
+     */
+    double getRobotsPerSecond();
+
+    /**
+     * Gets the number of BasicRobots destroyed in the most recent tick.
+     *
+     * @return the number of kills
+     */
+    long getKillsLastTick();
+
+    /**
+     * Gets the mean number of BasicRobots destroyed per tick.
+     *
+     * @return the kills per tick
+     */
+    double getKillsPerTick();
+
+    /**
+     * Gets the number of times a robot ran into an obstacle in the most recent tick.
+     *
+     * @return the number of obstacle hits
+     */
+    long getObstacleHitsLastTick();
+
+    /**
+     * Gets the mean number of obstacle hits per tick.
+     *
+     * @return the obstacle hits per tick
+     */
+    double getObstacleHitsPerTick();
+
+    /**
+     * Gets the number of bytes the ticking thread allocated in the most recent tick.
+     *
+     * @return the allocated bytes, or -1 if the JVM cannot measure allocation
+     */
+    long getAllocatedBytesLastTick();
+
+    /**
+     * Gets the mean number of bytes the ticking thread allocated per tick.
+     *
+     * @return the allocated bytes per tick, or -1 if the JVM cannot measure allocation
+     */
+    double getAllocatedBytesPerTick();
+
+    /**
+     * Gets the timing statistics of every phase of a tick.
+     *
+     * @return one entry per phase, in the order the phases run
+     */
+    List<TickMetrics.PhaseStatistics> getPhases();
+
+    /**
+     * Forgets every measurement taken so far.
+     */
+    void reset();
+}
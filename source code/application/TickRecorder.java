@@ -0,0 +1,846 @@
+package application;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The TickRecorder class writes what happens in a {@link RobotArena} to a file, tick by tick, so that
+ * a run can be played back later with a {@link ReplayEngine}, for example to reproduce an incident.
+ * A recorder is attached with {@link RobotArena#setRecorder(TickRecorder)}. After every tick it writes
+ * a delta holding only the robots that moved, turned or were destroyed, the robots that appeared and
+ * the obstacles if they changed. Edits made between ticks, such as adding robots or obstacles, are
+ * written as a separate delta before the next tick. Every {@link #getKeyframeInterval() keyframe
+ * interval} ticks the whole state is written as a keyframe, so that a replay can seek without
+ * reading the recording from the start.
+ * <p>
+ * Deltas are found by comparing the robots with those of the previous frame in store order, which
+ * the store keeps stable, so recording costs one pass over the robots per tick and no lookups.
+ * Numbers are written as variable-length integers and coordinates as the distance moved, so a robot
+ * that moved one cell costs three or four bytes. Robot colours are not recorded.
+ * <p>
+ * Changed obstacles are written chunk by chunk: only the chunks that {@link ObstacleMap} reports as
+ * changed are written, each with its whole bitmap and custom colours, so one added obstacle costs
+ * one chunk however large the map is. Keyframes, and deltas after every obstacle was cleared, write
+ * all of them.
+ * <p>
+ * Layout of version 2; fixed-size values are little-endian, the rest are varints:
+ * <pre>
+ * header (32 bytes)
+ *   int   magic "RREC"   short version   short flags (1 = torus)
+ *   int   sizeX          int   sizeY     long  seed      int keyframeInterval   int reserved
+ * frames: byte kind, varint payload length, payload
+ *   KEYFRAME  tick, robot count, robots, obstacles
+ *   TICK      tick, change count, changes, spawn count, robots, obstacles if changed
+ *   EDIT      the same as TICK, for the edits made after the tick
+ *   INDEX     last tick, keyframe count, per keyframe the tick and file offset as deltas
+ * trailer (12 bytes, only once closed)
+ *   long  offset of the INDEX frame   int magic "RIDX"
+ *
+ * change     gap in store order since the previous change, flags (1 = moved, 2 = turned,
+ *            4 = removed), zigzag dx and dy if moved, direction if turned
+ * robot      zigzag ID delta, type, X, Y, direction
+ * obstacles  flag byte (0 = unchanged, 1 = all, 2 = changed chunks), then for 1 the chunk count,
+ *            per chunk its column, row and 64 long bitmap rows, custom colour count, per colour
+ *            X, Y and colour; for 2 the chunk count, per chunk its column, row, 64 long bitmap
+ *            rows (all zero once it has no obstacles), custom colour count and per colour X, Y
+ *            and colour
+ * </pre>
+ * Only recordings of the current version can be replayed.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ * @see ReplayEngine
+ */
+    public class TickRecorder implements AutoCloseable {
+
+    /**
+     * The number of ticks between keyframes unless another interval is given.
+     */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 256;
+
+    /**
+     * The first four bytes of every recording, "RREC" when read in file order.
+     */
+    static final int MAGIC = 0x43455252;
+
+    /**
+     * The last four bytes of a closed recording, "RIDX" when read in file order.
+     */
+    static final int INDEX_MAGIC = 0x58444952;
+
+    /**
+     * The version of the format written by this class.
+     */
+    static final short VERSION = 2;
+
+    /**
+     * The flag marking a recording of an arena that wraps around at its edges.
+     */
+    static final short FLAG_TORUS = 1;
+
+    /**
+     * The size of the header in bytes.
+     */
+    static final int HEADER_SIZE = 32;
+
+    /**
+     * The size of the trailer in bytes.
+     */
+    static final int TRAILER_SIZE = 12;
+
+    /**
+     * The kind of a frame holding the whole state of the arena.
+     */
+    static final byte KEYFRAME = 1;
+
+    /**
+     * The kind of a frame holding what one tick changed.
+     */
+    static final byte TICK = 2;
+
+    /**
+     * The kind of a frame holding the edits made between two ticks.
+     */
+    static final byte EDIT = 3;
+
+    /**
+     * The kind of the frame holding the keyframe index.
+     */
+    static final byte INDEX = 4;
+
+    /**
+     * The change flag of a robot that moved.
+     */
+    static final int MOVED = 1;
+
+    /**
+     * The change flag of a robot that turned.
+     */
+    static final int TURNED = 2;
+
+    /**
+     * The change flag of a robot that was destroyed or removed.
+     */
+    static final int REMOVED = 4;
+
+    /**
+     * The obstacle flag of a frame that holds every obstacle.
+     */
+    static final int ALL_OBSTACLES = 1;
+
+    /**
+     * The obstacle flag of a frame that holds only the chunks whose obstacles changed.
+     */
+    static final int CHANGED_CHUNKS = 2;
+
+    /**
+     * The size of the buffer frames are collected in before they are written.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The file the recording is written to.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The buffer collecting whole frames until it is full.
+     */
+    private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * The payload of the frame being encoded.
+     */
+    private final Encoder payload = new Encoder();
+
+    /**
+     * The number of ticks between keyframes.
+     */
+    private final int keyframeInterval;
+
+    /**
+     * The arena being recorded, or null before the recorder is attached.
+     */
+    private RobotArena arena;
+
+    /**
+     * The offset in the file of the next byte the buffer will be flushed to.
+     */
+    private long position = HEADER_SIZE;
+
+    /**
+     * The number of robots in the previous frame.
+     */
+    private int count;
+
+    /**
+     * The IDs of the robots in the previous frame, in store order.
+     */
+    private int[] ids = new int[0];
+
+    /**
+     * The X coordinates of the robots in the previous frame.
+     */
+    private int[] xs = new int[0];
+
+    /**
+     * The Y coordinates of the robots in the previous frame.
+     */
+    private int[] ys = new int[0];
+
+    /**
+     * The direction ordinals of the robots in the previous frame.
+     */
+    private byte[] directions = new byte[0];
+
+    /**
+     * The obstacle version the previous frame saw.
+     */
+    private long obstacleVersion;
+
+    /**
+     * Whether the arena has been edited since the previous frame.
+     */
+    private boolean edited;
+
+    /**
+     * The tick of the most recent frame.
+     */
+    private long lastTick;
+
+    /**
+     * The ticks of the keyframes written so far.
+     */
+    private long[] keyframeTicks = new long[16];
+
+    /**
+     * The file offsets of the keyframes written so far.
+     */
+    private long[] keyframeOffsets = new long[16];
+
+    /**
+     * The number of keyframes written so far.
+     */
+    private int keyframes;
+
+    /**
+     * Whether the recorder has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Creates a recorder writing to the given file with the default keyframe interval.
+     * An existing file is overwritten.
+     *
+     * @param file the file to write to
+     * @throws IOException if the file cannot be opened
+     */
+    public TickRecorder(Path file) throws IOException {
+        this(file, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * Creates a recorder writing to the given file. Shorter keyframe intervals make seeking faster
+     * and recordings larger. An existing file is overwritten.
+     *
+     * @param file             the file to write to
+     * @param keyframeInterval the number of ticks between keyframes
+     * @throws IOException              if the file cannot be opened
+     * @throws IllegalArgumentException if the interval is less than 1
+     */
+    public TickRecorder(Path file, int keyframeInterval) throws IOException {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be at least 1.");
+        }
+        this.keyframeInterval = keyframeInterval;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Gets the number of ticks between keyframes.
+     *
+     * @return the keyframe interval
+     */
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * Starts recording an arena: writes the header and a keyframe of its current state.
+     * Called by {@link RobotArena#setRecorder(TickRecorder)}.
+     *
+     * @param arena the arena to record
+     * @throws IllegalStateException if the recorder is closed or already records an arena
+     * @throws UncheckedIOException  if the recording cannot be written
+     */
+    void start(RobotArena arena) {
+        if (closed || this.arena != null) {
+            throw new IllegalStateException("A recorder can only record one arena.");
+        }
+        this.arena = arena;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putShort(arena.getBounds().isWrapping() ? FLAG_TORUS : 0);
+        header.putInt(arena.getSizeX());
+        header.putInt(arena.getSizeY());
+        header.putLong(arena.getSeed());
+        header.putInt(keyframeInterval);
+        header.putInt(0);
+        header.flip();
+        try {
+            while (header.hasRemaining()) {
+                channel.write(header, HEADER_SIZE - header.remaining());
+            }
+            channel.position(HEADER_SIZE);
+            writeKeyframe();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Notes that the arena has been edited, so that the edits are written before the next tick.
+     */
+    void edited() {
+        edited = true;
+    }
+
+    /**
+     * Writes the edits made since the previous frame, if there were any. Called by the arena
+     * just before a tick.
+     *
+     * @throws UncheckedIOException if the recording cannot be written
+     */
+    void beforeTick() {
+        if (closed || !edited && obstacleVersion == arena.getObstacleMap().version()) {
+            return;
+        }
+        try {
+            writeDelta(EDIT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes what the tick that has just run changed, followed by a keyframe if one is due.
+     * Called by the arena after every tick.
+     *
+     * @throws UncheckedIOException if the recording cannot be written
+     */
+    void afterTick() {
+        if (closed) {
+            return;
+        }
+        try {
+            writeDelta(TICK);
+            if (arena.getTick() % keyframeInterval == 0) {
+                writeKeyframe();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the frames collected so far to the file, so that they survive if the process dies
+     * before the recorder is closed. Frames are otherwise written whenever the buffer fills up.
+     *
+     * @throws IOException if the recording cannot be written
+     */
+    public void flush() throws IOException {
+        if (!closed) {
+            writeBuffer();
+        }
+    }
+
+    /**
+     * Writes any pending edits, the keyframe index and the trailer, and closes the file.
+     * A recording that was never closed can still be replayed; the replay then has to scan it
+     * to find the keyframes.
+     *
+     * @throws IOException if the recording cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (arena != null) {
+                if (arena.getRecorder() == this) {
+                    arena.setRecorder(null);
+                }
+                if (edited || obstacleVersion != arena.getObstacleMap().version()) {
+                    writeDelta(EDIT);
+                }
+                long indexOffset = offset();
+                payload.reset();
+                payload.putVarLong(lastTick);
+                payload.putVarLong(keyframes);
+                long previousTick = 0;
+                long previousOffset = 0;
+                for (int i = 0; i < keyframes; i++) {
+                    payload.putVarLong(keyframeTicks[i] - previousTick);
+                    payload.putVarLong(keyframeOffsets[i] - previousOffset);
+                    previousTick = keyframeTicks[i];
+                    previousOffset = keyframeOffsets[i];
+                }
+                writeFrame(INDEX);
+                ensureRoom(TRAILER_SIZE);
+                out.putLong(indexOffset);
+                out.putInt(INDEX_MAGIC);
+                writeBuffer();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes the whole state of the arena as a keyframe and remembers it in the index.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeKeyframe() throws IOException {
+        RobotStore store = arena.getRobotStore();
+        long tick = arena.getTick();
+        payload.reset();
+        payload.putVarLong(tick);
+        payload.putVarLong(store.count());
+        count = 0;
+        ensureCapacity(store.count());
+        int previousId = 0;
+        for (int slot = 0; slot < store.size(); slot++) {
+            if (store.isAlive(slot)) {
+                previousId = putRobot(store, slot, previousId);
+                remember(count++, store, slot);
+            }
+        }
+        putObstacles();
+        if (keyframes == keyframeTicks.length) {
+            keyframeTicks = Arrays.copyOf(keyframeTicks, keyframes * 2);
+            keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframes * 2);
+        }
+        keyframeTicks[keyframes] = tick;
+        keyframeOffsets[keyframes] = offset();
+        keyframes++;
+        writeFrame(KEYFRAME);
+        edited = false;
+        lastTick = tick;
+    }
+
+    /**
+     * Writes the changes since the previous frame as a delta. The robots are compared with those of
+     * the previous frame in store order: a robot whose ID does not match the next remembered one
+     * means the remembered robot has gone, and robots beyond the remembered ones have been added.
+     *
+     * @param kind {@link #TICK} or {@link #EDIT}
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeDelta(byte kind) throws IOException {
+        RobotStore store = arena.getRobotStore();
+        payload.reset();
+        payload.putVarLong(arena.getTick());
+        int changesAt = payload.reserveVarInt();
+        int changes = 0;
+        int lastChanged = -1;
+        int previous = 0;
+        int kept = 0;
+        int size = store.size();
+        int slot = 0;
+        // 按存储顺序比较：未匹配的旧机器人已被移除
+        for (; slot < size && previous < count; slot++) {
+            if (!store.isAlive(slot)) {
+                continue;
+            }
+            int id = store.getId(slot);
+            while (previous < count && ids[previous] != id) {
+                lastChanged = putChange(previous, lastChanged, REMOVED, 0, 0, 0);
+                changes++;
+                previous++;
+            }
+            if (previous == count) {
+                break;
+            }
+            int x = store.getX(slot);
+            int y = store.getY(slot);
+            int direction = store.getDirection(slot).ordinal();
+            int flags = (x != xs[previous] || y != ys[previous] ? MOVED : 0)
+                    | (direction != directions[previous] ? TURNED : 0);
+            if (flags != 0) {
+                lastChanged = putChange(previous, lastChanged, flags, x - xs[previous], y - ys[previous], direction);
+                changes++;
+            }
+            remember(kept++, store, slot);
+            previous++;
+        }
+        for (; previous < count; previous++) {
+            lastChanged = putChange(previous, lastChanged, REMOVED, 0, 0, 0);
+            changes++;
+        }
+        payload.fillVarInt(changesAt, changes);
+
+        int spawnsAt = payload.reserveVarInt();
+        int spawns = 0;
+        ensureCapacity(kept + store.count());
+        int previousId = 0;
+        for (; slot < size; slot++) {
+            if (store.isAlive(slot)) {
+                previousId = putRobot(store, slot, previousId);
+                remember(kept++, store, slot);
+                spawns++;
+            }
+        }
+        payload.fillVarInt(spawnsAt, spawns);
+        count = kept;
+
+        if (obstacleVersion != arena.getObstacleMap().version()) {
+            putChangedObstacles();
+        } else {
+            payload.putByte(0);
+        }
+        writeFrame(kind);
+        edited = false;
+        lastTick = arena.getTick();
+    }
+
+    /**
+     * Encodes the change of one remembered robot.
+     *
+     * @param index       the index of the robot in the previous frame
+     * @param lastChanged the index of the previously changed robot, or -1
+     * @param flags       the change flags
+     * @param dx          the distance moved along X
+     * @param dy          the distance moved along Y
+     * @param direction   the new direction ordinal
+     * @return the index of the robot, to be passed as the next previous change
+     */
+    private int putChange(int index, int lastChanged, int flags, int dx, int dy, int direction) {
+        payload.putVarLong(index - lastChanged - 1);
+        payload.putByte(flags);
+        if ((flags & MOVED) != 0) {
+            payload.putVarLong(zigzag(dx));
+            payload.putVarLong(zigzag(dy));
+        }
+        if ((flags & TURNED) != 0) {
+            payload.putByte(direction);
+        }
+        return index;
+    }
+
+    /**
+     * Encodes the whole state of one robot.
+     *
+     * @param store      the store holding the robot
+     * @param slot       the slot of the robot
+     * @param previousId the ID of the previously encoded robot in the same list
+     * @return the ID of the robot
+     */
+    private int putRobot(RobotStore store, int slot, int previousId) {
+        int id = store.getId(slot);
+        payload.putVarLong(zigzag((long) id - previousId));
+        payload.putByte(store.getType(slot).ordinal());
+        payload.putVarLong(store.getX(slot));
+        payload.putVarLong(store.getY(slot));
+        payload.putByte(store.getDirection(slot).ordinal());
+        return id;
+    }
+
+    /**
+     * Encodes every obstacle of the arena: the bitmaps of the occupied chunks and the colours that
+     * differ from the default.
+     */
+    private void putObstacles() {
+        ObstacleMap obstacles = arena.getObstacleMap();
+        List<ChunkedWorld.Chunk> chunks = new ArrayList<>();
+        for (ChunkedWorld.Chunk chunk : arena.getWorld().chunks()) {
+            if (chunk.blocked != null) {
+                chunks.add(chunk);
+            }
+        }
+        payload.putByte(ALL_OBSTACLES);
+        payload.putVarLong(chunks.size());
+        for (ChunkedWorld.Chunk chunk : chunks) {
+            payload.putVarLong(chunk.chunkX);
+            payload.putVarLong(chunk.chunkY);
+            for (long row : chunk.blocked) {
+                payload.putLong(row);
+            }
+        }
+        Map<Long, Integer> colors = obstacles.customColors();
+        payload.putVarLong(colors.size());
+        for (Map.Entry<Long, Integer> color : colors.entrySet()) {
+            long key = color.getKey();
+            payload.putVarLong((int) key);
+            payload.putVarLong((int) (key >> 32));
+            payload.putVarLong(color.getValue() & 0xFFFFFFFFL);
+        }
+        obstacles.takeChangedChunks();
+        obstacleVersion = obstacles.version();
+    }
+
+    /**
+     * Encodes the obstacles of the chunks that changed since the previous frame, or every obstacle
+     * if they were all cleared at once.
+     */
+    private void putChangedObstacles() {
+        ObstacleMap obstacles = arena.getObstacleMap();
+        long[] changed = obstacles.takeChangedChunks();
+        if (changed == null) {
+            putObstacles();
+            return;
+        }
+        payload.putByte(CHANGED_CHUNKS);
+        payload.putVarLong(changed.length);
+        for (long packed : changed) {
+            int chunkX = (int) packed;
+            int chunkY = (int) (packed >> 32);
+            payload.putVarLong(chunkX);
+            payload.putVarLong(chunkY);
+            ChunkedWorld.Chunk chunk = arena.getWorld().chunkAt(chunkX << ChunkedWorld.CHUNK_SHIFT, chunkY << ChunkedWorld.CHUNK_SHIFT);
+            long[] rows = chunk == null ? null : chunk.blocked;
+            for (int row = 0; row < ChunkedWorld.CHUNK_SIZE; row++) {
+                payload.putLong(rows == null ? 0 : rows[row]);
+            }
+            int colorsAt = payload.reserveVarInt();
+            int colors = chunk == null ? 0 : obstacles.forEachColor(chunk, key -> {
+                int x = (int) key;
+                int y = (int) (key >> 32);
+                payload.putVarLong(x);
+                payload.putVarLong(y);
+                payload.putVarLong(obstacles.colorAt(x, y) & 0xFFFFFFFFL);
+            });
+            payload.fillVarInt(colorsAt, colors);
+        }
+        obstacleVersion = obstacles.version();
+    }
+
+    /**
+     * Copies the state of a robot into the remembered frame.
+     *
+     * @param index the index in the remembered frame
+     * @param store the store holding the robot
+     * @param slot  the slot of the robot
+     */
+    private void remember(int index, RobotStore store, int slot) {
+        ids[index] = store.getId(slot);
+        xs[index] = store.getX(slot);
+        ys[index] = store.getY(slot);
+        directions[index] = (byte) store.getDirection(slot).ordinal();
+    }
+
+    /**
+     * Grows the remembered frame so that it can hold at least the given number of robots.
+     *
+     * @param capacity the required number of robots
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newLength = Math.max(capacity, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, newLength);
+        xs = Arrays.copyOf(xs, newLength);
+        ys = Arrays.copyOf(ys, newLength);
+        directions = Arrays.copyOf(directions, newLength);
+    }
+
+    /**
+     * Writes the encoded payload as a frame of the given kind.
+     *
+     * @param kind the kind of the frame
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeFrame(byte kind) throws IOException {
+        int length = payload.size();
+        ensureRoom(6);
+        out.put(kind);
+        for (long value = length; ; value >>>= 7) {
+            if (value < 0x80) {
+                out.put((byte) value);
+                break;
+            }
+            out.put((byte) (value & 0x7F | 0x80));
+        }
+        if (length <= out.remaining()) {
+            out.put(payload.bytes(), 0, length);
+        } else {
+            // 大帧（例如关键帧）直接写入通道，不经过缓冲区
+            writeBuffer();
+            ByteBuffer whole = ByteBuffer.wrap(payload.bytes(), 0, length);
+            while (whole.hasRemaining()) {
+                position += channel.write(whole);
+            }
+        }
+    }
+
+    /**
+     * Gets the offset in the file at which the next frame will start.
+     *
+     * @return the offset, counting the bytes still in the buffer
+     */
+    private long offset() {
+        return position + out.position();
+    }
+
+    /**
+     * Flushes the buffer if it cannot take the given number of bytes.
+     *
+     * @param bytes the number of bytes about to be written
+     * @throws IOException if an I/O error occurs
+     */
+    private void ensureRoom(int bytes) throws IOException {
+        if (out.remaining() < bytes) {
+            writeBuffer();
+        }
+    }
+
+    /**
+     * Writes everything still in the buffer to the file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeBuffer() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            position += channel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Maps a signed number onto an unsigned one so that small magnitudes encode into few bytes.
+     *
+     * @param value the signed number
+     * @return the zigzag-encoded number
+     */
+    static long zigzag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    /**
+     * Collects the payload of a frame in a growable array, with numbers as unsigned varints.
+     */
+    private static final class Encoder {
+
+        /**
+         * The encoded bytes.
+         */
+        private byte[] bytes = new byte[BUFFER_SIZE];
+
+        /**
+         * The number of bytes encoded so far.
+         */
+        private int size;
+
+        /**
+         * Discards everything encoded so far.
+         */
+        void reset() {
+            size = 0;
+        }
+
+        /**
+         * Gets the array holding the encoded bytes.
+         *
+         * @return the array, valid up to {@link #size()}
+         */
+        byte[] bytes() {
+            return bytes;
+        }
+
+        /**
+         * Gets the number of bytes encoded so far.
+         *
+         * @return the number of bytes
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Encodes a single byte.
+         *
+         * @param value the byte, in its low eight bits
+         */
+        void putByte(int value) {
+            ensureRoom(1);
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * Encodes a long in eight little-endian bytes.
+         *
+         * @param value the value
+         */
+        void putLong(long value) {
+            ensureRoom(8);
+            for (int i = 0; i < 8; i++) {
+                bytes[size++] = (byte) (value >>> 8 * i);
+            }
+        }
+
+        /**
+         * Encodes a non-negative number as an unsigned varint of seven bits per byte.
+         *
+         * @param value the value, treated as unsigned
+         */
+        void putVarLong(long value) {
+            ensureRoom(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * Reserves five bytes for an int that is only known later, such as a count.
+         *
+         * @return the position of the reserved bytes
+         */
+        int reserveVarInt() {
+            ensureRoom(5);
+            size += 5;
+            return size - 5;
+        }
+
+        /**
+         * Fills reserved bytes with a non-negative int, padded to five bytes so that the
+         * bytes after it do not move.
+         *
+         * @param at    the position returned by {@link #reserveVarInt()}
+         * @param value the value
+         */
+        void fillVarInt(int at, int value) {
+            for (int i = 0; i < 4; i++) {
+                bytes[at + i] = (byte) (value >>> 7 * i & 0x7F | 0x80);
+            }
+            bytes[at + 4] = (byte) (value >>> 28);
+        }
+
+        /**
+         * Grows the array if it cannot take the given number of bytes.
+         *
+         * @param bytesNeeded the number of bytes about to be encoded
+         */
+        private void ensureRoom(int bytesNeeded) {
+            if (size + bytesNeeded > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + bytesNeeded, bytes.length * 2));
+            }
+        }
+    }
+}
@@ -1,5 +1,8 @@
 module Fianalproject {
 	requires javafx.controls;
+	requires jdk.management;
+	requires jdk.jfr;
 	
 	opens application to javafx.graphics, javafx.fxml;
+	exports application to java.management;
 }
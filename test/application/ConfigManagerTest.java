@@ -0,0 +1,127 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that an arena saved by {@link ConfigManager} is loaded back with the same robots,
+ * including their colours, the same obstacles and the same tick.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ */
+    class ConfigManagerTest {
+
+    /**
+     * Saves and loads an uncompressed arena file.
+     *
+     * @throws IOException if the file cannot be written or read
+     */
+    @Test
+    void savesAndLoads() throws IOException {
+        RobotArena arena = createArena(false);
+        assertEquals(describe(arena), describe(saveAndLoad(arena, false)));
+    }
+
+    /**
+     * Saves and loads a compressed arena file of an arena that wraps around at its edges.
+     *
+     * @throws IOException if the file cannot be written or read
+     */
+    @Test
+    void savesAndLoadsCompressed() throws IOException {
+        RobotArena arena = createArena(true);
+        assertEquals(describe(arena), describe(saveAndLoad(arena, true)));
+    }
+
+    /**
+     * Checks that a file that is not an arena file is refused.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path file = Files.createTempFile("arena", ".dat");
+        try {
+            Files.write(file, "not an arena".getBytes());
+            assertThrows(IOException.class, () -> ConfigManager.loadConfig(file.toString()));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Builds a seeded arena with obstacles and robots of every type, some of them recoloured,
+     * and runs it for a few ticks.
+     *
+     * @param torus true for an arena that wraps around at its edges
+     * @return the arena
+     */
+    private static RobotArena createArena(boolean torus) {
+        RobotArena arena = new RobotArena(new ArenaBounds(80, 60, torus), 11L);
+        arena.addObstacles(5, 5, 10, 2);
+        arena.addObstacles(70, 40, 1, 15);
+        arena.addRandomRobots(200);
+        List<Robot> robots = arena.getRobots();
+        for (int i = 0; i < robots.size(); i += 7) {
+            robots.get(i).setColor(0xFF000000 | i * 0x010203);
+        }
+        arena.run(5);
+        return arena;
+    }
+
+    /**
+     * Saves an arena to a temporary file and loads it back.
+     *
+     * @param arena    the arena to save
+     * @param compress true to compress the file
+     * @return the arena loaded from the file
+     * @throws IOException if the file cannot be written or read
+     */
+    private static RobotArena saveAndLoad(RobotArena arena, boolean compress) throws IOException {
+        Path file = Files.createTempFile("arena", ".dat");
+        try {
+            ConfigManager.saveConfig(arena, file.toString(), compress);
+            return ConfigManager.loadConfig(file.toString());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Describes the size, tick, robots and obstacles of an arena.
+     *
+     * @param arena the arena to describe
+     * @return the size and tick, then one line per robot in store order, then the blocked cells
+     */
+    private static String describe(RobotArena arena) {
+        StringBuilder state = new StringBuilder();
+        state.append(arena.getSizeX()).append('x').append(arena.getSizeY())
+                .append(arena.getBounds().isWrapping() ? " torus" : "")
+                .append(" tick ").append(arena.getTick()).append('\n');
+        RobotStore store = arena.getRobotStore();
+        for (int slot = 0; slot < store.size(); slot++) {
+            if (store.isAlive(slot)) {
+                state.append(store.getId(slot)).append(' ').append(store.getType(slot)).append(' ')
+                        .append(store.getX(slot)).append(',').append(store.getY(slot)).append(' ')
+                        .append(store.getDirection(slot)).append(' ')
+                        .append(Integer.toHexString(store.getColor(slot))).append('\n');
+            }
+        }
+        for (int y = 0; y < arena.getSizeY(); y++) {
+            for (int x = 0; x < arena.getSizeX(); x++) {
+                if (arena.isBlocked(x, y)) {
+                    state.append(x).append(',').append(y).append(' ');
+                }
+            }
+        }
+        return state.toString();
+    }
+}
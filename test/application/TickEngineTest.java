@@ -0,0 +1,107 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that a {@link TickEngine} gives the same outcome for the same seed however many threads
+ * it runs on, and that it leaves the spatial index in step with the robots.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ */
+    class TickEngineTest {
+
+    /**
+     * The number of robots, enough for every phase of the parallel engine to be split into tasks.
+     */
+    private static final int ROBOTS = 20_000;
+
+    /**
+     * The number of ticks run.
+     */
+    private static final int TICKS = 15;
+
+    /**
+     * The thread counts the parallel engine is run with.
+     */
+    private static final int[] THREADS = {1, 2, 4, 8};
+
+    /**
+     * Runs the same seeded arena on the calling thread and on pools of several sizes, and checks
+     * that every run ends with the same robots.
+     */
+    @Test
+    void sameSeedGivesSameOutcome() {
+        sameOutcome(false);
+    }
+
+    /**
+     * Does the same as {@link #sameSeedGivesSameOutcome()} on an arena that wraps around at its edges.
+     */
+    @Test
+    void sameSeedGivesSameOutcomeOnTorus() {
+        sameOutcome(true);
+    }
+
+    /**
+     * Runs a seeded arena with every engine and compares the outcomes.
+     *
+     * @param torus true for an arena that wraps around at its edges
+     */
+    private static void sameOutcome(boolean torus) {
+        String expected = run(new TickEngine(), torus);
+        for (int threads : THREADS) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                assertEquals(expected, run(new TickEngine(pool, threads * 4), torus), threads + " threads");
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Runs a seeded arena for {@link #TICKS} ticks with the given engine, and checks that every
+     * robot is indexed in the cell it stands on.
+     *
+     * @param engine the engine to run the arena with
+     * @param torus  true for an arena that wraps around at its edges
+     * @return the robots left, one line per slot; robot IDs are left out, since they are handed
+     *         out by a counter shared by all arenas
+     */
+    private static String run(TickEngine engine, boolean torus) {
+        RobotArena arena = new RobotArena(new ArenaBounds(300, 400, torus), 2024L);
+        arena.addObstacles(100, 50, 3, 200);
+        arena.addRandomRobots(ROBOTS);
+        arena.setTickEngine(engine);
+        arena.run(TICKS);
+
+        RobotStore store = arena.getRobotStore();
+        SpatialGrid grid = arena.getSpatialGrid();
+        StringBuilder robots = new StringBuilder();
+        int live = 0;
+        for (int slot = 0; slot < store.size(); slot++) {
+            if (!store.isAlive(slot)) {
+                continue;
+            }
+            live++;
+            int x = store.getX(slot);
+            int y = store.getY(slot);
+            boolean indexed = false;
+            for (int other = grid.firstInCell(x, y); other >= 0 && !indexed; other = grid.next(other)) {
+                indexed = other == slot;
+            }
+            assertTrue(indexed, "slot " + slot + " is not indexed at " + x + "," + y);
+            robots.append(slot).append(' ').append(store.getType(slot)).append(' ').append(x).append(',')
+                    .append(y).append(' ').append(store.getDirection(slot)).append('\n');
+        }
+        assertTrue(live < ROBOTS, "no robot was destroyed");
+        assertEquals(live, grid.countInRect(0, 0, arena.getSizeX(), arena.getSizeY()));
+        return robots.toString();
+    }
+}
@@ -0,0 +1,169 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that a recording made by {@link TickRecorder} is played back by {@link ReplayEngine} tick
+ * for tick, including the edits made between ticks, and that seeking lands on the recorded state.
+ *
+ * @author [SHEN FANGJIE]
+ * @version 1.0
+ */
+    class TickRecorderTest {
+
+    /**
+     * The number of ticks recorded.
+     */
+    private static final int TICKS = 60;
+
+    /**
+     * The number of ticks between keyframes, small enough for the recording to hold several.
+     */
+    private static final int KEYFRAME_INTERVAL = 16;
+
+    /**
+     * Records an arena, with robots and obstacles added part way through, and checks that
+     * stepping through the replay shows the recorded state after every tick.
+     *
+     * @throws IOException if the recording cannot be written or read
+     */
+    @Test
+    void replaysEveryTick() throws IOException {
+        Path file = Files.createTempFile("arena", ".rrec");
+        try {
+            List<String> recorded = record(file);
+            try (ReplayEngine replay = new ReplayEngine(file)) {
+                assertEquals(0, replay.getFirstTick());
+                assertEquals(TICKS, replay.getLastTick());
+                assertEquals(recorded.get(0), describe(replay.getArena()), "tick 0");
+                for (int tick = 1; tick <= TICKS; tick++) {
+                    replay.step();
+                    assertEquals(tick, replay.getTick());
+                    assertEquals(recorded.get(tick), describe(replay.getArena()), "tick " + tick);
+                }
+                assertFalse(replay.step());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Checks that seeking backwards, forwards within a keyframe interval and across keyframes
+     * all show the recorded state, and that ticks outside the recording are refused.
+     *
+     * @throws IOException if the recording cannot be written or read
+     */
+    @Test
+    void seeksToRecordedState() throws IOException {
+        Path file = Files.createTempFile("arena", ".rrec");
+        try {
+            List<String> recorded = record(file);
+            try (ReplayEngine replay = new ReplayEngine(file)) {
+                for (int tick : new int[] {TICKS, 3, 5, 40, 17, 16, 0, 33, TICKS - 1}) {
+                    replay.seek(tick);
+                    assertEquals(tick, replay.getTick());
+                    assertEquals(recorded.get(tick), describe(replay.getArena()), "seek to " + tick);
+                }
+                assertThrows(IllegalArgumentException.class, () -> replay.seek(TICKS + 1));
+                assertThrows(IllegalArgumentException.class, () -> replay.seek(-1));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Checks that a recording claiming another version of the format is refused.
+     *
+     * @throws IOException if the recording cannot be written
+     */
+    @Test
+    void rejectsOtherVersions() throws IOException {
+        Path file = Files.createTempFile("arena", ".rrec");
+        try {
+            record(file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ByteBuffer version = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+                version.putShort((short) (TickRecorder.VERSION - 1)).flip();
+                // 版本号紧跟在四字节的魔数之后
+                channel.write(version, 4);
+            }
+            assertThrows(IOException.class, () -> new ReplayEngine(file).close());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Records a seeded arena for {@link #TICKS} ticks, editing it along the way. Edits made after a
+     * tick are replayed with the next tick, so the state of a tick is taken before the edits.
+     *
+     * @param file the file to record to
+     * @return the state of the arena after every tick, starting with its state when recording began
+     * @throws IOException if the recording cannot be written
+     */
+    private static List<String> record(Path file) throws IOException {
+        RobotArena arena = new RobotArena(64, 48, 7L);
+        arena.addRandomRobots(300);
+        arena.addObstacles(10, 10, 4, 3);
+        List<String> recorded = new ArrayList<>();
+        try (TickRecorder recorder = new TickRecorder(file, KEYFRAME_INTERVAL)) {
+            arena.setRecorder(recorder);
+            recorded.add(describe(arena));
+            for (int tick = 1; tick <= TICKS; tick++) {
+                arena.step();
+                // 两次 tick 之间的编辑随下一个 tick 回放
+                recorded.add(describe(arena));
+                if (tick == 20) {
+                    arena.addRobot(RobotArena.RobotType.ADVANCED, 1, 1, Direction.RIGHT);
+                    arena.addObstacles(30, 5, 2, 20);
+                } else if (tick == 45) {
+                    arena.removeObstacles(10, 10, 4, 3);
+                }
+            }
+            arena.setRecorder(null);
+        }
+        return recorded;
+    }
+
+    /**
+     * Describes the robots of an arena in store order, and its obstacles.
+     *
+     * @param arena the arena to describe
+     * @return one line per robot, followed by the blocked cells
+     */
+    private static String describe(RobotArena arena) {
+        RobotStore store = arena.getRobotStore();
+        StringBuilder state = new StringBuilder();
+        for (int slot = 0; slot < store.size(); slot++) {
+            if (store.isAlive(slot)) {
+                state.append(store.getId(slot)).append(' ').append(store.getType(slot)).append(' ')
+                        .append(store.getX(slot)).append(',').append(store.getY(slot)).append(' ')
+                        .append(store.getDirection(slot)).append('\n');
+            }
+        }
+        for (int y = 0; y < arena.getSizeY(); y++) {
+            for (int x = 0; x < arena.getSizeX(); x++) {
+                if (arena.isBlocked(x, y)) {
+                    state.append(x).append(',').append(y).append(' ');
+                }
+            }
+        }
+        return state.toString();
+    }
+}